@@ -0,0 +1,115 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.backends.cassandra.init;
+
+import static com.datastax.driver.core.DataType.text;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.components.CassandraIndex;
+import org.apache.james.backends.cassandra.components.CassandraModule;
+import org.apache.james.backends.cassandra.components.CassandraTable;
+import org.apache.james.backends.cassandra.components.CassandraType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.schemabuilder.Create;
+import com.datastax.driver.core.schemabuilder.SchemaBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class CassandraTableManagerTest {
+
+    private static final String TABLE_NAME = "tablemanagertest";
+    private static final String ID = "id";
+    private static final String VALUE = "value";
+    private static final String ADDED = "added";
+
+    private CassandraCluster cassandra;
+    private Session session;
+
+    @Before
+    public void setUp() {
+        cassandra = CassandraCluster.create(module(new CassandraTable(TABLE_NAME, createStatement())));
+        session = cassandra.getConf();
+        session.execute(SchemaBuilder.dropTable(TABLE_NAME).ifExists());
+        cassandra.ensureAllTables();
+    }
+
+    @After
+    public void tearDown() {
+        session.execute(SchemaBuilder.dropTable(TABLE_NAME).ifExists());
+    }
+
+    @Test
+    public void ensureAllTablesShouldAddMissingColumnsToExistingTables() {
+        new CassandraTableManager(module(new CassandraTable(TABLE_NAME,
+                createStatement().addColumn(ADDED, text()),
+                ImmutableMap.of(ADDED, text()))), session)
+            .ensureAllTables();
+
+        assertThat(tableMetadata().getColumn(ADDED)).isNotNull();
+    }
+
+    @Test
+    public void ensureAllTablesShouldNotFailWhenAddedColumnsAlreadyExist() {
+        CassandraModule module = module(new CassandraTable(TABLE_NAME,
+            createStatement().addColumn(ADDED, text()),
+            ImmutableMap.of(ADDED, text())));
+
+        new CassandraTableManager(module, session).ensureAllTables();
+        new CassandraTableManager(module, session).ensureAllTables();
+
+        assertThat(tableMetadata().getColumn(ADDED)).isNotNull();
+    }
+
+    private TableMetadata tableMetadata() {
+        return session.getCluster().getMetadata()
+            .getKeyspace(session.getLoggedKeyspace())
+            .getTable(TABLE_NAME);
+    }
+
+    private Create createStatement() {
+        return SchemaBuilder.createTable(TABLE_NAME)
+            .ifNotExists()
+            .addPartitionKey(ID, text())
+            .addColumn(VALUE, text());
+    }
+
+    private CassandraModule module(CassandraTable table) {
+        return new CassandraModule() {
+            @Override public List<CassandraTable> moduleTables() {
+                return ImmutableList.of(table);
+            }
+
+            @Override public List<CassandraIndex> moduleIndex() {
+                return ImmutableList.of();
+            }
+
+            @Override public List<CassandraType> moduleTypes() {
+                return ImmutableList.of();
+            }
+        };
+    }
+}
@@ -34,6 +34,7 @@ import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.MessageResult;
 import org.apache.james.mailbox.model.MessageResult.FetchGroup;
 import org.apache.james.mailbox.model.MessageResultIterator;
+import org.apache.james.mailbox.model.MessageToAppend;
 import org.apache.james.mailbox.model.SearchQuery;
 
 /**
@@ -146,6 +147,21 @@ public interface MessageManager {
      */
     long appendMessage(InputStream msgIn, Date internalDate, MailboxSession mailboxSession, boolean isRecent, Flags flags) throws MailboxException;
 
+    /**
+     * Appends several messages to this mailbox at once. The messages get
+     * consecutive UIDs, in the order of the given list, and a single event is
+     * dispatched for all of them.
+     * 
+     * @param messages
+     *            not null
+     * @param mailboxSession
+     *            not null
+     * @return uids of the newly added messages, in the order of the given list
+     * @throws MailboxException
+     *             when messages cannot be appended
+     */
+    List<Long> appendMessages(List<MessageToAppend> messages, MailboxSession mailboxSession) throws MailboxException;
+
     /**
      * Gets messages in the given range. The messages may get fetched under
      * the-hood in batches so the caller should check if
@@ -163,6 +179,38 @@ public interface MessageManager {
      */
     MessageResultIterator getMessages(MessageRange set, FetchGroup fetchGroup, MailboxSession mailboxSession) throws MailboxException;
 
+    /**
+     * Gets the messages in the given range whose mod-sequence is greater than
+     * the given one. This is the same as {@link #getMessages(MessageRange, FetchGroup, MailboxSession)}
+     * but lets the implementation filter the unchanged messages before they
+     * get loaded.
+     * 
+     * @param set
+     * @param modSeq
+     *            only messages with a greater mod-sequence are returned
+     * @param fetchGroup
+     *            data to fetch
+     * @param mailboxSession
+     *            not null
+     * @return MessageResult with the fields defined by FetchGroup
+     * @throws MailboxException
+     */
+    MessageResultIterator getMessagesChangedSince(MessageRange set, long modSeq, FetchGroup fetchGroup, MailboxSession mailboxSession) throws MailboxException;
+
+    /**
+     * Return the uids of the messages in the given range which were expunged
+     * after the given mod-sequence, in ascending order.
+     * 
+     * @param set
+     * @param modSeq
+     * @param mailboxSession
+     *            not null
+     * @return uids, or <code>null</code> if the mailbox does not remember the
+     *         expunges back to this mod-sequence
+     * @throws MailboxException
+     */
+    List<Long> getExpungedSince(MessageRange set, long modSeq, MailboxSession mailboxSession) throws MailboxException;
+
 
     /**
      * Gets current meta data for the mailbox.<br>
@@ -0,0 +1,71 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.mailbox.model;
+
+import java.io.InputStream;
+import java.util.Date;
+
+import javax.mail.Flags;
+
+/**
+ * A message to be appended with {@link org.apache.james.mailbox.MessageManager#appendMessages}
+ */
+public class MessageToAppend {
+
+    private final InputStream content;
+    private final Date internalDate;
+    private final boolean isRecent;
+    private final Flags flags;
+
+    /**
+     * @param content
+     *            the raw message, not null
+     * @param internalDate
+     *            the time of addition to be set, or null for now
+     * @param isRecent
+     *            true when the message should be marked recent, false otherwise
+     * @param flags
+     *            optionally set these flags on created message, or null when no
+     *            additional flags should be set
+     */
+    public MessageToAppend(InputStream content, Date internalDate, boolean isRecent, Flags flags) {
+        this.content = content;
+        this.internalDate = internalDate;
+        this.isRecent = isRecent;
+        this.flags = flags;
+    }
+
+    public InputStream getContent() {
+        return content;
+    }
+
+    public Date getInternalDate() {
+        return internalDate;
+    }
+
+    public boolean isRecent() {
+        return isRecent;
+    }
+
+    public Flags getFlags() {
+        return flags;
+    }
+}
@@ -8,6 +8,7 @@ import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.store.mail.MailboxMapper;
 import org.apache.james.mailbox.store.mail.model.MailboxId;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxWithChildren;
 
 /**
  * A MailboxMapper implementation that uses a MailboxByPathCache to cache the information
@@ -66,6 +67,12 @@ public class CachingMailboxMapper<Id extends MailboxId> implements MailboxMapper
 		return underlying.findMailboxWithPathLike(mailboxPath);
 	}
 
+	@Override
+	public List<MailboxWithChildren<Id>> findMailboxWithPathLikeWithChildren(MailboxPath mailboxPath, char delimiter)
+			throws MailboxException {
+		return underlying.findMailboxWithPathLikeWithChildren(mailboxPath, delimiter);
+	}
+
 	@Override
 	public boolean hasChildren(Mailbox<Id> mailbox, char delimiter)
 			throws MailboxException, MailboxNotFoundException {
@@ -47,6 +47,20 @@ public class CachingMessageMapper<Id extends MailboxId> implements MessageMapper
         return underlying.findInMailbox(mailbox, set, type, limit);
     }
 
+    @Override
+    public Iterator<MailboxMessage<Id>> findChangedSinceInMailbox(Mailbox<Id> mailbox,
+                                                                  MessageRange set,
+                                                                  long modSeq,
+                                                                  org.apache.james.mailbox.store.mail.MessageMapper.FetchType type,
+                                                                  int limit) throws MailboxException {
+        return underlying.findChangedSinceInMailbox(mailbox, set, modSeq, type, limit);
+    }
+
+    @Override
+    public List<Long> findExpungedSinceInMailbox(Mailbox<Id> mailbox, MessageRange set, long modSeq) throws MailboxException {
+        return underlying.findExpungedSinceInMailbox(mailbox, set, modSeq);
+    }
+
     @Override
     public Map<Long, MessageMetaData> expungeMarkedForDeletionInMailbox(
             Mailbox<Id> mailbox, MessageRange set) throws MailboxException {
@@ -94,6 +108,13 @@ public class CachingMessageMapper<Id extends MailboxId> implements MessageMapper
         return underlying.add(mailbox, message);
     }
 
+    @Override
+    public List<MessageMetaData> addAll(Mailbox<Id> mailbox, List<MailboxMessage<Id>> messages)
+            throws MailboxException {
+        invalidateMetadata(mailbox);
+        return underlying.addAll(mailbox, messages);
+    }
+
     @Override
     public Iterator<UpdatedFlags> updateFlags(Mailbox<Id> mailbox, FlagsUpdateCalculator calculator, MessageRange set)
             throws MailboxException {
@@ -46,6 +46,7 @@ import com.google.common.collect.Lists;
 @Singleton
 public class CassandraMailboxManager extends StoreMailboxManager<CassandraId> {
     private final MailboxPathLocker locker;
+    private final CassandraMailboxSessionMapperFactory mapperFactory;
 
     @Inject
     public CassandraMailboxManager(CassandraMailboxSessionMapperFactory mapperFactory, Authenticator authenticator, MailboxPathLocker locker) {
@@ -55,6 +56,18 @@ public class CassandraMailboxManager extends StoreMailboxManager<CassandraId> {
             new UnionMailboxACLResolver(),
             new SimpleGroupMembershipResolver());
         this.locker = locker;
+        this.mapperFactory = mapperFactory;
+    }
+
+    /**
+     * Also migrates, in the background, the messages stored by older versions: their contents are moved to the
+     * blob table and their mod-sequences indexed.
+     */
+    @Override
+    public void init() throws MailboxException {
+        super.init();
+        mapperFactory.getMessageContentMigration().start();
+        mapperFactory.getMessageModSeqIndexMigration().start();
     }
 
     @Override
@@ -22,8 +22,14 @@ package org.apache.james.mailbox.cassandra;
 import org.apache.james.backends.cassandra.init.CassandraTypesProvider;
 import javax.inject.Inject;
 import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.cassandra.mail.CassandraACLCache;
+import org.apache.james.mailbox.cassandra.mail.CassandraBlobsDAO;
+import org.apache.james.mailbox.cassandra.mail.CassandraExpungeLog;
 import org.apache.james.mailbox.cassandra.mail.CassandraMailboxMapper;
+import org.apache.james.mailbox.cassandra.mail.CassandraMessageContentMigration;
 import org.apache.james.mailbox.cassandra.mail.CassandraMessageMapper;
+import org.apache.james.mailbox.cassandra.mail.CassandraMessageModSeqIndexMigration;
+import org.apache.james.mailbox.cassandra.mail.CassandraMessageStatements;
 import org.apache.james.mailbox.cassandra.user.CassandraSubscriptionMapper;
 import org.apache.james.mailbox.store.MailboxSessionMapperFactory;
 import org.apache.james.mailbox.store.mail.MailboxMapper;
@@ -32,6 +38,8 @@ import org.apache.james.mailbox.store.mail.UidProvider;
 import org.apache.james.mailbox.store.user.SubscriptionMapper;
 
 import com.datastax.driver.core.Session;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 
 /**
  * Cassandra implementation of {@link MailboxSessionMapperFactory}
@@ -39,12 +47,20 @@ import com.datastax.driver.core.Session;
  */
 public class CassandraMailboxSessionMapperFactory extends MailboxSessionMapperFactory<CassandraId> {
     private static final int DEFAULT_MAX_RETRY = 1000;
+    private static final int DEFAULT_MAX_IN_FLIGHT_FLAGS_UPDATES = 128;
 
     private final Session session;
     private final UidProvider<CassandraId> uidProvider;
     private final ModSeqProvider<CassandraId> modSeqProvider;
     private final CassandraTypesProvider typesProvider;
+    private final Supplier<CassandraMessageStatements> messageStatements;
+    private final Supplier<CassandraBlobsDAO> blobsDAO;
+    private final Supplier<CassandraExpungeLog> expungeLog;
+    private final Supplier<CassandraACLCache> aclCache;
+    private final Supplier<CassandraMessageContentMigration> messageContentMigration;
+    private final Supplier<CassandraMessageModSeqIndexMigration> messageModSeqIndexMigration;
     private int maxRetry;
+    private int maxInFlightFlagsUpdates;
 
     @Inject
     public CassandraMailboxSessionMapperFactory(UidProvider<CassandraId> uidProvider, ModSeqProvider<CassandraId> modSeqProvider, Session session, CassandraTypesProvider typesProvider) {
@@ -52,21 +68,32 @@ public class CassandraMailboxSessionMapperFactory extends MailboxSessionMapperFa
         this.modSeqProvider = modSeqProvider;
         this.session = session;
         this.maxRetry = DEFAULT_MAX_RETRY;
+        this.maxInFlightFlagsUpdates = DEFAULT_MAX_IN_FLIGHT_FLAGS_UPDATES;
         this.typesProvider = typesProvider;
+        this.messageStatements = Suppliers.memoize(() -> new CassandraMessageStatements(session));
+        this.blobsDAO = Suppliers.memoize(() -> new CassandraBlobsDAO(session));
+        this.expungeLog = Suppliers.memoize(() -> new CassandraExpungeLog(session));
+        this.aclCache = Suppliers.memoize(() -> new CassandraACLCache(session));
+        this.messageContentMigration = Suppliers.memoize(() -> new CassandraMessageContentMigration(session, blobsDAO.get()));
+        this.messageModSeqIndexMigration = Suppliers.memoize(() -> new CassandraMessageModSeqIndexMigration(session));
     }
 
     public void setMaxRetry(int maxRetry) {
         this.maxRetry = maxRetry;
     }
 
+    public void setMaxInFlightFlagsUpdates(int maxInFlightFlagsUpdates) {
+        this.maxInFlightFlagsUpdates = maxInFlightFlagsUpdates;
+    }
+
     @Override
     public CassandraMessageMapper createMessageMapper(MailboxSession mailboxSession) {
-        return new CassandraMessageMapper(session, uidProvider, modSeqProvider, null, maxRetry, typesProvider);
+        return new CassandraMessageMapper(session, messageStatements, blobsDAO, expungeLog, messageModSeqIndexMigration, uidProvider, modSeqProvider, null, maxRetry, maxInFlightFlagsUpdates, typesProvider);
     }
 
     @Override
     public MailboxMapper<CassandraId> createMailboxMapper(MailboxSession mailboxSession) {
-        return new CassandraMailboxMapper(session, typesProvider, maxRetry);
+        return new CassandraMailboxMapper(session, typesProvider, maxRetry, aclCache, expungeLog);
     }
 
     @Override
@@ -82,6 +109,14 @@ public class CassandraMailboxSessionMapperFactory extends MailboxSessionMapperFa
         return uidProvider;
     }
 
+    public CassandraMessageContentMigration getMessageContentMigration() {
+        return messageContentMigration.get();
+    }
+
+    public CassandraMessageModSeqIndexMigration getMessageModSeqIndexMigration() {
+        return messageModSeqIndexMigration.get();
+    }
+
     Session getSession() {
         return session;
     }
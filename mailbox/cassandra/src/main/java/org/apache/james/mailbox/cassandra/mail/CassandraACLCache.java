@@ -0,0 +1,138 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static org.apache.james.mailbox.cassandra.table.CassandraACLTable.ACL;
+import static org.apache.james.mailbox.cassandra.table.CassandraACLTable.ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraACLTable.TABLE_NAME;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.model.MailboxACL;
+import org.apache.james.mailbox.model.SimpleMailboxACL;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Node local cache of the mailbox ACLs.
+ *
+ * The ACLs missing from the cache are read concurrently, with at most maxInFlightReads reads running at once, so
+ * that loading a list of mailboxes costs few round trips without flooding the driver. Updates done by this node
+ * invalidate the cached ACL straight away, updates done by other nodes are seen once the cached entry expired.
+ */
+public class CassandraACLCache {
+
+    public static final long DEFAULT_EXPIRY_IN_SECONDS = 30;
+    public static final long DEFAULT_MAXIMUM_SIZE = 100000;
+    public static final int DEFAULT_MAX_IN_FLIGHT_READS = 128;
+
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final PreparedStatement select;
+    private final Cache<CassandraId, MailboxACL> acls;
+    private final int maxInFlightReads;
+
+    public CassandraACLCache(Session session) {
+        this(session, DEFAULT_EXPIRY_IN_SECONDS, TimeUnit.SECONDS, DEFAULT_MAXIMUM_SIZE, DEFAULT_MAX_IN_FLIGHT_READS);
+    }
+
+    public CassandraACLCache(Session session, long expiry, TimeUnit unit, long maximumSize) {
+        this(session, expiry, unit, maximumSize, DEFAULT_MAX_IN_FLIGHT_READS);
+    }
+
+    public CassandraACLCache(Session session, long expiry, TimeUnit unit, long maximumSize, int maxInFlightReads) {
+        Preconditions.checkArgument(expiry >= 0, "expiry should not be negative");
+        Preconditions.checkArgument(maximumSize >= 0, "maximumSize should not be negative");
+        Preconditions.checkArgument(maxInFlightReads > 0, "maxInFlightReads should be positive");
+        this.maxInFlightReads = maxInFlightReads;
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.select = session.prepare(select(ACL)
+            .from(TABLE_NAME)
+            .where(eq(ID, bindMarker(ID))));
+        this.acls = CacheBuilder.newBuilder()
+            .expireAfterWrite(expiry, unit)
+            .maximumSize(maximumSize)
+            .build();
+    }
+
+    public MailboxACL getACL(Mailbox<CassandraId> mailbox) {
+        return getACLs(ImmutableList.of(mailbox)).get(mailbox.getMailboxId());
+    }
+
+    /**
+     * @return the ACL of each of the given mailboxes, indexed by mailbox id
+     */
+    public Map<CassandraId, MailboxACL> getACLs(List<Mailbox<CassandraId>> mailboxes) {
+        Semaphore inFlight = new Semaphore(maxInFlightReads);
+        Map<CassandraId, CompletableFuture<MailboxACL>> futures = new HashMap<>();
+        for (Mailbox<CassandraId> mailbox : mailboxes) {
+            if (!futures.containsKey(mailbox.getMailboxId())) {
+                futures.put(mailbox.getMailboxId(), retrieveACL(mailbox, inFlight));
+            }
+        }
+        CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[futures.size()])).join();
+        return futures.entrySet()
+            .stream()
+            .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().join()));
+    }
+
+    public void invalidate(CassandraId mailboxId) {
+        acls.invalidate(mailboxId);
+    }
+
+    private CompletableFuture<MailboxACL> retrieveACL(Mailbox<CassandraId> mailbox, Semaphore inFlight) {
+        MailboxACL cachedACL = acls.getIfPresent(mailbox.getMailboxId());
+        if (cachedACL != null) {
+            return CompletableFuture.completedFuture(cachedACL);
+        }
+        inFlight.acquireUninterruptibly();
+        return cassandraAsyncExecutor.executeSingleRow(select.bind()
+                .setUUID(ID, mailbox.getMailboxId().asUuid()))
+            .whenComplete((row, error) -> inFlight.release())
+            .thenApply(row -> row.map(storedACL(mailbox)).orElse(SimpleMailboxACL.EMPTY))
+            .thenApply(acl -> {
+                acls.put(mailbox.getMailboxId(), acl);
+                return acl;
+            });
+    }
+
+    private Function<Row, MailboxACL> storedACL(Mailbox<CassandraId> mailbox) {
+        return row -> CassandraACLMapper.deserializeACL(mailbox, row.getString(ACL));
+    }
+}
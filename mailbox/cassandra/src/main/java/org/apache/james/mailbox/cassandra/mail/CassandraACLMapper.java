@@ -157,6 +157,10 @@ public class CassandraACLMapper {
     }
 
     private MailboxACL deserializeACL(String serializedACL) {
+        return deserializeACL(mailbox, serializedACL);
+    }
+
+    static MailboxACL deserializeACL(Mailbox<CassandraId> mailbox, String serializedACL) {
         try {
             return SimpleMailboxACLJsonConverter.toACL(serializedACL);
         } catch(IOException exception) {
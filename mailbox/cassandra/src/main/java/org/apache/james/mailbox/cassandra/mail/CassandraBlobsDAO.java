@@ -0,0 +1,420 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.set;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
+import static org.apache.james.mailbox.cassandra.table.CassandraBlobTable.CHUNK_NUMBER;
+import static org.apache.james.mailbox.cassandra.table.CassandraBlobTable.DATA;
+import static org.apache.james.mailbox.cassandra.table.CassandraBlobTable.ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraBlobTable.TABLE_NAME;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
+import org.apache.james.backends.cassandra.utils.LightweightTransactionException;
+import org.apache.james.mailbox.cassandra.table.CassandraBlobTable.Generations;
+import org.apache.james.mailbox.cassandra.table.CassandraBlobTable.References;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.utils.UUIDs;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Content addressed storage for message contents.
+ *
+ * A content is identified by its SHA-256 and stored once, as a sequence of chunks, whatever the number of messages
+ * holding it (the same mail delivered to several recipients, copies and moves). Chunk 0 is written last: its presence
+ * marks a completely written blob.
+ *
+ * The stored instance of a content is a generation of it, and the blob id names both the hash and the generation.
+ * Each message row referencing a blob records a reference, named after the row, with a plain write: delivering a
+ * content to many recipients does not contend on a single partition. Lightweight transactions on the generation row
+ * of the content are only needed to create a generation and to delete it once its last reference is released.
+ *
+ * A reference is only valid if the generation is still live once the reference is written, and a generation is only
+ * deleted if no reference is found once it is marked as being deleted. A save racing with the deletion of the last
+ * generation therefore starts a new generation, and the chunks of the deleted generation are never written again:
+ * no timestamp is needed to protect them. When a deletion backs off because a reference showed up, a save that saw
+ * the generation as being deleted may already have replaced it: the old generation is then leaked rather than
+ * deleted while still referenced.
+ */
+public class CassandraBlobsDAO {
+
+    public static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_RETRY = 1000;
+    private static final String SEPARATOR = "-";
+    private static final String EXPECTED_GENERATION = "expectedGeneration";
+
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final PreparedStatement insert;
+    private final PreparedStatement select;
+    private final PreparedStatement selectChunk;
+    private final PreparedStatement selectFirstChunk;
+    private final PreparedStatement deleteChunks;
+    private final PreparedStatement selectGeneration;
+    private final PreparedStatement insertGeneration;
+    private final PreparedStatement replaceGeneration;
+    private final PreparedStatement markDeleting;
+    private final PreparedStatement unmarkDeleting;
+    private final PreparedStatement deleteGeneration;
+    private final PreparedStatement insertReference;
+    private final PreparedStatement deleteReference;
+    private final PreparedStatement selectReference;
+
+    public CassandraBlobsDAO(Session session) {
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.insert = session.prepare(insertInto(TABLE_NAME)
+            .value(ID, bindMarker(ID))
+            .value(CHUNK_NUMBER, bindMarker(CHUNK_NUMBER))
+            .value(DATA, bindMarker(DATA)));
+        this.select = session.prepare(select(DATA)
+            .from(TABLE_NAME)
+            .where(eq(ID, bindMarker(ID))));
+        this.selectChunk = session.prepare(select(DATA)
+            .from(TABLE_NAME)
+            .where(eq(ID, bindMarker(ID)))
+            .and(eq(CHUNK_NUMBER, bindMarker(CHUNK_NUMBER))));
+        this.selectFirstChunk = session.prepare(select(CHUNK_NUMBER)
+            .from(TABLE_NAME)
+            .where(eq(ID, bindMarker(ID)))
+            .and(eq(CHUNK_NUMBER, 0)));
+        this.deleteChunks = session.prepare(QueryBuilder.delete()
+            .from(TABLE_NAME)
+            .where(eq(ID, bindMarker(ID))));
+        this.selectGeneration = session.prepare(select(Generations.GENERATION, Generations.DELETING)
+            .from(Generations.TABLE_NAME)
+            .where(eq(Generations.HASH, bindMarker(Generations.HASH))));
+        this.insertGeneration = session.prepare(insertInto(Generations.TABLE_NAME)
+            .value(Generations.HASH, bindMarker(Generations.HASH))
+            .value(Generations.GENERATION, bindMarker(Generations.GENERATION))
+            .value(Generations.DELETING, false)
+            .ifNotExists());
+        this.replaceGeneration = session.prepare(update(Generations.TABLE_NAME)
+            .with(set(Generations.GENERATION, bindMarker(Generations.GENERATION)))
+            .and(set(Generations.DELETING, false))
+            .where(eq(Generations.HASH, bindMarker(Generations.HASH)))
+            .onlyIf(eq(Generations.GENERATION, bindMarker(EXPECTED_GENERATION)))
+            .and(eq(Generations.DELETING, true)));
+        this.markDeleting = session.prepare(update(Generations.TABLE_NAME)
+            .with(set(Generations.DELETING, true))
+            .where(eq(Generations.HASH, bindMarker(Generations.HASH)))
+            .onlyIf(eq(Generations.GENERATION, bindMarker(Generations.GENERATION)))
+            .and(eq(Generations.DELETING, false)));
+        this.unmarkDeleting = session.prepare(update(Generations.TABLE_NAME)
+            .with(set(Generations.DELETING, false))
+            .where(eq(Generations.HASH, bindMarker(Generations.HASH)))
+            .onlyIf(eq(Generations.GENERATION, bindMarker(Generations.GENERATION)))
+            .and(eq(Generations.DELETING, true)));
+        this.deleteGeneration = session.prepare(QueryBuilder.delete()
+            .from(Generations.TABLE_NAME)
+            .where(eq(Generations.HASH, bindMarker(Generations.HASH)))
+            .onlyIf(eq(Generations.GENERATION, bindMarker(Generations.GENERATION)))
+            .and(eq(Generations.DELETING, true)));
+        this.insertReference = session.prepare(insertInto(References.TABLE_NAME)
+            .value(References.ID, bindMarker(References.ID))
+            .value(References.REFERENCE, bindMarker(References.REFERENCE)));
+        this.deleteReference = session.prepare(QueryBuilder.delete()
+            .from(References.TABLE_NAME)
+            .where(eq(References.ID, bindMarker(References.ID)))
+            .and(eq(References.REFERENCE, bindMarker(References.REFERENCE))));
+        this.selectReference = session.prepare(select(References.REFERENCE)
+            .from(References.TABLE_NAME)
+            .where(eq(References.ID, bindMarker(References.ID)))
+            .limit(1));
+    }
+
+    /**
+     * Stores the data if needed and records the given reference on it.
+     */
+    public CompletableFuture<String> save(byte[] data, String reference) {
+        String hash = Hashing.sha256().hashBytes(data).toString();
+        return save(hash, data, reference, MAX_RETRY);
+    }
+
+    /**
+     * Records an additional reference on an already stored blob.
+     *
+     * @return false if the blob is deleted, or being deleted, and the reference was not recorded
+     */
+    public CompletableFuture<Boolean> addReference(String blobId, String reference) {
+        Optional<BlobId> parsedBlobId = BlobId.parse(blobId);
+        if (!parsedBlobId.isPresent()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return cassandraAsyncExecutor.executeVoid(insertReference.bind()
+                .setString(References.ID, blobId)
+                .setString(References.REFERENCE, reference))
+            .thenCompose(any -> readGeneration(parsedBlobId.get().hash))
+            .thenCompose(generation -> {
+                if (generation.isPresent() && generation.get().isLive(parsedBlobId.get().generation)) {
+                    return CompletableFuture.completedFuture(true);
+                }
+                return removeReference(blobId, reference)
+                    .thenApply(any -> false);
+            });
+    }
+
+    /**
+     * Removes a reference from the blob. Releasing an already released reference has no effect. The blob is deleted
+     * once no reference is left.
+     */
+    public CompletableFuture<Void> release(String blobId, String reference) {
+        return removeReference(blobId, reference)
+            .thenCompose(any -> BlobId.parse(blobId)
+                .map(parsedBlobId -> deleteIfUnreferenced(parsedBlobId, MAX_RETRY))
+                .orElse(CompletableFuture.completedFuture(null)));
+    }
+
+    public CompletableFuture<byte[]> read(String blobId) {
+        return cassandraAsyncExecutor.execute(select.bind()
+                .setString(ID, blobId))
+            .thenApply(resultSet -> {
+                ByteArrayDataOutput content = ByteStreams.newDataOutput();
+                for (Row row : resultSet) {
+                    content.write(chunk(row));
+                }
+                return content.toByteArray();
+            });
+    }
+
+    public CompletableFuture<byte[]> readChunk(String blobId, int chunkNumber) {
+        return cassandraAsyncExecutor.executeSingleRow(selectChunk.bind()
+                .setString(ID, blobId)
+                .setInt(CHUNK_NUMBER, chunkNumber))
+            .thenApply(row -> row.map(this::chunk)
+                .orElseThrow(() -> new IllegalStateException("Missing chunk " + chunkNumber + " of blob " + blobId)));
+    }
+
+    private CompletableFuture<String> save(String hash, byte[] data, String reference, int retries) {
+        return liveGeneration(hash)
+            .thenCompose(blobId -> addReference(blobId, reference)
+                .thenCompose(added -> {
+                    if (added) {
+                        return saveChunksIfMissing(blobId, data)
+                            .thenApply(any -> blobId);
+                    }
+                    return retry(retries, () -> save(hash, data, reference, retries - 1));
+                }));
+    }
+
+    /**
+     * A new generation is started when the content is not stored, or when its generation is being deleted. The
+     * returned generation may have been replaced concurrently: the reference recorded on it then tells.
+     */
+    private CompletableFuture<String> liveGeneration(String hash) {
+        return readGeneration(hash)
+            .thenCompose(generation -> {
+                if (generation.isPresent() && !generation.get().deleting) {
+                    return CompletableFuture.completedFuture(new BlobId(hash, generation.get().id).asString());
+                }
+                UUID newGeneration = UUIDs.timeBased();
+                CompletableFuture<Boolean> started;
+                if (generation.isPresent()) {
+                    started = cassandraAsyncExecutor.executeReturnApplied(replaceGeneration.bind()
+                        .setUUID(Generations.GENERATION, newGeneration)
+                        .setString(Generations.HASH, hash)
+                        .setUUID(EXPECTED_GENERATION, generation.get().id));
+                } else {
+                    started = cassandraAsyncExecutor.executeReturnApplied(insertGeneration.bind()
+                        .setString(Generations.HASH, hash)
+                        .setUUID(Generations.GENERATION, newGeneration));
+                }
+                return started.thenApply(any -> new BlobId(hash, newGeneration).asString());
+            });
+    }
+
+    /**
+     * The generation is marked as being deleted before the references are checked again: a reference recorded
+     * concurrently is either seen here, or sees the mark and is withdrawn.
+     */
+    private CompletableFuture<Void> deleteIfUnreferenced(BlobId blobId, int retries) {
+        return isReferenced(blobId)
+            .thenCompose(referenced -> {
+                if (referenced) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return cassandraAsyncExecutor.executeReturnApplied(markDeleting.bind()
+                        .setString(Generations.HASH, blobId.hash)
+                        .setUUID(Generations.GENERATION, blobId.generation))
+                    .thenCompose(marked -> {
+                        if (!marked) {
+                            return CompletableFuture.completedFuture(null);
+                        }
+                        return isReferenced(blobId)
+                            .thenCompose(referencedAgain -> {
+                                if (referencedAgain) {
+                                    return keep(blobId, retries);
+                                }
+                                return delete(blobId);
+                            });
+                    });
+            });
+    }
+
+    /**
+     * The reference seen may be withdrawn right after, in which case the deletion is attempted again.
+     */
+    private CompletableFuture<Void> keep(BlobId blobId, int retries) {
+        return cassandraAsyncExecutor.executeReturnApplied(unmarkDeleting.bind()
+                .setString(Generations.HASH, blobId.hash)
+                .setUUID(Generations.GENERATION, blobId.generation))
+            .thenCompose(unmarked -> {
+                if (unmarked && retries > 0) {
+                    return deleteIfUnreferenced(blobId, retries - 1);
+                }
+                return CompletableFuture.completedFuture(null);
+            });
+    }
+
+    private CompletableFuture<Void> delete(BlobId blobId) {
+        return cassandraAsyncExecutor.executeVoid(deleteChunks.bind()
+                .setString(ID, blobId.asString()))
+            .thenCompose(any -> cassandraAsyncExecutor.executeReturnApplied(deleteGeneration.bind()
+                .setString(Generations.HASH, blobId.hash)
+                .setUUID(Generations.GENERATION, blobId.generation)))
+            .thenAccept(any -> {});
+    }
+
+    private <T> CompletableFuture<T> retry(int retries, Supplier<CompletableFuture<T>> operation) {
+        if (retries <= 0) {
+            CompletableFuture<T> failure = new CompletableFuture<>();
+            failure.completeExceptionally(new CompletionException(new LightweightTransactionException(MAX_RETRY)));
+            return failure;
+        }
+        return operation.get();
+    }
+
+    private CompletableFuture<Optional<Generation>> readGeneration(String hash) {
+        return cassandraAsyncExecutor.executeSingleRow(selectGeneration.bind()
+                .setString(Generations.HASH, hash))
+            .thenApply(row -> row.map(value -> new Generation(value.getUUID(Generations.GENERATION), value.getBool(Generations.DELETING))));
+    }
+
+    private CompletableFuture<Void> removeReference(String blobId, String reference) {
+        return cassandraAsyncExecutor.executeVoid(deleteReference.bind()
+            .setString(References.ID, blobId)
+            .setString(References.REFERENCE, reference));
+    }
+
+    private CompletableFuture<Boolean> isReferenced(BlobId blobId) {
+        return cassandraAsyncExecutor.executeSingleRow(selectReference.bind()
+                .setString(References.ID, blobId.asString()))
+            .thenApply(Optional::isPresent);
+    }
+
+    private CompletableFuture<Void> saveChunksIfMissing(String blobId, byte[] data) {
+        return exists(blobId)
+            .thenCompose(exists -> {
+                if (exists) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return saveChunks(blobId, data);
+            });
+    }
+
+    private CompletableFuture<Boolean> exists(String blobId) {
+        return cassandraAsyncExecutor.executeSingleRow(selectFirstChunk.bind()
+                .setString(ID, blobId))
+            .thenApply(row -> row.isPresent());
+    }
+
+    private CompletableFuture<Void> saveChunks(String blobId, byte[] data) {
+        int chunkCount = Math.max(1, (data.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        return CompletableFuture.allOf(IntStream.range(1, chunkCount)
+                .mapToObj(chunkNumber -> saveChunk(blobId, data, chunkNumber))
+                .toArray(CompletableFuture[]::new))
+            .thenCompose(any -> saveChunk(blobId, data, 0));
+    }
+
+    private CompletableFuture<Void> saveChunk(String blobId, byte[] data, int chunkNumber) {
+        int offset = chunkNumber * CHUNK_SIZE;
+        int length = Math.min(CHUNK_SIZE, data.length - offset);
+        return cassandraAsyncExecutor.executeVoid(insert.bind()
+            .setString(ID, blobId)
+            .setInt(CHUNK_NUMBER, chunkNumber)
+            .setBytes(DATA, ByteBuffer.wrap(data, offset, length)));
+    }
+
+    private byte[] chunk(Row row) {
+        ByteBuffer buffer = row.getBytes(DATA);
+        byte[] chunk = new byte[buffer.remaining()];
+        buffer.get(chunk);
+        return chunk;
+    }
+
+    private static class Generation {
+        private final UUID id;
+        private final boolean deleting;
+
+        private Generation(UUID id, boolean deleting) {
+            this.id = id;
+            this.deleting = deleting;
+        }
+
+        private boolean isLive(UUID generation) {
+            return id.equals(generation) && !deleting;
+        }
+    }
+
+    /**
+     * A blob id is the hash of the content followed by its generation.
+     */
+    private static class BlobId {
+        private final String hash;
+        private final UUID generation;
+
+        private static Optional<BlobId> parse(String blobId) {
+            int separator = blobId.indexOf(SEPARATOR);
+            if (separator < 0) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(new BlobId(blobId.substring(0, separator), UUID.fromString(blobId.substring(separator + 1))));
+            } catch (IllegalArgumentException e) {
+                return Optional.empty();
+            }
+        }
+
+        private BlobId(String hash, UUID generation) {
+            this.hash = hash;
+            this.generation = generation;
+        }
+
+        private String asString() {
+            return hash + SEPARATOR + generation;
+        }
+    }
+}
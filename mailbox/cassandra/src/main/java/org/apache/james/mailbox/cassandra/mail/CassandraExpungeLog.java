@@ -0,0 +1,279 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.asc;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.delete;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.gt;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.set;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
+import static org.apache.james.mailbox.cassandra.table.CassandraExpungeLogTable.EXPUNGED_AT;
+import static org.apache.james.mailbox.cassandra.table.CassandraExpungeLogTable.IMAP_UID;
+import static org.apache.james.mailbox.cassandra.table.CassandraExpungeLogTable.MAILBOX_ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraExpungeLogTable.MOD_SEQ;
+import static org.apache.james.mailbox.cassandra.table.CassandraExpungeLogTable.TABLE_NAME;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
+import org.apache.james.backends.cassandra.utils.CassandraUtils;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.table.CassandraExpungeLogTable.Floor;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+
+/**
+ * Log of the uids expunged from each mailbox, indexed by the mod-sequence of the expunge.
+ *
+ * The floor of a mailbox, kept in its own table, is the mod-sequence after which the log is complete: it is set by the first logged expunge
+ * and raised when entries older than the retention are pruned. Expunges since a mod-sequence below the floor can not
+ * be answered from the log.
+ */
+public class CassandraExpungeLog {
+
+    public static final Duration DEFAULT_RETENTION = Duration.ofDays(30);
+    private static final int PRUNE_BATCH_SIZE = 100;
+    private static final String EXPECTED_FLOOR = "expectedFloor";
+
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final Duration retention;
+    private final Clock clock;
+    private final PreparedStatement insert;
+    private final PreparedStatement initFloor;
+    private final PreparedStatement raiseFloor;
+    private final PreparedStatement selectFloor;
+    private final PreparedStatement selectSince;
+    private final PreparedStatement selectOldest;
+    private final PreparedStatement selectModSeqPage;
+    private final PreparedStatement deleteEntry;
+    private final PreparedStatement deleteLog;
+    private final PreparedStatement deleteFloor;
+
+    public CassandraExpungeLog(Session session) {
+        this(session, DEFAULT_RETENTION, Clock.systemUTC());
+    }
+
+    public CassandraExpungeLog(Session session, Duration retention, Clock clock) {
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.retention = retention;
+        this.clock = clock;
+        this.insert = session.prepare(insertInto(TABLE_NAME)
+            .value(MAILBOX_ID, bindMarker(MAILBOX_ID))
+            .value(MOD_SEQ, bindMarker(MOD_SEQ))
+            .value(IMAP_UID, bindMarker(IMAP_UID))
+            .value(EXPUNGED_AT, bindMarker(EXPUNGED_AT)));
+        this.initFloor = session.prepare(insertInto(Floor.TABLE_NAME)
+            .value(Floor.MAILBOX_ID, bindMarker(Floor.MAILBOX_ID))
+            .value(Floor.FLOOR, bindMarker(Floor.FLOOR))
+            .ifNotExists());
+        this.raiseFloor = session.prepare(update(Floor.TABLE_NAME)
+            .with(set(Floor.FLOOR, bindMarker(Floor.FLOOR)))
+            .where(eq(Floor.MAILBOX_ID, bindMarker(Floor.MAILBOX_ID)))
+            .onlyIf(eq(Floor.FLOOR, bindMarker(EXPECTED_FLOOR))));
+        this.selectFloor = session.prepare(select(Floor.FLOOR)
+            .from(Floor.TABLE_NAME)
+            .where(eq(Floor.MAILBOX_ID, bindMarker(Floor.MAILBOX_ID))));
+        this.selectSince = session.prepare(select(IMAP_UID)
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(gt(MOD_SEQ, bindMarker(MOD_SEQ))));
+        this.selectOldest = session.prepare(select(MOD_SEQ, IMAP_UID, EXPUNGED_AT)
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(gt(MOD_SEQ, bindMarker(MOD_SEQ)))
+            .orderBy(asc(MOD_SEQ))
+            .limit(PRUNE_BATCH_SIZE));
+        this.selectModSeqPage = session.prepare(select(MOD_SEQ, IMAP_UID)
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(eq(MOD_SEQ, bindMarker(MOD_SEQ)))
+            .and(gt(IMAP_UID, bindMarker(IMAP_UID)))
+            .limit(PRUNE_BATCH_SIZE));
+        this.deleteEntry = session.prepare(delete()
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(eq(MOD_SEQ, bindMarker(MOD_SEQ)))
+            .and(eq(IMAP_UID, bindMarker(IMAP_UID))));
+        this.deleteLog = session.prepare(delete()
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID))));
+        this.deleteFloor = session.prepare(delete()
+            .from(Floor.TABLE_NAME)
+            .where(eq(Floor.MAILBOX_ID, bindMarker(Floor.MAILBOX_ID))));
+    }
+
+    /**
+     * Record the uids expunged by the expunge which was given the mod-sequence. This has to be done before the
+     * messages are deleted: a client which did not see the messages any more will then find them in the log.
+     */
+    public CompletableFuture<Void> log(CassandraId mailboxId, long modSeq, Collection<Long> uids) {
+        Date now = new Date(clock.millis());
+        return CompletableFuture.allOf(uids.stream()
+                .map(uid -> cassandraAsyncExecutor.executeVoid(insert.bind()
+                    .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                    .setLong(MOD_SEQ, modSeq)
+                    .setLong(IMAP_UID, uid)
+                    .setDate(EXPUNGED_AT, now)))
+                .toArray(CompletableFuture[]::new))
+            .thenCompose(any -> cassandraAsyncExecutor.executeReturnApplied(initFloor.bind()
+                .setUUID(Floor.MAILBOX_ID, mailboxId.asUuid())
+                .setLong(Floor.FLOOR, modSeq - 1)))
+            .thenCompose(any -> prune(mailboxId));
+    }
+
+    /**
+     * Return the uids expunged after the given mod-sequence, or nothing if the log does not reach back that far.
+     */
+    public CompletableFuture<Optional<List<Long>>> expungedSince(CassandraId mailboxId, long modSeq) {
+        return floor(mailboxId)
+            .thenCompose(floor -> {
+                if (!floor.isPresent() || modSeq < floor.get()) {
+                    return CompletableFuture.completedFuture(Optional.empty());
+                }
+                return cassandraAsyncExecutor.execute(selectSince.bind()
+                        .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                        .setLong(MOD_SEQ, modSeq))
+                    .thenApply(resultSet -> Optional.of(CassandraUtils.convertToStream(resultSet)
+                        .map(row -> row.getLong(IMAP_UID))
+                        .collect(Collectors.toList())));
+            });
+    }
+
+    /**
+     * Forget the log and the floor of a deleted mailbox.
+     */
+    public CompletableFuture<Void> clear(CassandraId mailboxId) {
+        return CompletableFuture.allOf(
+            cassandraAsyncExecutor.executeVoid(deleteLog.bind()
+                .setUUID(MAILBOX_ID, mailboxId.asUuid())),
+            cassandraAsyncExecutor.executeVoid(deleteFloor.bind()
+                .setUUID(Floor.MAILBOX_ID, mailboxId.asUuid())));
+    }
+
+    private CompletableFuture<Optional<Long>> floor(CassandraId mailboxId) {
+        return cassandraAsyncExecutor.executeSingleRow(selectFloor.bind()
+                .setUUID(Floor.MAILBOX_ID, mailboxId.asUuid()))
+            .thenApply(row -> row.map(value -> value.getLong(Floor.FLOOR)));
+    }
+
+    private CompletableFuture<Void> prune(CassandraId mailboxId) {
+        return floor(mailboxId)
+            .thenCompose(floor -> floor
+                .map(value -> prune(mailboxId, value, new Date(clock.millis() - retention.toMillis())))
+                .orElse(CompletableFuture.completedFuture(null)));
+    }
+
+    /**
+     * Raise the floor above the oldest entries expunged before the cutoff, then delete them. Entries sharing a
+     * mod-sequence are pruned together; the conditional update keeps concurrent expunges from lowering the floor.
+     * A mod-sequence filling a whole batch, logged by a single big expunge, is deleted by pages of uids.
+     */
+    private CompletableFuture<Void> prune(CassandraId mailboxId, long floor, Date cutoff) {
+        return cassandraAsyncExecutor.execute(selectOldest.bind()
+                .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                .setLong(MOD_SEQ, floor))
+            .thenCompose(resultSet -> {
+                List<Row> rows = CassandraUtils.convertToStream(resultSet).collect(Collectors.toList());
+                List<Row> expired = new ArrayList<>();
+                for (Row row : rows) {
+                    if (row.getDate(EXPUNGED_AT).after(cutoff)) {
+                        break;
+                    }
+                    expired.add(row);
+                }
+                if (expired.size() == PRUNE_BATCH_SIZE) {
+                    // The last mod-sequence may continue in the next batch
+                    long lastModSeq = expired.get(expired.size() - 1).getLong(MOD_SEQ);
+                    expired.removeIf(row -> row.getLong(MOD_SEQ) == lastModSeq);
+                    if (expired.isEmpty()) {
+                        return raiseFloor(mailboxId, floor, lastModSeq)
+                            .thenCompose(applied -> {
+                                if (!applied) {
+                                    return CompletableFuture.completedFuture(null);
+                                }
+                                return deleteModSeq(mailboxId, lastModSeq, 0);
+                            });
+                    }
+                }
+                if (expired.isEmpty()) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return raiseFloor(mailboxId, floor, expired.get(expired.size() - 1).getLong(MOD_SEQ))
+                    .thenCompose(applied -> {
+                        if (!applied) {
+                            return CompletableFuture.completedFuture(null);
+                        }
+                        return deleteEntries(mailboxId, expired);
+                    });
+            });
+    }
+
+    private CompletableFuture<Boolean> raiseFloor(CassandraId mailboxId, long floor, long newFloor) {
+        return cassandraAsyncExecutor.executeReturnApplied(raiseFloor.bind()
+            .setUUID(Floor.MAILBOX_ID, mailboxId.asUuid())
+            .setLong(Floor.FLOOR, newFloor)
+            .setLong(EXPECTED_FLOOR, floor));
+    }
+
+    /**
+     * Delete the entries of a mod-sequence which is now below the floor, page after page of uids
+     */
+    private CompletableFuture<Void> deleteModSeq(CassandraId mailboxId, long modSeq, long afterUid) {
+        return cassandraAsyncExecutor.execute(selectModSeqPage.bind()
+                .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                .setLong(MOD_SEQ, modSeq)
+                .setLong(IMAP_UID, afterUid))
+            .thenCompose(resultSet -> {
+                List<Row> page = CassandraUtils.convertToStream(resultSet).collect(Collectors.toList());
+                if (page.isEmpty()) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                CompletableFuture<Void> deleted = deleteEntries(mailboxId, page);
+                if (page.size() < PRUNE_BATCH_SIZE) {
+                    return deleted;
+                }
+                long lastUid = page.get(page.size() - 1).getLong(IMAP_UID);
+                return deleted.thenCompose(any -> deleteModSeq(mailboxId, modSeq, lastUid));
+            });
+    }
+
+    private CompletableFuture<Void> deleteEntries(CassandraId mailboxId, List<Row> entries) {
+        return CompletableFuture.allOf(entries.stream()
+            .map(row -> cassandraAsyncExecutor.executeVoid(deleteEntry.bind()
+                .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                .setLong(MOD_SEQ, row.getLong(MOD_SEQ))
+                .setLong(IMAP_UID, row.getLong(IMAP_UID))))
+            .toArray(CompletableFuture[]::new));
+    }
+}
@@ -32,6 +32,7 @@ import static org.apache.james.mailbox.cassandra.table.CassandraMailboxTable.UID
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -46,8 +47,10 @@ import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.exception.MailboxNotFoundException;
 import org.apache.james.mailbox.model.MailboxACL;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.MailboxHierarchy;
 import org.apache.james.mailbox.store.mail.MailboxMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxWithChildren;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
 
 import com.datastax.driver.core.ResultSet;
@@ -55,6 +58,9 @@ import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 
 /**
  * Data access management for mailbox.
@@ -65,11 +71,21 @@ public class CassandraMailboxMapper implements MailboxMapper<CassandraId> {
     private final Session session;
     private final int maxRetry;
     private final CassandraTypesProvider typesProvider;
+    private final Supplier<CassandraACLCache> aclCache;
+    private final Supplier<CassandraExpungeLog> expungeLog;
 
     public CassandraMailboxMapper(Session session, CassandraTypesProvider typesProvider, int maxRetry) {
+        this(session, typesProvider, maxRetry, Suppliers.memoize(() -> new CassandraACLCache(session)),
+            Suppliers.memoize(() -> new CassandraExpungeLog(session)));
+    }
+
+    public CassandraMailboxMapper(Session session, CassandraTypesProvider typesProvider, int maxRetry, Supplier<CassandraACLCache> aclCache,
+                                  Supplier<CassandraExpungeLog> expungeLog) {
         this.session = session;
         this.maxRetry = maxRetry;
         this.typesProvider = typesProvider;
+        this.aclCache = aclCache;
+        this.expungeLog = expungeLog;
     }
 
     @Override
@@ -78,6 +94,8 @@ public class CassandraMailboxMapper implements MailboxMapper<CassandraId> {
             QueryBuilder.delete()
                 .from(TABLE_NAME)
                 .where(eq(ID, mailbox.getMailboxId().asUuid())));
+        aclCache.get().invalidate(mailbox.getMailboxId());
+        expungeLog.get().clear(mailbox.getMailboxId()).join();
     }
 
     @Override
@@ -86,17 +104,32 @@ public class CassandraMailboxMapper implements MailboxMapper<CassandraId> {
         if (resultSet.isExhausted()) {
             throw new MailboxNotFoundException(path);
         } else {
-            return mailbox(resultSet.one());
+            return withACLs(ImmutableList.of(mailbox(resultSet.one()))).get(0);
         }
     }
 
     @Override
     public List<Mailbox<CassandraId>> findMailboxWithPathLike(MailboxPath path) throws MailboxException {
         Pattern regex = Pattern.compile(constructEscapedRegexForMailboxNameMatching(path));
-        return getMailboxFilteredByNamespaceAndUserStream(path.getNamespace(), path.getUser())
+        return withACLs(getMailboxFilteredByNamespaceAndUserStream(path.getNamespace(), path.getUser())
             .filter((row) -> regex.matcher(row.getString(NAME)).matches())
             .map(this::mailbox)
+            .collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<MailboxWithChildren<CassandraId>> findMailboxWithPathLikeWithChildren(MailboxPath path, char delimiter) throws MailboxException {
+        Pattern regex = Pattern.compile(constructEscapedRegexForMailboxNameMatching(path));
+        List<Row> userMailboxes = getMailboxFilteredByNamespaceAndUserStream(path.getNamespace(), path.getUser())
             .collect(Collectors.toList());
+        List<Mailbox<CassandraId>> mailboxes = withACLs(userMailboxes.stream()
+            .filter((row) -> regex.matcher(row.getString(NAME)).matches())
+            .map(this::mailbox)
+            .collect(Collectors.toList()));
+        List<String> names = userMailboxes.stream()
+            .map((row) -> row.getString(NAME))
+            .collect(Collectors.toList());
+        return MailboxHierarchy.withChildren(mailboxes, names, delimiter);
     }
 
     @Override
@@ -118,11 +151,11 @@ public class CassandraMailboxMapper implements MailboxMapper<CassandraId> {
 
     @Override
     public List<Mailbox<CassandraId>> list() throws MailboxException {
-        return CassandraUtils.convertToStream(
+        return withACLs(CassandraUtils.convertToStream(
             session.execute(
                 select(FIELDS).from(TABLE_NAME)))
             .map(this::mailbox)
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()));
     }
 
     @Override
@@ -132,7 +165,11 @@ public class CassandraMailboxMapper implements MailboxMapper<CassandraId> {
 
     @Override
     public void updateACL(Mailbox<CassandraId> mailbox, MailboxACL.MailboxACLCommand mailboxACLCommand) throws MailboxException {
-        new CassandraACLMapper(mailbox, session, maxRetry).updateACL(mailboxACLCommand);
+        try {
+            new CassandraACLMapper(mailbox, session, maxRetry).updateACL(mailboxACLCommand);
+        } finally {
+            aclCache.get().invalidate(mailbox.getMailboxId());
+        }
     }
 
     @Override
@@ -140,7 +177,13 @@ public class CassandraMailboxMapper implements MailboxMapper<CassandraId> {
         // Do nothing
     }
 
-    private SimpleMailbox<CassandraId> mailbox(Row row) {
+    private List<Mailbox<CassandraId>> withACLs(List<Mailbox<CassandraId>> mailboxes) {
+        Map<CassandraId, MailboxACL> acls = aclCache.get().getACLs(mailboxes);
+        mailboxes.forEach(mailbox -> mailbox.setACL(acls.get(mailbox.getMailboxId())));
+        return mailboxes;
+    }
+
+    private Mailbox<CassandraId> mailbox(Row row) {
         SimpleMailbox<CassandraId> mailbox = new SimpleMailbox<>(
             new MailboxPath(
                 row.getUDTValue(MAILBOX_BASE).getString(MailboxBase.NAMESPACE),
@@ -148,7 +191,6 @@ public class CassandraMailboxMapper implements MailboxMapper<CassandraId> {
                 row.getString(NAME)),
             row.getLong(UIDVALIDITY));
         mailbox.setMailboxId(CassandraId.of(row.getUUID(ID)));
-        mailbox.setACL(new CassandraACLMapper(mailbox, session, maxRetry).getACL());
         return mailbox;
     }
 
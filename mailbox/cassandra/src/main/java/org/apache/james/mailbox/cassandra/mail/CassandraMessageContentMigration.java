@@ -0,0 +1,290 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.set;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.ttl;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_BLOB_ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_CONTENT;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.FULL_CONTENT_OCTETS;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADER_BLOB_ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADER_CONTENT;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.IMAP_UID;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.MAILBOX_ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.TABLE_NAME;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.table.CassandraMigrationTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Moves the contents of messages stored before the blob table existed from the headerContent and bodyContent
+ * columns of the message table to {@link CassandraBlobsDAO}.
+ *
+ * Messages not migrated yet stay readable: {@link CassandraMessageMapper} falls back to the legacy columns when
+ * a row has no blob ids. Once every row has been migrated, the migration is recorded and never run again.
+ *
+ * The scan is run by a single node: it holds a lease, recorded in the migrations table with a TTL and renewed while
+ * scanning. Other nodes starting meanwhile skip the migration, and a node that crashed while holding the lease lets
+ * it expire, so that the next start picks the migration up again.
+ */
+public class CassandraMessageContentMigration {
+
+    public static final String NAME = "messageContentToBlobs";
+    private static final Logger LOG = LoggerFactory.getLogger(CassandraMessageContentMigration.class);
+    private static final int FETCH_SIZE = 100;
+    private static final String LEASE = NAME + ".lease";
+    private static final int LEASE_TTL_IN_SECONDS = 600;
+    private static final String HELD_SINCE = "heldSince";
+
+    private final Session session;
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final CassandraBlobsDAO blobsDAO;
+    private final PreparedStatement selectApplied;
+    private final PreparedStatement insertApplied;
+    private final PreparedStatement moveContent;
+    private final PreparedStatement selectBlobIds;
+    private final PreparedStatement acquireLease;
+    private final PreparedStatement renewLease;
+    private final PreparedStatement releaseLease;
+    private volatile boolean applied;
+
+    public CassandraMessageContentMigration(Session session, CassandraBlobsDAO blobsDAO) {
+        this.session = session;
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.blobsDAO = blobsDAO;
+        this.selectApplied = session.prepare(select(CassandraMigrationTable.NAME)
+            .from(CassandraMigrationTable.TABLE_NAME)
+            .where(eq(CassandraMigrationTable.NAME, bindMarker(CassandraMigrationTable.NAME))));
+        this.insertApplied = session.prepare(insertInto(CassandraMigrationTable.TABLE_NAME)
+            .value(CassandraMigrationTable.NAME, bindMarker(CassandraMigrationTable.NAME))
+            .value(CassandraMigrationTable.APPLIED_AT, bindMarker(CassandraMigrationTable.APPLIED_AT)));
+        this.moveContent = session.prepare(update(TABLE_NAME)
+            .with(set(HEADER_BLOB_ID, bindMarker(HEADER_BLOB_ID)))
+            .and(set(BODY_BLOB_ID, bindMarker(BODY_BLOB_ID)))
+            .and(set(HEADER_CONTENT, null))
+            .and(set(BODY_CONTENT, null))
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(eq(IMAP_UID, bindMarker(IMAP_UID)))
+            .onlyIf(eq(HEADER_BLOB_ID, null))
+            .and(eq(FULL_CONTENT_OCTETS, bindMarker(FULL_CONTENT_OCTETS))));
+        this.selectBlobIds = session.prepare(select(HEADER_BLOB_ID, BODY_BLOB_ID)
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(eq(IMAP_UID, bindMarker(IMAP_UID))));
+        this.acquireLease = session.prepare(insertInto(CassandraMigrationTable.TABLE_NAME)
+            .value(CassandraMigrationTable.NAME, bindMarker(CassandraMigrationTable.NAME))
+            .value(CassandraMigrationTable.APPLIED_AT, bindMarker(CassandraMigrationTable.APPLIED_AT))
+            .ifNotExists()
+            .using(ttl(LEASE_TTL_IN_SECONDS)));
+        this.renewLease = session.prepare(update(CassandraMigrationTable.TABLE_NAME)
+            .using(ttl(LEASE_TTL_IN_SECONDS))
+            .with(set(CassandraMigrationTable.APPLIED_AT, bindMarker(CassandraMigrationTable.APPLIED_AT)))
+            .where(eq(CassandraMigrationTable.NAME, bindMarker(CassandraMigrationTable.NAME)))
+            .onlyIf(eq(CassandraMigrationTable.APPLIED_AT, bindMarker(HELD_SINCE))));
+        this.releaseLease = session.prepare(QueryBuilder.delete()
+            .from(CassandraMigrationTable.TABLE_NAME)
+            .where(eq(CassandraMigrationTable.NAME, bindMarker(CassandraMigrationTable.NAME)))
+            .onlyIf(eq(CassandraMigrationTable.APPLIED_AT, bindMarker(HELD_SINCE))));
+    }
+
+    /**
+     * Runs the migration in a background thread, unless it is already recorded as applied.
+     */
+    public void start() {
+        if (isApplied()) {
+            return;
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("cassandra-message-content-migration")
+            .setDaemon(true)
+            .build());
+        executor.execute(() -> {
+            try {
+                apply();
+            } catch (RuntimeException e) {
+                LOG.error("Failed to move message contents to the blob table, will retry on next start", e);
+            }
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * Once the migration is known to be applied, the answer is kept and Cassandra is not queried any more.
+     */
+    public boolean isApplied() {
+        if (!applied) {
+            applied = cassandraAsyncExecutor.executeSingleRow(selectApplied.bind()
+                    .setString(CassandraMigrationTable.NAME, NAME))
+                .join()
+                .isPresent();
+        }
+        return applied;
+    }
+
+    public void apply() {
+        if (isApplied()) {
+            return;
+        }
+        Optional<Date> lease = acquireLease();
+        if (!lease.isPresent()) {
+            LOG.info("Message contents are being moved to the blob table by another node");
+            return;
+        }
+        try {
+            moveContents(lease.get());
+        } finally {
+            cassandraAsyncExecutor.executeReturnApplied(releaseLease.bind()
+                    .setString(CassandraMigrationTable.NAME, LEASE)
+                    .setDate(HELD_SINCE, lease.get()))
+                .join();
+        }
+    }
+
+    private void moveContents(Date heldSince) {
+        Statement selectAll = select(MAILBOX_ID, IMAP_UID, FULL_CONTENT_OCTETS, HEADER_BLOB_ID, BODY_BLOB_ID, HEADER_CONTENT, BODY_CONTENT)
+            .from(TABLE_NAME)
+            .setFetchSize(FETCH_SIZE);
+        long scanned = 0;
+        long migrated = 0;
+        for (Row row : session.execute(selectAll)) {
+            if (isLegacy(row)) {
+                migrate(row).join();
+                migrated++;
+            }
+            scanned++;
+            if (scanned % FETCH_SIZE == 0 && !renewLease(heldSince)) {
+                throw new IllegalStateException("Lost the lease on the message content migration");
+            }
+        }
+        session.execute(insertApplied.bind()
+            .setString(CassandraMigrationTable.NAME, NAME)
+            .setDate(CassandraMigrationTable.APPLIED_AT, new Date()));
+        applied = true;
+        LOG.info("Moved the contents of {} messages to the blob table", migrated);
+    }
+
+    /**
+     * @return the date identifying the holder of the lease, needed to renew or release it, if it was acquired
+     */
+    private Optional<Date> acquireLease() {
+        Date heldSince = new Date();
+        boolean acquired = cassandraAsyncExecutor.executeReturnApplied(acquireLease.bind()
+                .setString(CassandraMigrationTable.NAME, LEASE)
+                .setDate(CassandraMigrationTable.APPLIED_AT, heldSince))
+            .join();
+        if (acquired) {
+            return Optional.of(heldSince);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Writing the holder again resets the TTL of the lease.
+     */
+    private boolean renewLease(Date heldSince) {
+        return cassandraAsyncExecutor.executeReturnApplied(renewLease.bind()
+                .setDate(CassandraMigrationTable.APPLIED_AT, heldSince)
+                .setString(CassandraMigrationTable.NAME, LEASE)
+                .setDate(HELD_SINCE, heldSince))
+            .join();
+    }
+
+    private boolean isLegacy(Row row) {
+        return row.isNull(HEADER_BLOB_ID) && !row.isNull(HEADER_CONTENT) && !row.isNull(BODY_CONTENT);
+    }
+
+    /**
+     * The row is only updated if it still exists and was not migrated concurrently; otherwise the references
+     * taken on the blobs are released. A concurrent migration of the same row takes the same reference, which is
+     * kept on the blobs the row ends up with.
+     */
+    private CompletableFuture<Void> migrate(Row row) {
+        String reference = CassandraMessageMapper.blobReference(CassandraId.of(row.getUUID(MAILBOX_ID)), row.getLong(IMAP_UID));
+        CompletableFuture<String> headerBlobId = blobsDAO.save(content(row, HEADER_CONTENT), reference);
+        CompletableFuture<String> bodyBlobId = blobsDAO.save(content(row, BODY_CONTENT), reference);
+        return CompletableFuture.allOf(headerBlobId, bodyBlobId)
+            .thenCompose(any -> cassandraAsyncExecutor.executeReturnApplied(moveContent.bind()
+                .setString(HEADER_BLOB_ID, headerBlobId.join())
+                .setString(BODY_BLOB_ID, bodyBlobId.join())
+                .setUUID(MAILBOX_ID, row.getUUID(MAILBOX_ID))
+                .setLong(IMAP_UID, row.getLong(IMAP_UID))
+                .setLong(FULL_CONTENT_OCTETS, row.getLong(FULL_CONTENT_OCTETS))))
+            .thenCompose(applied -> {
+                if (applied) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return storedBlobIds(row)
+                    .thenCompose(storedBlobIds -> CompletableFuture.allOf(
+                        releaseUnlessStored(headerBlobId.join(), reference, storedBlobIds),
+                        releaseUnlessStored(bodyBlobId.join(), reference, storedBlobIds)));
+            });
+    }
+
+    private CompletableFuture<Set<String>> storedBlobIds(Row row) {
+        return cassandraAsyncExecutor.executeSingleRow(selectBlobIds.bind()
+                .setUUID(MAILBOX_ID, row.getUUID(MAILBOX_ID))
+                .setLong(IMAP_UID, row.getLong(IMAP_UID)))
+            .thenApply(storedRow -> storedRow
+                .map(value -> Stream.of(value.getString(HEADER_BLOB_ID), value.getString(BODY_BLOB_ID))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet()))
+                .orElse(ImmutableSet.of()));
+    }
+
+    private CompletableFuture<Void> releaseUnlessStored(String blobId, String reference, Set<String> storedBlobIds) {
+        if (storedBlobIds.contains(blobId)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return blobsDAO.release(blobId, reference);
+    }
+
+    private byte[] content(Row row, String field) {
+        ByteBuffer buffer = row.getBytes(field);
+        byte[] content = new byte[buffer.remaining()];
+        buffer.get(content);
+        return content;
+    }
+}
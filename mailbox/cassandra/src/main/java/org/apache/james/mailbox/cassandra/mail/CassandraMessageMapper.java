@@ -19,27 +19,20 @@
 
 package org.apache.james.mailbox.cassandra.mail;
 
-import static com.datastax.driver.core.querybuilder.QueryBuilder.decr;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.gte;
-import static com.datastax.driver.core.querybuilder.QueryBuilder.incr;
-import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.lte;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
-import static com.datastax.driver.core.querybuilder.QueryBuilder.set;
-import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
-import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_BLOB_ID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_CONTENT;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_OCTECTS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_START_OCTET;
-import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.FIELDS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.FULL_CONTENT_OCTETS;
-import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADERS;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADER_BLOB_ID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADER_CONTENT;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.IMAP_UID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.INTERNAL_DATE;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.MAILBOX_ID;
-import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.METADATA;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.MOD_SEQ;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.PROPERTIES;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.TABLE_NAME;
@@ -48,39 +41,43 @@ import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Fla
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.DELETED;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.DRAFT;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.FLAGGED;
-import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.USER_FLAGS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.RECENT;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.SEEN;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.USER;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.USER_FLAGS;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
+import javax.mail.internet.SharedInputStream;
 import javax.mail.util.SharedByteArrayInputStream;
 
-import com.datastax.driver.core.Statement;
-import com.datastax.driver.core.querybuilder.Select;
-import com.google.common.base.Throwables;
 import org.apache.james.backends.cassandra.init.CassandraTypesProvider;
-import org.apache.james.backends.cassandra.utils.CassandraConstants;
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
 import org.apache.james.backends.cassandra.utils.CassandraUtils;
+import org.apache.james.backends.cassandra.utils.FunctionRunnerWithRetry;
 import org.apache.james.mailbox.FlagsBuilder;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.cassandra.CassandraId;
-import org.apache.james.backends.cassandra.utils.FunctionRunnerWithRetry;
 import org.apache.james.mailbox.cassandra.mail.utils.MessageDeletedDuringFlagsUpdateException;
 import org.apache.james.mailbox.cassandra.table.CassandraMailboxCountersTable;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageModSeqIndexTable;
 import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
 import org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Properties;
 import org.apache.james.mailbox.exception.MailboxException;
@@ -98,31 +95,50 @@ import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleProperty;
 
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.UDTValue;
-import com.datastax.driver.core.querybuilder.Assignment;
-import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.core.querybuilder.Select.Where;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Bytes;
 
 public class CassandraMessageMapper implements MessageMapper<CassandraId> {
 
+    private static final int LOAD_BATCH_SIZE = 100;
+
     private final Session session;
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final Supplier<CassandraMessageStatements> statements;
+    private final Supplier<CassandraBlobsDAO> blobsDAO;
+    private final Supplier<CassandraExpungeLog> expungeLog;
+    private final Supplier<CassandraMessageModSeqIndexMigration> modSeqIndexMigration;
     private final ModSeqProvider<CassandraId> modSeqProvider;
     private final MailboxSession mailboxSession;
     private final UidProvider<CassandraId> uidProvider;
     private final CassandraTypesProvider typesProvider;
     private final int maxRetries;
+    private final int maxInFlightFlagsUpdates;
 
-    public CassandraMessageMapper(Session session, UidProvider<CassandraId> uidProvider, ModSeqProvider<CassandraId> modSeqProvider, MailboxSession mailboxSession, int maxRetries, CassandraTypesProvider typesProvider) {
+    public CassandraMessageMapper(Session session, Supplier<CassandraMessageStatements> statements, Supplier<CassandraBlobsDAO> blobsDAO, Supplier<CassandraExpungeLog> expungeLog,
+                                  Supplier<CassandraMessageModSeqIndexMigration> modSeqIndexMigration, UidProvider<CassandraId> uidProvider, ModSeqProvider<CassandraId> modSeqProvider,
+                                  MailboxSession mailboxSession, int maxRetries, int maxInFlightFlagsUpdates, CassandraTypesProvider typesProvider) {
         this.session = session;
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.statements = statements;
+        this.blobsDAO = blobsDAO;
+        this.expungeLog = expungeLog;
+        this.modSeqIndexMigration = modSeqIndexMigration;
         this.uidProvider = uidProvider;
         this.modSeqProvider = modSeqProvider;
         this.mailboxSession = mailboxSession;
         this.maxRetries = maxRetries;
+        this.maxInFlightFlagsUpdates = maxInFlightFlagsUpdates;
         this.typesProvider = typesProvider;
     }
 
@@ -152,34 +168,126 @@ public class CassandraMessageMapper implements MessageMapper<CassandraId> {
 
     @Override
     public void delete(Mailbox<CassandraId> mailbox, MailboxMessage<CassandraId> message) {
-        deleteUsingMailboxId(mailbox.getMailboxId(), message);
-    }
-
-    private void deleteUsingMailboxId(CassandraId mailboxId, MailboxMessage<CassandraId> message) {
-        session.execute(
-            QueryBuilder.delete()
-                .from(TABLE_NAME)
-                .where(eq(MAILBOX_ID, mailboxId.asUuid()))
-                .and(eq(IMAP_UID, message.getUid())));
-        decrementCount(mailboxId);
-        if (!message.isSeen()) {
-            decrementUnseen(mailboxId);
-        }
+        deleteUsingMailboxId(mailbox.getMailboxId(), message).join();
+    }
+
+    private CompletableFuture<Void> deleteUsingMailboxId(CassandraId mailboxId, MailboxMessage<CassandraId> message) {
+        return deleteUsingMailboxId(mailboxId, message.getUid(), message.getModSeq(), message.isSeen());
+    }
+
+    private CompletableFuture<Void> deleteUsingMailboxId(CassandraId mailboxId, long uid, long modSeq, boolean seen) {
+        return deleteRow(mailboxId, uid, modSeq)
+            .thenCompose(deleted -> {
+                if (deleted) {
+                    return updateCounters(mailboxId, -1, seen ? 0 : -1);
+                }
+                return CompletableFuture.completedFuture(null);
+            });
+    }
+
+    /**
+     * The row is deleted with a lightweight transaction: when several deletes or expunges of the same message race,
+     * only the one actually removing the row releases its references on the blobs and reports the deletion, so that
+     * references and counters are decremented once.
+     *
+     * @return whether this call deleted the row
+     */
+    private CompletableFuture<Boolean> deleteRow(CassandraId mailboxId, long uid, long modSeq) {
+        return retrieveBlobIds(mailboxId, uid)
+            .thenCompose(blobIds -> cassandraAsyncExecutor.executeReturnApplied(statements.get().delete().bind()
+                    .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                    .setLong(IMAP_UID, uid))
+                .thenCompose(deleted -> unindexModSeq(mailboxId, modSeq, uid)
+                    .thenCompose(any -> {
+                        if (deleted && blobIds.isPresent()) {
+                            return release(blobReference(mailboxId, uid), blobIds.get());
+                        }
+                        return CompletableFuture.completedFuture(null);
+                    })
+                    .thenApply(any -> deleted)));
+    }
+
+    private CompletableFuture<Void> indexModSeq(CassandraId mailboxId, long modSeq, long uid) {
+        return cassandraAsyncExecutor.executeVoid(statements.get().modSeqIndexInsert().bind()
+            .setUUID(CassandraMessageModSeqIndexTable.MAILBOX_ID, mailboxId.asUuid())
+            .setLong(CassandraMessageModSeqIndexTable.MOD_SEQ, modSeq)
+            .setLong(CassandraMessageModSeqIndexTable.IMAP_UID, uid));
+    }
+
+    private CompletableFuture<Void> unindexModSeq(CassandraId mailboxId, long modSeq, long uid) {
+        return cassandraAsyncExecutor.executeVoid(statements.get().modSeqIndexDelete().bind()
+            .setUUID(CassandraMessageModSeqIndexTable.MAILBOX_ID, mailboxId.asUuid())
+            .setLong(CassandraMessageModSeqIndexTable.MOD_SEQ, modSeq)
+            .setLong(CassandraMessageModSeqIndexTable.IMAP_UID, uid));
     }
 
     @Override
     public Iterator<MailboxMessage<CassandraId>> findInMailbox(Mailbox<CassandraId> mailbox, MessageRange set, FetchType ftype, int max) throws MailboxException {
-        return CassandraUtils.convertToStream(session.execute(buildSelectQueryWithLimit(buildQuery(mailbox, set, ftype), max)))
+        BoundStatement statement = bindSelect(mailbox, set, ftype);
+        if (max > 0) {
+            statement.setFetchSize(max);
+        }
+        return limit(CassandraUtils.convertToStream(cassandraAsyncExecutor.execute(statement).join()), max)
             .map(row -> message(row, ftype))
             .sorted(Comparator.comparingLong(MailboxMessage::getUid))
             .iterator();
     }
 
-    private Statement buildSelectQueryWithLimit(Select.Where selectStatement, int max) {
+    /**
+     * The uids are read from the mod-sequence index, then the matching messages are loaded concurrently, by batches
+     * of at most {@link #LOAD_BATCH_SIZE}. Index entries are written before the message row changes and removed after
+     * it, so an entry may be stale but never missing: the mod-sequence of the loaded messages is checked again.
+     *
+     * Until {@link CassandraMessageModSeqIndexMigration} has indexed the messages stored before the index existed,
+     * the range is scanned instead.
+     */
+    @Override
+    public Iterator<MailboxMessage<CassandraId>> findChangedSinceInMailbox(Mailbox<CassandraId> mailbox, MessageRange set, long modSeq, FetchType ftype, int max) throws MailboxException {
+        if (!modSeqIndexMigration.get().isApplied()) {
+            return limit(CassandraUtils.convertToStream(cassandraAsyncExecutor.execute(bindSelect(mailbox, set, ftype)).join())
+                    .filter(row -> row.getLong(MOD_SEQ) > modSeq)
+                    .map(row -> message(row, ftype))
+                    .sorted(Comparator.comparingLong(MailboxMessage::getUid)), max)
+                .iterator();
+        }
+        List<Long> uids = CassandraUtils.convertToStream(cassandraAsyncExecutor.execute(statements.get().selectChangedSince().bind()
+                .setUUID(CassandraMessageModSeqIndexTable.MAILBOX_ID, mailbox.getMailboxId().asUuid())
+                .setLong(CassandraMessageModSeqIndexTable.MOD_SEQ, modSeq))
+                .join())
+            .map(row -> row.getLong(CassandraMessageModSeqIndexTable.IMAP_UID))
+            .filter(set::includes)
+            .distinct()
+            .sorted()
+            .collect(Collectors.toList());
+        List<MailboxMessage<CassandraId>> results = new ArrayList<>();
+        int batchSize = max > 0 ? Math.min(max, LOAD_BATCH_SIZE) : LOAD_BATCH_SIZE;
+        for (List<Long> batch : Lists.partition(uids, batchSize)) {
+            results.addAll(loadChangedSince(mailbox, batch, modSeq, ftype));
+            if (max > 0 && results.size() >= max) {
+                break;
+            }
+        }
+        return limit(results.stream(), max).iterator();
+    }
+
+    private List<MailboxMessage<CassandraId>> loadChangedSince(Mailbox<CassandraId> mailbox, List<Long> uids, long modSeq, FetchType ftype) {
+        return uids.stream()
+            .map(uid -> cassandraAsyncExecutor.executeSingleRow(bindSelect(mailbox, MessageRange.one(uid), ftype)))
+            .collect(Collectors.toList())
+            .stream()
+            .map(CompletableFuture::join)
+            .filter(Optional::isPresent)
+            .map(Optional::get)
+            .filter(row -> row.getLong(MOD_SEQ) > modSeq)
+            .map(row -> message(row, ftype))
+            .collect(Collectors.toList());
+    }
+
+    private <T> Stream<T> limit(Stream<T> elements, int max) {
         if (max <= 0) {
-            return selectStatement;
+            return elements;
         }
-        return selectStatement.limit(max);
+        return elements.limit(max);
     }
 
     @Override
@@ -201,16 +309,59 @@ public class CassandraMessageMapper implements MessageMapper<CassandraId> {
 
     @Override
     public Map<Long, MessageMetaData> expungeMarkedForDeletionInMailbox(Mailbox<CassandraId> mailbox, MessageRange set) throws MailboxException {
-        return CassandraUtils.convertToStream(session.execute(buildQuery(mailbox, set, FetchType.Metadata).and(eq(DELETED, true))))
+        List<MailboxMessage<CassandraId>> expunged = CassandraUtils.convertToStream(session.execute(buildQuery(mailbox, set, FetchType.Metadata).and(eq(DELETED, true))))
             .map(row -> message(row, FetchType.Metadata))
-            .peek((message) -> delete(mailbox, message))
+            .collect(Collectors.toList());
+        if (expunged.isEmpty()) {
+            return new HashMap<>();
+        }
+        long modSeq = modSeqProvider.nextModSeq(mailboxSession, mailbox);
+        List<MailboxMessage<CassandraId>> deleted = expungeLog.get().log(mailbox.getMailboxId(), modSeq, expunged.stream()
+                .map(MailboxMessage::getUid)
+                .collect(Collectors.toList()))
+            .thenCompose(any -> deleteRows(mailbox.getMailboxId(), expunged))
+            .join();
+        updateCounters(mailbox.getMailboxId(),
+                -deleted.size(),
+                -deleted.stream().filter(message -> !message.isSeen()).count())
+            .join();
+        return deleted.stream()
             .collect(Collectors.toMap(MailboxMessage::getUid, SimpleMessageMetaData::new));
     }
 
+    /**
+     * @return the messages whose row was deleted by this call, and not by a concurrent expunge
+     */
+    private CompletableFuture<List<MailboxMessage<CassandraId>>> deleteRows(CassandraId mailboxId, List<MailboxMessage<CassandraId>> messages) {
+        List<CompletableFuture<Boolean>> deletions = messages.stream()
+            .map(message -> deleteRow(mailboxId, message.getUid(), message.getModSeq()))
+            .collect(Collectors.toList());
+        return CompletableFuture.allOf(deletions.toArray(new CompletableFuture[deletions.size()]))
+            .thenApply(any -> IntStream.range(0, messages.size())
+                .filter(index -> deletions.get(index).join())
+                .mapToObj(messages::get)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<Long> findExpungedSinceInMailbox(Mailbox<CassandraId> mailbox, MessageRange set, long modSeq) throws MailboxException {
+        return expungeLog.get().expungedSince(mailbox.getMailboxId(), modSeq)
+            .join()
+            .map(uids -> uids.stream()
+                .filter(set::includes)
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList()))
+            .orElse(null);
+    }
+
     @Override
     public MessageMetaData move(Mailbox<CassandraId> destinationMailbox, MailboxMessage<CassandraId> original) throws MailboxException {
+        // copying assigns the uid and the mod-sequence of the destination to the message
+        long originalUid = original.getUid();
+        long originalModSeq = original.getModSeq();
         MessageMetaData messageMetaData = copy(destinationMailbox, original);
-        deleteUsingMailboxId(original.getMailboxId(), original);
+        deleteUsingMailboxId(original.getMailboxId(), originalUid, originalModSeq, original.isSeen()).join();
         return messageMetaData;
     }
 
@@ -226,25 +377,90 @@ public class CassandraMessageMapper implements MessageMapper<CassandraId> {
 
     @Override
     public MessageMetaData add(Mailbox<CassandraId> mailbox, MailboxMessage<CassandraId> message) throws MailboxException {
+        assignUidAndModSeq(mailbox, message);
+        return add(mailbox, message, saveContent(mailbox.getMailboxId(), message));
+    }
+
+    /**
+     * Uids of all messages are reserved at once and they share a single mod-sequence. Rows are inserted
+     * concurrently and the counters updated once for the whole batch.
+     */
+    @Override
+    public List<MessageMetaData> addAll(Mailbox<CassandraId> mailbox, List<MailboxMessage<CassandraId>> messages) throws MailboxException {
+        if (messages.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long uid = uidProvider.nextUids(mailboxSession, mailbox, messages.size()) - messages.size() + 1;
+        long modSeq = modSeqProvider.nextModSeq(mailboxSession, mailbox);
+        List<BlobIds> blobIds = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            MailboxMessage<CassandraId> message = messages.get(i);
+            message.setUid(uid + i);
+            message.setModSeq(modSeq);
+            blobIds.add(saveContent(mailbox.getMailboxId(), message));
+        }
+        List<CompletableFuture<Void>> inserts = new ArrayList<>(messages.size());
+        long unseenDelta = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            MailboxMessage<CassandraId> message = messages.get(i);
+            inserts.add(insert(mailbox, message, blobIds.get(i)));
+            if (!message.isSeen()) {
+                unseenDelta++;
+            }
+        }
+        CompletableFuture.allOf(inserts.toArray(new CompletableFuture[inserts.size()])).join();
+        updateCounters(mailbox.getMailboxId(), messages.size(), unseenDelta).join();
+        return messages.stream()
+            .map(SimpleMessageMetaData::new)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * The uid is assigned before the content is saved, as it names the reference taken on the blobs.
+     */
+    private void assignUidAndModSeq(Mailbox<CassandraId> mailbox, MailboxMessage<CassandraId> message) throws MailboxException {
         message.setUid(uidProvider.nextUid(mailboxSession, mailbox));
         message.setModSeq(modSeqProvider.nextModSeq(mailboxSession, mailbox));
-        MessageMetaData messageMetaData = save(mailbox, message);
-        if (!message.isSeen()) {
-            incrementUnseen(mailbox.getMailboxId());
-        }
-        incrementCount(mailbox.getMailboxId());
+    }
+
+    private MessageMetaData add(Mailbox<CassandraId> mailbox, MailboxMessage<CassandraId> message, BlobIds blobIds) throws MailboxException {
+        MessageMetaData messageMetaData = save(mailbox, message, blobIds);
+        updateCounters(mailbox.getMailboxId(), 1, message.isSeen() ? 0 : 1).join();
         return messageMetaData;
     }
 
+    /**
+     * Flags updates are first tried optimistically, with at most maxInFlightFlagsUpdates conditional updates
+     * running concurrently. Updates losing the race against a concurrent modification are then retried one by one.
+     *
+     * All the messages updated by the first pass share a single mod-sequence, as allowed by RFC 7162, so that only one
+     * mod-sequence is reserved per call. Messages already modified past it, and retries, get a mod-sequence of their own.
+     *
+     * The unseen counter is updated once for the whole range.
+     */
     @Override
     public Iterator<UpdatedFlags> updateFlags(Mailbox<CassandraId> mailbox, FlagsUpdateCalculator flagUpdateCalculator, MessageRange set) throws MailboxException {
-        return CassandraUtils.convertToStream(session.execute(buildQuery(mailbox, set, FetchType.Metadata)))
-            .map((row) -> updateFlagsOnMessage(mailbox, flagUpdateCalculator, row))
+        Semaphore inFlight = new Semaphore(maxInFlightFlagsUpdates);
+        List<PendingFlagsUpdate> pendingUpdates = new ArrayList<>();
+        ResultSet rows = cassandraAsyncExecutor.execute(bindSelect(mailbox, set, FetchType.Metadata)).join();
+        long modSeq = modSeqProvider.nextModSeq(mailboxSession, mailbox);
+        for (Row row : rows) {
+            MailboxMessage<CassandraId> message = message(row, FetchType.Metadata);
+            long newModSeq = message.getModSeq() < modSeq ? modSeq : modSeqProvider.nextModSeq(mailboxSession, mailbox);
+            inFlight.acquireUninterruptibly();
+            pendingUpdates.add(new PendingFlagsUpdate(message.getUid(),
+                tryMessageFlagsUpdate(flagUpdateCalculator, message, newModSeq)
+                    .whenComplete((result, error) -> inFlight.release())));
+        }
+        List<UpdatedFlags> updatedFlags = pendingUpdates.stream()
+            .map(pendingUpdate -> pendingUpdate.result.join()
+                .map(Optional::of)
+                .orElseGet(() -> handleRetries(mailbox, flagUpdateCalculator, pendingUpdate.uid)))
             .filter(Optional::isPresent)
             .map(Optional::get)
-            .peek((updatedFlags) -> manageUnseenMessageCounts(mailbox, updatedFlags.getOldFlags(), updatedFlags.getNewFlags()))
-            .collect(Collectors.toList()) // This collect is here as we need to consume all the stream before returning result
-            .iterator();
+            .collect(Collectors.toList());
+        updateCounters(mailbox.getMailboxId(), 0, unseenDelta(updatedFlags)).join();
+        return updatedFlags.iterator();
     }
 
     @Override
@@ -254,8 +470,56 @@ public class CassandraMessageMapper implements MessageMapper<CassandraId> {
 
     @Override
     public MessageMetaData copy(Mailbox<CassandraId> mailbox, MailboxMessage<CassandraId> original) throws MailboxException {
+        Optional<BlobIds> storedBlobIds = retrieveBlobIds(original.getMailboxId(), original.getUid()).join();
         original.setFlags(new FlagsBuilder().add(original.createFlags()).add(Flag.RECENT).build());
-        return add(mailbox, original);
+        assignUidAndModSeq(mailbox, original);
+        String reference = blobReference(mailbox.getMailboxId(), original.getUid());
+        if (storedBlobIds.isPresent() && addReferences(reference, storedBlobIds.get()).join()) {
+            return add(mailbox, original, storedBlobIds.get());
+        }
+        return add(mailbox, original, saveContent(mailbox.getMailboxId(), original));
+    }
+
+    /**
+     * Rows written before contents were moved to the blob table, and not migrated yet, have no blob ids.
+     */
+    private CompletableFuture<Optional<BlobIds>> retrieveBlobIds(CassandraId mailboxId, long uid) {
+        return cassandraAsyncExecutor.executeSingleRow(statements.get().selectBlobIds().bind()
+                .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                .setLong(IMAP_UID, uid))
+            .thenApply(row -> row
+                .filter(value -> !value.isNull(HEADER_BLOB_ID) && !value.isNull(BODY_BLOB_ID))
+                .map(value -> new BlobIds(value.getString(HEADER_BLOB_ID), value.getString(BODY_BLOB_ID))));
+    }
+
+    /**
+     * @return false if one of the blobs was deleted meanwhile: the references taken are then released, and the
+     * content has to be saved again
+     */
+    private CompletableFuture<Boolean> addReferences(String reference, BlobIds blobIds) {
+        CompletableFuture<Boolean> headerReferenced = blobsDAO.get().addReference(blobIds.headerBlobId, reference);
+        CompletableFuture<Boolean> bodyReferenced = blobsDAO.get().addReference(blobIds.bodyBlobId, reference);
+        return headerReferenced.thenCombine(bodyReferenced, (header, body) -> header && body)
+            .thenCompose(referenced -> {
+                if (referenced) {
+                    return CompletableFuture.completedFuture(true);
+                }
+                return release(reference, blobIds)
+                    .thenApply(any -> false);
+            });
+    }
+
+    private CompletableFuture<Void> release(String reference, BlobIds blobIds) {
+        return CompletableFuture.allOf(
+            blobsDAO.get().release(blobIds.headerBlobId, reference),
+            blobsDAO.get().release(blobIds.bodyBlobId, reference));
+    }
+
+    /**
+     * Names the reference a message row holds on its blobs.
+     */
+    static String blobReference(CassandraId mailboxId, long uid) {
+        return mailboxId.asUuid() + "/" + uid;
     }
 
     @Override
@@ -263,24 +527,19 @@ public class CassandraMessageMapper implements MessageMapper<CassandraId> {
         return uidProvider.lastUid(mailboxSession, mailbox);
     }
 
-    private void decrementCount(CassandraId mailboxId) {
-        updateMailbox(mailboxId, decr(CassandraMailboxCountersTable.COUNT));
-    }
-
-    private void incrementCount(CassandraId mailboxId) {
-        updateMailbox(mailboxId, incr(CassandraMailboxCountersTable.COUNT));
+    private CompletableFuture<Void> updateCounters(CassandraId mailboxId, long countDelta, long unseenDelta) {
+        return CompletableFuture.allOf(
+            updateCounter(statements.get().countUpdate(), mailboxId, countDelta),
+            updateCounter(statements.get().unseenUpdate(), mailboxId, unseenDelta));
     }
 
-    private void decrementUnseen(CassandraId mailboxId) {
-        updateMailbox(mailboxId, decr(CassandraMailboxCountersTable.UNSEEN));
-    }
-
-    private void incrementUnseen(CassandraId mailboxId) {
-        updateMailbox(mailboxId, incr(CassandraMailboxCountersTable.UNSEEN));
-    }
-
-    private void updateMailbox(CassandraId mailboxId, Assignment operation) {
-        session.execute(update(CassandraMailboxCountersTable.TABLE_NAME).with(operation).where(eq(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId.asUuid())));
+    private CompletableFuture<Void> updateCounter(PreparedStatement counterUpdate, CassandraId mailboxId, long delta) {
+        if (delta == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return cassandraAsyncExecutor.executeVoid(counterUpdate.bind()
+            .setLong(CassandraMessageStatements.DELTA, delta)
+            .setUUID(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId.asUuid()));
     }
 
     private MailboxMessage<CassandraId> message(Row row, FetchType fetchType) {
@@ -320,75 +579,94 @@ public class CassandraMessageMapper implements MessageMapper<CassandraId> {
         return property;
     }
 
-    private MessageMetaData save(Mailbox<CassandraId> mailbox, MailboxMessage<CassandraId> message) throws MailboxException {
+    private BlobIds saveContent(CassandraId mailboxId, MailboxMessage<CassandraId> message) throws MailboxException {
         try {
-            session.execute(insertInto(TABLE_NAME)
-                .value(MAILBOX_ID, mailbox.getMailboxId().asUuid())
-                .value(IMAP_UID, message.getUid())
-                .value(MOD_SEQ, message.getModSeq())
-                .value(INTERNAL_DATE, message.getInternalDate())
-                .value(BODY_START_OCTET, message.getFullContentOctets() - message.getBodyOctets())
-                .value(FULL_CONTENT_OCTETS, message.getFullContentOctets())
-                .value(BODY_OCTECTS, message.getBodyOctets())
-                .value(ANSWERED, message.isAnswered())
-                .value(DELETED, message.isDeleted())
-                .value(DRAFT, message.isDraft())
-                .value(FLAGGED, message.isFlagged())
-                .value(RECENT, message.isRecent())
-                .value(SEEN, message.isSeen())
-                .value(USER, message.createFlags().contains(Flag.USER))
-                .value(USER_FLAGS, userFlagsSet(message))
-                .value(BODY_CONTENT, toByteBuffer(message.getBodyContent()))
-                .value(HEADER_CONTENT, toByteBuffer(message.getHeaderContent()))
-                .value(PROPERTIES, message.getProperties().stream()
-                    .map(x -> typesProvider.getDefinedUserType(PROPERTIES)
-                        .newValue()
-                        .setString(Properties.NAMESPACE, x.getNamespace())
-                        .setString(Properties.NAME, x.getLocalName())
-                        .setString(Properties.VALUE, x.getValue()))
-                    .collect(Collectors.toList()))
-                .value(TEXTUAL_LINE_COUNT, message.getTextualLineCount()));
-
-            return new SimpleMessageMetaData(message);
+            String reference = blobReference(mailboxId, message.getUid());
+            CompletableFuture<String> headerBlobId = blobsDAO.get().save(ByteStreams.toByteArray(message.getHeaderContent()), reference);
+            CompletableFuture<String> bodyBlobId = blobsDAO.get().save(ByteStreams.toByteArray(message.getBodyContent()), reference);
+            return new BlobIds(headerBlobId.join(), bodyBlobId.join());
         } catch (IOException e) {
-            throw new MailboxException("Error saving mail", e);
+            throw new MailboxException("Error saving mail content", e);
         }
     }
 
+    private MessageMetaData save(Mailbox<CassandraId> mailbox, MailboxMessage<CassandraId> message, BlobIds blobIds) {
+        insert(mailbox, message, blobIds).join();
+        return new SimpleMessageMetaData(message);
+    }
+
+    private CompletableFuture<Void> insert(Mailbox<CassandraId> mailbox, MailboxMessage<CassandraId> message, BlobIds blobIds) {
+        BoundStatement statement = statements.get().insert().bind()
+            .setUUID(MAILBOX_ID, mailbox.getMailboxId().asUuid())
+            .setLong(IMAP_UID, message.getUid())
+            .setLong(MOD_SEQ, message.getModSeq())
+            .setDate(INTERNAL_DATE, message.getInternalDate())
+            .setInt(BODY_START_OCTET, (int) (message.getFullContentOctets() - message.getBodyOctets()))
+            .setLong(FULL_CONTENT_OCTETS, message.getFullContentOctets())
+            .setLong(BODY_OCTECTS, message.getBodyOctets())
+            .setBool(ANSWERED, message.isAnswered())
+            .setBool(DELETED, message.isDeleted())
+            .setBool(DRAFT, message.isDraft())
+            .setBool(FLAGGED, message.isFlagged())
+            .setBool(RECENT, message.isRecent())
+            .setBool(SEEN, message.isSeen())
+            .setBool(USER, message.createFlags().contains(Flag.USER))
+            .setSet(USER_FLAGS, userFlagsSet(message))
+            .setString(BODY_BLOB_ID, blobIds.bodyBlobId)
+            .setString(HEADER_BLOB_ID, blobIds.headerBlobId)
+            .setList(PROPERTIES, message.getProperties().stream()
+                .map(x -> typesProvider.getDefinedUserType(PROPERTIES)
+                    .newValue()
+                    .setString(Properties.NAMESPACE, x.getNamespace())
+                    .setString(Properties.NAME, x.getLocalName())
+                    .setString(Properties.VALUE, x.getValue()))
+                .collect(Collectors.toList()));
+        if (message.getTextualLineCount() != null) {
+            statement.setLong(TEXTUAL_LINE_COUNT, message.getTextualLineCount());
+        } else {
+            statement.setBytesUnsafe(TEXTUAL_LINE_COUNT, null);
+        }
+        return CompletableFuture.allOf(
+            cassandraAsyncExecutor.executeVoid(statement),
+            indexModSeq(mailbox.getMailboxId(), message.getModSeq(), message.getUid()));
+    }
+
     private Set<String> userFlagsSet(MailboxMessage<CassandraId> message) {
         return Arrays.stream(message.createFlags().getUserFlags()).collect(Collectors.toSet());
     }
 
-    private void manageUnseenMessageCounts(Mailbox<CassandraId> mailbox, Flags oldFlags, Flags newFlags) {
+    private long unseenDelta(List<UpdatedFlags> updatedFlags) {
+        return updatedFlags.stream()
+            .mapToLong(flags -> unseenDelta(flags.getOldFlags(), flags.getNewFlags()))
+            .sum();
+    }
+
+    private long unseenDelta(Flags oldFlags, Flags newFlags) {
         if (oldFlags.contains(Flag.SEEN) && !newFlags.contains(Flag.SEEN)) {
-            incrementUnseen(mailbox.getMailboxId());
+            return 1;
         }
         if (!oldFlags.contains(Flag.SEEN) && newFlags.contains(Flag.SEEN)) {
-            decrementUnseen(mailbox.getMailboxId());
+            return -1;
         }
+        return 0;
     }
 
-    private Optional<UpdatedFlags> updateFlagsOnMessage(Mailbox<CassandraId> mailbox, FlagsUpdateCalculator flagUpdateCalculator, Row row) {
-        return tryMessageFlagsUpdate(flagUpdateCalculator, mailbox, message(row, FetchType.Metadata))
-            .map(Optional::of)
-            .orElse(handleRetries(mailbox, flagUpdateCalculator, row.getLong(IMAP_UID)));
-    }
-
-    private Optional<UpdatedFlags> tryMessageFlagsUpdate(FlagsUpdateCalculator flagUpdateCalculator, Mailbox<CassandraId> mailbox, MailboxMessage<CassandraId> message) {
-        try {
-            long oldModSeq = message.getModSeq();
-            Flags oldFlags = message.createFlags();
-            Flags newFlags = flagUpdateCalculator.buildNewFlags(oldFlags);
-            message.setFlags(newFlags);
-            message.setModSeq(modSeqProvider.nextModSeq(mailboxSession, mailbox));
-            if (conditionalSave(message, oldModSeq)) {
-                return Optional.of(new UpdatedFlags(message.getUid(), message.getModSeq(), oldFlags, newFlags));
-            } else {
+    private CompletableFuture<Optional<UpdatedFlags>> tryMessageFlagsUpdate(FlagsUpdateCalculator flagUpdateCalculator, MailboxMessage<CassandraId> message, long newModSeq) {
+        long oldModSeq = message.getModSeq();
+        Flags oldFlags = message.createFlags();
+        Flags newFlags = flagUpdateCalculator.buildNewFlags(oldFlags);
+        message.setFlags(newFlags);
+        message.setModSeq(newModSeq);
+        return indexModSeq(message.getMailboxId(), message.getModSeq(), message.getUid())
+            .thenCompose(any -> conditionalSave(message, oldModSeq))
+            .thenCompose(applied -> unindexModSeq(message.getMailboxId(), applied ? oldModSeq : message.getModSeq(), message.getUid())
+                .thenApply(any -> applied))
+            .thenApply(applied -> {
+                if (applied) {
+                    return Optional.of(new UpdatedFlags(message.getUid(), message.getModSeq(), oldFlags, newFlags));
+                }
                 return Optional.empty();
-            }
-        } catch (MailboxException e) {
-            throw Throwables.propagate(e);
-        }
+            });
     }
 
     private Optional<UpdatedFlags> handleRetries(Mailbox<CassandraId> mailbox, FlagsUpdateCalculator flagUpdateCalculator, long uid) {
@@ -405,33 +683,48 @@ public class CassandraMessageMapper implements MessageMapper<CassandraId> {
     }
 
     private Optional<UpdatedFlags> retryMessageFlagsUpdate(Mailbox<CassandraId> mailbox, long uid, FlagsUpdateCalculator flagUpdateCalculator) {
-        return tryMessageFlagsUpdate(flagUpdateCalculator,
-            mailbox,
-            message(Optional.ofNullable(session.execute(selectMessage(mailbox, uid, FetchType.Metadata)).one())
-                .orElseThrow(() -> new MessageDeletedDuringFlagsUpdateException(mailbox.getMailboxId(), uid)),
-                FetchType.Metadata));
-    }
-
-    private boolean conditionalSave(MailboxMessage<CassandraId> message, long oldModSeq) {
-        ResultSet resultSet = session.execute(
-            update(TABLE_NAME)
-                .with(set(ANSWERED, message.isAnswered()))
-                .and(set(DELETED, message.isDeleted()))
-                .and(set(DRAFT, message.isDraft()))
-                .and(set(FLAGGED, message.isFlagged()))
-                .and(set(RECENT, message.isRecent()))
-                .and(set(SEEN, message.isSeen()))
-                .and(set(USER, message.createFlags().contains(Flag.USER)))
-                .and(set(USER_FLAGS, userFlagsSet(message)))
-                .and(set(MOD_SEQ, message.getModSeq()))
-                .where(eq(IMAP_UID, message.getUid()))
-                .and(eq(MAILBOX_ID, message.getMailboxId().asUuid()))
-                .onlyIf(eq(MOD_SEQ, oldModSeq)));
-        return resultSet.one().getBool(CassandraConstants.LIGHTWEIGHT_TRANSACTION_APPLIED);
-    }
-
-    private ByteBuffer toByteBuffer(InputStream stream) throws IOException {
-        return ByteBuffer.wrap(ByteStreams.toByteArray(stream));
+        try {
+            MailboxMessage<CassandraId> message = message(cassandraAsyncExecutor.executeSingleRow(bindSelect(mailbox, MessageRange.one(uid), FetchType.Metadata))
+                    .join()
+                    .orElseThrow(() -> new MessageDeletedDuringFlagsUpdateException(mailbox.getMailboxId(), uid)),
+                FetchType.Metadata);
+            return tryMessageFlagsUpdate(flagUpdateCalculator, message, modSeqProvider.nextModSeq(mailboxSession, mailbox))
+                .join();
+        } catch (MailboxException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private CompletableFuture<Boolean> conditionalSave(MailboxMessage<CassandraId> message, long oldModSeq) {
+        return cassandraAsyncExecutor.executeReturnApplied(statements.get().conditionalFlagsUpdate().bind()
+            .setBool(ANSWERED, message.isAnswered())
+            .setBool(DELETED, message.isDeleted())
+            .setBool(DRAFT, message.isDraft())
+            .setBool(FLAGGED, message.isFlagged())
+            .setBool(RECENT, message.isRecent())
+            .setBool(SEEN, message.isSeen())
+            .setBool(USER, message.createFlags().contains(Flag.USER))
+            .setSet(USER_FLAGS, userFlagsSet(message))
+            .setLong(MOD_SEQ, message.getModSeq())
+            .setLong(IMAP_UID, message.getUid())
+            .setUUID(MAILBOX_ID, message.getMailboxId().asUuid())
+            .setLong(CassandraMessageStatements.OLD_MOD_SEQ, oldModSeq));
+    }
+
+    private BoundStatement bindSelect(Mailbox<CassandraId> mailbox, MessageRange set, FetchType fetchType) {
+        BoundStatement statement = statements.get().selectStatement(set.getType(), fetchType).bind()
+            .setUUID(MAILBOX_ID, mailbox.getMailboxId().asUuid());
+        switch (set.getType()) {
+        case ALL:
+            return statement;
+        case FROM:
+        case ONE:
+            return statement.setLong(CassandraMessageStatements.UID_FROM, set.getUidFrom());
+        case RANGE:
+            return statement.setLong(CassandraMessageStatements.UID_FROM, set.getUidFrom())
+                .setLong(CassandraMessageStatements.UID_TO, set.getUidTo());
+        }
+        throw new UnsupportedOperationException();
     }
 
     private Where buildQuery(Mailbox<CassandraId> mailbox, MessageRange set, FetchType fetchType) {
@@ -449,20 +742,20 @@ public class CassandraMessageMapper implements MessageMapper<CassandraId> {
     }
 
     private Where selectAll(Mailbox<CassandraId> mailbox, FetchType fetchType) {
-        return select(retrieveFields(fetchType))
+        return select(CassandraMessageStatements.retrieveFields(fetchType))
             .from(TABLE_NAME)
             .where(eq(MAILBOX_ID, mailbox.getMailboxId().asUuid()));
     }
 
     private Where selectFrom(Mailbox<CassandraId> mailbox, long uid, FetchType fetchType) {
-        return select(retrieveFields(fetchType))
+        return select(CassandraMessageStatements.retrieveFields(fetchType))
             .from(TABLE_NAME)
             .where(eq(MAILBOX_ID, mailbox.getMailboxId().asUuid()))
             .and(gte(IMAP_UID, uid));
     }
 
     private Where selectRange(Mailbox<CassandraId> mailbox, long from, long to, FetchType fetchType) {
-        return select(retrieveFields(fetchType))
+        return select(CassandraMessageStatements.retrieveFields(fetchType))
             .from(TABLE_NAME)
             .where(eq(MAILBOX_ID, mailbox.getMailboxId().asUuid()))
             .and(gte(IMAP_UID, from))
@@ -470,54 +763,91 @@ public class CassandraMessageMapper implements MessageMapper<CassandraId> {
     }
 
     private Where selectMessage(Mailbox<CassandraId> mailbox, long uid, FetchType fetchType) {
-        return select(retrieveFields(fetchType))
+        return select(CassandraMessageStatements.retrieveFields(fetchType))
             .from(TABLE_NAME)
             .where(eq(MAILBOX_ID, mailbox.getMailboxId().asUuid()))
             .and(eq(IMAP_UID, uid));
     }
 
-    private String[] retrieveFields(FetchType fetchType) {
+    private SharedInputStream buildContent(Row row, FetchType fetchType) {
+        if (isLegacyContent(row, fetchType)) {
+            return buildLegacyContent(row, fetchType);
+        }
         switch (fetchType) {
-            case Body:
-                return BODY;
             case Full:
-                return FIELDS;
+                return ChunkedSharedInputStream.full(blobsDAO.get(),
+                    readBlob(HEADER_BLOB_ID, row).join(),
+                    row.getString(BODY_BLOB_ID),
+                    row.getLong(BODY_OCTECTS));
             case Headers:
-                return HEADERS;
+                return new SharedByteArrayInputStream(readBlob(HEADER_BLOB_ID, row).join());
+            case Body:
+                return ChunkedSharedInputStream.bodyOnly(blobsDAO.get(),
+                    row.getInt(BODY_START_OCTET),
+                    row.getString(BODY_BLOB_ID),
+                    row.getLong(BODY_OCTECTS));
             case Metadata:
-                return METADATA;
+                return new SharedByteArrayInputStream(new byte[]{});
             default:
                 throw new RuntimeException("Unknown FetchType " + fetchType);
         }
     }
 
-    private SharedByteArrayInputStream buildContent(Row row, FetchType fetchType) {
+    private boolean isLegacyContent(Row row, FetchType fetchType) {
         switch (fetchType) {
             case Full:
-                return new SharedByteArrayInputStream(getFullContent(row));
+                return row.isNull(HEADER_BLOB_ID) || row.isNull(BODY_BLOB_ID);
             case Headers:
-                return new SharedByteArrayInputStream(getFieldContent(HEADER_CONTENT, row));
+                return row.isNull(HEADER_BLOB_ID);
             case Body:
-                return new SharedByteArrayInputStream(getBodyContent(row));
-            case Metadata:
-                return new SharedByteArrayInputStream(new byte[]{});
+                return row.isNull(BODY_BLOB_ID);
+            default:
+                return false;
+        }
+    }
+
+    private SharedInputStream buildLegacyContent(Row row, FetchType fetchType) {
+        switch (fetchType) {
+            case Full:
+                return new SharedByteArrayInputStream(Bytes.concat(legacyContent(HEADER_CONTENT, row), legacyContent(BODY_CONTENT, row)));
+            case Headers:
+                return new SharedByteArrayInputStream(legacyContent(HEADER_CONTENT, row));
+            case Body:
+                return new SharedByteArrayInputStream(Bytes.concat(new byte[row.getInt(BODY_START_OCTET)], legacyContent(BODY_CONTENT, row)));
             default:
                 throw new RuntimeException("Unknown FetchType " + fetchType);
         }
     }
 
-    private byte[] getFullContent(Row row) {
-        return Bytes.concat(getFieldContent(HEADER_CONTENT, row), getFieldContent(BODY_CONTENT, row));
+    private byte[] legacyContent(String field, Row row) {
+        ByteBuffer buffer = row.getBytes(field);
+        byte[] content = new byte[buffer.remaining()];
+        buffer.get(content);
+        return content;
     }
 
-    private byte[] getBodyContent(Row row) {
-        return Bytes.concat(new byte[row.getInt(BODY_START_OCTET)], getFieldContent(BODY_CONTENT, row));
+    private CompletableFuture<byte[]> readBlob(String field, Row row) {
+        return blobsDAO.get().read(row.getString(field));
     }
 
-    private byte[] getFieldContent(String field, Row row) {
-        byte[] headerContent = new byte[row.getBytes(field).remaining()];
-        row.getBytes(field).get(headerContent);
-        return headerContent;
+    private static class BlobIds {
+        private final String headerBlobId;
+        private final String bodyBlobId;
+
+        private BlobIds(String headerBlobId, String bodyBlobId) {
+            this.headerBlobId = headerBlobId;
+            this.bodyBlobId = bodyBlobId;
+        }
+    }
+
+    private static class PendingFlagsUpdate {
+        private final long uid;
+        private final CompletableFuture<Optional<UpdatedFlags>> result;
+
+        private PendingFlagsUpdate(long uid, CompletableFuture<Optional<UpdatedFlags>> result) {
+            this.uid = uid;
+            this.result = result;
+        }
     }
 
 }
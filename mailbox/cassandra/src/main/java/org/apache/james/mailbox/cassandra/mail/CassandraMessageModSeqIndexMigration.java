@@ -0,0 +1,147 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.IMAP_UID;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.MAILBOX_ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.MOD_SEQ;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.TABLE_NAME;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageModSeqIndexTable;
+import org.apache.james.mailbox.cassandra.table.CassandraMigrationTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Indexes the messages stored before the messageModSeqIndex table existed.
+ *
+ * Until the migration is recorded, {@link CassandraMessageMapper} can not rely on the index and scans the
+ * requested range instead. Entries written for messages updated concurrently are at worst stale, which the
+ * mapper already tolerates.
+ */
+public class CassandraMessageModSeqIndexMigration {
+
+    public static final String NAME = "messageModSeqIndex";
+    private static final Logger LOG = LoggerFactory.getLogger(CassandraMessageModSeqIndexMigration.class);
+    private static final int FETCH_SIZE = 100;
+
+    private final Session session;
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final PreparedStatement selectApplied;
+    private final PreparedStatement insertApplied;
+    private final PreparedStatement insertIndexEntry;
+    private volatile boolean applied;
+
+    public CassandraMessageModSeqIndexMigration(Session session) {
+        this.session = session;
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.selectApplied = session.prepare(select(CassandraMigrationTable.NAME)
+            .from(CassandraMigrationTable.TABLE_NAME)
+            .where(eq(CassandraMigrationTable.NAME, bindMarker(CassandraMigrationTable.NAME))));
+        this.insertApplied = session.prepare(insertInto(CassandraMigrationTable.TABLE_NAME)
+            .value(CassandraMigrationTable.NAME, bindMarker(CassandraMigrationTable.NAME))
+            .value(CassandraMigrationTable.APPLIED_AT, bindMarker(CassandraMigrationTable.APPLIED_AT)));
+        this.insertIndexEntry = session.prepare(insertInto(CassandraMessageModSeqIndexTable.TABLE_NAME)
+            .value(CassandraMessageModSeqIndexTable.MAILBOX_ID, bindMarker(CassandraMessageModSeqIndexTable.MAILBOX_ID))
+            .value(CassandraMessageModSeqIndexTable.MOD_SEQ, bindMarker(CassandraMessageModSeqIndexTable.MOD_SEQ))
+            .value(CassandraMessageModSeqIndexTable.IMAP_UID, bindMarker(CassandraMessageModSeqIndexTable.IMAP_UID)));
+    }
+
+    /**
+     * Runs the migration in a background thread.
+     */
+    public void start() {
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("cassandra-message-modseq-index-migration")
+            .setDaemon(true)
+            .build());
+        executor.execute(() -> {
+            try {
+                apply();
+            } catch (RuntimeException e) {
+                LOG.error("Failed to index message mod-sequences, will retry on next start", e);
+            }
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * Once the migration is known to be applied, the answer is kept and Cassandra is not queried any more.
+     */
+    public boolean isApplied() {
+        if (!applied) {
+            applied = cassandraAsyncExecutor.executeSingleRow(selectApplied.bind()
+                    .setString(CassandraMigrationTable.NAME, NAME))
+                .join()
+                .isPresent();
+        }
+        return applied;
+    }
+
+    public void apply() {
+        if (isApplied()) {
+            return;
+        }
+        Statement selectAll = select(MAILBOX_ID, IMAP_UID, MOD_SEQ)
+            .from(TABLE_NAME)
+            .setFetchSize(FETCH_SIZE);
+        List<CompletableFuture<Void>> batch = new ArrayList<>(FETCH_SIZE);
+        long indexed = 0;
+        for (Row row : session.execute(selectAll)) {
+            batch.add(cassandraAsyncExecutor.executeVoid(insertIndexEntry.bind()
+                .setUUID(CassandraMessageModSeqIndexTable.MAILBOX_ID, row.getUUID(MAILBOX_ID))
+                .setLong(CassandraMessageModSeqIndexTable.MOD_SEQ, row.getLong(MOD_SEQ))
+                .setLong(CassandraMessageModSeqIndexTable.IMAP_UID, row.getLong(IMAP_UID))));
+            indexed++;
+            if (batch.size() == FETCH_SIZE) {
+                join(batch);
+            }
+        }
+        join(batch);
+        session.execute(insertApplied.bind()
+            .setString(CassandraMigrationTable.NAME, NAME)
+            .setDate(CassandraMigrationTable.APPLIED_AT, new Date()));
+        applied = true;
+        LOG.info("Indexed the mod-sequences of {} messages", indexed);
+    }
+
+    private void join(List<CompletableFuture<Void>> batch) {
+        CompletableFuture.allOf(batch.toArray(new CompletableFuture[batch.size()])).join();
+        batch.clear();
+    }
+}
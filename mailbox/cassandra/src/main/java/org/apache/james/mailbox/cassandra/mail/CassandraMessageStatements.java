@@ -0,0 +1,241 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.gt;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.gte;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.incr;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.lte;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.set;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_BLOB_ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_OCTECTS;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_START_OCTET;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.FIELDS;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.FULL_CONTENT_OCTETS;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADERS;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADER_BLOB_ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.IMAP_UID;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.INTERNAL_DATE;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.MAILBOX_ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.METADATA;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.MOD_SEQ;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.PROPERTIES;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.TABLE_NAME;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.TEXTUAL_LINE_COUNT;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.ANSWERED;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.DELETED;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.DRAFT;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.FLAGGED;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.RECENT;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.SEEN;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.USER;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.USER_FLAGS;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.james.mailbox.cassandra.table.CassandraMailboxCountersTable;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageModSeqIndexTable;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.querybuilder.Select;
+
+/**
+ * Statements used by {@link CassandraMessageMapper}, prepared once per {@link Session}.
+ *
+ * Mappers are created for each request, so preparation is kept out of them and shared
+ * through this holder.
+ */
+public class CassandraMessageStatements {
+
+    public static final String UID_FROM = "uidFrom";
+    public static final String UID_TO = "uidTo";
+    public static final String OLD_MOD_SEQ = "oldModSeq";
+    public static final String DELTA = "delta";
+
+    private final Map<MessageRange.Type, Map<FetchType, PreparedStatement>> selectStatements;
+    private final PreparedStatement selectBlobIds;
+    private final PreparedStatement insert;
+    private final PreparedStatement delete;
+    private final PreparedStatement conditionalFlagsUpdate;
+    private final PreparedStatement countUpdate;
+    private final PreparedStatement unseenUpdate;
+    private final PreparedStatement selectChangedSince;
+    private final PreparedStatement modSeqIndexInsert;
+    private final PreparedStatement modSeqIndexDelete;
+
+    public CassandraMessageStatements(Session session) {
+        this.selectStatements = new EnumMap<>(MessageRange.Type.class);
+        for (MessageRange.Type type : MessageRange.Type.values()) {
+            Map<FetchType, PreparedStatement> statements = new EnumMap<>(FetchType.class);
+            for (FetchType fetchType : FetchType.values()) {
+                statements.put(fetchType, session.prepare(buildSelectStatement(type, fetchType)));
+            }
+            selectStatements.put(type, statements);
+        }
+        this.selectBlobIds = session.prepare(select(HEADER_BLOB_ID, BODY_BLOB_ID)
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(eq(IMAP_UID, bindMarker(IMAP_UID))));
+        this.insert = session.prepare(insertInto(TABLE_NAME)
+            .value(MAILBOX_ID, bindMarker(MAILBOX_ID))
+            .value(IMAP_UID, bindMarker(IMAP_UID))
+            .value(MOD_SEQ, bindMarker(MOD_SEQ))
+            .value(INTERNAL_DATE, bindMarker(INTERNAL_DATE))
+            .value(BODY_START_OCTET, bindMarker(BODY_START_OCTET))
+            .value(FULL_CONTENT_OCTETS, bindMarker(FULL_CONTENT_OCTETS))
+            .value(BODY_OCTECTS, bindMarker(BODY_OCTECTS))
+            .value(ANSWERED, bindMarker(ANSWERED))
+            .value(DELETED, bindMarker(DELETED))
+            .value(DRAFT, bindMarker(DRAFT))
+            .value(FLAGGED, bindMarker(FLAGGED))
+            .value(RECENT, bindMarker(RECENT))
+            .value(SEEN, bindMarker(SEEN))
+            .value(USER, bindMarker(USER))
+            .value(USER_FLAGS, bindMarker(USER_FLAGS))
+            .value(BODY_BLOB_ID, bindMarker(BODY_BLOB_ID))
+            .value(HEADER_BLOB_ID, bindMarker(HEADER_BLOB_ID))
+            .value(PROPERTIES, bindMarker(PROPERTIES))
+            .value(TEXTUAL_LINE_COUNT, bindMarker(TEXTUAL_LINE_COUNT)));
+        this.delete = session.prepare(QueryBuilder.delete()
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(eq(IMAP_UID, bindMarker(IMAP_UID)))
+            .ifExists());
+        this.conditionalFlagsUpdate = session.prepare(update(TABLE_NAME)
+            .with(set(ANSWERED, bindMarker(ANSWERED)))
+            .and(set(DELETED, bindMarker(DELETED)))
+            .and(set(DRAFT, bindMarker(DRAFT)))
+            .and(set(FLAGGED, bindMarker(FLAGGED)))
+            .and(set(RECENT, bindMarker(RECENT)))
+            .and(set(SEEN, bindMarker(SEEN)))
+            .and(set(USER, bindMarker(USER)))
+            .and(set(USER_FLAGS, bindMarker(USER_FLAGS)))
+            .and(set(MOD_SEQ, bindMarker(MOD_SEQ)))
+            .where(eq(IMAP_UID, bindMarker(IMAP_UID)))
+            .and(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .onlyIf(eq(MOD_SEQ, bindMarker(OLD_MOD_SEQ))));
+        this.countUpdate = session.prepare(counterUpdate(CassandraMailboxCountersTable.COUNT));
+        this.unseenUpdate = session.prepare(counterUpdate(CassandraMailboxCountersTable.UNSEEN));
+        this.selectChangedSince = session.prepare(select(CassandraMessageModSeqIndexTable.IMAP_UID)
+            .from(CassandraMessageModSeqIndexTable.TABLE_NAME)
+            .where(eq(CassandraMessageModSeqIndexTable.MAILBOX_ID, bindMarker(CassandraMessageModSeqIndexTable.MAILBOX_ID)))
+            .and(gt(CassandraMessageModSeqIndexTable.MOD_SEQ, bindMarker(CassandraMessageModSeqIndexTable.MOD_SEQ))));
+        this.modSeqIndexInsert = session.prepare(insertInto(CassandraMessageModSeqIndexTable.TABLE_NAME)
+            .value(CassandraMessageModSeqIndexTable.MAILBOX_ID, bindMarker(CassandraMessageModSeqIndexTable.MAILBOX_ID))
+            .value(CassandraMessageModSeqIndexTable.MOD_SEQ, bindMarker(CassandraMessageModSeqIndexTable.MOD_SEQ))
+            .value(CassandraMessageModSeqIndexTable.IMAP_UID, bindMarker(CassandraMessageModSeqIndexTable.IMAP_UID)));
+        this.modSeqIndexDelete = session.prepare(QueryBuilder.delete()
+            .from(CassandraMessageModSeqIndexTable.TABLE_NAME)
+            .where(eq(CassandraMessageModSeqIndexTable.MAILBOX_ID, bindMarker(CassandraMessageModSeqIndexTable.MAILBOX_ID)))
+            .and(eq(CassandraMessageModSeqIndexTable.MOD_SEQ, bindMarker(CassandraMessageModSeqIndexTable.MOD_SEQ)))
+            .and(eq(CassandraMessageModSeqIndexTable.IMAP_UID, bindMarker(CassandraMessageModSeqIndexTable.IMAP_UID))));
+    }
+
+    public PreparedStatement selectStatement(MessageRange.Type type, FetchType fetchType) {
+        return selectStatements.get(type).get(fetchType);
+    }
+
+    public PreparedStatement selectBlobIds() {
+        return selectBlobIds;
+    }
+
+    public PreparedStatement insert() {
+        return insert;
+    }
+
+    public PreparedStatement delete() {
+        return delete;
+    }
+
+    public PreparedStatement conditionalFlagsUpdate() {
+        return conditionalFlagsUpdate;
+    }
+
+    public PreparedStatement countUpdate() {
+        return countUpdate;
+    }
+
+    public PreparedStatement unseenUpdate() {
+        return unseenUpdate;
+    }
+
+    public PreparedStatement selectChangedSince() {
+        return selectChangedSince;
+    }
+
+    public PreparedStatement modSeqIndexInsert() {
+        return modSeqIndexInsert;
+    }
+
+    public PreparedStatement modSeqIndexDelete() {
+        return modSeqIndexDelete;
+    }
+
+    private Select.Where buildSelectStatement(MessageRange.Type type, FetchType fetchType) {
+        Select.Where where = select(retrieveFields(fetchType))
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)));
+        switch (type) {
+        case ALL:
+            return where;
+        case FROM:
+            return where.and(gte(IMAP_UID, bindMarker(UID_FROM)));
+        case RANGE:
+            return where.and(gte(IMAP_UID, bindMarker(UID_FROM)))
+                .and(lte(IMAP_UID, bindMarker(UID_TO)));
+        case ONE:
+            return where.and(eq(IMAP_UID, bindMarker(UID_FROM)));
+        }
+        throw new UnsupportedOperationException();
+    }
+
+    private RegularStatement counterUpdate(String column) {
+        return update(CassandraMailboxCountersTable.TABLE_NAME)
+            .with(incr(column, bindMarker(DELTA)))
+            .where(eq(CassandraMailboxCountersTable.MAILBOX_ID, bindMarker(CassandraMailboxCountersTable.MAILBOX_ID)));
+    }
+
+    static String[] retrieveFields(FetchType fetchType) {
+        switch (fetchType) {
+            case Body:
+                return BODY;
+            case Full:
+                return FIELDS;
+            case Headers:
+                return HEADERS;
+            case Metadata:
+                return METADATA;
+            default:
+                throw new RuntimeException("Unknown FetchType " + fetchType);
+        }
+    }
+}
@@ -30,12 +30,14 @@ import static org.apache.james.mailbox.cassandra.table.CassandraMessageModseqTab
 
 import java.util.Optional;
 import javax.inject.Inject;
+import javax.inject.Singleton;
 
 import org.apache.james.backends.cassandra.utils.CassandraConstants;
 import org.apache.james.backends.cassandra.utils.LightweightTransactionException;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.cassandra.CassandraId;
 import org.apache.james.backends.cassandra.utils.FunctionRunnerWithRetry;
+import org.apache.james.mailbox.cassandra.mail.utils.CoalescingRangeAllocator;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.store.mail.ModSeqProvider;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
@@ -47,18 +49,32 @@ import com.datastax.driver.core.Session;
 import com.datastax.driver.core.querybuilder.BuiltStatement;
 import com.google.common.base.Throwables;
 
+/**
+ * Provides modseqs from a counter advanced by lightweight transactions.
+ *
+ * Concurrent updates of this node to the same mailbox share a single
+ * lightweight transaction, see {@link CoalescingRangeAllocator}.
+ */
+@Singleton
 public class CassandraModSeqProvider implements ModSeqProvider<CassandraId> {
 
     private static final int DEFAULT_MAX_RETRY = 100000;
+    public static final int DEFAULT_MAX_RANGE_SIZE = 100;
     private static final Logger LOG = LoggerFactory.getLogger(CassandraModSeqProvider.class);
     private static final ModSeq FIRST_MODSEQ = new ModSeq(0);
     
     private final Session session;
     private final FunctionRunnerWithRetry runner;
+    private final CoalescingRangeAllocator<CassandraId> allocator;
 
-    public CassandraModSeqProvider(Session session, int maxRetry) {
+    public CassandraModSeqProvider(Session session, int maxRetry, int maxRangeSize) {
         this.session = session;
         this.runner = new FunctionRunnerWithRetry(maxRetry);
+        this.allocator = new CoalescingRangeAllocator<>(this::reserveModSeqs, maxRangeSize);
+    }
+
+    public CassandraModSeqProvider(Session session, int maxRetry) {
+        this(session, maxRetry, DEFAULT_MAX_RANGE_SIZE);
     }
 
     @Inject
@@ -68,8 +84,12 @@ public class CassandraModSeqProvider implements ModSeqProvider<CassandraId> {
 
     @Override
     public long nextModSeq(MailboxSession mailboxSession, Mailbox<CassandraId> mailbox) throws MailboxException {
-        if (findHighestModSeq(mailboxSession, mailbox).isFirst()) {
-            Optional<ModSeq> optional = tryInsertModSeq(mailbox, FIRST_MODSEQ);
+        return allocator.allocate(mailbox.getMailboxId(), 1);
+    }
+
+    private long reserveModSeqs(CassandraId mailbox, int count) throws MailboxException {
+        if (findHighestModSeq(mailbox).isFirst()) {
+            Optional<ModSeq> optional = tryInsertModSeq(mailbox, FIRST_MODSEQ, count);
             if (optional.isPresent()) {
                 return optional.get().getValue();
             }
@@ -79,7 +99,7 @@ public class CassandraModSeqProvider implements ModSeqProvider<CassandraId> {
             return runner.executeAndRetrieveObject(
                         () -> {
                             try {
-                                return tryUpdateModSeq(mailbox, findHighestModSeq(mailboxSession, mailbox))
+                                return tryUpdateModSeq(mailbox, findHighestModSeq(mailbox), count)
                                         .map(ModSeq::getValue);
                             } catch (Exception exception) {
                                 LOG.error("Can not retrieve next ModSeq", exception);
@@ -93,14 +113,14 @@ public class CassandraModSeqProvider implements ModSeqProvider<CassandraId> {
 
     @Override
     public long highestModSeq(MailboxSession mailboxSession, Mailbox<CassandraId> mailbox) throws MailboxException {
-        return findHighestModSeq(mailboxSession, mailbox).getValue();
+        return findHighestModSeq(mailbox.getMailboxId()).getValue();
     }
     
-    private ModSeq findHighestModSeq(MailboxSession mailboxSession, Mailbox<CassandraId> mailbox) throws MailboxException {
+    private ModSeq findHighestModSeq(CassandraId mailbox) throws MailboxException {
         ResultSet result = session.execute(
                 select(NEXT_MODSEQ)
                     .from(TABLE_NAME)
-                    .where(eq(MAILBOX_ID, mailbox.getMailboxId().asUuid())));
+                    .where(eq(MAILBOX_ID, mailbox.asUuid())));
         if (result.isExhausted()) {
             return FIRST_MODSEQ;
         } else {
@@ -108,22 +128,22 @@ public class CassandraModSeqProvider implements ModSeqProvider<CassandraId> {
         }
     }
 
-    private Optional<ModSeq> tryInsertModSeq(Mailbox<CassandraId> mailbox, ModSeq modSeq) {
-        ModSeq nextModSeq = modSeq.next();
+    private Optional<ModSeq> tryInsertModSeq(CassandraId mailbox, ModSeq modSeq, int count) {
+        ModSeq nextModSeq = modSeq.add(count);
         return transactionalStatementToOptionalModSeq(nextModSeq,
                 insertInto(TABLE_NAME)
                     .value(NEXT_MODSEQ, nextModSeq.getValue())
-                    .value(MAILBOX_ID, mailbox.getMailboxId().asUuid())
+                    .value(MAILBOX_ID, mailbox.asUuid())
                     .ifNotExists());
     }
     
-    private Optional<ModSeq> tryUpdateModSeq(Mailbox<CassandraId> mailbox, ModSeq modSeq) {
-        ModSeq nextModSeq = modSeq.next();
+    private Optional<ModSeq> tryUpdateModSeq(CassandraId mailbox, ModSeq modSeq, int count) {
+        ModSeq nextModSeq = modSeq.add(count);
         return transactionalStatementToOptionalModSeq(nextModSeq,
                 update(TABLE_NAME)
                     .onlyIf(eq(NEXT_MODSEQ, modSeq.getValue()))
                     .with(set(NEXT_MODSEQ, nextModSeq.getValue()))
-                    .where(eq(MAILBOX_ID, mailbox.getMailboxId().asUuid())));
+                    .where(eq(MAILBOX_ID, mailbox.asUuid())));
     }
 
     private Optional<ModSeq> transactionalStatementToOptionalModSeq(ModSeq modSeq, BuiltStatement statement) {
@@ -141,8 +161,8 @@ public class CassandraModSeqProvider implements ModSeqProvider<CassandraId> {
             this.value = value;
         }
         
-        public ModSeq next() {
-            return new ModSeq(value + 1);
+        public ModSeq add(int count) {
+            return new ModSeq(value + count);
         }
         
         public long getValue() {
@@ -33,10 +33,12 @@ import org.apache.james.backends.cassandra.utils.LightweightTransactionException
 
 import java.util.Optional;
 import javax.inject.Inject;
+import javax.inject.Singleton;
 
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.cassandra.CassandraId;
 import org.apache.james.backends.cassandra.utils.FunctionRunnerWithRetry;
+import org.apache.james.mailbox.cassandra.mail.utils.CoalescingRangeAllocator;
 import org.apache.james.mailbox.cassandra.table.CassandraMessageUidTable;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.store.mail.UidProvider;
@@ -47,17 +49,31 @@ import org.slf4j.LoggerFactory;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Session;
 
+/**
+ * Provides UIDs from a counter advanced by lightweight transactions.
+ *
+ * Concurrent appends of this node to the same mailbox share a single
+ * lightweight transaction, see {@link CoalescingRangeAllocator}.
+ */
+@Singleton
 public class CassandraUidProvider implements UidProvider<CassandraId> {
     public final static int DEFAULT_MAX_RETRY = 100000;
+    public final static int DEFAULT_MAX_RANGE_SIZE = 100;
     private static final Logger LOG = LoggerFactory.getLogger(CassandraUidProvider.class);
     private static final Uid FIRST_UID = new Uid(0);
 
     private final Session session;
     private final FunctionRunnerWithRetry runner;
+    private final CoalescingRangeAllocator<CassandraId> allocator;
 
-    public CassandraUidProvider(Session session, int maxRetry) {
+    public CassandraUidProvider(Session session, int maxRetry, int maxRangeSize) {
         this.session = session;
         this.runner = new FunctionRunnerWithRetry(maxRetry);
+        this.allocator = new CoalescingRangeAllocator<>(this::reserveUids, maxRangeSize);
+    }
+
+    public CassandraUidProvider(Session session, int maxRetry) {
+        this(session, maxRetry, DEFAULT_MAX_RANGE_SIZE);
     }
 
     @Inject
@@ -67,8 +83,17 @@ public class CassandraUidProvider implements UidProvider<CassandraId> {
 
     @Override
     public long nextUid(MailboxSession mailboxSession, Mailbox<CassandraId> mailbox) throws MailboxException {
+        return nextUids(mailboxSession, mailbox, 1);
+    }
+
+    @Override
+    public long nextUids(MailboxSession mailboxSession, Mailbox<CassandraId> mailbox, int count) throws MailboxException {
+        return allocator.allocate(mailbox.getMailboxId(), count);
+    }
+
+    private long reserveUids(CassandraId mailbox, int count) throws MailboxException {
         if (findHighestUid(mailbox).isFirst()) {
-            Optional<Uid> optional = tryInsertUid(mailbox, FIRST_UID);
+            Optional<Uid> optional = tryInsertUid(mailbox, FIRST_UID, count);
             if (optional.isPresent()) {
                 return optional.get().getValue();
             }
@@ -78,7 +103,7 @@ public class CassandraUidProvider implements UidProvider<CassandraId> {
             return runner.executeAndRetrieveObject(
                 () -> {
                     try {
-                        return tryUpdateUid(mailbox, findHighestUid(mailbox))
+                        return tryUpdateUid(mailbox, findHighestUid(mailbox), count)
                             .map(Uid::getValue);
                     } catch (Exception exception) {
                         LOG.error("Can not retrieve next Uid", exception);
@@ -92,14 +117,14 @@ public class CassandraUidProvider implements UidProvider<CassandraId> {
 
     @Override
     public long lastUid(MailboxSession mailboxSession, Mailbox<CassandraId> mailbox) throws MailboxException {
-        return findHighestUid(mailbox).getValue();
+        return findHighestUid(mailbox.getMailboxId()).getValue();
     }
 
-    private Uid findHighestUid(Mailbox<CassandraId> mailbox) throws MailboxException {
+    private Uid findHighestUid(CassandraId mailbox) throws MailboxException {
         ResultSet result = session.execute(
             select(NEXT_UID)
                 .from(CassandraMessageUidTable.TABLE_NAME)
-                .where(eq(CassandraMessageUidTable.MAILBOX_ID, mailbox.getMailboxId().asUuid())));
+                .where(eq(CassandraMessageUidTable.MAILBOX_ID, mailbox.asUuid())));
         if (result.isExhausted()) {
             return FIRST_UID;
         } else {
@@ -107,22 +132,22 @@ public class CassandraUidProvider implements UidProvider<CassandraId> {
         }
     }
 
-    private Optional<Uid> tryInsertUid(Mailbox<CassandraId> mailbox, Uid uid) {
-        Uid nextUid = uid.next();
+    private Optional<Uid> tryInsertUid(CassandraId mailbox, Uid uid, int count) {
+        Uid nextUid = uid.add(count);
         return transactionalStatementToOptionalUid(nextUid,
             insertInto(CassandraMessageUidTable.TABLE_NAME)
                 .value(NEXT_UID, nextUid.getValue())
-                .value(CassandraMessageUidTable.MAILBOX_ID, mailbox.getMailboxId().asUuid())
+                .value(CassandraMessageUidTable.MAILBOX_ID, mailbox.asUuid())
                 .ifNotExists());
     }
 
-    private Optional<Uid> tryUpdateUid(Mailbox<CassandraId> mailbox, Uid uid) {
-        Uid nextUid = uid.next();
+    private Optional<Uid> tryUpdateUid(CassandraId mailbox, Uid uid, int count) {
+        Uid nextUid = uid.add(count);
         return transactionalStatementToOptionalUid(nextUid,
             update(CassandraMessageUidTable.TABLE_NAME)
                 .onlyIf(eq(NEXT_UID, uid.getValue()))
                 .with(set(NEXT_UID, nextUid.getValue()))
-                .where(eq(CassandraMessageUidTable.MAILBOX_ID, mailbox.getMailboxId().asUuid())));
+                .where(eq(CassandraMessageUidTable.MAILBOX_ID, mailbox.asUuid())));
     }
 
     private Optional<Uid> transactionalStatementToOptionalUid(Uid uid, BuiltStatement statement) {
@@ -140,8 +165,8 @@ public class CassandraUidProvider implements UidProvider<CassandraId> {
             this.value = value;
         }
 
-        public Uid next() {
-            return new Uid(value + 1);
+        public Uid add(int count) {
+            return new Uid(value + count);
         }
 
         public long getValue() {
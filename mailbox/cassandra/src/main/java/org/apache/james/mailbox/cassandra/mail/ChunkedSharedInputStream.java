@@ -0,0 +1,212 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.mail.internet.SharedInputStream;
+
+/**
+ * {@link SharedInputStream} over a message whose body is stored as chunks by {@link CassandraBlobsDAO}.
+ *
+ * Body chunks are only read when the stream reaches them, one chunk ahead of the reader. Streams obtained by
+ * {@link #newStream(long, long)} share the headers but load their own chunks, so that a partial fetch only
+ * reads the chunks it covers. When headers are not given, the header part of the content reads as zeros.
+ */
+public class ChunkedSharedInputStream extends InputStream implements SharedInputStream {
+
+    public static ChunkedSharedInputStream full(CassandraBlobsDAO blobsDAO, byte[] header, String bodyBlobId, long bodyLength) {
+        return new ChunkedSharedInputStream(blobsDAO, header, header.length, bodyBlobId, bodyLength, 0, header.length + bodyLength);
+    }
+
+    public static ChunkedSharedInputStream bodyOnly(CassandraBlobsDAO blobsDAO, int headerLength, String bodyBlobId, long bodyLength) {
+        return new ChunkedSharedInputStream(blobsDAO, null, headerLength, bodyBlobId, bodyLength, 0, headerLength + bodyLength);
+    }
+
+    private final CassandraBlobsDAO blobsDAO;
+    private final byte[] header;
+    private final int headerLength;
+    private final String bodyBlobId;
+    private final long bodyLength;
+    private final long start;
+    private final long end;
+    private long position;
+    private long mark;
+    private int currentChunkNumber;
+    private byte[] currentChunk;
+    private int nextChunkNumber;
+    private CompletableFuture<byte[]> nextChunk;
+
+    private ChunkedSharedInputStream(CassandraBlobsDAO blobsDAO, byte[] header, int headerLength, String bodyBlobId, long bodyLength, long start, long end) {
+        this.blobsDAO = blobsDAO;
+        this.header = header;
+        this.headerLength = headerLength;
+        this.bodyBlobId = bodyBlobId;
+        this.bodyLength = bodyLength;
+        this.start = start;
+        this.end = end;
+        this.position = start;
+        this.mark = start;
+        this.currentChunkNumber = -1;
+        this.nextChunkNumber = -1;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] value = new byte[1];
+        if (read(value, 0, 1) == -1) {
+            return -1;
+        }
+        return value[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position >= end) {
+            return -1;
+        }
+        int toRead = (int) Math.min(length, end - position);
+        int read;
+        if (position < headerLength) {
+            read = readHeader(buffer, offset, toRead);
+        } else {
+            read = readBody(buffer, offset, toRead);
+        }
+        position += read;
+        return read;
+    }
+
+    private int readHeader(byte[] buffer, int offset, int length) {
+        int headerPosition = (int) position;
+        int read = Math.min(length, headerLength - headerPosition);
+        if (header == null) {
+            Arrays.fill(buffer, offset, offset + read, (byte) 0);
+        } else {
+            System.arraycopy(header, headerPosition, buffer, offset, read);
+        }
+        return read;
+    }
+
+    private int readBody(byte[] buffer, int offset, int length) throws IOException {
+        long bodyPosition = position - headerLength;
+        byte[] chunk = chunk((int) (bodyPosition / CassandraBlobsDAO.CHUNK_SIZE));
+        int chunkPosition = (int) (bodyPosition % CassandraBlobsDAO.CHUNK_SIZE);
+        int read = Math.min(length, chunk.length - chunkPosition);
+        if (read <= 0) {
+            throw new IOException("Blob " + bodyBlobId + " is shorter than the expected " + bodyLength + " bytes");
+        }
+        System.arraycopy(chunk, chunkPosition, buffer, offset, read);
+        return read;
+    }
+
+    private byte[] chunk(int chunkNumber) throws IOException {
+        if (chunkNumber != currentChunkNumber) {
+            currentChunk = join(loadChunk(chunkNumber));
+            currentChunkNumber = chunkNumber;
+            prefetch(chunkNumber + 1);
+        }
+        return currentChunk;
+    }
+
+    private CompletableFuture<byte[]> loadChunk(int chunkNumber) {
+        if (nextChunk != null && nextChunkNumber == chunkNumber) {
+            return nextChunk;
+        }
+        return blobsDAO.readChunk(bodyBlobId, chunkNumber);
+    }
+
+    private void prefetch(int chunkNumber) {
+        long chunkStart = headerLength + (long) chunkNumber * CassandraBlobsDAO.CHUNK_SIZE;
+        if (chunkStart < end && chunkStart < headerLength + bodyLength) {
+            nextChunkNumber = chunkNumber;
+            nextChunk = blobsDAO.readChunk(bodyBlobId, chunkNumber);
+        } else {
+            nextChunkNumber = -1;
+            nextChunk = null;
+        }
+    }
+
+    private byte[] join(CompletableFuture<byte[]> chunk) throws IOException {
+        try {
+            return chunk.join();
+        } catch (CompletionException e) {
+            throw new IOException("Can not read blob " + bodyBlobId, e.getCause());
+        }
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() {
+        position = mark;
+    }
+
+    @Override
+    public void close() {
+        currentChunk = null;
+        currentChunkNumber = -1;
+        nextChunk = null;
+        nextChunkNumber = -1;
+    }
+
+    @Override
+    public long getPosition() {
+        return position - start;
+    }
+
+    @Override
+    public InputStream newStream(long start, long end) {
+        if (start < 0) {
+            throw new IllegalArgumentException("start < 0");
+        }
+        long newEnd = this.end;
+        if (end != -1) {
+            newEnd = Math.min(this.start + end, this.end);
+        }
+        return new ChunkedSharedInputStream(blobsDAO, header, headerLength, bodyBlobId, bodyLength, this.start + start, newEnd);
+    }
+}
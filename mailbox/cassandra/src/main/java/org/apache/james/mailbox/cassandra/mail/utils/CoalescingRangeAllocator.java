@@ -0,0 +1,158 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.apache.james.mailbox.exception.MailboxException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Hands out values of a per mailbox counter which is stored in Cassandra and
+ * advanced by lightweight transactions.
+ *
+ * Concurrent requests of this node for the same mailbox are queued and served
+ * by a single lightweight transaction reserving the whole range at once, so a
+ * node never competes with itself for the counter. Nothing is kept for later
+ * use: a range is only as big as the requests waiting when it is reserved, and
+ * its values are handed out at once. IMAP clients rely on UIDs and modseqs
+ * becoming visible in ascending order, which values cached by a node while
+ * other nodes go ahead would break.
+ */
+public class CoalescingRangeAllocator<K> {
+
+    public interface RangeReserver<K> {
+
+        /**
+         * Advance the counter of the given key by count
+         *
+         * @return the highest value of the reserved range
+         */
+        long reserve(K key, int count) throws MailboxException;
+    }
+
+    private static class Request {
+        private final int count;
+        private boolean done;
+        private long highestValue;
+        private MailboxException failure;
+
+        private Request(int count) {
+            this.count = count;
+        }
+    }
+
+    private static class Slot {
+        private final Deque<Request> pending = new ArrayDeque<>();
+    }
+
+    private final RangeReserver<K> reserver;
+    private final int maxRangeSize;
+    private final LoadingCache<K, Slot> slots;
+
+    /**
+     * @param maxRangeSize maximum count of values reserved by a single
+     *            lightweight transaction. Requests for more values are
+     *            reserved on their own.
+     */
+    public CoalescingRangeAllocator(RangeReserver<K> reserver, int maxRangeSize) {
+        Preconditions.checkArgument(maxRangeSize > 0, "maxRangeSize should be positive");
+        this.reserver = reserver;
+        this.maxRangeSize = maxRangeSize;
+        // Slots are only needed while requests are pending. Losing one can only
+        // lead to concurrent reservations, which the lightweight transactions
+        // already handle.
+        this.slots = CacheBuilder.newBuilder()
+            .weakValues()
+            .build(new CacheLoader<K, Slot>() {
+                @Override
+                public Slot load(K key) {
+                    return new Slot();
+                }
+            });
+    }
+
+    /**
+     * Reserve count consecutive values of the counter of the given key
+     *
+     * @return the highest value of the reserved range
+     */
+    public long allocate(K key, int count) throws MailboxException {
+        Preconditions.checkArgument(count > 0, "count should be positive");
+        Slot slot = slots.getUnchecked(key);
+        Request request = new Request(count);
+        synchronized (slot.pending) {
+            slot.pending.add(request);
+        }
+        synchronized (slot) {
+            while (!request.done) {
+                serve(key, nextBatch(slot));
+            }
+        }
+        if (request.failure != null) {
+            throw request.failure;
+        }
+        return request.highestValue;
+    }
+
+    private List<Request> nextBatch(Slot slot) {
+        List<Request> batch = new ArrayList<>();
+        int size = 0;
+        synchronized (slot.pending) {
+            while (!slot.pending.isEmpty()
+                && (batch.isEmpty() || size + slot.pending.peek().count <= maxRangeSize)) {
+                Request request = slot.pending.poll();
+                size += request.count;
+                batch.add(request);
+            }
+        }
+        return batch;
+    }
+
+    private void serve(K key, List<Request> batch) {
+        int size = batch.stream().mapToInt(request -> request.count).sum();
+        try {
+            long value = reserver.reserve(key, size) - size;
+            for (Request request : batch) {
+                value += request.count;
+                request.highestValue = value;
+                request.done = true;
+            }
+        } catch (MailboxException e) {
+            fail(batch, e);
+        } catch (RuntimeException e) {
+            fail(batch, new MailboxException("Can not reserve a range of " + size + " values", e));
+        }
+    }
+
+    private void fail(List<Request> batch, MailboxException e) {
+        for (Request request : batch) {
+            request.failure = e;
+            request.done = true;
+        }
+    }
+}
@@ -24,7 +24,13 @@ import org.apache.james.backends.cassandra.components.CassandraIndex;
 import org.apache.james.backends.cassandra.components.CassandraModule;
 import org.apache.james.backends.cassandra.components.CassandraTable;
 import org.apache.james.backends.cassandra.components.CassandraType;
+import org.apache.james.mailbox.cassandra.table.CassandraBlobTable;
+import org.apache.james.mailbox.cassandra.table.CassandraExpungeLogTable;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageModSeqIndexTable;
 import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
+import org.apache.james.mailbox.cassandra.table.CassandraMigrationTable;
+
+import com.google.common.collect.ImmutableMap;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -46,7 +52,7 @@ public class CassandraMessageModule implements CassandraModule {
     private final List<CassandraType> types;
 
     public CassandraMessageModule() {
-        tables = Collections.singletonList(
+        tables = Arrays.asList(
             new CassandraTable(CassandraMessageTable.TABLE_NAME,
                 SchemaBuilder.createTable(CassandraMessageTable.TABLE_NAME)
                     .ifNotExists()
@@ -58,6 +64,8 @@ public class CassandraMessageModule implements CassandraModule {
                     .addColumn(CassandraMessageTable.TEXTUAL_LINE_COUNT, bigint())
                     .addColumn(CassandraMessageTable.MOD_SEQ, bigint())
                     .addColumn(CassandraMessageTable.FULL_CONTENT_OCTETS, bigint())
+                    .addColumn(CassandraMessageTable.BODY_BLOB_ID, text())
+                    .addColumn(CassandraMessageTable.HEADER_BLOB_ID, text())
                     .addColumn(CassandraMessageTable.BODY_CONTENT, blob())
                     .addColumn(CassandraMessageTable.HEADER_CONTENT, blob())
                     .addColumn(CassandraMessageTable.Flag.ANSWERED, cboolean())
@@ -68,7 +76,50 @@ public class CassandraMessageModule implements CassandraModule {
                     .addColumn(CassandraMessageTable.Flag.SEEN, cboolean())
                     .addColumn(CassandraMessageTable.Flag.USER, cboolean())
                     .addColumn(CassandraMessageTable.Flag.USER_FLAGS, set(text()))
-                    .addUDTListColumn(CassandraMessageTable.PROPERTIES, SchemaBuilder.frozen(CassandraMessageTable.PROPERTIES))));
+                    .addUDTListColumn(CassandraMessageTable.PROPERTIES, SchemaBuilder.frozen(CassandraMessageTable.PROPERTIES)),
+                ImmutableMap.of(
+                    CassandraMessageTable.BODY_BLOB_ID, text(),
+                    CassandraMessageTable.HEADER_BLOB_ID, text())),
+            new CassandraTable(CassandraMessageModSeqIndexTable.TABLE_NAME,
+                SchemaBuilder.createTable(CassandraMessageModSeqIndexTable.TABLE_NAME)
+                    .ifNotExists()
+                    .addPartitionKey(CassandraMessageModSeqIndexTable.MAILBOX_ID, timeuuid())
+                    .addClusteringColumn(CassandraMessageModSeqIndexTable.MOD_SEQ, bigint())
+                    .addClusteringColumn(CassandraMessageModSeqIndexTable.IMAP_UID, bigint())),
+            new CassandraTable(CassandraExpungeLogTable.TABLE_NAME,
+                SchemaBuilder.createTable(CassandraExpungeLogTable.TABLE_NAME)
+                    .ifNotExists()
+                    .addPartitionKey(CassandraExpungeLogTable.MAILBOX_ID, timeuuid())
+                    .addClusteringColumn(CassandraExpungeLogTable.MOD_SEQ, bigint())
+                    .addClusteringColumn(CassandraExpungeLogTable.IMAP_UID, bigint())
+                    .addColumn(CassandraExpungeLogTable.EXPUNGED_AT, timestamp())),
+            new CassandraTable(CassandraExpungeLogTable.Floor.TABLE_NAME,
+                SchemaBuilder.createTable(CassandraExpungeLogTable.Floor.TABLE_NAME)
+                    .ifNotExists()
+                    .addPartitionKey(CassandraExpungeLogTable.Floor.MAILBOX_ID, timeuuid())
+                    .addColumn(CassandraExpungeLogTable.Floor.FLOOR, bigint())),
+            new CassandraTable(CassandraBlobTable.TABLE_NAME,
+                SchemaBuilder.createTable(CassandraBlobTable.TABLE_NAME)
+                    .ifNotExists()
+                    .addPartitionKey(CassandraBlobTable.ID, text())
+                    .addClusteringColumn(CassandraBlobTable.CHUNK_NUMBER, cint())
+                    .addColumn(CassandraBlobTable.DATA, blob())),
+            new CassandraTable(CassandraBlobTable.Generations.TABLE_NAME,
+                SchemaBuilder.createTable(CassandraBlobTable.Generations.TABLE_NAME)
+                    .ifNotExists()
+                    .addPartitionKey(CassandraBlobTable.Generations.HASH, text())
+                    .addColumn(CassandraBlobTable.Generations.GENERATION, timeuuid())
+                    .addColumn(CassandraBlobTable.Generations.DELETING, cboolean())),
+            new CassandraTable(CassandraBlobTable.References.TABLE_NAME,
+                SchemaBuilder.createTable(CassandraBlobTable.References.TABLE_NAME)
+                    .ifNotExists()
+                    .addPartitionKey(CassandraBlobTable.References.ID, text())
+                    .addClusteringColumn(CassandraBlobTable.References.REFERENCE, text())),
+            new CassandraTable(CassandraMigrationTable.TABLE_NAME,
+                SchemaBuilder.createTable(CassandraMigrationTable.TABLE_NAME)
+                    .ifNotExists()
+                    .addPartitionKey(CassandraMigrationTable.NAME, text())
+                    .addColumn(CassandraMigrationTable.APPLIED_AT, timestamp())));
         index = Arrays.asList(
             new CassandraIndex(
                 SchemaBuilder.createIndex(CassandraIndex.INDEX_PREFIX + CassandraMessageTable.Flag.RECENT)
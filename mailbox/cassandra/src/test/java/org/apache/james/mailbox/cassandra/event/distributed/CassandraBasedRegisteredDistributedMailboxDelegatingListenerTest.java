@@ -54,6 +54,7 @@ public class CassandraBasedRegisteredDistributedMailboxDelegatingListenerTest {
     public static final MailboxPath MAILBOX_PATH_2 = new MailboxPath("#private", "user", "mbx.other");
     public static final int CASSANDRA_TIME_OUT_IN_S = 10;
     public static final int SCHEDULER_PERIOD_IN_S = 20;
+    public static final String REGISTRATION_TOPIC = "registrations";
 
     private CassandraCluster cassandraClusterSingleton = CassandraCluster.create(new CassandraRegistrationModule());
     private RegisteredDelegatingMailboxListener registeredDelegatingMailboxListener1;
@@ -75,7 +76,10 @@ public class CassandraBasedRegisteredDistributedMailboxDelegatingListenerTest {
                 cassandraClusterSingleton.getConf(),
                 cassandraClusterSingleton.getTypesProvider(),
                 CASSANDRA_TIME_OUT_IN_S),
-            SCHEDULER_PERIOD_IN_S);
+            SCHEDULER_PERIOD_IN_S,
+            publisherReceiver,
+            publisherReceiver,
+            REGISTRATION_TOPIC);
         registeredDelegatingMailboxListener1 = new RegisteredDelegatingMailboxListener(
             new MessagePackEventSerializer<>(
                 new EventConverter<>(new MailboxConverter<>(new TestIdDeserializer()))
@@ -88,7 +92,10 @@ public class CassandraBasedRegisteredDistributedMailboxDelegatingListenerTest {
                 cassandraClusterSingleton.getConf(),
                 cassandraClusterSingleton.getTypesProvider(),
                 CASSANDRA_TIME_OUT_IN_S),
-            SCHEDULER_PERIOD_IN_S);
+            SCHEDULER_PERIOD_IN_S,
+            publisherReceiver,
+            publisherReceiver,
+            REGISTRATION_TOPIC);
         registeredDelegatingMailboxListener2 = new RegisteredDelegatingMailboxListener(
             new MessagePackEventSerializer<>(
                 new EventConverter<>(new MailboxConverter<>(new TestIdDeserializer()))
@@ -101,7 +108,10 @@ public class CassandraBasedRegisteredDistributedMailboxDelegatingListenerTest {
                 cassandraClusterSingleton.getConf(),
                 cassandraClusterSingleton.getTypesProvider(),
                 CASSANDRA_TIME_OUT_IN_S),
-            SCHEDULER_PERIOD_IN_S);
+            SCHEDULER_PERIOD_IN_S,
+            publisherReceiver,
+            publisherReceiver,
+            REGISTRATION_TOPIC);
         registeredDelegatingMailboxListener3 = new RegisteredDelegatingMailboxListener(
             new MessagePackEventSerializer<>(
                 new EventConverter<>(new MailboxConverter<>(new TestIdDeserializer()))
@@ -137,6 +147,20 @@ public class CassandraBasedRegisteredDistributedMailboxDelegatingListenerTest {
         assertThat(eventCollectorMailbox3.getEvents()).isEmpty();
     }
 
+    @Test
+    public void mailboxEventListenersShouldBeTriggeredWhenRegisteredAfterTheTopicsWereCached() throws Exception {
+        SimpleMailbox<TestId> simpleMailbox = new SimpleMailbox<>(MAILBOX_PATH_2, 42);
+        simpleMailbox.setMailboxId(TestId.of(52));
+        registeredDelegatingMailboxListener1.event(new EventFactory<TestId>().added(mailboxSession, new TreeMap<>(), simpleMailbox));
+        EventCollector eventCollectorMailbox2OnPath2 = new EventCollector(MailboxListener.ListenerType.MAILBOX);
+        registeredDelegatingMailboxListener2.addListener(MAILBOX_PATH_2, eventCollectorMailbox2OnPath2, mailboxSession);
+
+        registeredDelegatingMailboxListener1.event(new EventFactory<TestId>().added(mailboxSession, new TreeMap<>(), simpleMailbox));
+
+        assertThat(eventCollectorMailbox2OnPath2.getEvents()).hasSize(1);
+        assertThat(eventCollectorMailbox3.getEvents()).hasSize(2);
+    }
+
     @Test
     public void onceEventListenersShouldBeTriggeredOnceAcrossTheCluster() {
         SimpleMailbox<TestId> simpleMailbox = new SimpleMailbox<>(MAILBOX_PATH_1, 42);
@@ -0,0 +1,153 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
+import org.apache.james.mailbox.cassandra.table.CassandraACLTable;
+import org.apache.james.mailbox.model.MailboxACL;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.SimpleMailboxACL;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class CassandraACLCacheTest {
+
+    private static final SimpleMailboxACL.SimpleMailboxACLEntryKey BOB = new SimpleMailboxACL.SimpleMailboxACLEntryKey("bob", MailboxACL.NameType.user, false);
+
+    private CassandraCluster cassandra;
+    private CassandraACLCache aclCache;
+    private SimpleMailbox<CassandraId> inbox;
+    private SimpleMailbox<CassandraId> sent;
+    private MailboxACL bobReadACL;
+
+    @Before
+    public void setUp() throws Exception {
+        cassandra = CassandraCluster.create(new CassandraAclModule());
+        cassandra.ensureAllTables();
+        aclCache = new CassandraACLCache(cassandra.getConf());
+        inbox = mailbox("INBOX", "464765a0-e4e7-11e4-aba4-710c1de3782b");
+        sent = mailbox("Sent", "6fc5a4f0-e4e7-11e4-aba4-710c1de3782b");
+        bobReadACL = SimpleMailboxACL.EMPTY.union(BOB, new SimpleMailboxACL.Rfc4314Rights(SimpleMailboxACL.Rfc4314Rights.r_Read_RIGHT));
+    }
+
+    @After
+    public void tearDown() {
+        cassandra.clearAllTables();
+    }
+
+    @Test
+    public void getACLsShouldReturnEmptyACLWhenNoneStored() {
+        assertThat(aclCache.getACLs(ImmutableList.<Mailbox<CassandraId>>of(inbox, sent)))
+            .containsEntry(inbox.getMailboxId(), SimpleMailboxACL.EMPTY)
+            .containsEntry(sent.getMailboxId(), SimpleMailboxACL.EMPTY)
+            .hasSize(2);
+    }
+
+    @Test
+    public void getACLsShouldReturnStoredACLs() throws Exception {
+        storeBobReadACL(inbox);
+
+        assertThat(aclCache.getACLs(ImmutableList.<Mailbox<CassandraId>>of(inbox, sent)))
+            .containsEntry(inbox.getMailboxId(), bobReadACL)
+            .containsEntry(sent.getMailboxId(), SimpleMailboxACL.EMPTY);
+    }
+
+    @Test
+    public void getACLShouldReturnCachedACL() throws Exception {
+        aclCache.getACL(inbox);
+        storeBobReadACL(inbox);
+
+        assertThat(aclCache.getACL(inbox)).isEqualTo(SimpleMailboxACL.EMPTY);
+    }
+
+    @Test
+    public void getACLShouldReadStoredACLWhenInvalidated() throws Exception {
+        aclCache.getACL(inbox);
+        storeBobReadACL(inbox);
+
+        aclCache.invalidate(inbox.getMailboxId());
+
+        assertThat(aclCache.getACL(inbox)).isEqualTo(bobReadACL);
+    }
+
+    @Test
+    public void getACLsShouldReadMoreMailboxesThanTheInFlightReadsLimit() throws Exception {
+        aclCache = new CassandraACLCache(cassandra.getConf(), CassandraACLCache.DEFAULT_EXPIRY_IN_SECONDS, TimeUnit.SECONDS,
+            CassandraACLCache.DEFAULT_MAXIMUM_SIZE, 2);
+        storeBobReadACL(inbox);
+        List<Mailbox<CassandraId>> mailboxes = new ArrayList<>();
+        mailboxes.add(inbox);
+        for (int i = 0; i < 50; i++) {
+            mailboxes.add(mailbox("folder" + i, CassandraId.timeBased().asUuid().toString()));
+        }
+
+        Map<CassandraId, MailboxACL> acls = aclCache.getACLs(mailboxes);
+
+        assertThat(acls).hasSize(51).containsEntry(inbox.getMailboxId(), bobReadACL);
+    }
+
+    @Test
+    public void getACLsShouldWorkWithASingleInFlightRead() throws Exception {
+        aclCache = new CassandraACLCache(cassandra.getConf(), CassandraACLCache.DEFAULT_EXPIRY_IN_SECONDS, TimeUnit.SECONDS,
+            CassandraACLCache.DEFAULT_MAXIMUM_SIZE, 1);
+        storeBobReadACL(sent);
+
+        assertThat(aclCache.getACLs(ImmutableList.<Mailbox<CassandraId>>of(inbox, sent)))
+            .containsEntry(inbox.getMailboxId(), SimpleMailboxACL.EMPTY)
+            .containsEntry(sent.getMailboxId(), bobReadACL);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldRejectANullInFlightReadsLimit() {
+        new CassandraACLCache(cassandra.getConf(), CassandraACLCache.DEFAULT_EXPIRY_IN_SECONDS, TimeUnit.SECONDS,
+            CassandraACLCache.DEFAULT_MAXIMUM_SIZE, 0);
+    }
+
+    private SimpleMailbox<CassandraId> mailbox(String name, String id) {
+        SimpleMailbox<CassandraId> mailbox = new SimpleMailbox<>(new MailboxPath("#private", "benwa@linagora.com", name), 10);
+        mailbox.setMailboxId(CassandraId.of(UUID.fromString(id)));
+        return mailbox;
+    }
+
+    private void storeBobReadACL(Mailbox<CassandraId> mailbox) {
+        cassandra.getConf().execute(
+            insertInto(CassandraACLTable.TABLE_NAME)
+                .value(CassandraACLTable.ID, mailbox.getMailboxId().asUuid())
+                .value(CassandraACLTable.ACL, "{\"entries\":{\"bob\":64}}")
+                .value(CassandraACLTable.VERSION, 1));
+    }
+}
@@ -0,0 +1,220 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+public class CassandraBlobsDAOTest {
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraMessageModule());
+    private static final String REFERENCE = "reference";
+    private static final String OTHER_REFERENCE = "otherReference";
+    private static final int CONCURRENT_SAVES = 16;
+
+    private CassandraBlobsDAO testee;
+
+    @Before
+    public void setUp() throws Exception {
+        CASSANDRA.ensureAllTables();
+        testee = new CassandraBlobsDAO(CASSANDRA.getConf());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void readShouldReturnSavedData() throws Exception {
+        String blobId = testee.save(bytes("toto"), REFERENCE).join();
+
+        assertThat(testee.read(blobId).join()).isEqualTo(bytes("toto"));
+    }
+
+    @Test
+    public void readShouldReturnSavedEmptyData() throws Exception {
+        String blobId = testee.save(new byte[0], REFERENCE).join();
+
+        assertThat(testee.read(blobId).join()).isEmpty();
+    }
+
+    @Test
+    public void readShouldReturnSavedDataSpanningSeveralChunks() throws Exception {
+        byte[] data = bytes(Strings.repeat("0123456789", CassandraBlobsDAO.CHUNK_SIZE / 4));
+        String blobId = testee.save(data, REFERENCE).join();
+
+        assertThat(testee.read(blobId).join()).isEqualTo(data);
+    }
+
+    @Test
+    public void saveShouldReturnTheSameIdForTheSameContent() throws Exception {
+        String blobId = testee.save(bytes("toto"), REFERENCE).join();
+
+        assertThat(testee.save(bytes("toto"), OTHER_REFERENCE).join()).isEqualTo(blobId);
+    }
+
+    @Test
+    public void saveShouldReturnDistinctIdsForDistinctContents() throws Exception {
+        String blobId = testee.save(bytes("toto"), REFERENCE).join();
+
+        assertThat(testee.save(bytes("tata"), REFERENCE).join()).isNotEqualTo(blobId);
+    }
+
+    @Test
+    public void concurrentSavesOfTheSameContentShouldShareTheBlob() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_SAVES);
+        try {
+            List<Future<String>> saves = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_SAVES; i++) {
+                String reference = "reference" + i;
+                saves.add(executor.submit(() -> testee.save(bytes("toto"), reference).join()));
+            }
+            Set<String> blobIds = new HashSet<>();
+            for (Future<String> save : saves) {
+                blobIds.add(save.get());
+            }
+
+            assertThat(blobIds).hasSize(1);
+            assertThat(testee.read(blobIds.iterator().next()).join()).isEqualTo(bytes("toto"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void releaseShouldDeleteTheBlobWhenTheLastReferenceIsReleased() throws Exception {
+        String blobId = testee.save(bytes("toto"), REFERENCE).join();
+
+        testee.release(blobId, REFERENCE).join();
+
+        assertThat(testee.read(blobId).join()).isEmpty();
+    }
+
+    @Test
+    public void releaseShouldDeleteTheBlobWhenAllReferencesAreReleased() throws Exception {
+        String blobId = testee.save(bytes("toto"), REFERENCE).join();
+        testee.addReference(blobId, OTHER_REFERENCE).join();
+
+        testee.release(blobId, REFERENCE).join();
+        testee.release(blobId, OTHER_REFERENCE).join();
+
+        assertThat(testee.read(blobId).join()).isEmpty();
+    }
+
+    @Test
+    public void releaseShouldKeepTheBlobWhileSavedContentsStillReferenceIt() throws Exception {
+        String blobId = testee.save(bytes("toto"), REFERENCE).join();
+        testee.save(bytes("toto"), OTHER_REFERENCE).join();
+
+        testee.release(blobId, REFERENCE).join();
+
+        assertThat(testee.read(blobId).join()).isEqualTo(bytes("toto"));
+    }
+
+    @Test
+    public void releaseShouldKeepTheBlobWhileAddedReferencesRemain() throws Exception {
+        String blobId = testee.save(bytes("toto"), REFERENCE).join();
+        testee.addReference(blobId, OTHER_REFERENCE).join();
+
+        testee.release(blobId, REFERENCE).join();
+
+        assertThat(testee.read(blobId).join()).isEqualTo(bytes("toto"));
+    }
+
+    @Test
+    public void releasingTheSameReferenceTwiceShouldKeepTheBlobForOtherReferences() throws Exception {
+        String blobId = testee.save(bytes("toto"), REFERENCE).join();
+        testee.addReference(blobId, OTHER_REFERENCE).join();
+
+        testee.release(blobId, REFERENCE).join();
+        testee.release(blobId, REFERENCE).join();
+
+        assertThat(testee.read(blobId).join()).isEqualTo(bytes("toto"));
+    }
+
+    @Test
+    public void addReferenceShouldSucceedOnAStoredBlob() throws Exception {
+        String blobId = testee.save(bytes("toto"), REFERENCE).join();
+
+        assertThat(testee.addReference(blobId, OTHER_REFERENCE).join()).isTrue();
+    }
+
+    @Test
+    public void addReferenceShouldFailOnADeletedBlob() throws Exception {
+        String blobId = testee.save(bytes("toto"), REFERENCE).join();
+        testee.release(blobId, REFERENCE).join();
+
+        assertThat(testee.addReference(blobId, OTHER_REFERENCE).join()).isFalse();
+    }
+
+    @Test
+    public void addReferenceShouldFailOnUnknownBlobs() throws Exception {
+        assertThat(testee.addReference("unknown", REFERENCE).join()).isFalse();
+    }
+
+    @Test
+    public void saveShouldStoreTheBlobAgainAfterItWasDeleted() throws Exception {
+        String blobId = testee.save(bytes("toto"), REFERENCE).join();
+        testee.release(blobId, REFERENCE).join();
+
+        String newBlobId = testee.save(bytes("toto"), REFERENCE).join();
+
+        assertThat(testee.read(newBlobId).join()).isEqualTo(bytes("toto"));
+    }
+
+    @Test
+    public void releasingADeletedBlobShouldNotDeleteItsNewGeneration() throws Exception {
+        String blobId = testee.save(bytes("toto"), REFERENCE).join();
+        testee.release(blobId, REFERENCE).join();
+        String newBlobId = testee.save(bytes("toto"), OTHER_REFERENCE).join();
+
+        testee.release(blobId, REFERENCE).join();
+
+        assertThat(testee.read(newBlobId).join()).isEqualTo(bytes("toto"));
+    }
+
+    @Test
+    public void releaseShouldIgnoreUnknownBlobs() throws Exception {
+        testee.release("unknown", REFERENCE).join();
+
+        assertThat(testee.read("unknown").join()).isEmpty();
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,151 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMailboxModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraModSeqModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraUidModule;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.fge.lambdas.Throwing;
+
+/**
+ * Many appenders allocating UIDs and modseqs for the same mailbox at the same
+ * time, as it happens on shared mailboxes. Checks the values stay unique and
+ * contiguous, and logs the time spent with and without coalescing of the
+ * reservations.
+ */
+public class CassandraCounterContentionTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CassandraCounterContentionTest.class);
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraModuleComposite(
+        new CassandraAclModule(),
+        new CassandraMailboxModule(),
+        new CassandraUidModule(),
+        new CassandraModSeqModule()));
+
+    private static final int MAX_RETRY = 100000;
+    private static final int APPENDERS = 20;
+    private static final int APPENDS_PER_APPENDER = 10;
+
+    private SimpleMailbox<CassandraId> mailbox;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        CASSANDRA.ensureAllTables();
+        CassandraMailboxMapper mapper = new CassandraMailboxMapper(CASSANDRA.getConf(), CASSANDRA.getTypesProvider(), MAX_RETRY);
+        mailbox = new SimpleMailbox<>(new MailboxPath("#private", "user", "shared"), 1234);
+        mapper.save(mailbox);
+        executor = Executors.newFixedThreadPool(APPENDERS);
+    }
+
+    @After
+    public void cleanUp() {
+        executor.shutdownNow();
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void uidsShouldBeUniqueAndContiguousWhenNoCoalescing() throws Exception {
+        CassandraUidProvider uidProvider = new CassandraUidProvider(CASSANDRA.getConf(), MAX_RETRY, 1);
+
+        assertUniqueAndContiguous("uid, range size 1", () -> uidProvider.nextUid(null, mailbox));
+    }
+
+    @Test
+    public void uidsShouldBeUniqueAndContiguousWhenCoalescing() throws Exception {
+        CassandraUidProvider uidProvider = new CassandraUidProvider(CASSANDRA.getConf(), MAX_RETRY, CassandraUidProvider.DEFAULT_MAX_RANGE_SIZE);
+
+        assertUniqueAndContiguous("uid, range size " + CassandraUidProvider.DEFAULT_MAX_RANGE_SIZE, () -> uidProvider.nextUid(null, mailbox));
+    }
+
+    @Test
+    public void uidsShouldBeUniqueAndContiguousWhenSeveralNodes() throws Exception {
+        CassandraUidProvider node1 = new CassandraUidProvider(CASSANDRA.getConf(), MAX_RETRY);
+        CassandraUidProvider node2 = new CassandraUidProvider(CASSANDRA.getConf(), MAX_RETRY);
+
+        assertUniqueAndContiguous("uid, two nodes", () -> {
+            if (Thread.currentThread().getId() % 2 == 0) {
+                return node1.nextUid(null, mailbox);
+            }
+            return node2.nextUid(null, mailbox);
+        });
+    }
+
+    @Test
+    public void modSeqsShouldBeUniqueAndContiguousWhenNoCoalescing() throws Exception {
+        CassandraModSeqProvider modSeqProvider = new CassandraModSeqProvider(CASSANDRA.getConf(), MAX_RETRY, 1);
+
+        assertUniqueAndContiguous("modseq, range size 1", () -> modSeqProvider.nextModSeq(null, mailbox));
+    }
+
+    @Test
+    public void modSeqsShouldBeUniqueAndContiguousWhenCoalescing() throws Exception {
+        CassandraModSeqProvider modSeqProvider = new CassandraModSeqProvider(CASSANDRA.getConf(), MAX_RETRY, CassandraModSeqProvider.DEFAULT_MAX_RANGE_SIZE);
+
+        assertUniqueAndContiguous("modseq, range size " + CassandraModSeqProvider.DEFAULT_MAX_RANGE_SIZE, () -> modSeqProvider.nextModSeq(null, mailbox));
+    }
+
+    private void assertUniqueAndContiguous(String name, Callable<Long> allocation) throws Exception {
+        long start = System.nanoTime();
+        List<Future<List<Long>>> appenders = new ArrayList<>();
+        for (int i = 0; i < APPENDERS; i++) {
+            appenders.add(executor.submit(() -> {
+                List<Long> values = new ArrayList<>();
+                for (int j = 0; j < APPENDS_PER_APPENDER; j++) {
+                    values.add(allocation.call());
+                }
+                return values;
+            }));
+        }
+        List<Long> values = appenders.stream()
+            .flatMap(Throwing.function((Future<List<Long>> future) -> future.get().stream()))
+            .collect(Collectors.toList());
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOGGER.info("{}: {} allocations by {} appenders in {} ms", name, values.size(), APPENDERS, elapsed);
+
+        assertThat(values).doesNotHaveDuplicates()
+            .containsOnlyElementsOf(LongStream.rangeClosed(1, APPENDERS * APPENDS_PER_APPENDER).boxed().collect(Collectors.toList()));
+    }
+}
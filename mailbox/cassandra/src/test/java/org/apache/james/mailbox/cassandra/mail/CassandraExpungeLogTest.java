@@ -0,0 +1,120 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CassandraExpungeLogTest {
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraMessageModule());
+    private static final CassandraId MAILBOX_ID = CassandraId.timeBased();
+
+    private CassandraExpungeLog testee;
+
+    @Before
+    public void setUp() throws Exception {
+        CASSANDRA.ensureAllTables();
+        testee = new CassandraExpungeLog(CASSANDRA.getConf());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void expungedSinceShouldReturnNothingWhenNothingWasLogged() throws Exception {
+        assertThat(testee.expungedSince(MAILBOX_ID, 0).join()).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    public void expungedSinceShouldReturnUidsLoggedAfterTheModSeq() throws Exception {
+        testee.log(MAILBOX_ID, 5, Arrays.asList(1L, 2L)).join();
+        testee.log(MAILBOX_ID, 8, Collections.singletonList(4L)).join();
+
+        assertThat(testee.expungedSince(MAILBOX_ID, 5).join().get()).containsExactly(4L);
+    }
+
+    @Test
+    public void expungedSinceShouldReturnNothingBeforeTheFirstLoggedExpunge() throws Exception {
+        testee.log(MAILBOX_ID, 5, Arrays.asList(1L, 2L)).join();
+
+        assertThat(testee.expungedSince(MAILBOX_ID, 3).join()).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    public void expungedSinceShouldReturnNothingWhenTheEntriesWerePruned() throws Exception {
+        testee = new CassandraExpungeLog(CASSANDRA.getConf(), Duration.ZERO, Clock.systemUTC());
+        testee.log(MAILBOX_ID, 5, Arrays.asList(1L, 2L)).join();
+        testee.log(MAILBOX_ID, 8, Collections.singletonList(4L)).join();
+
+        assertThat(testee.expungedSince(MAILBOX_ID, 5).join()).isEqualTo(Optional.empty());
+        assertThat(testee.expungedSince(MAILBOX_ID, 8).join().get()).isEmpty();
+    }
+
+    @Test
+    public void logShouldPruneAnExpungeOfMoreUidsThanAPruneBatch() throws Exception {
+        testee = new CassandraExpungeLog(CASSANDRA.getConf(), Duration.ZERO, Clock.systemUTC());
+        List<Long> uids = LongStream.rangeClosed(1, 250).boxed().collect(Collectors.toList());
+
+        testee.log(MAILBOX_ID, 5, uids).join();
+
+        assertThat(testee.expungedSince(MAILBOX_ID, 4).join()).isEqualTo(Optional.empty());
+        assertThat(testee.expungedSince(MAILBOX_ID, 5).join().get()).isEmpty();
+        assertThat(CASSANDRA.getConf().execute("SELECT * FROM expungeLog").all()).isEmpty();
+    }
+
+    @Test
+    public void logShouldKeepPruningAfterAnExpungeOfMoreUidsThanAPruneBatch() throws Exception {
+        testee = new CassandraExpungeLog(CASSANDRA.getConf(), Duration.ZERO, Clock.systemUTC());
+        testee.log(MAILBOX_ID, 5, LongStream.rangeClosed(1, 250).boxed().collect(Collectors.toList())).join();
+
+        testee.log(MAILBOX_ID, 8, Collections.singletonList(300L)).join();
+
+        assertThat(testee.expungedSince(MAILBOX_ID, 5).join()).isEqualTo(Optional.empty());
+        assertThat(CASSANDRA.getConf().execute("SELECT * FROM expungeLog").all()).isEmpty();
+    }
+
+    @Test
+    public void clearShouldForgetTheLogAndTheFloorOfTheMailbox() throws Exception {
+        testee.log(MAILBOX_ID, 5, Arrays.asList(1L, 2L)).join();
+
+        testee.clear(MAILBOX_ID).join();
+
+        assertThat(testee.expungedSince(MAILBOX_ID, 5).join()).isEqualTo(Optional.empty());
+        assertThat(CASSANDRA.getConf().execute("SELECT * FROM expungeLog").all()).isEmpty();
+        assertThat(CASSANDRA.getConf().execute("SELECT * FROM expungeLogFloor").all()).isEmpty();
+    }
+}
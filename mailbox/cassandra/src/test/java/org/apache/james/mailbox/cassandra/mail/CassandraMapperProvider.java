@@ -38,12 +38,13 @@ public class CassandraMapperProvider implements MapperProvider<CassandraId> {
 
     @Override
     public MessageMapper<CassandraId> createMessageMapper() throws MailboxException {
-        return new CassandraMailboxSessionMapperFactory(
+        CassandraMailboxSessionMapperFactory mapperFactory = new CassandraMailboxSessionMapperFactory(
             new CassandraUidProvider(cassandra.getConf()),
             new CassandraModSeqProvider(cassandra.getConf()),
             cassandra.getConf(),
-            cassandra.getTypesProvider()
-        ).getMessageMapper(new MockMailboxSession("benwa"));
+            cassandra.getTypesProvider());
+        mapperFactory.getMessageModSeqIndexMigration().apply();
+        return mapperFactory.getMessageMapper(new MockMailboxSession("benwa"));
     }
 
     @Override
@@ -0,0 +1,163 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.mail.Flags;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.CassandraMailboxSessionMapperFactory;
+import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMailboxCounterModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMailboxModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraModSeqModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraUidModule;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CassandraMessageConcurrentExpungeTest {
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraModuleComposite(
+        new CassandraAclModule(),
+        new CassandraMailboxModule(),
+        new CassandraMessageModule(),
+        new CassandraMailboxCounterModule(),
+        new CassandraModSeqModule(),
+        new CassandraUidModule()));
+    private static final String CONTENT = "Subject: test\r\n\r\nbody";
+    private static final int CONCURRENT_EXPUNGES = 8;
+    private static final int ROUNDS = 10;
+
+    private CassandraMailboxSessionMapperFactory mapperFactory;
+    private SimpleMailbox<CassandraId> inbox;
+    private SimpleMailbox<CassandraId> archive;
+    private MessageMapper<CassandraId> messageMapper;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        CASSANDRA.ensureAllTables();
+        mapperFactory = new CassandraMailboxSessionMapperFactory(
+            new CassandraUidProvider(CASSANDRA.getConf()),
+            new CassandraModSeqProvider(CASSANDRA.getConf()),
+            CASSANDRA.getConf(),
+            CASSANDRA.getTypesProvider());
+        mapperFactory.getMessageModSeqIndexMigration().apply();
+        MockMailboxSession session = new MockMailboxSession("benwa");
+        inbox = new SimpleMailbox<>(new MailboxPath("#private", "benwa", "INBOX"), 1234);
+        archive = new SimpleMailbox<>(new MailboxPath("#private", "benwa", "Archive"), 1235);
+        mapperFactory.getMailboxMapper(session).save(inbox);
+        mapperFactory.getMailboxMapper(session).save(archive);
+        messageMapper = mapperFactory.getMessageMapper(session);
+        executor = Executors.newFixedThreadPool(CONCURRENT_EXPUNGES);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void concurrentExpungesShouldKeepTheContentOfACopy() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            long copyUid = addDeletedMessageWithACopy();
+
+            expungeConcurrently();
+
+            assertThat(fullContent(archive, copyUid)).isEqualTo(CONTENT);
+        }
+    }
+
+    @Test
+    public void concurrentExpungesShouldReportAndCountTheExpungedMessageOnce() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            addDeletedMessageWithACopy();
+
+            assertThat(expungeConcurrently()).isEqualTo(1);
+            assertThat(messageMapper.countMessagesInMailbox(inbox)).isEqualTo(0);
+        }
+    }
+
+    private long addDeletedMessageWithACopy() throws Exception {
+        SimpleMailboxMessage<CassandraId> message = new SimpleMailboxMessage<>(new Date(), CONTENT.length(), CONTENT.indexOf("body"),
+            new SharedByteArrayInputStream(CONTENT.getBytes()), new Flags(Flags.Flag.DELETED), new PropertyBuilder(), inbox.getMailboxId());
+        messageMapper.add(inbox, message);
+        MessageMetaData copy = messageMapper.copy(archive, message(inbox, message.getUid()));
+        return copy.getUid();
+    }
+
+    /**
+     * @return the number of messages reported as expunged by all the expunges
+     */
+    private int expungeConcurrently() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> expunges = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_EXPUNGES; i++) {
+            MessageMapper<CassandraId> mapper = mapperFactory.getMessageMapper(new MockMailboxSession("benwa"));
+            expunges.add(executor.submit(() -> {
+                start.await();
+                return mapper.expungeMarkedForDeletionInMailbox(inbox, MessageRange.all()).size();
+            }));
+        }
+        start.countDown();
+        int expunged = 0;
+        for (Future<Integer> expunge : expunges) {
+            expunged += expunge.get();
+        }
+        return expunged;
+    }
+
+    private MailboxMessage<CassandraId> message(SimpleMailbox<CassandraId> mailbox, long uid) throws Exception {
+        Iterator<MailboxMessage<CassandraId>> messages = messageMapper.findInMailbox(mailbox, MessageRange.one(uid), FetchType.Full, 1);
+        assertThat(messages.hasNext()).isTrue();
+        return messages.next();
+    }
+
+    private String fullContent(SimpleMailbox<CassandraId> mailbox, long uid) throws Exception {
+        return IOUtils.toString(message(mailbox, uid).getFullContent());
+    }
+}
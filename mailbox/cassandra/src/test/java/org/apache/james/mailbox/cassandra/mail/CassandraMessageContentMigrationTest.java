@@ -0,0 +1,211 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.CassandraMailboxSessionMapperFactory;
+import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMailboxCounterModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMailboxModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraModSeqModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraUidModule;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
+import org.apache.james.mailbox.cassandra.table.CassandraMigrationTable;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.Row;
+
+public class CassandraMessageContentMigrationTest {
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraModuleComposite(
+        new CassandraAclModule(),
+        new CassandraMailboxModule(),
+        new CassandraMessageModule(),
+        new CassandraMailboxCounterModule(),
+        new CassandraModSeqModule(),
+        new CassandraUidModule()));
+    private static final String HEADER = "Subject: test\r\n\r\n";
+    private static final String BODY = "body";
+    private static final long UID = 1;
+
+    private CassandraMailboxSessionMapperFactory mapperFactory;
+    private SimpleMailbox<CassandraId> mailbox;
+    private MessageMapper<CassandraId> messageMapper;
+    private CassandraBlobsDAO blobsDAO;
+    private CassandraMessageContentMigration testee;
+
+    @Before
+    public void setUp() throws Exception {
+        CASSANDRA.ensureAllTables();
+        mapperFactory = new CassandraMailboxSessionMapperFactory(
+            new CassandraUidProvider(CASSANDRA.getConf()),
+            new CassandraModSeqProvider(CASSANDRA.getConf()),
+            CASSANDRA.getConf(),
+            CASSANDRA.getTypesProvider());
+        MockMailboxSession session = new MockMailboxSession("benwa");
+        mailbox = new SimpleMailbox<>(new MailboxPath("#private", "benwa", "INBOX"), 1234);
+        mapperFactory.getMailboxMapper(session).save(mailbox);
+        messageMapper = mapperFactory.getMessageMapper(session);
+        blobsDAO = new CassandraBlobsDAO(CASSANDRA.getConf());
+        testee = mapperFactory.getMessageContentMigration();
+        insertLegacyMessage();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void legacyMessagesShouldBeReadableBeforeTheMigration() throws Exception {
+        assertThat(fullContent()).isEqualTo(HEADER + BODY);
+    }
+
+    @Test
+    public void legacyMessageBodiesShouldBeReadableBeforeTheMigration() throws Exception {
+        assertThat(bodyContent()).isEqualTo(BODY);
+    }
+
+    @Test
+    public void applyShouldMoveTheContentToTheBlobTable() throws Exception {
+        testee.apply();
+
+        Row row = messageRow();
+        assertThat(row.isNull(CassandraMessageTable.HEADER_CONTENT)).isTrue();
+        assertThat(row.isNull(CassandraMessageTable.BODY_CONTENT)).isTrue();
+        assertThat(blobsDAO.read(row.getString(CassandraMessageTable.HEADER_BLOB_ID)).join())
+            .isEqualTo(HEADER.getBytes(StandardCharsets.UTF_8));
+        assertThat(blobsDAO.read(row.getString(CassandraMessageTable.BODY_BLOB_ID)).join())
+            .isEqualTo(BODY.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void migratedMessagesShouldBeReadable() throws Exception {
+        testee.apply();
+
+        assertThat(fullContent()).isEqualTo(HEADER + BODY);
+        assertThat(bodyContent()).isEqualTo(BODY);
+    }
+
+    @Test
+    public void applyShouldBeRecorded() throws Exception {
+        testee.apply();
+
+        assertThat(testee.isApplied()).isTrue();
+    }
+
+    @Test
+    public void applyShouldReleaseItsLease() throws Exception {
+        testee.apply();
+
+        assertThat(migrationRow(CassandraMessageContentMigration.NAME + ".lease")).isNull();
+    }
+
+    @Test
+    public void applyShouldNotMoveTheContentWhileAnotherNodeHoldsTheLease() throws Exception {
+        CASSANDRA.getConf().execute(insertInto(CassandraMigrationTable.TABLE_NAME)
+            .value(CassandraMigrationTable.NAME, CassandraMessageContentMigration.NAME + ".lease")
+            .value(CassandraMigrationTable.APPLIED_AT, new Date()));
+
+        testee.apply();
+
+        assertThat(messageRow().isNull(CassandraMessageTable.HEADER_BLOB_ID)).isTrue();
+        assertThat(testee.isApplied()).isFalse();
+    }
+
+    @Test
+    public void deletingAMigratedMessageShouldDeleteItsBlobs() throws Exception {
+        testee.apply();
+        Row row = messageRow();
+
+        messageMapper.delete(mailbox, messageMapper.findInMailbox(mailbox, MessageRange.one(UID), FetchType.Metadata, 1).next());
+
+        assertThat(blobsDAO.read(row.getString(CassandraMessageTable.HEADER_BLOB_ID)).join()).isEmpty();
+        assertThat(blobsDAO.read(row.getString(CassandraMessageTable.BODY_BLOB_ID)).join()).isEmpty();
+    }
+
+    private String fullContent() throws Exception {
+        MailboxMessage<CassandraId> message = messageMapper.findInMailbox(mailbox, MessageRange.one(UID), FetchType.Full, 1).next();
+        return IOUtils.toString(message.getFullContent(), StandardCharsets.UTF_8);
+    }
+
+    private String bodyContent() throws Exception {
+        MailboxMessage<CassandraId> message = messageMapper.findInMailbox(mailbox, MessageRange.one(UID), FetchType.Body, 1).next();
+        return IOUtils.toString(message.getBodyContent(), StandardCharsets.UTF_8);
+    }
+
+    private Row messageRow() {
+        return CASSANDRA.getConf().execute(select().all()
+                .from(CassandraMessageTable.TABLE_NAME)
+                .where(eq(CassandraMessageTable.MAILBOX_ID, mailbox.getMailboxId().asUuid()))
+                .and(eq(CassandraMessageTable.IMAP_UID, UID)))
+            .one();
+    }
+
+    private Row migrationRow(String name) {
+        return CASSANDRA.getConf().execute(select().all()
+                .from(CassandraMigrationTable.TABLE_NAME)
+                .where(eq(CassandraMigrationTable.NAME, name)))
+            .one();
+    }
+
+    private void insertLegacyMessage() {
+        byte[] header = HEADER.getBytes(StandardCharsets.UTF_8);
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+        CASSANDRA.getConf().execute(insertInto(CassandraMessageTable.TABLE_NAME)
+            .value(CassandraMessageTable.MAILBOX_ID, mailbox.getMailboxId().asUuid())
+            .value(CassandraMessageTable.IMAP_UID, UID)
+            .value(CassandraMessageTable.MOD_SEQ, 1L)
+            .value(CassandraMessageTable.INTERNAL_DATE, new Date())
+            .value(CassandraMessageTable.BODY_START_OCTET, header.length)
+            .value(CassandraMessageTable.FULL_CONTENT_OCTETS, (long) (header.length + body.length))
+            .value(CassandraMessageTable.BODY_OCTECTS, (long) body.length)
+            .value(CassandraMessageTable.Flag.ANSWERED, false)
+            .value(CassandraMessageTable.Flag.DELETED, false)
+            .value(CassandraMessageTable.Flag.DRAFT, false)
+            .value(CassandraMessageTable.Flag.FLAGGED, false)
+            .value(CassandraMessageTable.Flag.RECENT, true)
+            .value(CassandraMessageTable.Flag.SEEN, false)
+            .value(CassandraMessageTable.Flag.USER, false)
+            .value(CassandraMessageTable.HEADER_CONTENT, ByteBuffer.wrap(header))
+            .value(CassandraMessageTable.BODY_CONTENT, ByteBuffer.wrap(body)));
+    }
+}
@@ -0,0 +1,147 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.mail.Flags;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
+import org.apache.james.mailbox.FlagsBuilder;
+import org.apache.james.mailbox.MessageManager.FlagsUpdateMode;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.CassandraMailboxSessionMapperFactory;
+import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMailboxCounterModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMailboxModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraModSeqModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraUidModule;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.FlagsUpdateCalculator;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CassandraMessageFlagsUpdateTest {
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraModuleComposite(
+        new CassandraAclModule(),
+        new CassandraMailboxModule(),
+        new CassandraMessageModule(),
+        new CassandraMailboxCounterModule(),
+        new CassandraModSeqModule(),
+        new CassandraUidModule()));
+    private static final String CONTENT = "Subject: test\r\n\r\nbody";
+    private static final int MESSAGE_COUNT = 3;
+
+    private SimpleMailbox<CassandraId> mailbox;
+    private MessageMapper<CassandraId> messageMapper;
+
+    @Before
+    public void setUp() throws Exception {
+        CASSANDRA.ensureAllTables();
+        CassandraMailboxSessionMapperFactory mapperFactory = new CassandraMailboxSessionMapperFactory(
+            new CassandraUidProvider(CASSANDRA.getConf()),
+            new CassandraModSeqProvider(CASSANDRA.getConf()),
+            CASSANDRA.getConf(),
+            CASSANDRA.getTypesProvider());
+        mapperFactory.getMessageModSeqIndexMigration().apply();
+        MockMailboxSession session = new MockMailboxSession("benwa");
+        mailbox = new SimpleMailbox<>(new MailboxPath("#private", "benwa", "INBOX"), 1234);
+        mapperFactory.getMailboxMapper(session).save(mailbox);
+        messageMapper = mapperFactory.getMessageMapper(session);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            messageMapper.add(mailbox, new SimpleMailboxMessage<>(new Date(), CONTENT.length(), CONTENT.indexOf("body"),
+                new SharedByteArrayInputStream(CONTENT.getBytes()), new Flags(), new PropertyBuilder(), mailbox.getMailboxId()));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void updateFlagsShouldGiveTheSameModSeqToAllTheUpdatedMessages() throws Exception {
+        long highestModSeq = messageMapper.getHighestModSeq(mailbox);
+
+        List<UpdatedFlags> updatedFlags = markSeen(MessageRange.all());
+
+        assertThat(updatedFlags).hasSize(MESSAGE_COUNT);
+        assertThat(updatedFlags.stream().map(UpdatedFlags::getModSeq).distinct().collect(Collectors.toList()))
+            .containsExactly(highestModSeq + 1);
+    }
+
+    @Test
+    public void updateFlagsShouldReserveASingleModSeq() throws Exception {
+        long highestModSeq = messageMapper.getHighestModSeq(mailbox);
+
+        markSeen(MessageRange.all());
+
+        assertThat(messageMapper.getHighestModSeq(mailbox)).isEqualTo(highestModSeq + 1);
+    }
+
+    @Test
+    public void updatedMessagesShouldBeReturnedAsChangedSinceThePreviousModSeq() throws Exception {
+        long highestModSeq = messageMapper.getHighestModSeq(mailbox);
+
+        markSeen(MessageRange.all());
+
+        List<Long> changedUids = new ArrayList<>();
+        messageMapper.findChangedSinceInMailbox(mailbox, MessageRange.all(), highestModSeq, FetchType.Metadata, -1)
+            .forEachRemaining(message -> changedUids.add(message.getUid()));
+        assertThat(changedUids).hasSize(MESSAGE_COUNT);
+    }
+
+    @Test
+    public void updateFlagsShouldIncreaseTheModSeqOfEachCall() throws Exception {
+        List<UpdatedFlags> firstUpdate = markSeen(MessageRange.all());
+
+        List<UpdatedFlags> secondUpdate = updateFlags(new FlagsUpdateCalculator(new FlagsBuilder().add(Flags.Flag.FLAGGED).build(), FlagsUpdateMode.ADD),
+            MessageRange.all());
+
+        assertThat(secondUpdate.get(0).getModSeq()).isGreaterThan(firstUpdate.get(0).getModSeq());
+    }
+
+    private List<UpdatedFlags> markSeen(MessageRange range) throws Exception {
+        return updateFlags(new FlagsUpdateCalculator(new Flags(Flags.Flag.SEEN), FlagsUpdateMode.ADD), range);
+    }
+
+    private List<UpdatedFlags> updateFlags(FlagsUpdateCalculator calculator, MessageRange range) throws Exception {
+        List<UpdatedFlags> updatedFlags = new ArrayList<>();
+        messageMapper.updateFlags(mailbox, calculator, range).forEachRemaining(updatedFlags::add);
+        return updatedFlags;
+    }
+}
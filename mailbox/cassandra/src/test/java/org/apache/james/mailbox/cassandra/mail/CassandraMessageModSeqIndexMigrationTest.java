@@ -0,0 +1,155 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.CassandraMailboxSessionMapperFactory;
+import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMailboxCounterModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMailboxModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraModSeqModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraUidModule;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageModSeqIndexTable;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CassandraMessageModSeqIndexMigrationTest {
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraModuleComposite(
+        new CassandraAclModule(),
+        new CassandraMailboxModule(),
+        new CassandraMessageModule(),
+        new CassandraMailboxCounterModule(),
+        new CassandraModSeqModule(),
+        new CassandraUidModule()));
+    private static final String HEADER = "Subject: test\r\n\r\n";
+    private static final String BODY = "body";
+    private static final long UID = 1;
+    private static final long MOD_SEQ = 5;
+
+    private SimpleMailbox<CassandraId> mailbox;
+    private MessageMapper<CassandraId> messageMapper;
+    private CassandraMessageModSeqIndexMigration testee;
+
+    @Before
+    public void setUp() throws Exception {
+        CASSANDRA.ensureAllTables();
+        CassandraMailboxSessionMapperFactory mapperFactory = new CassandraMailboxSessionMapperFactory(
+            new CassandraUidProvider(CASSANDRA.getConf()),
+            new CassandraModSeqProvider(CASSANDRA.getConf()),
+            CASSANDRA.getConf(),
+            CASSANDRA.getTypesProvider());
+        MockMailboxSession session = new MockMailboxSession("benwa");
+        mailbox = new SimpleMailbox<>(new MailboxPath("#private", "benwa", "INBOX"), 1234);
+        mapperFactory.getMailboxMapper(session).save(mailbox);
+        messageMapper = mapperFactory.getMessageMapper(session);
+        testee = mapperFactory.getMessageModSeqIndexMigration();
+        insertUnindexedMessage();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void findChangedSinceShouldReturnUnindexedMessagesBeforeTheMigration() throws Exception {
+        assertThat(changedSinceUids(MOD_SEQ - 1)).containsExactly(UID);
+    }
+
+    @Test
+    public void findChangedSinceShouldNotReturnUnchangedMessagesBeforeTheMigration() throws Exception {
+        assertThat(changedSinceUids(MOD_SEQ)).isEmpty();
+    }
+
+    @Test
+    public void applyShouldIndexExistingMessages() throws Exception {
+        testee.apply();
+
+        assertThat(CASSANDRA.getConf().execute(select().all().from(CassandraMessageModSeqIndexTable.TABLE_NAME)).one()
+            .getLong(CassandraMessageModSeqIndexTable.MOD_SEQ)).isEqualTo(MOD_SEQ);
+    }
+
+    @Test
+    public void findChangedSinceShouldReturnMessagesIndexedByTheMigration() throws Exception {
+        testee.apply();
+
+        assertThat(changedSinceUids(MOD_SEQ - 1)).containsExactly(UID);
+    }
+
+    @Test
+    public void applyShouldBeRecorded() throws Exception {
+        testee.apply();
+
+        assertThat(testee.isApplied()).isTrue();
+    }
+
+    private List<Long> changedSinceUids(long modSeq) throws Exception {
+        Iterator<MailboxMessage<CassandraId>> messages = messageMapper.findChangedSinceInMailbox(mailbox, MessageRange.all(), modSeq, FetchType.Metadata, -1);
+        List<Long> uids = new ArrayList<>();
+        messages.forEachRemaining(message -> uids.add(message.getUid()));
+        return uids;
+    }
+
+    private void insertUnindexedMessage() {
+        byte[] header = HEADER.getBytes(StandardCharsets.UTF_8);
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+        CASSANDRA.getConf().execute(insertInto(CassandraMessageTable.TABLE_NAME)
+            .value(CassandraMessageTable.MAILBOX_ID, mailbox.getMailboxId().asUuid())
+            .value(CassandraMessageTable.IMAP_UID, UID)
+            .value(CassandraMessageTable.MOD_SEQ, MOD_SEQ)
+            .value(CassandraMessageTable.INTERNAL_DATE, new Date())
+            .value(CassandraMessageTable.BODY_START_OCTET, header.length)
+            .value(CassandraMessageTable.FULL_CONTENT_OCTETS, (long) (header.length + body.length))
+            .value(CassandraMessageTable.BODY_OCTECTS, (long) body.length)
+            .value(CassandraMessageTable.Flag.ANSWERED, false)
+            .value(CassandraMessageTable.Flag.DELETED, false)
+            .value(CassandraMessageTable.Flag.DRAFT, false)
+            .value(CassandraMessageTable.Flag.FLAGGED, false)
+            .value(CassandraMessageTable.Flag.RECENT, true)
+            .value(CassandraMessageTable.Flag.SEEN, false)
+            .value(CassandraMessageTable.Flag.USER, false)
+            .value(CassandraMessageTable.HEADER_CONTENT, ByteBuffer.wrap(header))
+            .value(CassandraMessageTable.BODY_CONTENT, ByteBuffer.wrap(body)));
+    }
+}
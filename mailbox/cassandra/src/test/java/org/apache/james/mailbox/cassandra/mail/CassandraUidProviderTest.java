@@ -90,6 +90,13 @@ public class CassandraUidProviderTest {
             );
     }
 
+    @Test
+    public void nextUidsShouldReserveARange() throws Exception {
+        long lastUid = uidProvider.nextUid(null, mailbox);
+        assertThat(uidProvider.nextUids(null, mailbox, 10)).isEqualTo(lastUid + 10);
+        assertThat(uidProvider.nextUid(null, mailbox)).isEqualTo(lastUid + 11);
+    }
+
     @Test
     public void nextUidShouldGenerateUniqueValuesWhenParallelCalls() throws Exception {
         int nbEntries = 100;
@@ -0,0 +1,102 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.mail.internet.SharedInputStream;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Bytes;
+
+public class ChunkedSharedInputStreamTest {
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraMessageModule());
+    private static final byte[] HEADER = "Subject: test\r\n\r\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BODY = Strings.repeat("0123456789", CassandraBlobsDAO.CHUNK_SIZE / 4).getBytes(StandardCharsets.UTF_8);
+
+    private CassandraBlobsDAO blobsDAO;
+    private String bodyBlobId;
+
+    @Before
+    public void setUp() throws Exception {
+        CASSANDRA.ensureAllTables();
+        blobsDAO = new CassandraBlobsDAO(CASSANDRA.getConf());
+        bodyBlobId = blobsDAO.save(BODY, "reference").join();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void fullStreamShouldReturnHeaderThenBody() throws Exception {
+        InputStream testee = ChunkedSharedInputStream.full(blobsDAO, HEADER, bodyBlobId, BODY.length);
+
+        assertThat(ByteStreams.toByteArray(testee)).isEqualTo(Bytes.concat(HEADER, BODY));
+    }
+
+    @Test
+    public void bodyOnlyStreamShouldReturnZerosInPlaceOfHeader() throws Exception {
+        InputStream testee = ChunkedSharedInputStream.bodyOnly(blobsDAO, HEADER.length, bodyBlobId, BODY.length);
+
+        assertThat(ByteStreams.toByteArray(testee)).isEqualTo(Bytes.concat(new byte[HEADER.length], BODY));
+    }
+
+    @Test
+    public void newStreamShouldReturnTheRequestedRangeAcrossChunks() throws Exception {
+        SharedInputStream testee = ChunkedSharedInputStream.full(blobsDAO, HEADER, bodyBlobId, BODY.length);
+        int start = HEADER.length + CassandraBlobsDAO.CHUNK_SIZE - 5;
+        int end = start + 10;
+
+        assertThat(ByteStreams.toByteArray(testee.newStream(start, end)))
+            .isEqualTo(ByteStreams.toByteArray(new ByteArrayInputStream(BODY, CassandraBlobsDAO.CHUNK_SIZE - 5, 10)));
+    }
+
+    @Test
+    public void newStreamShouldBeRelativeToItsParent() throws Exception {
+        SharedInputStream testee = ChunkedSharedInputStream.full(blobsDAO, HEADER, bodyBlobId, BODY.length);
+        SharedInputStream body = (SharedInputStream) testee.newStream(HEADER.length, -1);
+
+        assertThat(ByteStreams.toByteArray(body.newStream(0, 10))).isEqualTo("0123456789".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void skipShouldMoveThePosition() throws Exception {
+        ChunkedSharedInputStream testee = ChunkedSharedInputStream.full(blobsDAO, HEADER, bodyBlobId, BODY.length);
+
+        testee.skip(HEADER.length + 3);
+
+        assertThat(testee.getPosition()).isEqualTo(HEADER.length + 3);
+        assertThat(testee.read()).isEqualTo('3');
+    }
+}
@@ -0,0 +1,145 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.fge.lambdas.Throwing;
+
+public class CoalescingRangeAllocatorTest {
+
+    private static final String KEY = "key";
+
+    private AtomicLong counter;
+    private AtomicInteger reservations;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        counter = new AtomicLong();
+        reservations = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(10);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private long reserve(String key, int count) {
+        reservations.incrementAndGet();
+        return counter.addAndGet(count);
+    }
+
+    @Test
+    public void allocateShouldReturnTheHighestValueOfTheRange() throws Exception {
+        CoalescingRangeAllocator<String> allocator = new CoalescingRangeAllocator<>(this::reserve, 10);
+
+        assertThat(allocator.allocate(KEY, 1)).isEqualTo(1);
+        assertThat(allocator.allocate(KEY, 3)).isEqualTo(4);
+        assertThat(allocator.allocate(KEY, 1)).isEqualTo(5);
+    }
+
+    @Test
+    public void allocateShouldReserveRangesBiggerThanMaxRangeSizeOnTheirOwn() throws Exception {
+        CoalescingRangeAllocator<String> allocator = new CoalescingRangeAllocator<>(this::reserve, 10);
+
+        assertThat(allocator.allocate(KEY, 20)).isEqualTo(20);
+        assertThat(reservations.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void allocateShouldPropagateReservationFailures() throws Exception {
+        MailboxException failure = new MailboxException("failure");
+        CoalescingRangeAllocator<String> allocator = new CoalescingRangeAllocator<>((key, count) -> {
+            throw failure;
+        }, 10);
+
+        try {
+            allocator.allocate(KEY, 1);
+        } catch (MailboxException e) {
+            assertThat(e).isSameAs(failure);
+            return;
+        }
+        throw new AssertionError("MailboxException expected");
+    }
+
+    @Test
+    public void allocateShouldHandOutEachValueOnceWhenConcurrentCalls() throws Exception {
+        int nbEntries = 1000;
+        CoalescingRangeAllocator<String> allocator = new CoalescingRangeAllocator<>(this::reserve, 10);
+
+        List<Long> values = IntStream.range(0, nbEntries)
+            .parallel()
+            .mapToObj(Throwing.intFunction(x -> allocator.allocate(KEY, 1)))
+            .collect(Collectors.toList());
+
+        assertThat(values).containsOnlyElementsOf(LongStream.rangeClosed(1, nbEntries).boxed().collect(Collectors.toList()))
+            .doesNotHaveDuplicates();
+        assertThat(counter.get()).isEqualTo(nbEntries);
+    }
+
+    @Test
+    public void allocateShouldServeWaitingRequestsWithASingleReservation() throws Exception {
+        CountDownLatch reservationStarted = new CountDownLatch(1);
+        CountDownLatch releaseReservation = new CountDownLatch(1);
+        CoalescingRangeAllocator<String> allocator = new CoalescingRangeAllocator<>((key, count) -> {
+            reservationStarted.countDown();
+            try {
+                releaseReservation.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new MailboxException("interrupted", e);
+            }
+            return reserve(key, count);
+        }, 10);
+
+        Future<Long> first = executor.submit(() -> allocator.allocate(KEY, 1));
+        reservationStarted.await(10, TimeUnit.SECONDS);
+        List<Future<Long>> waiting = IntStream.range(0, 5)
+            .mapToObj(x -> executor.submit(() -> allocator.allocate(KEY, 2)))
+            .collect(Collectors.toList());
+        Thread.sleep(200);
+        releaseReservation.countDown();
+
+        assertThat(first.get()).isEqualTo(1);
+        List<Long> values = waiting.stream()
+            .map(Throwing.function(Future::get))
+            .collect(Collectors.toList());
+        assertThat(values).containsOnly(3L, 5L, 7L, 9L, 11L);
+        assertThat(reservations.get()).isEqualTo(2);
+    }
+}
@@ -18,18 +18,30 @@
  ****************************************************************/
 package org.apache.james.mailbox.elasticsearch;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.index.query.QueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 
 public class ElasticSearchIndexer {
 
@@ -53,16 +65,30 @@ public class ElasticSearchIndexer {
         }
     }
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ElasticSearchIndexer.class);
+
     public static final String MAILBOX_INDEX = "mailbox";
     public static final String MESSAGE_TYPE = "message";
+    public static final int DEFAULT_BULK_SIZE = 100;
+    public static final int DEFAULT_BULK_RETRIES = 3;
+    public static final long RETRY_DELAY_IN_MS = 100;
     
     private final Client client;
     private final DeleteByQueryPerformer deleteByQueryPerformer;
+    private final int bulkSize;
+    private final int bulkRetries;
 
     @Inject
     public ElasticSearchIndexer(Client client, DeleteByQueryPerformer deleteByQueryPerformer) {
+        this(client, deleteByQueryPerformer, DEFAULT_BULK_SIZE, DEFAULT_BULK_RETRIES);
+    }
+
+    @VisibleForTesting
+    ElasticSearchIndexer(Client client, DeleteByQueryPerformer deleteByQueryPerformer, int bulkSize, int bulkRetries) {
         this.client = client;
         this.deleteByQueryPerformer = deleteByQueryPerformer;
+        this.bulkSize = bulkSize;
+        this.bulkRetries = bulkRetries;
     }
     
     public IndexResponse indexMessage(String id, String content) {
@@ -72,6 +98,55 @@ public class ElasticSearchIndexer {
             .get();
     }
 
+    /**
+     * Index the given documents, keyed by id, with bulk requests of at most bulkSize documents. The documents
+     * rejected by Elasticsearch are sent again, up to bulkRetries times, before being given up.
+     */
+    public void indexMessages(Map<String, String> contents) {
+        Preconditions.checkNotNull(contents);
+        contents.values().forEach(this::checkArgument);
+        Iterables.partition(contents.entrySet(), bulkSize)
+            .forEach(this::indexWithRetries);
+    }
+
+    private void indexWithRetries(List<Map.Entry<String, String>> documents) {
+        Map<String, String> pendingDocuments = documents.stream()
+            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (first, second) -> second, LinkedHashMap::new));
+        for (int attempt = 0; attempt <= bulkRetries; attempt++) {
+            if (attempt > 0) {
+                waitBeforeRetry(attempt);
+            }
+            pendingDocuments.keySet().retainAll(indexReturningFailedIds(pendingDocuments));
+            if (pendingDocuments.isEmpty()) {
+                return;
+            }
+        }
+        LOGGER.error("Unable to index documents {} after {} retries", pendingDocuments.keySet(), bulkRetries);
+    }
+
+    private Set<String> indexReturningFailedIds(Map<String, String> documents) {
+        BulkRequestBuilder bulkRequestBuilder = client.prepareBulk();
+        documents.forEach((id, content) -> bulkRequestBuilder.add(client.prepareIndex(MAILBOX_INDEX, MESSAGE_TYPE, id)
+            .setSource(content)));
+        try {
+            return Arrays.stream(bulkRequestBuilder.get().getItems())
+                .filter(BulkItemResponse::isFailed)
+                .map(BulkItemResponse::getId)
+                .collect(Collectors.toSet());
+        } catch (ElasticsearchException e) {
+            LOGGER.warn("Bulk indexing of {} documents failed", documents.size(), e);
+            return documents.keySet();
+        }
+    }
+
+    private void waitBeforeRetry(int attempt) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_IN_MS * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     public BulkResponse updateMessages(List<UpdatedRepresentation> updatedDocumentParts) {
         Preconditions.checkNotNull(updatedDocumentParts);
         BulkRequestBuilder bulkRequestBuilder = client.prepareBulk();
@@ -21,7 +21,9 @@ package org.apache.james.mailbox.elasticsearch.events;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -43,6 +45,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.collect.Maps;
 
 public class ElasticSearchListeningMessageSearchIndex<Id extends MailboxId> extends ListeningMessageSearchIndex<Id> {
 
@@ -81,6 +84,28 @@ public class ElasticSearchListeningMessageSearchIndex<Id extends MailboxId> exte
         }
     }
 
+    @Override
+    public void add(MailboxSession session, Mailbox<Id> mailbox, List<MailboxMessage<Id>> messages) {
+        Map<String, String> contents = messages.parallelStream()
+            .map(message -> Maps.immutableEntry(indexIdFor(mailbox, message.getUid()), toJson(message)))
+            .filter(entry -> entry.getValue() != null)
+            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (first, second) -> second, LinkedHashMap::new));
+        try {
+            indexer.indexMessages(contents);
+        } catch (Exception e) {
+            LOGGER.error("Error when indexing {} messages in mailbox {}", messages.size(), mailbox.getMailboxId().serialize(), e);
+        }
+    }
+
+    private String toJson(MailboxMessage<Id> message) {
+        try {
+            return messageToElasticSearchJson.convertToJson(message);
+        } catch (Exception e) {
+            LOGGER.error("Error when converting message " + message.getUid(), e);
+            return null;
+        }
+    }
+
     @Override
     public void delete(MailboxSession session, Mailbox<Id> mailbox, List<Long> expungedUids) throws MailboxException {
         try {
@@ -23,6 +23,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Executors;
 
 import org.apache.james.mailbox.elasticsearch.json.JsonMessageConstants;
@@ -38,6 +40,7 @@ import org.junit.Test;
 import org.junit.rules.RuleChain;
 import org.junit.rules.TemporaryFolder;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
 public class ElasticSearchIndexerTest {
@@ -50,13 +53,14 @@ public class ElasticSearchIndexerTest {
     public RuleChain ruleChain = RuleChain.outerRule(temporaryFolder).around(embeddedElasticSearch);
 
     private Node node;
+    private DeleteByQueryPerformer deleteByQueryPerformer;
     private ElasticSearchIndexer testee;
 
     @Before
     public void setup() throws IOException {
         node = embeddedElasticSearch.getNode();
         TestingClientProvider clientProvider = new TestingClientProvider(node);
-        DeleteByQueryPerformer deleteByQueryPerformer = new DeleteByQueryPerformer(clientProvider.get(), Executors.newSingleThreadExecutor(), MINIMUM_BATCH_SIZE) {
+        deleteByQueryPerformer = new DeleteByQueryPerformer(clientProvider.get(), Executors.newSingleThreadExecutor(), MINIMUM_BATCH_SIZE) {
             @Override
             public void perform(QueryBuilder queryBuilder) {
                 doDeleteByQuery(queryBuilder);
@@ -82,6 +86,32 @@ public class ElasticSearchIndexerTest {
         }
     }
     
+    @Test
+    public void indexMessagesShouldIndexEveryDocument() throws Exception {
+        ElasticSearchIndexer bulkIndexer = new ElasticSearchIndexer(node.client(), deleteByQueryPerformer, 2, ElasticSearchIndexer.DEFAULT_BULK_RETRIES);
+
+        bulkIndexer.indexMessages(ImmutableMap.of(
+            "1", "{\"message\": \"trying out Elasticsearch\"}",
+            "2", "{\"message\": \"trying bulk requests\"}",
+            "3", "{\"message\": \"trying again\"}"));
+        embeddedElasticSearch.awaitForElasticSearch();
+
+        try (Client client = node.client()) {
+            SearchResponse searchResponse = client.prepareSearch(ElasticSearchIndexer.MAILBOX_INDEX)
+                .setTypes(ElasticSearchIndexer.MESSAGE_TYPE)
+                .setQuery(QueryBuilders.matchQuery("message", "trying"))
+                .get();
+            assertThat(searchResponse.getHits().getTotalHits()).isEqualTo(3);
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void indexMessagesShouldThrowWhenJsonIsNull() {
+        Map<String, String> contents = new HashMap<>();
+        contents.put("1", null);
+        testee.indexMessages(contents);
+    }
+
     @Test(expected=IllegalArgumentException.class)
     public void indexMessageShouldThrowWhenJsonIsNull() throws InterruptedException {
         testee.indexMessage("1", null);
@@ -50,6 +50,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
 public class ElasticSearchListeningMailboxMessageSearchIndexTest {
@@ -123,6 +124,27 @@ public class ElasticSearchListeningMailboxMessageSearchIndexTest {
         control.verify();
     }
     
+    @Test
+    @SuppressWarnings("unchecked")
+    public void addShouldIndexSeveralMessagesAtOnce() throws Exception {
+        MailboxSession session = control.createMock(MailboxSession.class);
+        Mailbox<TestId> mailbox = control.createMock(Mailbox.class);
+
+        TestId mailboxId = TestId.of(12);
+        expect(mailbox.getMailboxId()).andReturn(mailboxId).times(2);
+        MailboxMessage<TestId> message1 = mockedMessage(1);
+        MailboxMessage<TestId> message2 = mockedMessage(2);
+
+        indexer.indexMessages(ImmutableMap.of(
+            mailboxId.serialize() + ":1", "json content",
+            mailboxId.serialize() + ":2", "json content"));
+        expectLastCall();
+
+        control.replay();
+        testee.add(session, mailbox, Lists.newArrayList(message1, message2));
+        control.verify();
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void deleteShouldWork() throws Exception {
@@ -55,8 +55,10 @@ import org.apache.james.mailbox.hbase.HBaseNonTransactionalMapper;
 import org.apache.james.mailbox.hbase.mail.model.HBaseMailbox;
 import org.apache.james.mailbox.model.MailboxACL;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.MailboxHierarchy;
 import org.apache.james.mailbox.store.mail.MailboxMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxWithChildren;
 
 /**
  * Data access management for mailbox.
@@ -270,6 +272,11 @@ public class HBaseMailboxMapper extends HBaseNonTransactionalMapper implements M
         }
     }
     
+    @Override
+    public List<MailboxWithChildren<HBaseId>> findMailboxWithPathLikeWithChildren(MailboxPath mailboxPath, char delimiter) throws MailboxException {
+        return MailboxHierarchy.findMailboxWithPathLikeWithChildren(this, mailboxPath, delimiter);
+    }
+
     @Override
     public boolean hasChildren(Mailbox<HBaseId> mailbox, char c) throws MailboxException, MailboxNotFoundException {
         HTable mailboxes = null;
@@ -135,6 +135,27 @@ public class HBaseMessageMapper extends NonTransactionalMapper implements Messag
         }
     }
 
+    @Override
+    public Iterator<MailboxMessage<HBaseId>> findChangedSinceInMailbox(Mailbox<HBaseId> mailbox, MessageRange set, long modSeq, FetchType fType, int max) throws MailboxException {
+        List<MailboxMessage<HBaseId>> results = new ArrayList<MailboxMessage<HBaseId>>();
+        Iterator<MailboxMessage<HBaseId>> messages = findInMailbox(mailbox, set, fType, -1);
+        while (messages.hasNext() && (max <= 0 || results.size() < max)) {
+            MailboxMessage<HBaseId> message = messages.next();
+            if (message.getModSeq() > modSeq) {
+                results.add(message);
+            }
+        }
+        return results.iterator();
+    }
+
+    /**
+     * No expunge log is kept
+     */
+    @Override
+    public List<Long> findExpungedSinceInMailbox(Mailbox<HBaseId> mailbox, MessageRange set, long modSeq) throws MailboxException {
+        return null;
+    }
+
     private List<MailboxMessage<HBaseId>> findMessagesInMailbox(Mailbox<HBaseId> mailbox, int batchSize, boolean flaggedForDelete) throws IOException {
         List<MailboxMessage<HBaseId>> messageList = new ArrayList<MailboxMessage<HBaseId>>();
         HTable messages = new HTable(conf, MESSAGES_TABLE);
@@ -489,6 +510,28 @@ public class HBaseMessageMapper extends NonTransactionalMapper implements Messag
         return data;
     }
 
+    @Override
+    public List<MessageMetaData> addAll(Mailbox<HBaseId> mailbox, List<MailboxMessage<HBaseId>> messages) throws MailboxException {
+        List<MessageMetaData> data = new ArrayList<MessageMetaData>(messages.size());
+        if (messages.isEmpty()) {
+            return data;
+        }
+        long uid = uidProvider.nextUids(mailboxSession, mailbox, messages.size()) - messages.size() + 1;
+        long modSeq = -1;
+        // if a mailbox does not support mod-sequences the provider may be null
+        if (modSeqProvider != null) {
+            modSeq = modSeqProvider.nextModSeq(mailboxSession, mailbox);
+        }
+        for (MailboxMessage<HBaseId> message : messages) {
+            message.setUid(uid++);
+            if (modSeqProvider != null) {
+                message.setModSeq(modSeq);
+            }
+            data.add(save(mailbox, message));
+        }
+        return data;
+    }
+
     /*
      * (non-Javadoc)
      * @see org.apache.james.mailbox.store.mail.MessageMapper#updateFlags(org.apache.james.mailbox.store.mail.model.Mailbox, javax.mail.Flags, boolean, boolean, org.apache.james.mailbox.MessageRange)
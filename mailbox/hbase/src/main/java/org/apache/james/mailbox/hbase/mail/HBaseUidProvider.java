@@ -92,10 +92,24 @@ public class HBaseUidProvider implements UidProvider<HBaseId> {
      */
     @Override
     public long nextUid(MailboxSession session, Mailbox<HBaseId> mailbox) throws MailboxException {
+        return nextUids(session, mailbox, 1);
+    }
+
+    /**
+     * Reserves count uids with a single HTable.incrementColumnValue(row, family, qualifier, amount).
+     * 
+     * @param session the mailbox session
+     * @param mailbox the mailbox for which we are getting the uids.
+     * @param count the number of uids to reserve
+     * @return the highest reserved uid.
+     * @throws MailboxException 
+     */
+    @Override
+    public long nextUids(MailboxSession session, Mailbox<HBaseId> mailbox, int count) throws MailboxException {
         HTable mailboxes = null;
         try {
             mailboxes = new HTable(conf, MAILBOXES_TABLE);
-            long newValue = mailboxes.incrementColumnValue(mailbox.getMailboxId().toBytes(), MAILBOX_CF, MAILBOX_LASTUID, 1);
+            long newValue = mailboxes.incrementColumnValue(mailbox.getMailboxId().toBytes(), MAILBOX_CF, MAILBOX_LASTUID, count);
             mailboxes.close();
             return newValue;
         } catch (IOException e) {
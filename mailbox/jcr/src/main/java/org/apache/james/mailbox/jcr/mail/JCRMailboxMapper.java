@@ -42,8 +42,10 @@ import org.apache.james.mailbox.jcr.MailboxSessionJCRRepository;
 import org.apache.james.mailbox.jcr.mail.model.JCRMailbox;
 import org.apache.james.mailbox.model.MailboxACL;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.MailboxHierarchy;
 import org.apache.james.mailbox.store.mail.MailboxMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxWithChildren;
 
 /**
  * JCR implementation of a MailboxMapper
@@ -185,6 +187,16 @@ public class JCRMailboxMapper extends AbstractJCRScalingMapper implements Mailbo
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.james.mailbox.store.mail.MailboxMapper#findMailboxWithPathLikeWithChildren(org.apache.james.
+     * mailbox.model.MailboxPath, char)
+     */
+    public List<MailboxWithChildren<JCRId>> findMailboxWithPathLikeWithChildren(MailboxPath mailboxPath, char delimiter) throws MailboxException {
+        return MailboxHierarchy.findMailboxWithPathLikeWithChildren(this, mailboxPath, delimiter);
+    }
+
     /*
      * (non-Javadoc)
      * 
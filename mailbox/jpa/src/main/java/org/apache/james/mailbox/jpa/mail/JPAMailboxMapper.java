@@ -35,8 +35,10 @@ import org.apache.james.mailbox.jpa.JPATransactionalMapper;
 import org.apache.james.mailbox.jpa.mail.model.JPAMailbox;
 import org.apache.james.mailbox.model.MailboxACL;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.MailboxHierarchy;
 import org.apache.james.mailbox.store.mail.MailboxMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxWithChildren;
 
 /**
  * Data access management for mailbox.
@@ -105,6 +107,7 @@ public class JPAMailboxMapper extends JPATransactionalMapper implements MailboxM
     public void delete(Mailbox<JPAId> mailbox) throws MailboxException {
         try {  
             getEntityManager().createNamedQuery("deleteMessages").setParameter("idParam", mailbox.getMailboxId().getRawId()).executeUpdate();
+            getEntityManager().createNamedQuery("deleteExpungedMessagesInMailbox").setParameter("idParam", mailbox.getMailboxId().getRawId()).executeUpdate();
             getEntityManager().remove(mailbox);
         } catch (PersistenceException e) {
             throw new MailboxException("Delete of mailbox " + mailbox + " failed", e);
@@ -127,6 +130,13 @@ public class JPAMailboxMapper extends JPATransactionalMapper implements MailboxM
         }
     }
 
+    /**
+     * @see org.apache.james.mailbox.store.mail.MailboxMapper#findMailboxWithPathLikeWithChildren(MailboxPath, char)
+     */
+    public List<MailboxWithChildren<JPAId>> findMailboxWithPathLikeWithChildren(MailboxPath mailboxPath, char delimiter) throws MailboxException {
+        return MailboxHierarchy.findMailboxWithPathLikeWithChildren(this, mailboxPath, delimiter);
+    }
+
     public void deleteAllMemberships() throws MailboxException {
         try {
             getEntityManager().createNamedQuery("deleteAllMemberships").executeUpdate();
@@ -18,10 +18,15 @@
  ****************************************************************/
 package org.apache.james.mailbox.jpa.mail;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
@@ -32,6 +37,7 @@ import javax.persistence.Query;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.jpa.JPAId;
+import org.apache.james.mailbox.jpa.mail.model.JPAExpungedMessage;
 import org.apache.james.mailbox.jpa.mail.model.JPAMailbox;
 import org.apache.james.mailbox.jpa.mail.model.openjpa.AbstractJPAMailboxMessage;
 import org.apache.james.mailbox.jpa.mail.model.openjpa.JPAEncryptedMailboxMessage;
@@ -53,6 +59,9 @@ import org.apache.openjpa.persistence.ArgumentException;
  * JPA implementation of a {@link MessageMapper}. This class is not thread-safe!
  */
 public class JPAMessageMapper extends AbstractMessageMapper<JPAId> implements MessageMapper<JPAId> {
+    /** How long expunged uids are kept in the expunge log, in milliseconds */
+    public static final long EXPUNGE_LOG_RETENTION = 30L * 24 * 60 * 60 * 1000;
+
     protected EntityManagerFactory entityManagerFactory;
     protected EntityManager entityManager;
 
@@ -155,6 +164,29 @@ public class JPAMessageMapper extends AbstractMessageMapper<JPAId> implements Me
         }
     }
 
+    /**
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#findChangedSinceInMailbox(org.apache.james.mailbox.store.mail.model.Mailbox,
+     *      org.apache.james.mailbox.model.MessageRange, long,
+     *      org.apache.james.mailbox.store.mail.MessageMapper.FetchType, int)
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Iterator<MailboxMessage<JPAId>> findChangedSinceInMailbox(Mailbox<JPAId> mailbox, MessageRange set, long modSeq, FetchType fType, int max)
+            throws MailboxException {
+        try {
+            Query query = getEntityManager().createNamedQuery("findChangedMessagesInMailboxBetweenUIDs")
+                    .setParameter("idParam", mailbox.getMailboxId().getRawId())
+                    .setParameter("fromParam", set.getUidFrom())
+                    .setParameter("toParam", set.getUidTo())
+                    .setParameter("modSeqParam", modSeq);
+            if (max > 0)
+                query.setMaxResults(max);
+            return ((List<MailboxMessage<JPAId>>) query.getResultList()).iterator();
+        } catch (PersistenceException e) {
+            throw new MailboxException("Search of changed messages in MessageRange " + set + " failed in mailbox " + mailbox, e);
+        }
+    }
+
     /**
      * @see org.apache.james.mailbox.store.mail.MessageMapper#countMessagesInMailbox(Mailbox)
      */
@@ -258,12 +290,79 @@ public class JPAMessageMapper extends AbstractMessageMapper<JPAId> implements Me
                 break;
             }
 
+            if (!data.isEmpty()) {
+                logExpunged(mailbox, data.keySet());
+            }
             return data;
         } catch (PersistenceException e) {
             throw new MailboxException("Search of MessageRange " + set + " failed in mailbox " + mailbox, e);
         }
     }
 
+    /**
+     * Record the expunged uids with a new mod-sequence, then prune the entries
+     * older than {@link #EXPUNGE_LOG_RETENTION} by raising the floor of the
+     * log above them.
+     */
+    private void logExpunged(Mailbox<JPAId> mailbox, Collection<Long> uids) throws MailboxException {
+        long modSeq = nextModSeq(mailbox);
+        long mailboxId = mailbox.getMailboxId().getRawId();
+        Date now = new Date();
+        for (long uid : uids) {
+            getEntityManager().persist(new JPAExpungedMessage(mailboxId, uid, modSeq, now));
+        }
+        getEntityManager().createNamedQuery("initExpungeLogFloor")
+            .setParameter("idParam", mailboxId)
+            .setParameter("floorParam", modSeq - 1)
+            .executeUpdate();
+
+        Long expired = (Long) getEntityManager().createNamedQuery("findHighestExpungedModSeqInMailboxBefore")
+            .setParameter("idParam", mailboxId)
+            .setParameter("dateParam", new Date(now.getTime() - EXPUNGE_LOG_RETENTION))
+            .getSingleResult();
+        if (expired != null) {
+            getEntityManager().createNamedQuery("raiseExpungeLogFloor")
+                .setParameter("idParam", mailboxId)
+                .setParameter("floorParam", expired)
+                .executeUpdate();
+            getEntityManager().createNamedQuery("deleteExpungedMessagesInMailboxUpToModSeq")
+                .setParameter("idParam", mailboxId)
+                .setParameter("modSeqParam", expired)
+                .executeUpdate();
+        }
+    }
+
+    /**
+     * Answer from the expunge log, as long as its floor is not above the
+     * given mod-sequence
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<Long> findExpungedSinceInMailbox(Mailbox<JPAId> mailbox, MessageRange set, long modSeq) throws MailboxException {
+        try {
+            long mailboxId = mailbox.getMailboxId().getRawId();
+            Long floor = (Long) getEntityManager().createNamedQuery("findExpungeLogFloor")
+                .setParameter("idParam", mailboxId)
+                .getSingleResult();
+            if (floor == null || modSeq < floor) {
+                return null;
+            }
+            List<Long> uids = getEntityManager().createNamedQuery("findExpungedUidsInMailboxSinceModSeq")
+                .setParameter("idParam", mailboxId)
+                .setParameter("modSeqParam", modSeq)
+                .getResultList();
+            SortedSet<Long> expunged = new TreeSet<Long>();
+            for (Long uid : uids) {
+                if (set.includes(uid)) {
+                    expunged.add(uid);
+                }
+            }
+            return new ArrayList<Long>(expunged);
+        } catch (PersistenceException e) {
+            throw new MailboxException("Search of expunged messages since " + modSeq + " failed in mailbox " + mailbox, e);
+        }
+    }
+
     /**
      * (non-Javadoc)
      * 
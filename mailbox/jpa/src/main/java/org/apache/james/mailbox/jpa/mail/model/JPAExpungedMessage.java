@@ -0,0 +1,120 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.jpa.mail.model;
+
+import java.util.Date;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.apache.openjpa.persistence.jdbc.Index;
+
+/**
+ * Entry of the expunge log: a message which was expunged from a mailbox, with
+ * the mod-sequence of the expunge.
+ */
+@Entity(name="ExpungedMessage")
+@Table(name="JAMES_MAIL_EXPUNGED")
+@NamedQueries({
+    @NamedQuery(name="findExpungedUidsInMailboxSinceModSeq",
+        query="SELECT expunged.uid FROM ExpungedMessage expunged WHERE expunged.mailboxId = :idParam AND expunged.modSeq > :modSeqParam"),
+    @NamedQuery(name="findHighestExpungedModSeqInMailboxBefore",
+        query="SELECT MAX(expunged.modSeq) FROM ExpungedMessage expunged WHERE expunged.mailboxId = :idParam AND expunged.expungedAt < :dateParam"),
+    @NamedQuery(name="deleteExpungedMessagesInMailboxUpToModSeq",
+        query="DELETE FROM ExpungedMessage expunged WHERE expunged.mailboxId = :idParam AND expunged.modSeq <= :modSeqParam"),
+    @NamedQuery(name="deleteExpungedMessagesInMailbox",
+        query="DELETE FROM ExpungedMessage expunged WHERE expunged.mailboxId = :idParam")
+})
+public class JPAExpungedMessage {
+
+    /** The system unique key */
+    @Id
+    @GeneratedValue
+    @Column(name = "EXPUNGED_ID", nullable = true)
+    private long id;
+
+    /** The mailbox the message was expunged from */
+    @Basic(optional = false)
+    @Column(name = "MAILBOX_ID", nullable = false)
+    @Index(name = "INDEX_EXPUNGED_MAILBOX_MODSEQ", columnNames = { "MAILBOX_ID", "MAIL_MODSEQ" })
+    private long mailboxId;
+
+    /** The uid the message had */
+    @Basic(optional = false)
+    @Column(name = "MAIL_UID", nullable = false)
+    private long uid;
+
+    /** The mod-sequence of the expunge */
+    @Basic(optional = false)
+    @Column(name = "MAIL_MODSEQ", nullable = false)
+    private long modSeq;
+
+    /** When the message was expunged, used to prune the log */
+    @Basic(optional = false)
+    @Column(name = "EXPUNGED_DATE", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date expungedAt;
+
+    /**
+     * @deprecated enhancement only
+     */
+    @Deprecated
+    public JPAExpungedMessage() {}
+
+    public JPAExpungedMessage(long mailboxId, long uid, long modSeq, Date expungedAt) {
+        super();
+        this.mailboxId = mailboxId;
+        this.uid = uid;
+        this.modSeq = modSeq;
+        this.expungedAt = expungedAt;
+    }
+
+    public long getMailboxId() {
+        return mailboxId;
+    }
+
+    public long getUid() {
+        return uid;
+    }
+
+    public long getModSeq() {
+        return modSeq;
+    }
+
+    public Date getExpungedAt() {
+        return expungedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ExpungedMessage ( "
+            + "mailboxId = " + mailboxId + " "
+            + "uid = " + uid + " "
+            + "modSeq = " + modSeq + " "
+            + " )";
+    }
+}
@@ -57,7 +57,13 @@ import org.apache.james.mailbox.store.mail.model.Mailbox;
     @NamedQuery(name="findHighestModSeq",
         query="SELECT mailbox.highestModSeq FROM Mailbox mailbox WHERE mailbox.mailboxId = :idParam"),
     @NamedQuery(name="findLastUid",
-        query="SELECT mailbox.lastUid FROM Mailbox mailbox WHERE mailbox.mailboxId = :idParam")
+        query="SELECT mailbox.lastUid FROM Mailbox mailbox WHERE mailbox.mailboxId = :idParam"),
+    @NamedQuery(name="findExpungeLogFloor",
+        query="SELECT mailbox.expungeLogFloor FROM Mailbox mailbox WHERE mailbox.mailboxId = :idParam"),
+    @NamedQuery(name="initExpungeLogFloor",
+        query="UPDATE Mailbox mailbox SET mailbox.expungeLogFloor = :floorParam WHERE mailbox.mailboxId = :idParam AND mailbox.expungeLogFloor IS NULL"),
+    @NamedQuery(name="raiseExpungeLogFloor",
+        query="UPDATE Mailbox mailbox SET mailbox.expungeLogFloor = :floorParam WHERE mailbox.mailboxId = :idParam AND mailbox.expungeLogFloor < :floorParam")
 })
 public class JPAMailbox implements Mailbox<JPAId> {
     
@@ -94,6 +100,14 @@ public class JPAMailbox implements Mailbox<JPAId> {
     @Basic(optional = false)
     @Column(name = "MAILBOX_HIGHEST_MODSEQ", nullable = false)
     private long highestModSeq;
+
+    /**
+     * The expunge log of the mailbox is complete after this mod-sequence.
+     * Null for mailboxes which existed before the log.
+     */
+    @Basic(optional = true)
+    @Column(name = "MAILBOX_EXPUNGE_LOG_FLOOR", nullable = true)
+    private Long expungeLogFloor;
     
     /**
      * JPA only
@@ -109,6 +123,7 @@ public class JPAMailbox implements Mailbox<JPAId> {
         this.user = path.getUser();
         this.namespace = path.getNamespace();
         this.uidValidity = uidValidity;
+        this.expungeLogFloor = 0L;
     }
 
     /**
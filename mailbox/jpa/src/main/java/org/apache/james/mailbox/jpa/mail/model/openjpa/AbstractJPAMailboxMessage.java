@@ -74,6 +74,8 @@ import org.apache.openjpa.persistence.jdbc.Index;
             query="SELECT message FROM MailboxMessage message WHERE message.mailbox.mailboxId = :idParam AND message.uid=:uidParam ORDER BY message.uid ASC"),
     @NamedQuery(name="findMessagesInMailboxAfterUID",
             query="SELECT message FROM MailboxMessage message WHERE message.mailbox.mailboxId = :idParam AND message.uid>=:uidParam ORDER BY message.uid ASC"),
+    @NamedQuery(name="findChangedMessagesInMailboxBetweenUIDs",
+            query="SELECT message FROM MailboxMessage message WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam AND message.modSeq > :modSeqParam ORDER BY message.uid ASC"),
     @NamedQuery(name="findDeletedMessagesInMailbox",
             query="SELECT message FROM MailboxMessage message WHERE message.mailbox.mailboxId = :idParam AND message.deleted=TRUE ORDER BY message.uid ASC"),
     @NamedQuery(name="findDeletedMessagesInMailboxBetweenUIDs",
@@ -35,6 +35,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
 
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
@@ -87,7 +90,6 @@ import org.apache.lucene.document.Field.Index;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.NumericField;
 import org.apache.lucene.index.CorruptIndexException;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
@@ -99,6 +101,7 @@ import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
@@ -107,7 +110,6 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.WildcardQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.LockObtainFailedException;
-import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.Version;
 
 /**
@@ -297,10 +299,27 @@ public class LuceneMessageSearchIndex<Id extends MailboxId> extends ListeningMes
     private final static String MEDIA_TYPE_MESSAGE = "message"; 
     private final static String DEFAULT_ENCODING = "US-ASCII";
     
+    /**
+     * Default count of index changes after which they get committed
+     */
+    public final static int DEFAULT_COMMIT_THRESHOLD = 1000;
+
     private final IndexWriter writer;
-    
+
+    /**
+     * Shares near-real-time searchers between searches. A searcher is only reopened when the index changed since it
+     * was opened.
+     */
+    private final SearcherManager searcherManager;
+    private final Object refreshLock = new Object();
+    private final AtomicLong writeGeneration = new AtomicLong();
+    private volatile long refreshedGeneration = 0;
+    private final AtomicLong uncommittedWrites = new AtomicLong();
+
     private int maxQueryResults = DEFAULT_MAX_QUERY_RESULTS;
 
+    private int commitThreshold = DEFAULT_COMMIT_THRESHOLD;
+
     private boolean suffixMatch = false;
     
     private final static SortField UID_SORT = new SortField(UID_FIELD, SortField.LONG);
@@ -343,12 +362,14 @@ public class LuceneMessageSearchIndex<Id extends MailboxId> extends ListeningMes
     public LuceneMessageSearchIndex(MessageMapperFactory<Id> factory, Directory directory, boolean dropIndexOnStart, boolean lenient) throws CorruptIndexException, LockObtainFailedException, IOException {
         super(factory);
         this.writer = new IndexWriter(directory,  createConfig(createAnalyzer(lenient), dropIndexOnStart));
+        this.searcherManager = new SearcherManager(writer, true, null);
     }
     
     
-    public LuceneMessageSearchIndex(MessageMapperFactory<Id> factory, IndexWriter writer) {
+    public LuceneMessageSearchIndex(MessageMapperFactory<Id> factory, IndexWriter writer) throws IOException {
         super(factory);
         this.writer = writer;
+        this.searcherManager = new SearcherManager(writer, true, null);
     }
 
     @Override
@@ -364,6 +385,15 @@ public class LuceneMessageSearchIndex<Id extends MailboxId> extends ListeningMes
     public void setMaxQueryResults(int maxQueryResults) {
         this.maxQueryResults = maxQueryResults;
     }
+
+    /**
+     * Set the count of index changes after which they get committed. The default is {@link #DEFAULT_COMMIT_THRESHOLD}
+     * 
+     * @param commitThreshold
+     */
+    public void setCommitThreshold(int commitThreshold) {
+        this.commitThreshold = commitThreshold;
+    }
     
     protected IndexWriterConfig createConfig(Analyzer analyzer, boolean dropIndexOnStart) {
         IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_31, analyzer);
@@ -414,7 +444,7 @@ public class LuceneMessageSearchIndex<Id extends MailboxId> extends ListeningMes
         IndexSearcher searcher = null;
 
         try {
-            searcher = new IndexSearcher(IndexReader.open(writer, true));
+            searcher = acquireSearcher();
             BooleanQuery query = new BooleanQuery();
             query.add(new TermQuery(new Term(MAILBOX_ID_FIELD, mailbox.getMailboxId().serialize())), BooleanClause.Occur.MUST);
             // Not return flags documents
@@ -434,13 +464,7 @@ public class LuceneMessageSearchIndex<Id extends MailboxId> extends ListeningMes
         } catch (IOException e) {
             throw new MailboxException("Unable to search the mailbox", e);
         } finally {
-            if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (IOException e) {
-                    // ignore on close
-                }
-            }
+            releaseSearcher(searcher);
         }
         return uids.iterator();
     }
@@ -906,7 +930,7 @@ public class LuceneMessageSearchIndex<Id extends MailboxId> extends ListeningMes
 
         try {
             Set<Long> uids = new HashSet<Long>();
-            searcher = new IndexSearcher(IndexReader.open(writer, true));
+            searcher = acquireSearcher();
             
             // query for all the documents sorted by uid
             TopDocs docs = searcher.search(query, null, maxQueryResults, new Sort(UID_SORT));
@@ -935,13 +959,7 @@ public class LuceneMessageSearchIndex<Id extends MailboxId> extends ListeningMes
         } catch (IOException e) {
             throw new MailboxException("Unable to search mailbox " + mailbox, e);
         } finally {
-            if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (IOException e) {
-                    // ignore on close
-                }
-            }
+            releaseSearcher(searcher);
         }
     }
     
@@ -1197,6 +1215,7 @@ public class LuceneMessageSearchIndex<Id extends MailboxId> extends ListeningMes
         try {
             writer.addDocument(doc);
             writer.addDocument(flagsDoc);
+            written();
         } catch (CorruptIndexException e) {
             throw new MailboxException("Unable to add message to index", e);
         } catch (IOException e) {
@@ -1205,48 +1224,67 @@ public class LuceneMessageSearchIndex<Id extends MailboxId> extends ListeningMes
     }
 
     /**
-     * @see ListeningMessageSearchIndex#update
+     * Add all the messages to the index with a single call to the {@link IndexWriter}
+     *
+     * @see org.apache.james.mailbox.store.search.ListeningMessageSearchIndex#add(org.apache.james.mailbox.MailboxSession, org.apache.james.mailbox.store.mail.model.Mailbox, List)
      */
     @Override
-    public void update(MailboxSession session, Mailbox<Id> mailbox, List<UpdatedFlags> updatedFlagsList) throws MailboxException {
-        for (UpdatedFlags updatedFlags : updatedFlagsList) {
-            update(mailbox, updatedFlags.getUid(), updatedFlags.getNewFlags());
+    public void add(MailboxSession session, Mailbox<Id> mailbox, List<MailboxMessage<Id>> memberships) {
+        List<Document> docs = new ArrayList<Document>();
+        for (MailboxMessage<Id> membership : memberships) {
+            try {
+                docs.add(createMessageDocument(session, membership));
+                docs.add(createFlagsDocument(membership));
+            } catch (MailboxException e) {
+                session.getLog().debug("Unable to index message " + membership.getUid() + " for mailbox " + mailbox, e);
+            }
+        }
+
+        try {
+            writer.addDocuments(docs);
+            written();
+        } catch (IOException e) {
+            session.getLog().debug("Unable to add " + memberships.size() + " messages to index for mailbox " + mailbox, e);
         }
     }
 
-    private void update(Mailbox<Id> mailbox, long uid, Flags f) throws MailboxException {
+    /**
+     * @see ListeningMessageSearchIndex#update
+     */
+    @Override
+    public void update(MailboxSession session, Mailbox<Id> mailbox, List<UpdatedFlags> updatedFlagsList) throws MailboxException {
         IndexSearcher searcher = null;
         try {
-            searcher = new IndexSearcher(IndexReader.open(writer, true));
-            BooleanQuery query = new BooleanQuery();
-            query.add(new TermQuery(new Term(MAILBOX_ID_FIELD, mailbox.getMailboxId().serialize())), BooleanClause.Occur.MUST);
-            query.add(createQuery(MessageRange.one(uid)), BooleanClause.Occur.MUST);
-            query.add( new PrefixQuery(new Term(FLAGS_FIELD, "")), BooleanClause.Occur.MUST);
-
-            TopDocs docs = searcher.search(query, 100000);
-            ScoreDoc[] sDocs = docs.scoreDocs;
-            for (ScoreDoc sDoc : sDocs) {
-                Document doc = searcher.doc(sDoc.doc);
-
-                if (doc.getFieldable(FLAGS_FIELD) == null) {
-                    doc.removeFields(FLAGS_FIELD);
-                    indexFlags(doc, f);
-
-                    writer.updateDocument(new Term(ID_FIELD, doc.get(ID_FIELD)), doc);
-
-                }
+            searcher = acquireSearcher();
+            for (UpdatedFlags updatedFlags : updatedFlagsList) {
+                update(searcher, mailbox, updatedFlags.getUid(), updatedFlags.getNewFlags());
             }
         } catch (IOException e) {
             throw new MailboxException("Unable to add messages in index", e);
-
         } finally {
-            try {
-                IOUtils.closeWhileHandlingException(searcher);
-            } catch (IOException e) {
-                //can't happen anyway
+            releaseSearcher(searcher);
+        }
+    }
+
+    private void update(IndexSearcher searcher, Mailbox<Id> mailbox, long uid, Flags f) throws IOException {
+        BooleanQuery query = new BooleanQuery();
+        query.add(new TermQuery(new Term(MAILBOX_ID_FIELD, mailbox.getMailboxId().serialize())), BooleanClause.Occur.MUST);
+        query.add(createQuery(MessageRange.one(uid)), BooleanClause.Occur.MUST);
+        query.add( new PrefixQuery(new Term(FLAGS_FIELD, "")), BooleanClause.Occur.MUST);
+
+        TopDocs docs = searcher.search(query, 100000);
+        ScoreDoc[] sDocs = docs.scoreDocs;
+        for (ScoreDoc sDoc : sDocs) {
+            Document doc = searcher.doc(sDoc.doc);
+
+            if (doc.getFieldable(FLAGS_FIELD) == null) {
+                doc.removeFields(FLAGS_FIELD);
+                indexFlags(doc, f);
+
+                writer.updateDocument(new Term(ID_FIELD, doc.get(ID_FIELD)), doc);
+                written();
             }
         }
-        
     }
 
     /**
@@ -1322,6 +1360,7 @@ public class LuceneMessageSearchIndex<Id extends MailboxId> extends ListeningMes
         
         try {
             writer.deleteDocuments(query);
+            written();
         } catch (CorruptIndexException e) {
             throw new MailboxException("Unable to delete message from index", e);
 
@@ -1329,7 +1368,64 @@ public class LuceneMessageSearchIndex<Id extends MailboxId> extends ListeningMes
             throw new MailboxException("Unable to delete message from index", e);
         }
     }
-    
 
+    /**
+     * Commit the pending index changes
+     * 
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        uncommittedWrites.set(0);
+        writer.commit();
+    }
+
+    /**
+     * Commit the pending index changes and release the shared searcher
+     * 
+     * @throws IOException
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        commit();
+        searcherManager.close();
+    }
+
+    /**
+     * Return a searcher seeing all the changes made so far. It must be given back with {@link #releaseSearcher(IndexSearcher)}
+     */
+    private IndexSearcher acquireSearcher() throws IOException {
+        long generation = writeGeneration.get();
+        if (refreshedGeneration < generation) {
+            synchronized (refreshLock) {
+                if (refreshedGeneration < generation) {
+                    long refreshingGeneration = writeGeneration.get();
+                    searcherManager.maybeRefresh();
+                    refreshedGeneration = refreshingGeneration;
+                }
+            }
+        }
+        return searcherManager.acquire();
+    }
+
+    private void releaseSearcher(IndexSearcher searcher) {
+        if (searcher != null) {
+            try {
+                searcherManager.release(searcher);
+            } catch (IOException e) {
+                // ignore on release
+            }
+        }
+    }
+
+    /**
+     * Record a change of the index: the next searcher will be reopened and the changes get committed once
+     * the commit threshold is reached
+     */
+    private void written() throws IOException {
+        writeGeneration.incrementAndGet();
+        if (uncommittedWrites.incrementAndGet() >= commitThreshold) {
+            commit();
+        }
+    }
 
 }
@@ -37,6 +37,7 @@ import javax.mail.Flags.Flag;
 import org.apache.james.mailbox.model.MailboxACL;
 import org.apache.james.mailbox.model.SearchQuery;
 import org.apache.james.mailbox.model.SimpleMailboxACL;
+import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.model.SearchQuery.AddressType;
 import org.apache.james.mailbox.model.SearchQuery.DateResolution;
 import org.apache.james.mailbox.model.SearchQuery.Sort.SortClause;
@@ -44,6 +45,7 @@ import org.apache.james.mailbox.store.MessageBuilder;
 import org.apache.james.mailbox.store.SimpleMailboxMembership;
 import org.apache.james.mailbox.store.TestId;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.store.RAMDirectory;
 import org.junit.Before;
 import org.junit.Test;
@@ -140,6 +142,36 @@ public class LuceneMailboxMessageSearchIndexTest {
         assertFalse(result.hasNext());
     }
 
+    @Test
+    public void searchShouldSeeFlagsUpdatedRightBefore() throws Exception {
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.flagIsSet(Flag.SEEN));
+        assertFalse(index.search(null, mailbox3, query).hasNext());
+
+        index.update(null, mailbox3, Arrays.asList(new UpdatedFlags(10L, 1L, new Flags(), new Flags(Flag.SEEN))));
+
+        Iterator<Long> result = index.search(null, mailbox3, query);
+        assertEquals(10L, result.next().longValue());
+        assertFalse(result.hasNext());
+    }
+
+    @Test
+    public void addShouldCommitOnceTheCommitThresholdIsReached() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        LuceneMessageSearchIndex<TestId> committingIndex = new LuceneMessageSearchIndex<TestId>(null, directory, true, useLenient());
+        committingIndex.setCommitThreshold(1);
+
+        committingIndex.add(null, mailbox, new SimpleMailboxMembership(mailbox.getMailboxId(), 1, 0, new Date(), 20, new Flags(), "My Body".getBytes(), new HashMap<String, String>()));
+
+        IndexReader reader = IndexReader.open(directory);
+        try {
+            assertEquals(2, reader.numDocs());
+        } finally {
+            reader.close();
+        }
+        committingIndex.close();
+    }
+
     @Test
     public void testBodyMatchShouldBeCaseInsensitive() throws Exception {
         SearchQuery query = new SearchQuery();
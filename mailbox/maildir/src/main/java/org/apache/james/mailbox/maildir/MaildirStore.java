@@ -249,6 +249,15 @@ public class MaildirStore implements UidProvider<MaildirId>, ModSeqProvider<Mail
         }
     }
 
+    @Override
+    public long nextUids(MailboxSession session, Mailbox<MaildirId> mailbox, int count) throws MailboxException {
+        try {
+            return createMaildirFolder(mailbox).getLastUid(session) + count;
+        } catch (MailboxException e) {
+            throw new MailboxException("Unable to generate next uid", e);
+        }
+    }
+
     @Override
     public long nextModSeq(MailboxSession session, Mailbox<MaildirId> mailbox) throws MailboxException {
         return System.currentTimeMillis();
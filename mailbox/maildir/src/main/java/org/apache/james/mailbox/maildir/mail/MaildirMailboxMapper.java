@@ -38,8 +38,10 @@ import org.apache.james.mailbox.maildir.MaildirStore;
 import org.apache.james.mailbox.model.MailboxACL;
 import org.apache.james.mailbox.model.MailboxConstants;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.MailboxHierarchy;
 import org.apache.james.mailbox.store.mail.MailboxMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxWithChildren;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
 import org.apache.james.mailbox.store.transaction.NonTransactionalMapper;
 
@@ -138,6 +140,14 @@ public class MaildirMailboxMapper extends NonTransactionalMapper implements Mail
         return mailboxList;
     }
 
+    /**
+     * @see org.apache.james.mailbox.store.mail.MailboxMapper#findMailboxWithPathLikeWithChildren(org.apache.james.mailbox.model.MailboxPath, char)
+     */
+    @Override
+    public List<MailboxWithChildren<MaildirId>> findMailboxWithPathLikeWithChildren(MailboxPath mailboxPath, char delimiter) throws MailboxException {
+        return MailboxHierarchy.findMailboxWithPathLikeWithChildren(this, mailboxPath, delimiter);
+    }
+
     /**
      * @see org.apache.james.mailbox.store.mail.MailboxMapper#hasChildren(org.apache.james.mailbox.store.mail.model.Mailbox, char)
      */
@@ -29,8 +29,10 @@ import org.apache.james.mailbox.exception.MailboxNotFoundException;
 import org.apache.james.mailbox.inmemory.InMemoryId;
 import org.apache.james.mailbox.model.MailboxACL;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.MailboxHierarchy;
 import org.apache.james.mailbox.store.mail.MailboxMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxWithChildren;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
 
 import com.google.common.base.Objects;
@@ -89,6 +91,29 @@ public class InMemoryMailboxMapper implements MailboxMapper<InMemoryId> {
         return results;
     }
 
+    /**
+     * @see org.apache.james.mailbox.store.mail.MailboxMapper#findMailboxWithPathLikeWithChildren(org.apache.james.mailbox.model.MailboxPath, char)
+     */
+    public List<MailboxWithChildren<InMemoryId>> findMailboxWithPathLikeWithChildren(MailboxPath path, char delimiter) throws MailboxException {
+        final String regex = path.getName().replace("%", ".*");
+        List<Mailbox<InMemoryId>> results = new ArrayList<Mailbox<InMemoryId>>();
+        List<String> userMailboxNames = new ArrayList<String>();
+        for (Mailbox<InMemoryId> mailbox:mailboxesById.values()) {
+            if (belongsToUser(mailbox, path)) {
+                userMailboxNames.add(mailbox.getName());
+                if (mailbox.getName().matches(regex)) {
+                    results.add(mailbox);
+                }
+            }
+        }
+        return MailboxHierarchy.withChildren(results, userMailboxNames, delimiter);
+    }
+
+    private boolean belongsToUser(Mailbox<InMemoryId> mailbox, MailboxPath path) {
+        return Objects.equal(mailbox.getNamespace(), path.getNamespace())
+            && Objects.equal(mailbox.getUser(), path.getUser());
+    }
+
     private boolean mailboxMatchesRegex(Mailbox<InMemoryId> mailbox, MailboxPath path, String regex) {
         return Objects.equal(mailbox.getNamespace(), path.getNamespace())
             && Objects.equal(mailbox.getUser(), path.getUser())
@@ -20,12 +20,15 @@
 package org.apache.james.mailbox.inmemory.mail;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
@@ -46,12 +49,15 @@ import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
 public class InMemoryMessageMapper extends AbstractMessageMapper<InMemoryId> {
 
     private final Map<InMemoryId, Map<Long, MailboxMessage<InMemoryId>>> mailboxByUid;
+    private final ConcurrentMap<InMemoryId, ExpungeLog> expungeLogs;
     private static final int INITIAL_SIZE = 256;
+    private static final int MAX_EXPUNGE_LOG_SIZE = 10000;
 
     public InMemoryMessageMapper(MailboxSession session, UidProvider<InMemoryId> uidProvider,
             ModSeqProvider<InMemoryId> modSeqProvider) {
         super(session, uidProvider, modSeqProvider);
         this.mailboxByUid = new ConcurrentHashMap<InMemoryId, Map<Long, MailboxMessage<InMemoryId>>>(INITIAL_SIZE);
+        this.expungeLogs = new ConcurrentHashMap<InMemoryId, ExpungeLog>(INITIAL_SIZE);
     }
 
     private Map<Long, MailboxMessage<InMemoryId>> getMembershipByUidForMailbox(Mailbox<InMemoryId> mailbox) {
@@ -153,6 +159,28 @@ public class InMemoryMessageMapper extends AbstractMessageMapper<InMemoryId> {
         return results.iterator();
     }
 
+    /**
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#findChangedSinceInMailbox(org.apache.james.mailbox.store.mail.model.Mailbox,
+     *      org.apache.james.mailbox.model.MessageRange, long,
+     *      org.apache.james.mailbox.store.mail.MessageMapper.FetchType, int)
+     */
+    @Override
+    public Iterator<MailboxMessage<InMemoryId>> findChangedSinceInMailbox(Mailbox<InMemoryId> mailbox, MessageRange set, long modSeq, FetchType ftype, int max)
+            throws MailboxException {
+        List<MailboxMessage<InMemoryId>> results = new ArrayList<MailboxMessage<InMemoryId>>();
+        for (MailboxMessage<InMemoryId> member : getMembershipByUidForMailbox(mailbox).values()) {
+            if (member.getModSeq() > modSeq && set.includes(member.getUid())) {
+                results.add(member);
+            }
+        }
+        Collections.sort(results);
+
+        if (max > 0 && results.size() > max) {
+            results = results.subList(0, max);
+        }
+        return results.iterator();
+    }
+
     /**
      * @see org.apache.james.mailbox.store.mail.MessageMapper#findRecentMessageUidsInMailbox(org.apache.james.mailbox.store.mail.model.Mailbox)
      */
@@ -196,11 +224,36 @@ public class InMemoryMessageMapper extends AbstractMessageMapper<InMemoryId> {
                 delete(mailbox, member);
             }
         }
+        if (!filteredResult.isEmpty()) {
+            getExpungeLog(mailbox).add(nextModSeq(mailbox), filteredResult.keySet());
+        }
         return filteredResult;
     }
 
+    /**
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#findExpungedSinceInMailbox(org.apache.james.mailbox.store.mail.model.Mailbox,
+     *      org.apache.james.mailbox.model.MessageRange, long)
+     */
+    @Override
+    public List<Long> findExpungedSinceInMailbox(Mailbox<InMemoryId> mailbox, MessageRange set, long modSeq) throws MailboxException {
+        return getExpungeLog(mailbox).findExpungedSince(set, modSeq);
+    }
+
+    private ExpungeLog getExpungeLog(Mailbox<InMemoryId> mailbox) {
+        ExpungeLog expungeLog = expungeLogs.get(mailbox.getMailboxId());
+        if (expungeLog == null) {
+            expungeLog = new ExpungeLog();
+            ExpungeLog existing = expungeLogs.putIfAbsent(mailbox.getMailboxId(), expungeLog);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return expungeLog;
+    }
+
     public void deleteAll() {
         mailboxByUid.clear();
+        expungeLogs.clear();
     }
 
     /**
@@ -259,4 +312,37 @@ public class InMemoryMessageMapper extends AbstractMessageMapper<InMemoryId> {
      */
     protected void rollback() throws MailboxException {
     }
+
+    /**
+     * Uids expunged from a mailbox, by the mod-sequence of their expunge. Only the last
+     * {@link #MAX_EXPUNGE_LOG_SIZE} expunges are kept, the floor tells up to which mod-sequence
+     * the log was truncated.
+     */
+    private static final class ExpungeLog {
+        private final TreeMap<Long, Collection<Long>> uidsByModSeq = new TreeMap<Long, Collection<Long>>();
+        private long floor = 0;
+
+        private synchronized void add(long modSeq, Collection<Long> uids) {
+            uidsByModSeq.put(modSeq, new ArrayList<Long>(uids));
+            while (uidsByModSeq.size() > MAX_EXPUNGE_LOG_SIZE) {
+                floor = uidsByModSeq.pollFirstEntry().getKey();
+            }
+        }
+
+        private synchronized List<Long> findExpungedSince(MessageRange set, long modSeq) {
+            if (modSeq < floor) {
+                return null;
+            }
+            List<Long> results = new ArrayList<Long>();
+            for (Collection<Long> uids : uidsByModSeq.tailMap(modSeq, false).values()) {
+                for (Long uid : uids) {
+                    if (set.includes(uid)) {
+                        results.add(uid);
+                    }
+                }
+            }
+            Collections.sort(results);
+            return results;
+        }
+    }
 }
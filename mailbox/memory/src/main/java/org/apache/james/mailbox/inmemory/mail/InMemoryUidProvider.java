@@ -38,6 +38,11 @@ public class InMemoryUidProvider implements UidProvider<InMemoryId>{
         return getLast(mailbox.getMailboxId()).incrementAndGet();
     }
 
+    @Override
+    public long nextUids(MailboxSession session, Mailbox<InMemoryId> mailbox, int count) throws MailboxException {
+        return getLast(mailbox.getMailboxId()).addAndGet(count);
+    }
+
     @Override
     public long lastUid(MailboxSession session, Mailbox<InMemoryId> mailbox) throws MailboxException {
         return getLast(mailbox.getMailboxId()).get();
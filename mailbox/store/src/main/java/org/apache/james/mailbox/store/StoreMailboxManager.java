@@ -60,6 +60,7 @@ import org.apache.james.mailbox.store.event.MailboxEventDispatcher;
 import org.apache.james.mailbox.store.mail.MailboxMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.MailboxId;
+import org.apache.james.mailbox.store.mail.model.MailboxWithChildren;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
 import org.apache.james.mailbox.store.quota.DefaultQuotaRootResolver;
 import org.apache.james.mailbox.store.quota.NoQuotaManager;
@@ -118,6 +119,8 @@ public class StoreMailboxManager<Id extends MailboxId> implements MailboxManager
 
     private int fetchBatchSize = DEFAULT_FETCH_BATCH_SIZE;
 
+    private int appendMemoryThreshold = StoreMessageManager.DEFAULT_APPEND_MEMORY_THRESHOLD;
+
 
     @Inject
     public StoreMailboxManager(MailboxSessionMapperFactory<Id> mailboxSessionMapperFactory, Authenticator authenticator, MailboxPathLocker locker, MailboxACLResolver aclResolver, GroupMembershipResolver groupMembershipResolver) {
@@ -160,6 +163,10 @@ public class StoreMailboxManager<Id extends MailboxId> implements MailboxManager
         this.fetchBatchSize = fetchBatchSize;
     }
 
+    public void setAppendMemoryThreshold(int appendMemoryThreshold) {
+        this.appendMemoryThreshold = appendMemoryThreshold;
+    }
+
 
     /**
      * Init the {@link MailboxManager}
@@ -392,6 +399,7 @@ public class StoreMailboxManager<Id extends MailboxId> implements MailboxManager
 
             StoreMessageManager<Id> m = createMessageManager(mailboxRow, session);
             m.setFetchBatchSize(fetchBatchSize);
+            m.setAppendMemoryThreshold(appendMemoryThreshold);
             return m;
         }
     }
@@ -559,16 +567,17 @@ public class StoreMailboxManager<Id extends MailboxId> implements MailboxManager
         final MailboxPath search = new MailboxPath(mailboxExpression.getBase(), combinedName);
 
         final MailboxMapper<Id> mapper = mailboxSessionMapperFactory.getMailboxMapper(session);
-        final List<Mailbox<Id>> mailboxes = mapper.findMailboxWithPathLike(search);
+        final List<MailboxWithChildren<Id>> mailboxes = mapper.findMailboxWithPathLikeWithChildren(search, session.getPathDelimiter());
         final List<MailboxMetaData> results = new ArrayList<MailboxMetaData>(mailboxes.size());
-        for (Mailbox<Id> mailbox : mailboxes) {
+        for (MailboxWithChildren<Id> mailboxWithChildren : mailboxes) {
+            final Mailbox<Id> mailbox = mailboxWithChildren.getMailbox();
             final String name = mailbox.getName();
             if(belongsToNamespaceAndUser(mailboxExpression.getBase(), mailbox)) {
                 if (name.startsWith(baseName)) {
                     final String match = name.substring(baseLength);
                     if (mailboxExpression.isExpressionMatch(match)) {
                         final MailboxMetaData.Children inferiors;
-                        if (mapper.hasChildren(mailbox, session.getPathDelimiter())) {
+                        if (mailboxWithChildren.hasChildren()) {
                             inferiors = MailboxMetaData.Children.HAS_CHILDREN;
                         } else {
                             inferiors = MailboxMetaData.Children.HAS_NO_CHILDREN;
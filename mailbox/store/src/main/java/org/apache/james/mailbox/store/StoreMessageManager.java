@@ -19,8 +19,6 @@
 
 package org.apache.james.mailbox.store;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -34,7 +32,6 @@ import java.util.TreeMap;
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 import javax.mail.internet.SharedInputStream;
-import javax.mail.util.SharedFileInputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.TeeInputStream;
@@ -55,6 +52,7 @@ import org.apache.james.mailbox.model.MessageMetaData;
 import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.MessageResult.FetchGroup;
 import org.apache.james.mailbox.model.MessageResultIterator;
+import org.apache.james.mailbox.model.MessageToAppend;
 import org.apache.james.mailbox.model.SearchQuery;
 import org.apache.james.mailbox.model.SimpleMailboxACL;
 import org.apache.james.mailbox.model.UpdatedFlags;
@@ -73,6 +71,7 @@ import org.apache.james.mailbox.store.quota.QuotaChecker;
 import org.apache.james.mailbox.store.search.MessageSearchIndex;
 import org.apache.james.mailbox.store.streaming.BodyOffsetInputStream;
 import org.apache.james.mailbox.store.streaming.CountingInputStream;
+import org.apache.james.mailbox.store.streaming.SpoolingOutputStream;
 import org.apache.james.mailbox.store.transaction.Mapper;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.message.DefaultBodyDescriptorBuilder;
@@ -96,6 +95,8 @@ import org.apache.james.mime4j.stream.RecursionMode;
  */
 public class StoreMessageManager<Id extends MailboxId> implements org.apache.james.mailbox.MessageManager {
 
+    public static final int DEFAULT_APPEND_MEMORY_THRESHOLD = 100 * 1024;
+
     /**
      * The minimal Permanent flags the {@link MessageManager} must support. <br>
      * 
@@ -132,6 +133,8 @@ public class StoreMessageManager<Id extends MailboxId> implements org.apache.jam
 
     private int fetchBatchSize;
 
+    private int appendMemoryThreshold = DEFAULT_APPEND_MEMORY_THRESHOLD;
+
     public StoreMessageManager(MessageMapperFactory<Id> mapperFactory, MessageSearchIndex<Id> index, MailboxEventDispatcher<Id> dispatcher, MailboxPathLocker locker, Mailbox<Id> mailbox, MailboxACLResolver aclResolver,
             final GroupMembershipResolver groupMembershipResolver, QuotaManager quotaManager, QuotaRootResolver quotaRootResolver) throws MailboxException {
         this.mailbox = mailbox;
@@ -149,6 +152,14 @@ public class StoreMessageManager<Id extends MailboxId> implements org.apache.jam
         this.fetchBatchSize = fetchBatchSize;
     }
 
+    /**
+     * Set the size in bytes up to which appended messages are kept in memory. Bigger
+     * messages are spooled to a temporary file.
+     */
+    public void setAppendMemoryThreshold(int appendMemoryThreshold) {
+        this.appendMemoryThreshold = appendMemoryThreshold;
+    }
+
     /**
      * Return the {@link MailboxPathLocker}
      * 
@@ -251,23 +262,112 @@ public class StoreMessageManager<Id extends MailboxId> implements org.apache.jam
      */
     public long appendMessage(InputStream msgIn, Date internalDate, final MailboxSession mailboxSession, boolean isRecent, Flags flagsToBeSet) throws MailboxException {
 
-        File file = null;
-        TeeInputStream tmpMsgIn = null;
-        BodyOffsetInputStream bIn = null;
-        FileOutputStream out = null;
-        SharedFileInputStream contentIn = null;
+        SpoolingOutputStream out = null;
 
         if (!isWriteable(mailboxSession)) {
             throw new ReadOnlyException(new StoreMailboxPath<Id>(getMailboxEntity()), mailboxSession.getPathDelimiter());
         }
 
         try {
-            // Create a temporary file and copy the message to it. We will work
-            // with the file as
-            // source for the InputStream
-            file = File.createTempFile("imap", ".msg");
-            out = new FileOutputStream(file);
+            // Copy the message to memory, or to a temporary file if it is too
+            // big, while parsing it. We will work with the copy as source for
+            // the InputStream
+            out = new SpoolingOutputStream(appendMemoryThreshold);
+
+            final MailboxMessage<Id> message = parseMessage(msgIn, internalDate, mailboxSession, isRecent, flagsToBeSet, out);
+
+            new QuotaChecker<Id>(quotaManager, quotaRootResolver, mailbox).tryAddition(1, out.getSize());
+
+            return locker.executeWithLock(mailboxSession, new StoreMailboxPath<Id>(getMailboxEntity()), new MailboxPathLocker.LockAwareExecution<Long>() {
+
+                @Override
+                public Long execute() throws MailboxException {
+                    MessageMetaData data = appendMessageToStore(message, mailboxSession);
+
+                    SortedMap<Long, MessageMetaData> uids = new TreeMap<Long, MessageMetaData>();
+                    uids.put(data.getUid(), data);
+                    dispatcher.added(mailboxSession, uids, getMailboxEntity());
+                    return data.getUid();
+                }
+            }, true);
+
+        } catch (IOException e) {
+            throw new MailboxException("Unable to parse message", e);
+        } catch (MimeException e) {
+            throw new MailboxException("Unable to parse message", e);
+        } finally {
+            // also deletes the temporary file if one was needed
+            IOUtils.closeQuietly(out);
+        }
+
+    }
+
+    /**
+     * Parse all messages first, then store them under a single lock with
+     * consecutive uids and dispatch one event for all of them.
+     * 
+     * @see org.apache.james.mailbox.MessageManager#appendMessages(java.util.List,
+     *      org.apache.james.mailbox.MailboxSession)
+     */
+    public List<Long> appendMessages(List<MessageToAppend> messagesToAppend, final MailboxSession mailboxSession) throws MailboxException {
+
+        if (!isWriteable(mailboxSession)) {
+            throw new ReadOnlyException(new StoreMailboxPath<Id>(getMailboxEntity()), mailboxSession.getPathDelimiter());
+        }
+        if (messagesToAppend.isEmpty()) {
+            return new ArrayList<Long>();
+        }
+
+        final List<SpoolingOutputStream> contents = new ArrayList<SpoolingOutputStream>(messagesToAppend.size());
+        try {
+            final List<MailboxMessage<Id>> messages = new ArrayList<MailboxMessage<Id>>(messagesToAppend.size());
+            long size = 0;
+            for (MessageToAppend messageToAppend : messagesToAppend) {
+                SpoolingOutputStream out = new SpoolingOutputStream(appendMemoryThreshold);
+                contents.add(out);
+                messages.add(parseMessage(messageToAppend.getContent(), messageToAppend.getInternalDate(), mailboxSession, messageToAppend.isRecent(), messageToAppend.getFlags(), out));
+                size += out.getSize();
+            }
+
+            new QuotaChecker<Id>(quotaManager, quotaRootResolver, mailbox).tryAddition(messages.size(), size);
+
+            return locker.executeWithLock(mailboxSession, new StoreMailboxPath<Id>(getMailboxEntity()), new MailboxPathLocker.LockAwareExecution<List<Long>>() {
+
+                @Override
+                public List<Long> execute() throws MailboxException {
+                    List<MessageMetaData> data = appendMessagesToStore(messages, mailboxSession);
+
+                    List<Long> result = new ArrayList<Long>(data.size());
+                    SortedMap<Long, MessageMetaData> uids = new TreeMap<Long, MessageMetaData>();
+                    for (MessageMetaData messageMetaData : data) {
+                        result.add(messageMetaData.getUid());
+                        uids.put(messageMetaData.getUid(), messageMetaData);
+                    }
+                    dispatcher.added(mailboxSession, uids, getMailboxEntity());
+                    return result;
+                }
+            }, true);
+
+        } catch (IOException e) {
+            throw new MailboxException("Unable to parse message", e);
+        } catch (MimeException e) {
+            throw new MailboxException("Unable to parse message", e);
+        } finally {
+            // also deletes the temporary files if some were needed
+            for (SpoolingOutputStream out : contents) {
+                IOUtils.closeQuietly(out);
+            }
+        }
+    }
 
+    /**
+     * Parse the given message while copying it to out, and create the
+     * {@link MailboxMessage} to store, backed by the copy
+     */
+    private MailboxMessage<Id> parseMessage(InputStream msgIn, Date internalDate, MailboxSession mailboxSession, boolean isRecent, Flags flagsToBeSet, SpoolingOutputStream out) throws IOException, MimeException, MailboxException {
+        TeeInputStream tmpMsgIn = null;
+        BodyOffsetInputStream bIn = null;
+        try {
             tmpMsgIn = new TeeInputStream(msgIn, out);
 
             bIn = new BodyOffsetInputStream(tmpMsgIn);
@@ -360,54 +460,21 @@ public class StoreMessageManager<Id extends MailboxId> implements org.apache.jam
             }
             byte[] discard = new byte[4096];
             while (tmpMsgIn.read(discard) != -1) {
-                // consume the rest of the stream so everything get copied to
-                // the file now
-                // via the TeeInputStream
+                // consume the rest of the stream so everything get copied
+                // now via the TeeInputStream
             }
             int bodyStartOctet = (int) bIn.getBodyStartOffset();
             if (bodyStartOctet == -1) {
                 bodyStartOctet = 0;
             }
-            contentIn = new SharedFileInputStream(file);
-            final int size = (int) file.length();
-
-            final MailboxMessage<Id> message = createMessage(internalDate, size, bodyStartOctet, contentIn, flags, propertyBuilder);
-
-            new QuotaChecker<Id>(quotaManager, quotaRootResolver, mailbox).tryAddition(1, size);
-
-            return locker.executeWithLock(mailboxSession, new StoreMailboxPath<Id>(getMailboxEntity()), new MailboxPathLocker.LockAwareExecution<Long>() {
-
-                @Override
-                public Long execute() throws MailboxException {
-                    MessageMetaData data = appendMessageToStore(message, mailboxSession);
+            final SharedInputStream contentIn = out.getContent();
+            final int size = (int) out.getSize();
 
-                    SortedMap<Long, MessageMetaData> uids = new TreeMap<Long, MessageMetaData>();
-                    uids.put(data.getUid(), data);
-                    dispatcher.added(mailboxSession, uids, getMailboxEntity());
-                    return data.getUid();
-                }
-            }, true);
-
-        } catch (IOException e) {
-            throw new MailboxException("Unable to parse message", e);
-        } catch (MimeException e) {
-            throw new MailboxException("Unable to parse message", e);
+            return createMessage(internalDate, size, bodyStartOctet, contentIn, flags, propertyBuilder);
         } finally {
             IOUtils.closeQuietly(bIn);
             IOUtils.closeQuietly(tmpMsgIn);
-            IOUtils.closeQuietly(out);
-            IOUtils.closeQuietly(contentIn);
-
-            // delete the temporary file if one was specified
-            if (file != null) {
-                if (!file.delete()) {
-                    // Don't throw an IOException. The message could be appended
-                    // and the temporary file
-                    // will be deleted hopefully some day
-                }
-            }
         }
-
     }
 
     /**
@@ -619,6 +686,17 @@ public class StoreMessageManager<Id extends MailboxId> implements org.apache.jam
         });
     }
 
+    protected List<MessageMetaData> appendMessagesToStore(final List<MailboxMessage<Id>> messages, MailboxSession session) throws MailboxException {
+        final MessageMapper<Id> mapper = mapperFactory.getMessageMapper(session);
+        return mapper.execute(new Mapper.Transaction<List<MessageMetaData>>() {
+
+            public List<MessageMetaData> run() throws MailboxException {
+                return mapper.addAll(getMailboxEntity(), messages);
+            }
+
+        });
+    }
+
     /**
      * @see org.apache.james.mailbox.MessageManager#getMessageCount(org.apache.james.mailbox.MailboxSession)
      */
@@ -636,6 +714,24 @@ public class StoreMessageManager<Id extends MailboxId> implements org.apache.jam
         return new StoreMessageResultIterator<Id>(messageMapper, mailbox, set, fetchBatchSize, fetchGroup);
     }
 
+    /**
+     * @see org.apache.james.mailbox.MessageManager#getMessagesChangedSince(org.apache.james.mailbox.model.MessageRange,
+     *      long, org.apache.james.mailbox.model.MessageResult.FetchGroup,
+     *      org.apache.james.mailbox.MailboxSession)
+     */
+    public MessageResultIterator getMessagesChangedSince(MessageRange set, long modSeq, FetchGroup fetchGroup, MailboxSession mailboxSession) throws MailboxException {
+        final MessageMapper<Id> messageMapper = mapperFactory.getMessageMapper(mailboxSession);
+        return new StoreMessageResultIterator<Id>(messageMapper, mailbox, set, modSeq, fetchBatchSize, fetchGroup);
+    }
+
+    /**
+     * @see org.apache.james.mailbox.MessageManager#getExpungedSince(org.apache.james.mailbox.model.MessageRange,
+     *      long, org.apache.james.mailbox.MailboxSession)
+     */
+    public List<Long> getExpungedSince(MessageRange set, long modSeq, MailboxSession mailboxSession) throws MailboxException {
+        return mapperFactory.getMessageMapper(mailboxSession).findExpungedSinceInMailbox(getMailboxEntity(), set, modSeq);
+    }
+
     /**
      * Return a List which holds all uids of recent messages and optional reset
      * the recent flag on the messages for the uids
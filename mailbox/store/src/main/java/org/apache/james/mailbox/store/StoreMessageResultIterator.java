@@ -41,6 +41,8 @@ import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 
 public class StoreMessageResultIterator<Id extends MailboxId> implements MessageResultIterator {
 
+    public static final long NO_CHANGED_SINCE = -1;
+
     private Iterator<MailboxMessage<Id>> next = null;
     private MailboxException exception;
     private final Mailbox<Id> mailbox;
@@ -52,8 +54,17 @@ public class StoreMessageResultIterator<Id extends MailboxId> implements Message
     private final Type type;
     private final MessageMapper<Id> mapper;
     private final FetchType ftype;
+    private final long changedSince;
 
     public StoreMessageResultIterator(MessageMapper<Id> mapper, Mailbox<Id> mailbox, MessageRange range, int batchSize, org.apache.james.mailbox.model.MessageResult.FetchGroup group) {
+        this(mapper, mailbox, range, NO_CHANGED_SINCE, batchSize, group);
+    }
+
+    /**
+     * Iterate only over the messages whose mod-sequence is greater than
+     * changedSince. Use {@link #NO_CHANGED_SINCE} to iterate over all messages.
+     */
+    public StoreMessageResultIterator(MessageMapper<Id> mapper, Mailbox<Id> mailbox, MessageRange range, long changedSince, int batchSize, org.apache.james.mailbox.model.MessageResult.FetchGroup group) {
         this.mailbox = mailbox;
         this.group = group;
         this.mapper = mapper;
@@ -63,6 +74,7 @@ public class StoreMessageResultIterator<Id extends MailboxId> implements Message
         this.batchSize = batchSize;
         this.type = range.getType();
         this.ftype = getFetchType(group);
+        this.changedSince = changedSince;
     }
 
     /**
@@ -148,7 +160,11 @@ public class StoreMessageResultIterator<Id extends MailboxId> implements Message
             range = MessageRange.range(cursor, to);
             break;
         }
-        next = mapper.findInMailbox(mailbox, range, ftype, batchSize);
+        if (changedSince == NO_CHANGED_SINCE) {
+            next = mapper.findInMailbox(mailbox, range, ftype, batchSize);
+        } else {
+            next = mapper.findChangedSinceInMailbox(mailbox, range, changedSince, ftype, batchSize);
+        }
     }
 
     @Override
@@ -19,34 +19,220 @@
 
 package org.apache.james.mailbox.store.event;
 
-import org.apache.james.mailbox.MailboxListener;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PreDestroy;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Delivers events from a fixed set of worker threads.
+ *
+ * Each worker consumes its own queue, and all the events of a mailbox go to the same worker, chosen by mailbox id:
+ * they are delivered in order, even across a rename, while distinct mailboxes are processed in parallel. When
+ * queueCapacity events are waiting for a worker, {@link #deliver} blocks the caller till the worker catches up, so a
+ * slow listener slows down the writers instead of piling up events in memory.
+ *
+ * Listeners may themselves trigger events. A worker never waits for a queue, as it could be waiting for itself: the
+ * events it triggers are queued beyond the capacity, behind the events already waiting on the target worker.
+ *
+ * Statistics are kept for as long as their listener is referenced elsewhere, so that the listeners registered for a
+ * single IMAP IDLE do not leak.
+ */
 public class AsynchronousEventDelivery implements EventDelivery {
 
-    private final ExecutorService threadPoolExecutor;
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    private final Worker[] workers;
+    private final Thread[] threads;
     private final SynchronousEventDelivery synchronousEventDelivery;
+    private final ConcurrentMap<MailboxListener, ListenerStatistics> statistics;
+    private volatile boolean stopped;
 
     public AsynchronousEventDelivery(int threadPoolSize) {
-        this.threadPoolExecutor = Executors.newFixedThreadPool(threadPoolSize);
+        this(threadPoolSize, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public AsynchronousEventDelivery(int threadPoolSize, int queueCapacity) {
         this.synchronousEventDelivery = new SynchronousEventDelivery();
+        this.statistics = new MapMaker().weakKeys().makeMap();
+        this.workers = new Worker[threadPoolSize];
+        this.threads = new Thread[threadPoolSize];
+        for (int i = 0; i < threadPoolSize; i++) {
+            workers[i] = new Worker(queueCapacity);
+            threads[i] = new Thread(workers[i], "mailbox-event-delivery-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
     }
 
     @Override
-    public void deliver(final MailboxListener mailboxListener, final MailboxListener.Event event) {
-        threadPoolExecutor.submit(new Runnable() {
-            @Override
-            public void run() {
-                synchronousEventDelivery.deliver(mailboxListener, event);
+    public void deliver(MailboxListener mailboxListener, MailboxListener.Event event) {
+        if (stopped) {
+            throw new RejectedExecutionException("Event delivery is stopped");
+        }
+        ListenerStatistics listenerStatistics = getStatistics(mailboxListener);
+        Worker worker = workerFor(event);
+        boolean holdsCapacity = !isWorkerThread();
+        if (holdsCapacity) {
+            try {
+                worker.capacity.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for event delivery", e);
             }
-        });
+        }
+        listenerStatistics.pending.incrementAndGet();
+        worker.queue.add(new Delivery(mailboxListener, event, listenerStatistics, holdsCapacity ? worker.capacity : null));
+    }
+
+    /**
+     * Return the statistics of the deliveries to the given listener
+     */
+    public ListenerStatistics getStatistics(MailboxListener mailboxListener) {
+        ListenerStatistics listenerStatistics = statistics.get(mailboxListener);
+        if (listenerStatistics == null) {
+            listenerStatistics = new ListenerStatistics();
+            ListenerStatistics existing = statistics.putIfAbsent(mailboxListener, listenerStatistics);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return listenerStatistics;
+    }
+
+    /**
+     * Return the count of events waiting for delivery, for all listeners
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Worker worker : workers) {
+            depth += worker.queue.size();
+        }
+        return depth;
     }
 
     @PreDestroy
     public void stop() {
-        threadPoolExecutor.shutdownNow();
+        stopped = true;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    private boolean isWorkerThread() {
+        Thread currentThread = Thread.currentThread();
+        for (Thread thread : threads) {
+            if (thread == currentThread) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Worker workerFor(MailboxListener.Event event) {
+        Object shardingKey = shardingKey(event);
+        if (shardingKey == null) {
+            return workers[0];
+        }
+        return workers[(shardingKey.hashCode() & Integer.MAX_VALUE) % workers.length];
+    }
+
+    /**
+     * The mailbox id, which survives renames, or the path for events which do not carry their mailbox
+     */
+    private Object shardingKey(MailboxListener.Event event) {
+        if (event instanceof EventFactory.MailboxAware) {
+            Mailbox<?> mailbox = ((EventFactory.MailboxAware<?>) event).getMailbox();
+            if (mailbox != null && mailbox.getMailboxId() != null) {
+                return mailbox.getMailboxId();
+            }
+        }
+        return event.getMailboxPath();
+    }
+
+    private class Worker implements Runnable {
+        private final BlockingQueue<Delivery> queue;
+        private final Semaphore capacity;
+
+        private Worker(int queueCapacity) {
+            this.queue = new LinkedBlockingQueue<Delivery>();
+            this.capacity = new Semaphore(queueCapacity);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!stopped) {
+                    queue.take().deliver();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private class Delivery {
+        private final MailboxListener mailboxListener;
+        private final MailboxListener.Event event;
+        private final ListenerStatistics statistics;
+        private final Semaphore capacity;
+        private final long enqueuedAt;
+
+        private Delivery(MailboxListener mailboxListener, MailboxListener.Event event, ListenerStatistics statistics, Semaphore capacity) {
+            this.mailboxListener = mailboxListener;
+            this.event = event;
+            this.statistics = statistics;
+            this.capacity = capacity;
+            this.enqueuedAt = System.nanoTime();
+        }
+
+        private void deliver() {
+            try {
+                synchronousEventDelivery.deliver(mailboxListener, event);
+            } finally {
+                if (capacity != null) {
+                    capacity.release();
+                }
+            }
+            statistics.pending.decrementAndGet();
+            statistics.delivered.incrementAndGet();
+            statistics.latency.addAndGet(System.nanoTime() - enqueuedAt);
+        }
+    }
+
+    /**
+     * Queue depth and latency, from submission to the end of the delivery, of the events of one listener
+     */
+    public static class ListenerStatistics {
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong latency = new AtomicLong();
+
+        public int getPendingEvents() {
+            return pending.get();
+        }
+
+        public long getDeliveredEvents() {
+            return delivered.get();
+        }
+
+        public long getAverageLatencyInMillis() {
+            long count = delivered.get();
+            if (count == 0) {
+                return 0;
+            }
+            return TimeUnit.NANOSECONDS.toMillis(latency.get() / count);
+        }
     }
 }
@@ -0,0 +1,295 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.event.distributed;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxListener.Event;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.event.EventFactory;
+import org.apache.james.mailbox.store.event.EventSerializer;
+import org.apache.james.mailbox.store.mail.model.MailboxId;
+import org.apache.james.mailbox.store.publisher.MessageBatch;
+import org.apache.james.mailbox.store.publisher.Publisher;
+import org.apache.james.mailbox.store.publisher.Topic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Publishes events to other nodes.
+ *
+ * With a batch size greater than one, the events of each topic are buffered and published together in a
+ * {@link MessageBatch} once the batch is full or after the given delay. Consecutive flag updates of a mailbox made by
+ * the same session are merged into one event before publication. Otherwise each event is published right away.
+ *
+ * The publication latency of an event runs from its call to {@link #publish} till the end of the publication of the
+ * batch holding it, so that it includes the time spent waiting for the batch to be flushed.
+ */
+public class BatchingEventPublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingEventPublisher.class);
+
+    private final EventSerializer eventSerializer;
+    private final Publisher publisher;
+    private final int maxBatchSize;
+    private final Map<Topic, List<PendingEvent>> pendingEvents;
+    private final Object publicationLock;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong publishedEvents;
+    private final AtomicLong publicationLatency;
+
+    public BatchingEventPublisher(EventSerializer eventSerializer, Publisher publisher) {
+        this(eventSerializer, publisher, 1, 0);
+    }
+
+    public BatchingEventPublisher(EventSerializer eventSerializer, Publisher publisher, int maxBatchSize, long maxDelayInMs) {
+        this.eventSerializer = eventSerializer;
+        this.publisher = publisher;
+        this.maxBatchSize = maxBatchSize;
+        this.pendingEvents = new HashMap<Topic, List<PendingEvent>>();
+        this.publicationLock = new Object();
+        this.publishedEvents = new AtomicLong();
+        this.publicationLatency = new AtomicLong();
+        if (isBatching()) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "mailbox-event-publisher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, maxDelayInMs, maxDelayInMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    public void publish(Event event, Set<Topic> topics) {
+        if (!isBatching()) {
+            publishNow(event, topics);
+            return;
+        }
+        PendingEvent pendingEvent = new PendingEvent(event);
+        List<Topic> fullTopics = new ArrayList<Topic>();
+        synchronized (pendingEvents) {
+            for (Topic topic : topics) {
+                List<PendingEvent> events = pendingEvents.get(topic);
+                if (events == null) {
+                    events = new ArrayList<PendingEvent>();
+                    pendingEvents.put(topic, events);
+                }
+                events.add(pendingEvent);
+                if (events.size() >= maxBatchSize) {
+                    fullTopics.add(topic);
+                }
+            }
+        }
+        for (Topic topic : fullTopics) {
+            flush(topic);
+        }
+    }
+
+    /**
+     * Publish all the buffered events
+     */
+    public void flush() {
+        List<Topic> topics;
+        synchronized (pendingEvents) {
+            topics = ImmutableList.copyOf(pendingEvents.keySet());
+        }
+        for (Topic topic : topics) {
+            flush(topic);
+        }
+    }
+
+    /**
+     * Return the count of events published, one per topic
+     */
+    public long getPublishedEventCount() {
+        return publishedEvents.get();
+    }
+
+    /**
+     * Return the average publication latency of an event to one topic
+     */
+    public long getAveragePublicationLatencyInMicros() {
+        long count = publishedEvents.get();
+        if (count == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(publicationLatency.get() / count);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        flush();
+    }
+
+    private boolean isBatching() {
+        return maxBatchSize > 1;
+    }
+
+    private void flush(Topic topic) {
+        // Taking and publishing the batch under the same lock keeps the batches of a topic in order
+        synchronized (publicationLock) {
+            List<PendingEvent> events;
+            synchronized (pendingEvents) {
+                events = pendingEvents.remove(topic);
+            }
+            if (events == null || events.isEmpty()) {
+                return;
+            }
+            List<byte[]> messages = new ArrayList<byte[]>();
+            for (Event event : coalesce(events)) {
+                byte[] message = serialize(event);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            try {
+                if (messages.size() == 1) {
+                    publisher.publish(topic, messages.get(0));
+                } else if (messages.size() > 1) {
+                    publisher.publish(topic, MessageBatch.pack(messages));
+                }
+            } catch (Throwable t) {
+                LOGGER.error("Unable to send " + messages.size() + " serialized events to topic " + topic.getValue(), t);
+            } finally {
+                long publishedAt = System.nanoTime();
+                for (PendingEvent event : events) {
+                    published(event.enqueuedAt, publishedAt);
+                }
+            }
+        }
+    }
+
+    private void publishNow(Event event, Set<Topic> topics) {
+        byte[] message = serialize(event);
+        if (message == null) {
+            return;
+        }
+        for (Topic topic : topics) {
+            long start = System.nanoTime();
+            try {
+                publisher.publish(topic, message);
+            } catch (Throwable t) {
+                event.getSession().getLog().error("Unable to send serialized event to topic " + topic.getValue());
+            } finally {
+                published(start, System.nanoTime());
+            }
+        }
+    }
+
+    private void published(long enqueuedAt, long publishedAt) {
+        publishedEvents.incrementAndGet();
+        publicationLatency.addAndGet(publishedAt - enqueuedAt);
+    }
+
+    private byte[] serialize(Event event) {
+        try {
+            return eventSerializer.serializeEvent(event);
+        } catch (Exception e) {
+            event.getSession()
+                .getLog()
+                .error("Unable to serialize " + event.getClass().getCanonicalName(), e);
+            return null;
+        }
+    }
+
+    private List<Event> coalesce(List<PendingEvent> events) {
+        List<Event> result = new ArrayList<Event>();
+        for (PendingEvent pendingEvent : events) {
+            Event event = pendingEvent.event;
+            int last = result.size() - 1;
+            if (last >= 0 && canBeMerged(result.get(last), event)) {
+                result.set(last, merge((MailboxListener.FlagsUpdated) result.get(last), (MailboxListener.FlagsUpdated) event));
+            } else {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    private boolean canBeMerged(Event previous, Event event) {
+        return previous instanceof MailboxListener.FlagsUpdated
+            && event instanceof MailboxListener.FlagsUpdated
+            && event instanceof EventFactory.MailboxAware
+            && previous.getSession().getSessionId() == event.getSession().getSessionId()
+            && previous.getMailboxPath().equals(event.getMailboxPath());
+    }
+
+    /**
+     * Merge two flag updates of the same mailbox: a message updated twice goes from the flags it had before the
+     * first update to the ones it has after the second.
+     */
+    @SuppressWarnings("unchecked")
+    private <Id extends MailboxId> Event merge(MailboxListener.FlagsUpdated previous, MailboxListener.FlagsUpdated event) {
+        Map<Long, UpdatedFlags> updatedFlags = new LinkedHashMap<Long, UpdatedFlags>();
+        for (UpdatedFlags flags : previous.getUpdatedFlags()) {
+            updatedFlags.put(flags.getUid(), flags);
+        }
+        for (UpdatedFlags flags : event.getUpdatedFlags()) {
+            UpdatedFlags previousFlags = updatedFlags.get(flags.getUid());
+            if (previousFlags == null) {
+                updatedFlags.put(flags.getUid(), flags);
+            } else {
+                updatedFlags.put(flags.getUid(), new UpdatedFlags(flags.getUid(), flags.getModSeq(), previousFlags.getOldFlags(), flags.getNewFlags()));
+            }
+        }
+        return new EventFactory<Id>().flagsUpdated(event.getSession(),
+            new ArrayList<Long>(updatedFlags.keySet()),
+            ((EventFactory.MailboxAware<Id>) event).getMailbox(),
+            new ArrayList<UpdatedFlags>(updatedFlags.values()));
+    }
+
+    private static class PendingEvent {
+        private final Event event;
+        private final long enqueuedAt;
+
+        private PendingEvent(Event event) {
+            this.event = event;
+            this.enqueuedAt = System.nanoTime();
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.apache.james.mailbox.store.event.EventDelivery;
 import org.apache.james.mailbox.store.event.EventSerializer;
 import org.apache.james.mailbox.store.event.MailboxListenerRegistry;
 import org.apache.james.mailbox.store.event.SynchronousEventDelivery;
+import org.apache.james.mailbox.store.publisher.MessageBatch;
 import org.apache.james.mailbox.store.publisher.MessageConsumer;
 import org.apache.james.mailbox.store.publisher.Publisher;
 import org.apache.james.mailbox.store.publisher.Topic;
@@ -34,13 +35,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.Collections;
+
+import javax.annotation.PreDestroy;
 
 public class BroadcastDelegatingMailboxListener implements DistributedDelegatingMailboxListener {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(BroadcastDelegatingMailboxListener.class);
 
     private final MailboxListenerRegistry mailboxListenerRegistry;
-    private final Publisher publisher;
+    private final BatchingEventPublisher eventPublisher;
     private final EventSerializer eventSerializer;
     private final Topic globalTopic;
     private final EventDelivery eventDelivery;
@@ -49,9 +53,11 @@ public class BroadcastDelegatingMailboxListener implements DistributedDelegating
                                               MessageConsumer messageConsumer,
                                               EventSerializer eventSerializer,
                                               EventDelivery eventDelivery,
-                                              String globalTopic) throws Exception {
+                                              String globalTopic,
+                                              int publishBatchSize,
+                                              long publishBatchDelayInMs) throws Exception {
         this.mailboxListenerRegistry = new MailboxListenerRegistry();
-        this.publisher = publisher;
+        this.eventPublisher = new BatchingEventPublisher(eventSerializer, publisher, publishBatchSize, publishBatchDelayInMs);
         this.eventSerializer = eventSerializer;
         this.globalTopic = new Topic(globalTopic);
         this.eventDelivery = eventDelivery;
@@ -59,6 +65,14 @@ public class BroadcastDelegatingMailboxListener implements DistributedDelegating
         messageConsumer.init(this.globalTopic);
     }
 
+    public BroadcastDelegatingMailboxListener(Publisher publisher,
+                                              MessageConsumer messageConsumer,
+                                              EventSerializer eventSerializer,
+                                              EventDelivery eventDelivery,
+                                              String globalTopic) throws Exception {
+        this(publisher, messageConsumer, eventSerializer, eventDelivery, globalTopic, 1, 0);
+    }
+
     public BroadcastDelegatingMailboxListener(Publisher publisher,
                                               MessageConsumer messageConsumer,
                                               EventSerializer eventSerializer,
@@ -100,17 +114,27 @@ public class BroadcastDelegatingMailboxListener implements DistributedDelegating
     public void event(Event event) {
         deliverEventToGlobalListeners(event, ListenerType.ONCE);
         try {
-            publisher.publish(globalTopic, eventSerializer.serializeEvent(event));
+            eventPublisher.publish(event, Collections.singleton(globalTopic));
         } catch (Throwable t) {
             event.getSession().getLog().error("Error while sending event to publisher", t);
         }
     }
 
+    /**
+     * Publish the events waiting to be sent to other nodes
+     */
+    @PreDestroy
+    public void flush() {
+        eventPublisher.close();
+    }
+
     public void receiveSerializedEvent(byte[] serializedEvent) {
         try {
-            Event event = eventSerializer.deSerializeEvent(serializedEvent);
-            deliverToMailboxPathRegisteredListeners(event);
-            deliverEventToGlobalListeners(event, ListenerType.EACH_NODE);
+            for (byte[] message : MessageBatch.unpack(serializedEvent)) {
+                Event event = eventSerializer.deSerializeEvent(message);
+                deliverToMailboxPathRegisteredListeners(event);
+                deliverEventToGlobalListeners(event, ListenerType.EACH_NODE);
+            }
         } catch (Exception e) {
             LOGGER.error("Error while receiving serialized event", e);
         }
@@ -20,40 +20,90 @@
 package org.apache.james.mailbox.store.event.distributed;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.publisher.MessageConsumer;
+import org.apache.james.mailbox.store.publisher.MessageReceiver;
+import org.apache.james.mailbox.store.publisher.Publisher;
 import org.apache.james.mailbox.store.publisher.Topic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class DistantMailboxPathRegister implements MailboxPathRegister {
+/**
+ * When given a registration topic, the register caches the topics of the mailbox paths on each node. Every node
+ * broadcasts the paths it starts or stops listening to on the registration topic, and the nodes drop their cached
+ * topics for these paths. The whole cache is also dropped on each refresh of the registrations, which bounds the
+ * staleness left by a lost notification or by the expired registrations of a stopped node.
+ *
+ * Without a registration topic, every call to {@link #getTopics(MailboxPath)} reads the mapper.
+ */
+public class DistantMailboxPathRegister implements MailboxPathRegister, MessageReceiver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DistantMailboxPathRegister.class);
     private static final int DEFAULT_MAX_RETRY = 1000;
+    private static final long DEFAULT_TOPICS_CACHE_SIZE = 100000;
     private final ConcurrentHashMap<MailboxPath, Long> registeredMailboxPathCount;
     private final DistantMailboxPathRegisterMapper mapper;
     private final Topic topic;
     private final Timer timer;
     private final int maxRetry;
     private final long schedulerPeriodInS;
+    private final Publisher publisher;
+    private final Topic registrationTopic;
+    private final Cache<MailboxPath, Set<Topic>> topicsCache;
+    private final AtomicLong topicsCacheInvalidationCount;
 
     public DistantMailboxPathRegister(DistantMailboxPathRegisterMapper mapper, long schedulerPeriodInS) {
         this(mapper, DEFAULT_MAX_RETRY, schedulerPeriodInS);
     }
 
     public DistantMailboxPathRegister(DistantMailboxPathRegisterMapper mapper, int maxRetry, long schedulerPeriodInS) {
+        this(mapper, maxRetry, schedulerPeriodInS, null, null);
+    }
+
+    public DistantMailboxPathRegister(DistantMailboxPathRegisterMapper mapper,
+                                      long schedulerPeriodInS,
+                                      Publisher publisher,
+                                      MessageConsumer messageConsumer,
+                                      String registrationTopic) throws Exception {
+        this(mapper, DEFAULT_MAX_RETRY, schedulerPeriodInS, publisher, new Topic(registrationTopic));
+        messageConsumer.setMessageReceiver(this);
+        messageConsumer.init(this.registrationTopic);
+    }
+
+    private DistantMailboxPathRegister(DistantMailboxPathRegisterMapper mapper, int maxRetry, long schedulerPeriodInS,
+                                       Publisher publisher, Topic registrationTopic) {
         this.maxRetry = maxRetry;
         this.mapper = mapper;
         this.registeredMailboxPathCount = new ConcurrentHashMap<MailboxPath, Long>();
         this.topic = new Topic(UUID.randomUUID().toString());
         this.timer = new Timer();
         this.schedulerPeriodInS = schedulerPeriodInS;
+        this.publisher = publisher;
+        this.registrationTopic = registrationTopic;
+        this.topicsCache = CacheBuilder.newBuilder()
+            .maximumSize(DEFAULT_TOPICS_CACHE_SIZE)
+            .recordStats()
+            .build();
+        this.topicsCacheInvalidationCount = new AtomicLong();
     }
 
     @PostConstruct
@@ -67,6 +117,7 @@ public class DistantMailboxPathRegister implements MailboxPathRegister {
                         mapper.doRegister(entry.getKey(), topic);
                     }
                 }
+                invalidateAllTopics();
             }
         }, 0L, schedulerPeriodInS * 1000);
     }
@@ -79,7 +130,38 @@ public class DistantMailboxPathRegister implements MailboxPathRegister {
 
     @Override
     public Set<Topic> getTopics(MailboxPath mailboxPath) {
-        return mapper.getTopics(mailboxPath);
+        if (registrationTopic == null) {
+            return mapper.getTopics(mailboxPath);
+        }
+        Set<Topic> topics = topicsCache.getIfPresent(mailboxPath);
+        if (topics == null) {
+            long invalidationCount = topicsCacheInvalidationCount.get();
+            topics = ImmutableSet.copyOf(mapper.getTopics(mailboxPath));
+            synchronized (topicsCacheInvalidationCount) {
+                // Topics read before a concurrent invalidation may miss the change it notifies
+                if (topicsCacheInvalidationCount.get() == invalidationCount) {
+                    topicsCache.put(mailboxPath, topics);
+                }
+            }
+        }
+        return Sets.newHashSet(topics);
+    }
+
+    /**
+     * Return the ratio of {@link #getTopics(MailboxPath)} calls answered without reading the mapper
+     */
+    public double getTopicsCacheHitRate() {
+        return topicsCache.stats().hitRate();
+    }
+
+    @Override
+    public void receiveSerializedEvent(byte[] serializedEvent) {
+        try {
+            invalidateTopics(deserializePath(serializedEvent));
+        } catch (IOException e) {
+            LOGGER.error("Error while receiving a registration notification", e);
+            invalidateAllTopics();
+        }
     }
 
     @Override
@@ -116,7 +198,7 @@ public class DistantMailboxPathRegister implements MailboxPathRegister {
     @Override
     public void doCompleteUnRegister(MailboxPath mailboxPath) {
         registeredMailboxPathCount.remove(mailboxPath);
-        mapper.doUnRegister(mailboxPath, topic);
+        doUnRegister(mailboxPath);
     }
 
     @Override
@@ -145,7 +227,7 @@ public class DistantMailboxPathRegister implements MailboxPathRegister {
             return registeredMailboxPathCount.replace(newPath, entry, oldEntry + entry);
         } else {
             if (registeredMailboxPathCount.putIfAbsent(newPath, oldEntry) == null) {
-                mapper.doRegister(newPath, topic);
+                doRegister(newPath);
                 return true;
             }
             return false;
@@ -163,7 +245,7 @@ public class DistantMailboxPathRegister implements MailboxPathRegister {
             return registeredMailboxPathCount.replace(path, entry, newEntry);
         } else {
             if (registeredMailboxPathCount.putIfAbsent(path, newEntry) == null) {
-                mapper.doRegister(path, topic);
+                doRegister(path);
                 return true;
             }
             return false;
@@ -181,13 +263,87 @@ public class DistantMailboxPathRegister implements MailboxPathRegister {
             return registeredMailboxPathCount.replace(path, entry, newEntry);
         } else {
             if (registeredMailboxPathCount.remove(path, entry)) {
-                mapper.doUnRegister(path, topic);
+                doUnRegister(path);
                 return true;
             }
             return false;
         }
     }
 
+    private void doRegister(MailboxPath path) {
+        try {
+            mapper.doRegister(path, topic);
+        } finally {
+            notifyRegistrationChange(path);
+        }
+    }
+
+    private void doUnRegister(MailboxPath path) {
+        try {
+            mapper.doUnRegister(path, topic);
+        } finally {
+            notifyRegistrationChange(path);
+        }
+    }
+
+    private void notifyRegistrationChange(MailboxPath path) {
+        if (registrationTopic == null) {
+            return;
+        }
+        invalidateTopics(path);
+        try {
+            publisher.publish(registrationTopic, serializePath(path));
+        } catch (Exception e) {
+            LOGGER.error("Error while notifying the registration change of " + path, e);
+        }
+    }
+
+    private void invalidateTopics(MailboxPath path) {
+        synchronized (topicsCacheInvalidationCount) {
+            topicsCacheInvalidationCount.incrementAndGet();
+            topicsCache.invalidate(path);
+        }
+    }
+
+    private void invalidateAllTopics() {
+        synchronized (topicsCacheInvalidationCount) {
+            topicsCacheInvalidationCount.incrementAndGet();
+            topicsCache.invalidateAll();
+        }
+    }
+
+    private byte[] serializePath(MailboxPath path) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        writeString(data, path.getNamespace());
+        writeString(data, path.getUser());
+        writeString(data, path.getName());
+        data.flush();
+        return bytes.toByteArray();
+    }
+
+    private MailboxPath deserializePath(byte[] serializedPath) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(serializedPath));
+        String namespace = readString(data);
+        String user = readString(data);
+        String name = readString(data);
+        return new MailboxPath(namespace, user, name);
+    }
+
+    private void writeString(DataOutputStream data, String value) throws IOException {
+        data.writeBoolean(value != null);
+        if (value != null) {
+            data.writeUTF(value);
+        }
+    }
+
+    private String readString(DataInputStream data) throws IOException {
+        if (data.readBoolean()) {
+            return data.readUTF();
+        }
+        return null;
+    }
+
     @VisibleForTesting
     ConcurrentHashMap<MailboxPath, Long> getRegisteredMailboxPathCount() {
         return registeredMailboxPathCount;
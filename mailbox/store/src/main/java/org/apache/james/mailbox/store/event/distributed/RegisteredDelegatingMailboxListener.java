@@ -27,6 +27,7 @@ import org.apache.james.mailbox.store.event.EventDelivery;
 import org.apache.james.mailbox.store.event.EventSerializer;
 import org.apache.james.mailbox.store.event.MailboxListenerRegistry;
 import org.apache.james.mailbox.store.event.SynchronousEventDelivery;
+import org.apache.james.mailbox.store.publisher.MessageBatch;
 import org.apache.james.mailbox.store.publisher.MessageConsumer;
 import org.apache.james.mailbox.store.publisher.Publisher;
 import org.apache.james.mailbox.store.publisher.Topic;
@@ -36,13 +37,15 @@ import org.slf4j.LoggerFactory;
 import java.util.Collection;
 import java.util.Set;
 
+import javax.annotation.PreDestroy;
+
 public class RegisteredDelegatingMailboxListener implements DistributedDelegatingMailboxListener {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RegisteredDelegatingMailboxListener.class);
 
     private final MailboxListenerRegistry mailboxListenerRegistry;
     private final MailboxPathRegister mailboxPathRegister;
-    private final Publisher publisher;
+    private final BatchingEventPublisher eventPublisher;
     private final EventSerializer eventSerializer;
     private final EventDelivery eventDelivery;
 
@@ -50,9 +53,11 @@ public class RegisteredDelegatingMailboxListener implements DistributedDelegatin
                                                Publisher publisher,
                                                MessageConsumer messageConsumer,
                                                MailboxPathRegister mailboxPathRegister,
-                                               EventDelivery eventDelivery) throws Exception {
+                                               EventDelivery eventDelivery,
+                                               int publishBatchSize,
+                                               long publishBatchDelayInMs) throws Exception {
         this.eventSerializer = eventSerializer;
-        this.publisher = publisher;
+        this.eventPublisher = new BatchingEventPublisher(eventSerializer, publisher, publishBatchSize, publishBatchDelayInMs);
         this.mailboxPathRegister = mailboxPathRegister;
         this.mailboxListenerRegistry = new MailboxListenerRegistry();
         this.eventDelivery = eventDelivery;
@@ -60,6 +65,14 @@ public class RegisteredDelegatingMailboxListener implements DistributedDelegatin
         messageConsumer.init(mailboxPathRegister.getLocalTopic());
     }
 
+    public RegisteredDelegatingMailboxListener(EventSerializer eventSerializer,
+                                               Publisher publisher,
+                                               MessageConsumer messageConsumer,
+                                               MailboxPathRegister mailboxPathRegister,
+                                               EventDelivery eventDelivery) throws Exception {
+        this(eventSerializer, publisher, messageConsumer, mailboxPathRegister, eventDelivery, 1, 0);
+    }
+
     public RegisteredDelegatingMailboxListener(EventSerializer eventSerializer,
                                                Publisher publisher,
                                                MessageConsumer messageConsumer,
@@ -117,8 +130,10 @@ public class RegisteredDelegatingMailboxListener implements DistributedDelegatin
 
     public void receiveSerializedEvent(byte[] serializedEvent) {
         try {
-            Event event = eventSerializer.deSerializeEvent(serializedEvent);
-            deliverToMailboxPathRegisteredListeners(event);
+            for (byte[] message : MessageBatch.unpack(serializedEvent)) {
+                Event event = eventSerializer.deSerializeEvent(message);
+                deliverToMailboxPathRegisteredListeners(event);
+            }
         } catch (Exception e) {
             LOGGER.error("Error while receiving serialized event", e);
         }
@@ -156,22 +171,30 @@ public class RegisteredDelegatingMailboxListener implements DistributedDelegatin
     }
 
     private void sendEventToRemotesJamesByTopic(Event event, Set<Topic> topics) {
-        byte[] serializedEvent;
-        try {
-            serializedEvent = eventSerializer.serializeEvent(event);
-        } catch (Exception e) {
-            event.getSession()
-                .getLog()
-                .error("Unable to serialize " + event.getClass().getCanonicalName(), e);
-            return;
-        }
-        for (Topic topic : topics) {
-            try {
-                publisher.publish(topic, serializedEvent);
-            } catch (Throwable t) {
-                event.getSession().getLog().error("Unable to send serialized event to topic " + topic);
-            }
-        }
+        eventPublisher.publish(event, topics);
+    }
+
+    /**
+     * Publish the events waiting to be sent to other nodes
+     */
+    @PreDestroy
+    public void flush() {
+        eventPublisher.close();
+    }
+
+    /**
+     * Return the count of events published to other nodes, one per topic
+     */
+    public long getRemotePublishCount() {
+        return eventPublisher.getPublishedEventCount();
+    }
+
+    /**
+     * Return the average time taken to publish an event to one other node, including the time spent waiting for its
+     * batch to be flushed
+     */
+    public long getAverageRemotePublishLatencyInMicros() {
+        return eventPublisher.getAveragePublicationLatencyInMicros();
     }
 
 }
@@ -53,6 +53,35 @@ public abstract class AbstractLockingUidProvider<Id extends MailboxId> implement
         }, true);
     }
     
+    @Override
+    public long nextUids(final MailboxSession session, final Mailbox<Id> mailbox, final int count) throws MailboxException {
+        return locker.executeWithLock(session, new StoreMailboxPath<Id>(mailbox), new LockAwareExecution<Long>() {
+
+            @Override
+            public Long execute() throws MailboxException {
+                return lockedNextUids(session, mailbox, count);
+            }
+        }, true);
+    }
+
+    /**
+     * Reserve count uids while the {@link Mailbox} is locked. As all uid generation happens under the
+     * same lock the uids are consecutive. Sub-classes may override this to save round-trips.
+     * 
+     * @param session
+     * @param mailbox
+     * @param count
+     * @return highest reserved uid
+     * @throws MailboxException
+     */
+    protected long lockedNextUids(MailboxSession session, Mailbox<Id> mailbox, int count) throws MailboxException {
+        long uid = lockedNextUid(session, mailbox);
+        for (int i = 1; i < count; i++) {
+            uid = lockedNextUid(session, mailbox);
+        }
+        return uid;
+    }
+
     /**
      * Generate the next uid to use while the {@link Mailbox} is locked
      * 
@@ -66,6 +66,41 @@ public abstract class AbstractMessageMapper<Id extends MailboxId> extends Transa
         return uidProvider.lastUid(mailboxSession, mailbox);
     }
     
+    /**
+     * Filter the messages of the range on their mod-sequence. Implementations which are able to query
+     * the mod-sequence directly should override this.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#findChangedSinceInMailbox(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.model.MessageRange, long, org.apache.james.mailbox.store.mail.MessageMapper.FetchType, int)
+     */
+    public Iterator<MailboxMessage<Id>> findChangedSinceInMailbox(Mailbox<Id> mailbox, MessageRange set, long modSeq, FetchType type, int limit) throws MailboxException {
+        final List<MailboxMessage<Id>> results = new ArrayList<MailboxMessage<Id>>();
+        Iterator<MailboxMessage<Id>> messages = findInMailbox(mailbox, set, type, -1);
+        while (messages.hasNext() && (limit <= 0 || results.size() < limit)) {
+            MailboxMessage<Id> message = messages.next();
+            if (message.getModSeq() > modSeq) {
+                results.add(message);
+            }
+        }
+        return results.iterator();
+    }
+
+    /**
+     * No expunge log is kept by default.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#findExpungedSinceInMailbox(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.model.MessageRange, long)
+     */
+    public List<Long> findExpungedSinceInMailbox(Mailbox<Id> mailbox, MessageRange set, long modSeq) throws MailboxException {
+        return null;
+    }
+
+    /**
+     * Return the next mod-sequence of the mailbox. Used to record changes which are not attached to a
+     * stored message, like expunges.
+     */
+    protected long nextModSeq(Mailbox<Id> mailbox) throws MailboxException {
+        return modSeqProvider.nextModSeq(mailboxSession, mailbox);
+    }
+
     /**
      * @see org.apache.james.mailbox.store.mail.MessageMapper#updateFlags(org.apache.james.mailbox.store.mail.model.Mailbox, javax.mail.Flags, boolean, boolean, org.apache.james.mailbox.model.MessageRange)
      */
@@ -118,6 +153,34 @@ public abstract class AbstractMessageMapper<Id extends MailboxId> extends Transa
         
     }
 
+    /**
+     * Reserves the uids of all messages at once, and gives them a single mod-sequence, as
+     * {@link #updateFlags(Mailbox, FlagsUpdateCalculator, MessageRange)} does for a flags update.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#addAll(org.apache.james.mailbox.store.mail.model.Mailbox, java.util.List)
+     */
+    public List<MessageMetaData> addAll(Mailbox<Id> mailbox, List<MailboxMessage<Id>> messages) throws MailboxException {
+        final List<MessageMetaData> data = new ArrayList<MessageMetaData>(messages.size());
+        if (messages.isEmpty()) {
+            return data;
+        }
+        long uid = uidProvider.nextUids(mailboxSession, mailbox, messages.size()) - messages.size() + 1;
+
+        long modSeq = -1;
+        // if a mailbox does not support mod-sequences the provider may be null
+        if (modSeqProvider != null) {
+            modSeq = modSeqProvider.nextModSeq(mailboxSession, mailbox);
+        }
+        for (MailboxMessage<Id> message : messages) {
+            message.setUid(uid++);
+            if (modSeqProvider != null) {
+                message.setModSeq(modSeq);
+            }
+            data.add(save(mailbox, message));
+        }
+        return data;
+    }
+
     
     /**
      * @see org.apache.james.mailbox.store.mail.MessageMapper#copy(org.apache.james.mailbox.store.mail.model.Mailbox, MailboxMessage)
@@ -0,0 +1,77 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.mailbox.store.mail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxId;
+import org.apache.james.mailbox.store.mail.model.MailboxWithChildren;
+
+/**
+ * Computes the children flags of mailboxes from the sorted names of all the mailboxes of their user and namespace:
+ * a mailbox has children if the first name following its own name plus the delimiter starts with it.
+ */
+public class MailboxHierarchy {
+
+    public static final String WILDCARD = "%";
+
+    /**
+     * @param mailboxes mailboxes of a single user and namespace
+     * @param names names of all the mailboxes of this user and namespace
+     * @param delimiter path delimiter
+     */
+    public static <Id extends MailboxId> List<MailboxWithChildren<Id>> withChildren(List<Mailbox<Id>> mailboxes, Collection<String> names, char delimiter) {
+        TreeSet<String> sortedNames = new TreeSet<String>(names);
+        List<MailboxWithChildren<Id>> results = new ArrayList<MailboxWithChildren<Id>>(mailboxes.size());
+        for (Mailbox<Id> mailbox : mailboxes) {
+            String childPrefix = mailbox.getName() + delimiter;
+            String next = sortedNames.ceiling(childPrefix);
+            results.add(new MailboxWithChildren<Id>(mailbox, next != null && next.startsWith(childPrefix)));
+        }
+        return results;
+    }
+
+    /**
+     * Implementation of {@link MailboxMapper#findMailboxWithPathLikeWithChildren(MailboxPath, char)} relying on two
+     * {@link MailboxMapper#findMailboxWithPathLike(MailboxPath)} calls: one for the matching mailboxes and one
+     * listing all the mailboxes of the user.
+     */
+    public static <Id extends MailboxId> List<MailboxWithChildren<Id>> findMailboxWithPathLikeWithChildren(MailboxMapper<Id> mapper, MailboxPath mailboxPath, char delimiter)
+            throws MailboxException {
+        List<Mailbox<Id>> mailboxes = mapper.findMailboxWithPathLike(mailboxPath);
+        if (mailboxes.isEmpty()) {
+            return new ArrayList<MailboxWithChildren<Id>>();
+        }
+        List<Mailbox<Id>> userMailboxes = mapper.findMailboxWithPathLike(new MailboxPath(mailboxPath.getNamespace(), mailboxPath.getUser(), WILDCARD));
+        List<String> names = new ArrayList<String>(userMailboxes.size());
+        for (Mailbox<Id> mailbox : userMailboxes) {
+            names.add(mailbox.getName());
+        }
+        return withChildren(mailboxes, names, delimiter);
+    }
+
+}
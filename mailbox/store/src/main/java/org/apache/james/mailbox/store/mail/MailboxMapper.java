@@ -26,6 +26,7 @@ import org.apache.james.mailbox.model.MailboxACL;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.store.mail.model.MailboxId;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxWithChildren;
 import org.apache.james.mailbox.store.transaction.Mapper;
 
 /**
@@ -73,6 +74,19 @@ public interface MailboxMapper<Id extends MailboxId> extends Mapper {
     List<Mailbox<Id>> findMailboxWithPathLike(MailboxPath mailboxPath)
             throws MailboxException;
 
+    /**
+     * Return a List of {@link Mailbox} which name is like the given name, each of them along with whether it has
+     * children. Implementations compute the children of all the mailboxes from a single listing of the user mailboxes
+     * rather than calling {@link #hasChildren(Mailbox, char)} for each of them.
+     * 
+     * @param mailboxPath
+     * @param delimiter path delimiter
+     * @return mailboxList
+     * @throws MailboxException
+     */
+    List<MailboxWithChildren<Id>> findMailboxWithPathLikeWithChildren(MailboxPath mailboxPath, char delimiter)
+            throws MailboxException;
+
     /**
      * Return if the given {@link Mailbox} has children
      * 
@@ -53,6 +53,35 @@ public interface MessageMapper<Id extends MailboxId> extends Mapper {
     Iterator<MailboxMessage<Id>> findInMailbox(Mailbox<Id> mailbox, MessageRange set, FetchType type, int limit)
             throws MailboxException;
 
+    /**
+     * Return a {@link Iterator} which holds the messages of the given {@link MessageRange} whose mod-sequence is
+     * greater than the given one. The list must be ordered by the {@link MailboxMessage} uid
+     * 
+     * @param mailbox The mailbox to search
+     * @param set message range for batch processing
+     * @param modSeq only messages with a greater mod-sequence are returned
+     * @param type
+     * @param limit the maximal limit of returned {@link MailboxMessage}'s. Use -1 to set no limit. In any case the caller MUST not expect the limit to get applied in all cases as the implementation
+     *              MAY just ignore it
+     * @throws MailboxException
+     */
+    Iterator<MailboxMessage<Id>> findChangedSinceInMailbox(Mailbox<Id> mailbox, MessageRange set, long modSeq, FetchType type, int limit)
+            throws MailboxException;
+
+    /**
+     * Return the uids of the messages of the given {@link MessageRange} which were expunged with a mod-sequence
+     * greater than the given one, as recorded by {@link #expungeMarkedForDeletionInMailbox(Mailbox, MessageRange)}.
+     * The list must be ordered
+     * 
+     * @param mailbox
+     * @param set
+     * @param modSeq
+     * @return uids, or null if the mapper keeps no expunge log or its log does not go back to this mod-sequence
+     * @throws MailboxException
+     */
+    List<Long> findExpungedSinceInMailbox(Mailbox<Id> mailbox, MessageRange set, long modSeq)
+            throws MailboxException;
+
     /**
      * Return a {@link Iterator} which holds the uids for all deleted Messages for the given {@link MessageRange} which are marked for deletion
      * The list must be ordered
@@ -127,6 +156,17 @@ public interface MessageMapper<Id extends MailboxId> extends Mapper {
      * @throws StorageException
      */
     MessageMetaData add(Mailbox<Id> mailbox, MailboxMessage<Id> message) throws MailboxException;
+
+    /**
+     * Add the given {@link MailboxMessage}s to the underlying storage. Uids are assigned in the order of
+     * the given list. Like for {@link #add(Mailbox, MailboxMessage)}, only depend on the returned uids.
+     * 
+     * @param mailbox
+     * @param messages
+     * @return metaData of the added messages, in the order of the given list
+     * @throws MailboxException
+     */
+    List<MessageMetaData> addAll(Mailbox<Id> mailbox, List<MailboxMessage<Id>> messages) throws MailboxException;
     
     /**
      * Update flags for the given {@link MessageRange}. Only the flags may be modified after a message was saved to a mailbox.
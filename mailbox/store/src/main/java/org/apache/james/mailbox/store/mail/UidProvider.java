@@ -43,6 +43,18 @@ public interface UidProvider<Id extends MailboxId> {
      * @throws MailboxException
      */
     long nextUid(MailboxSession session, Mailbox<Id> mailbox) throws MailboxException;
+
+    /**
+     * Reserve count consecutive uids for the {@link Mailbox} at once and return the highest of them.
+     * The reserved range is [returned - count + 1, returned]
+     * 
+     * @param session
+     * @param mailbox
+     * @param count
+     * @return highest reserved uid
+     * @throws MailboxException
+     */
+    long nextUids(MailboxSession session, Mailbox<Id> mailbox, int count) throws MailboxException;
     
     /**
      * Return the last uid which were used for storing a MailboxMessage in the {@link Mailbox}
@@ -0,0 +1,68 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.publisher;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Envelope carrying several serialized events in one published message.
+ *
+ * The envelope is a MessagePack ( http://msgpack.org/ ) array of binaries, prefixed by a byte which MessagePack never
+ * uses and which can not start a JSON document, so that single serialized events are still told apart.
+ */
+public class MessageBatch {
+
+    private static final byte MARKER = (byte) 0xC1;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper(new MessagePackFactory());
+    private static final TypeReference<List<byte[]>> MESSAGES_TYPE = new TypeReference<List<byte[]>>() {};
+
+    public static byte[] pack(List<byte[]> messages) throws IOException {
+        byte[] content = OBJECT_MAPPER.writeValueAsBytes(messages);
+        byte[] batch = new byte[content.length + 1];
+        batch[0] = MARKER;
+        System.arraycopy(content, 0, batch, 1, content.length);
+        return batch;
+    }
+
+    /**
+     * Return the messages of the batch, or the message itself if it is not a batch
+     */
+    public static List<byte[]> unpack(byte[] message) throws IOException {
+        if (!isBatch(message)) {
+            return Collections.singletonList(message);
+        }
+        return OBJECT_MAPPER.readValue(Arrays.copyOfRange(message, 1, message.length), MESSAGES_TYPE);
+    }
+
+    public static boolean isBatch(byte[] message) {
+        return message.length > 0 && message[0] == MARKER;
+    }
+
+    private MessageBatch() {
+    }
+}
@@ -18,6 +18,7 @@
  ****************************************************************/
 package org.apache.james.mailbox.store.search;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -42,6 +43,11 @@ import org.apache.james.mailbox.store.mail.model.MailboxMessage;
  */
 public abstract class ListeningMessageSearchIndex<Id extends MailboxId> implements MessageSearchIndex<Id>, MailboxListener {
 
+    /**
+     * Maximum count of added messages loaded and handed to {@link #add(MailboxSession, Mailbox, List)} at once
+     */
+    public static final int INDEXING_BATCH_SIZE = 100;
+
     private final MessageMapperFactory<Id> factory;
 
     public ListeningMessageSearchIndex(MessageMapperFactory<Id> factory) {
@@ -78,17 +84,19 @@ public abstract class ListeningMessageSearchIndex<Id extends MailboxId> implemen
                     EventFactory.AddedImpl added = (EventFactory.AddedImpl) event;
                     final Mailbox<Id> mailbox = added.getMailbox();
 
-                    for (Long next : (Iterable<Long>) added.getUids()) {
-                        Iterator<MailboxMessage<Id>> messages = factory.getMessageMapper(session).findInMailbox(mailbox, MessageRange.one(next), FetchType.Full, -1);
+                    List<MailboxMessage<Id>> batch = new ArrayList<MailboxMessage<Id>>();
+                    for (MessageRange range : MessageRange.toRanges((List<Long>) added.getUids())) {
+                        Iterator<MailboxMessage<Id>> messages = factory.getMessageMapper(session).findInMailbox(mailbox, range, FetchType.Full, -1);
                         while (messages.hasNext()) {
-                            MailboxMessage<Id> message = messages.next();
-                            try {
-                                add(session, mailbox, message);
-                            } catch (MailboxException e) {
-                                session.getLog().debug("Unable to index message " + message.getUid() + " for mailbox " + mailbox, e);
+                            batch.add(messages.next());
+                            if (batch.size() >= INDEXING_BATCH_SIZE) {
+                                add(session, mailbox, batch);
+                                batch = new ArrayList<MailboxMessage<Id>>();
                             }
                         }
-
+                    }
+                    if (!batch.isEmpty()) {
+                        add(session, mailbox, batch);
                     }
                 } else if (event instanceof EventFactory.ExpungedImpl) {
                     EventFactory.ExpungedImpl expunged = (EventFactory.ExpungedImpl) event;
@@ -126,6 +134,27 @@ public abstract class ListeningMessageSearchIndex<Id extends MailboxId> implemen
      */
     public abstract void add(MailboxSession session, Mailbox<Id> mailbox, MailboxMessage<Id> message) throws MailboxException;
 
+    /**
+     * Add several {@link MailboxMessage} of the given {@link Mailbox} to the index. Messages which can not be indexed
+     * are logged and skipped.
+     *
+     * Implementations able to index several messages at once should override this method. The default implementation
+     * adds the messages one by one.
+     *
+     * @param session The mailbox session performing the message addition
+     * @param mailbox mailbox on which the message addition was performed
+     * @param messages The added messages
+     */
+    public void add(MailboxSession session, Mailbox<Id> mailbox, List<MailboxMessage<Id>> messages) {
+        for (MailboxMessage<Id> message : messages) {
+            try {
+                add(session, mailbox, message);
+            } catch (MailboxException e) {
+                session.getLog().debug("Unable to index message " + message.getUid() + " for mailbox " + mailbox, e);
+            }
+        }
+    }
+
     /**
      * Delete the concerned UIDs for the given {@link Mailbox} from the index
      *
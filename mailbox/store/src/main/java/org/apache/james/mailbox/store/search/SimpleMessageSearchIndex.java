@@ -30,8 +30,12 @@ import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.SearchQuery;
+import org.apache.james.mailbox.model.SearchQuery.Conjunction;
 import org.apache.james.mailbox.model.SearchQuery.ConjunctionCriterion;
 import org.apache.james.mailbox.model.SearchQuery.Criterion;
+import org.apache.james.mailbox.model.SearchQuery.ModSeqCriterion;
+import org.apache.james.mailbox.model.SearchQuery.NumericComparator;
+import org.apache.james.mailbox.model.SearchQuery.NumericOperator;
 import org.apache.james.mailbox.model.SearchQuery.NumericRange;
 import org.apache.james.mailbox.model.SearchQuery.UidCriterion;
 import org.apache.james.mailbox.store.mail.MessageMapper;
@@ -79,6 +83,39 @@ public class SimpleMessageSearchIndex<Id extends MailboxId> implements MessageSe
 		return null;
 	}
     
+    /**
+     * Walks down the query tree's AND conjunctions to find a ModSeqCriterion asking for greater mod-sequences
+     * @param crits - list of Criterion to search from
+     * @return
+     *      the greatest mod-sequence the matching messages need to exceed
+     *      null - if not found
+     */
+    private static Long findConjugatedChangedSince(List<Criterion> crits) {
+        Long changedSince = null;
+        for (Criterion crit : crits) {
+            Long found = null;
+            if (crit instanceof ModSeqCriterion) {
+                NumericOperator operator = ((ModSeqCriterion) crit).getOperator();
+                if (operator.getType() == NumericComparator.GREATER_THAN) {
+                    found = operator.getValue();
+                }
+            } else if (crit instanceof ConjunctionCriterion && ((ConjunctionCriterion) crit).getType() == Conjunction.AND) {
+                found = findConjugatedChangedSince(((ConjunctionCriterion) crit).getCriteria());
+            }
+            if (found != null && (changedSince == null || found > changedSince)) {
+                changedSince = found;
+            }
+        }
+        return changedSince;
+    }
+
+    private Iterator<MailboxMessage<Id>> find(MessageMapper<Id> mapper, Mailbox<Id> mailbox, MessageRange range, Long changedSince, FetchType fetchType) throws MailboxException {
+        if (changedSince != null) {
+            return mapper.findChangedSinceInMailbox(mailbox, range, changedSince, fetchType, -1);
+        }
+        return mapper.findInMailbox(mailbox, range, fetchType, -1);
+    }
+
     @Override
     public Iterator<Long> search(MailboxSession session, Mailbox<Id> mailbox, SearchQuery query) throws MailboxException {
         MessageMapper<Id> mapper = factory.getMessageMapper(session);
@@ -86,19 +123,21 @@ public class SimpleMessageSearchIndex<Id extends MailboxId> implements MessageSe
         final SortedSet<MailboxMessage<?>> hitSet = new TreeSet<MailboxMessage<?>>();
 
         UidCriterion uidCrit = findConjugatedUidCriterion(query.getCriterias());
+        // a conjugated mod-sequence criterion lets the mapper skip the unchanged messages
+        Long changedSince = findConjugatedChangedSince(query.getCriterias());
         if (uidCrit != null) {
             // if there is a conjugated uid range criterion in the query tree we can optimize by
             // only fetching this uid range
             NumericRange[] ranges = uidCrit.getOperator().getRange();
             for (NumericRange r : ranges) {
-                Iterator<MailboxMessage<Id>> it = mapper.findInMailbox(mailbox, MessageRange.range(r.getLowValue(), r.getHighValue()), FetchType.Metadata, -1);
+                Iterator<MailboxMessage<Id>> it = find(mapper, mailbox, MessageRange.range(r.getLowValue(), r.getHighValue()), changedSince, FetchType.Metadata);
                 while (it.hasNext()) {
                     hitSet.add(it.next());
                 }
             }
         } else {
         	// we have to fetch all messages
-            Iterator<MailboxMessage<Id>> messages = mapper.findInMailbox(mailbox, MessageRange.all(), FetchType.Full, -1);
+            Iterator<MailboxMessage<Id>> messages = find(mapper, mailbox, MessageRange.all(), changedSince, FetchType.Full);
             while(messages.hasNext()) {
             	MailboxMessage<Id> m = messages.next();
             	hitSet.add(m);
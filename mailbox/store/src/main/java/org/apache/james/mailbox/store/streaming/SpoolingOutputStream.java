@@ -0,0 +1,146 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.mailbox.store.streaming;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import javax.mail.internet.SharedInputStream;
+import javax.mail.util.SharedByteArrayInputStream;
+import javax.mail.util.SharedFileInputStream;
+
+/**
+ * {@link OutputStream} which keeps the written content in memory until it grows above a
+ * threshold, and only then spills it to a temporary file.
+ *
+ * The written content can then be read back as a {@link SharedInputStream} without copying
+ * the in-memory buffer. {@link #close()} deletes the temporary file, if any, so it must only
+ * be called once the content is not needed anymore.
+ *
+ *  IMPORTANT: This class is not thread-safe!
+ */
+public class SpoolingOutputStream extends OutputStream {
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private final int threshold;
+    private byte[] buffer;
+    private int count = 0;
+    private File file;
+    private OutputStream fileOut;
+    private SharedFileInputStream fileIn;
+
+    /**
+     * @param threshold maximum number of bytes kept in memory
+     */
+    public SpoolingOutputStream(int threshold) {
+        this.threshold = threshold;
+        this.buffer = new byte[Math.max(0, Math.min(threshold, INITIAL_BUFFER_SIZE))];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (fileOut == null && count + len > threshold) {
+            spill();
+        }
+        if (fileOut != null) {
+            fileOut.write(b, off, len);
+        } else {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buffer, count, len);
+        }
+        count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public long getSize() {
+        return count;
+    }
+
+    /**
+     * @return true while the content is still held in memory, false once it was spilled to a temporary file
+     */
+    public boolean isInMemory() {
+        return fileOut == null;
+    }
+
+    /**
+     * Return the content written so far. No more content should be written afterward.
+     */
+    public SharedInputStream getContent() throws IOException {
+        if (fileOut == null) {
+            return new SharedByteArrayInputStream(buffer, 0, count);
+        }
+        fileOut.close();
+        if (fileIn == null) {
+            fileIn = new SharedFileInputStream(file);
+        }
+        return fileIn;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (fileIn != null) {
+                fileIn.close();
+            }
+            if (fileOut != null) {
+                fileOut.close();
+            }
+        } finally {
+            if (file != null && !file.delete()) {
+                // Don't throw an IOException. The file will be deleted hopefully
+                // some day
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile("imap", ".msg");
+        fileOut = new BufferedOutputStream(new FileOutputStream(file));
+        fileOut.write(buffer, 0, count);
+        buffer = null;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(threshold, Math.max(capacity, buffer.length * 2)));
+        }
+    }
+}
@@ -97,6 +97,18 @@ public class StoreMailboxMessageResultIteratorTest {
             return messages.iterator();
         }
 
+        @Override
+        public Iterator<MailboxMessage<TestId>> findChangedSinceInMailbox(Mailbox<TestId> mailbox, MessageRange set, long modSeq,
+                                                                          org.apache.james.mailbox.store.mail.MessageMapper.FetchType type, int limit)
+                throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Long> findExpungedSinceInMailbox(Mailbox<TestId> mailbox, MessageRange set, long modSeq) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
         private SimpleMailboxMessage<TestId> createMessage(long uid) {
             SimpleMailboxMessage<TestId> message = new SimpleMailboxMessage<TestId>(null, 0, 0, new SharedByteArrayInputStream(
                     "".getBytes()), new Flags(), new PropertyBuilder(), TestId.of(1L));
@@ -143,6 +155,11 @@ public class StoreMailboxMessageResultIteratorTest {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public List<MessageMetaData> addAll(Mailbox<TestId> mailbox, List<MailboxMessage<TestId>> messages) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public Iterator<UpdatedFlags> updateFlags(Mailbox<TestId> mailbox, FlagsUpdateCalculator calculator, MessageRange set) throws MailboxException {
             throw new UnsupportedOperationException();
@@ -19,18 +19,33 @@
 
 package org.apache.james.mailbox.store.event;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.james.mailbox.MailboxListener;
 import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.store.TestId;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class AsynchronousEventDeliveryTest {
 
@@ -74,4 +89,192 @@ public class AsynchronousEventDeliveryTest {
         verify(mailboxListener, timeout(ONE_MINUTE).times(operationCount)).event(event);
     }
 
+    @Test
+    public void deliverShouldPreserveTheOrderOfTheEventsOfAMailbox() throws Exception {
+        final List<MailboxListener.Event> deliveredEvents = Collections.synchronizedList(new ArrayList<MailboxListener.Event>());
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                deliveredEvents.add((MailboxListener.Event) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(mailboxListener).event(any(MailboxListener.Event.class));
+        List<MailboxListener.Event> events = new ArrayList<MailboxListener.Event>();
+        for (int i = 0; i < 100; i++) {
+            MailboxListener.Event event = new MailboxListener.Event(null, new MailboxPath("namespace", "user", "name")) {};
+            events.add(event);
+            asynchronousEventDelivery.deliver(mailboxListener, event);
+        }
+        verify(mailboxListener, timeout(ONE_MINUTE).times(events.size())).event(any(MailboxListener.Event.class));
+        assertThat(deliveredEvents).isEqualTo(events);
+    }
+
+    @Test
+    public void deliverShouldWorkWhenTheQueueIsFull() throws Exception {
+        asynchronousEventDelivery.stop();
+        asynchronousEventDelivery = new AsynchronousEventDelivery(1, 1);
+        MailboxListener.Event event = new MailboxListener.Event(new MockMailboxSession("test"), null) {};
+        int operationCount = 10;
+        for (int i = 0; i < operationCount; i++) {
+            asynchronousEventDelivery.deliver(mailboxListener, event);
+        }
+        verify(mailboxListener, timeout(ONE_MINUTE).times(operationCount)).event(event);
+    }
+
+    @Test
+    public void deliverShouldNotBlockAListenerDeliveringEventsOntoItsOwnFullQueue() throws Exception {
+        asynchronousEventDelivery.stop();
+        asynchronousEventDelivery = new AsynchronousEventDelivery(1, 1);
+        final MailboxListener.Event triggeredEvent = new MailboxListener.Event(new MockMailboxSession("test"), null) {};
+        final int triggeredCount = 10;
+        MailboxListener triggeringListener = mock(MailboxListener.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                for (int i = 0; i < triggeredCount; i++) {
+                    asynchronousEventDelivery.deliver(mailboxListener, triggeredEvent);
+                }
+                return null;
+            }
+        }).when(triggeringListener).event(any(MailboxListener.Event.class));
+        asynchronousEventDelivery.deliver(triggeringListener, new MailboxListener.Event(new MockMailboxSession("test"), null) {});
+        verify(mailboxListener, timeout(ONE_MINUTE).times(triggeredCount)).event(triggeredEvent);
+    }
+
+    @Test
+    public void statisticsShouldCountDeliveredEvents() throws Exception {
+        MailboxListener.Event event = new MailboxListener.Event(new MockMailboxSession("test"), null) {};
+        asynchronousEventDelivery.deliver(mailboxListener, event);
+        asynchronousEventDelivery.deliver(mailboxListener, event);
+        AsynchronousEventDelivery.ListenerStatistics statistics = asynchronousEventDelivery.getStatistics(mailboxListener);
+        long deadline = System.currentTimeMillis() + ONE_MINUTE;
+        while (statistics.getDeliveredEvents() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(asynchronousEventDelivery.getStatistics(mailboxListener).getDeliveredEvents()).isEqualTo(2);
+        assertThat(asynchronousEventDelivery.getStatistics(mailboxListener).getPendingEvents()).isEqualTo(0);
+    }
+
+    @Test
+    public void deliverShouldPreserveTheOrderOfTheEventsTriggeredOntoAFullQueue() throws Exception {
+        asynchronousEventDelivery.stop();
+        asynchronousEventDelivery = new AsynchronousEventDelivery(1, 1);
+        final List<MailboxListener.Event> deliveredEvents = recordDeliveredEvents(mailboxListener);
+        final List<MailboxListener.Event> triggeredEvents = new ArrayList<MailboxListener.Event>();
+        for (int i = 0; i < 10; i++) {
+            triggeredEvents.add(new MailboxListener.Event(new MockMailboxSession("test"), null) {});
+        }
+        MailboxListener triggeringListener = mock(MailboxListener.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                for (MailboxListener.Event triggeredEvent : triggeredEvents) {
+                    asynchronousEventDelivery.deliver(mailboxListener, triggeredEvent);
+                }
+                return null;
+            }
+        }).when(triggeringListener).event(any(MailboxListener.Event.class));
+
+        asynchronousEventDelivery.deliver(triggeringListener, new MailboxListener.Event(new MockMailboxSession("test"), null) {});
+
+        verify(mailboxListener, timeout(ONE_MINUTE).times(triggeredEvents.size())).event(any(MailboxListener.Event.class));
+        assertThat(deliveredEvents).isEqualTo(triggeredEvents);
+    }
+
+    @Test
+    public void deliverShouldPreserveTheOrderOfTheEventsOfAMailboxAcrossARename() throws Exception {
+        final MailboxPath oldPath = new MailboxPath("namespace", "user", "name");
+        MailboxPath newPath = pathOfAnotherWorker(oldPath, 2);
+        EventFactory<TestId> eventFactory = new EventFactory<TestId>();
+        final MailboxListener.Event eventBeforeRename = eventFactory.mailboxAdded(new MockMailboxSession("test"), mailbox(oldPath));
+        MailboxListener.Event eventAfterRename = eventFactory.added(new MockMailboxSession("test"), new TreeMap<Long, MessageMetaData>(), mailbox(newPath));
+        final List<MailboxListener.Event> deliveredEvents = Collections.synchronizedList(new ArrayList<MailboxListener.Event>());
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                MailboxListener.Event event = (MailboxListener.Event) invocation.getArguments()[0];
+                if (event == eventBeforeRename) {
+                    // leave time to a worker of the new path to overtake
+                    Thread.sleep(200);
+                }
+                deliveredEvents.add(event);
+                return null;
+            }
+        }).when(mailboxListener).event(any(MailboxListener.Event.class));
+
+        asynchronousEventDelivery.deliver(mailboxListener, eventBeforeRename);
+        asynchronousEventDelivery.deliver(mailboxListener, eventAfterRename);
+
+        verify(mailboxListener, timeout(ONE_MINUTE).times(2)).event(any(MailboxListener.Event.class));
+        assertThat(deliveredEvents).containsExactly(eventBeforeRename, eventAfterRename);
+    }
+
+    @Test
+    public void statisticsShouldNotRetainTheListener() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        MailboxListener listener = new MailboxListener() {
+            @Override
+            public ListenerType getType() {
+                return ListenerType.MAILBOX;
+            }
+
+            @Override
+            public ExecutionMode getExecutionMode() {
+                return ExecutionMode.ASYNCHRONOUS;
+            }
+
+            @Override
+            public void event(Event event) {
+                delivered.countDown();
+            }
+        };
+        asynchronousEventDelivery.deliver(listener, new MailboxListener.Event(new MockMailboxSession("test"), null) {});
+        AsynchronousEventDelivery.ListenerStatistics statistics = asynchronousEventDelivery.getStatistics(listener);
+        assertThat(delivered.await(ONE_MINUTE, TimeUnit.MILLISECONDS)).isTrue();
+        long deadline = System.currentTimeMillis() + ONE_MINUTE;
+        while (statistics.getPendingEvents() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        WeakReference<MailboxListener> listenerReference = new WeakReference<MailboxListener>(listener);
+        listener = null;
+
+        while (listenerReference.get() != null && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertThat(listenerReference.get()).isNull();
+    }
+
+    private List<MailboxListener.Event> recordDeliveredEvents(MailboxListener listener) {
+        final List<MailboxListener.Event> deliveredEvents = Collections.synchronizedList(new ArrayList<MailboxListener.Event>());
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                deliveredEvents.add((MailboxListener.Event) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(listener).event(any(MailboxListener.Event.class));
+        return deliveredEvents;
+    }
+
+    private SimpleMailbox<TestId> mailbox(MailboxPath path) {
+        SimpleMailbox<TestId> mailbox = new SimpleMailbox<TestId>(path, 42);
+        mailbox.setMailboxId(TestId.of(1));
+        return mailbox;
+    }
+
+    /**
+     * Return a path which would be delivered by another worker than the given one if events were sharded by path
+     */
+    private MailboxPath pathOfAnotherWorker(MailboxPath path, int workerCount) {
+        int worker = (path.hashCode() & Integer.MAX_VALUE) % workerCount;
+        for (int i = 0; ; i++) {
+            MailboxPath candidate = new MailboxPath(path.getNamespace(), path.getUser(), path.getName() + i);
+            if ((candidate.hashCode() & Integer.MAX_VALUE) % workerCount != worker) {
+                return candidate;
+            }
+        }
+    }
+
 }
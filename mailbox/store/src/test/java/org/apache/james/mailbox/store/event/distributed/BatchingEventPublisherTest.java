@@ -0,0 +1,186 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.event.distributed;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.TestId;
+import org.apache.james.mailbox.store.event.EventFactory;
+import org.apache.james.mailbox.store.event.EventSerializer;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.apache.james.mailbox.store.publisher.MessageBatch;
+import org.apache.james.mailbox.store.publisher.Publisher;
+import org.apache.james.mailbox.store.publisher.Topic;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+public class BatchingEventPublisherTest {
+
+    private static final MailboxPath MAILBOX_PATH = new MailboxPath("namespace", "user", "name");
+    private static final Topic TOPIC = new Topic("topic");
+    private static final byte[] BYTES_1 = new byte[] {1};
+    private static final byte[] BYTES_2 = new byte[] {2};
+    private static final MailboxSession mailboxSession = new MockMailboxSession("benwa");
+
+    public static final MailboxListener.Event EVENT_1 = new MailboxListener.Event(mailboxSession, MAILBOX_PATH) {};
+    public static final MailboxListener.Event EVENT_2 = new MailboxListener.Event(mailboxSession, MAILBOX_PATH) {};
+
+    private EventSerializer mockedEventSerializer;
+    private Publisher mockedPublisher;
+    private BatchingEventPublisher batchingEventPublisher;
+
+    @Before
+    public void setUp() throws Exception {
+        mockedEventSerializer = mock(EventSerializer.class);
+        mockedPublisher = mock(Publisher.class);
+        when(mockedEventSerializer.serializeEvent(EVENT_1)).thenReturn(BYTES_1);
+        when(mockedEventSerializer.serializeEvent(EVENT_2)).thenReturn(BYTES_2);
+    }
+
+    @After
+    public void tearDown() {
+        if (batchingEventPublisher != null) {
+            batchingEventPublisher.close();
+        }
+    }
+
+    @Test
+    public void publishShouldSendEventRightAwayWhenNotBatching() throws Exception {
+        batchingEventPublisher = new BatchingEventPublisher(mockedEventSerializer, mockedPublisher);
+        batchingEventPublisher.publish(EVENT_1, ImmutableSet.of(TOPIC));
+        verify(mockedPublisher).publish(TOPIC, BYTES_1);
+    }
+
+    @Test
+    public void publishShouldBufferEventsWhileTheBatchIsNotFull() throws Exception {
+        batchingEventPublisher = new BatchingEventPublisher(mockedEventSerializer, mockedPublisher, 3, 3600000);
+        batchingEventPublisher.publish(EVENT_1, ImmutableSet.of(TOPIC));
+        batchingEventPublisher.publish(EVENT_2, ImmutableSet.of(TOPIC));
+        verifyZeroInteractions(mockedPublisher);
+    }
+
+    @Test
+    public void flushShouldSendBufferedEventsInOneBatch() throws Exception {
+        batchingEventPublisher = new BatchingEventPublisher(mockedEventSerializer, mockedPublisher, 3, 3600000);
+        batchingEventPublisher.publish(EVENT_1, ImmutableSet.of(TOPIC));
+        batchingEventPublisher.publish(EVENT_2, ImmutableSet.of(TOPIC));
+        batchingEventPublisher.flush();
+
+        assertThat(MessageBatch.unpack(publishedMessage())).containsExactly(BYTES_1, BYTES_2);
+    }
+
+    @Test
+    public void publishShouldSendTheBatchOnceFull() throws Exception {
+        batchingEventPublisher = new BatchingEventPublisher(mockedEventSerializer, mockedPublisher, 2, 3600000);
+        batchingEventPublisher.publish(EVENT_1, ImmutableSet.of(TOPIC));
+        batchingEventPublisher.publish(EVENT_2, ImmutableSet.of(TOPIC));
+
+        assertThat(MessageBatch.unpack(publishedMessage())).containsExactly(BYTES_1, BYTES_2);
+    }
+
+    @Test
+    public void flushShouldNotWrapASingleEvent() throws Exception {
+        batchingEventPublisher = new BatchingEventPublisher(mockedEventSerializer, mockedPublisher, 3, 3600000);
+        batchingEventPublisher.publish(EVENT_1, ImmutableSet.of(TOPIC));
+        batchingEventPublisher.flush();
+
+        verify(mockedPublisher).publish(TOPIC, BYTES_1);
+    }
+
+    @Test
+    public void publishedEventCountShouldOnlyCountFlushedEvents() throws Exception {
+        batchingEventPublisher = new BatchingEventPublisher(mockedEventSerializer, mockedPublisher, 3, 3600000);
+        batchingEventPublisher.publish(EVENT_1, ImmutableSet.of(TOPIC));
+        batchingEventPublisher.publish(EVENT_2, ImmutableSet.of(TOPIC));
+        assertThat(batchingEventPublisher.getPublishedEventCount()).isEqualTo(0);
+
+        batchingEventPublisher.flush();
+
+        assertThat(batchingEventPublisher.getPublishedEventCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void averagePublicationLatencyShouldIncludeTheTimeSpentWaitingForTheFlush() throws Exception {
+        batchingEventPublisher = new BatchingEventPublisher(mockedEventSerializer, mockedPublisher, 3, 3600000);
+        batchingEventPublisher.publish(EVENT_1, ImmutableSet.of(TOPIC));
+        Thread.sleep(50);
+
+        batchingEventPublisher.flush();
+
+        assertThat(batchingEventPublisher.getAveragePublicationLatencyInMicros()).isGreaterThanOrEqualTo(50000);
+    }
+
+    @Test
+    public void unpackShouldReturnTheMessageWhenNotABatch() throws Exception {
+        assertThat(MessageBatch.unpack(BYTES_1)).containsExactly(BYTES_1);
+    }
+
+    @Test
+    public void consecutiveFlagUpdatesShouldBeMerged() throws Exception {
+        SimpleMailbox<TestId> mailbox = new SimpleMailbox<TestId>(MAILBOX_PATH, 42);
+        mailbox.setMailboxId(TestId.of(1));
+        EventFactory<TestId> eventFactory = new EventFactory<TestId>();
+        MailboxListener.FlagsUpdated firstUpdate = eventFactory.flagsUpdated(mailboxSession, Lists.newArrayList(1L, 2L), mailbox,
+            Lists.newArrayList(new UpdatedFlags(1L, 10L, new Flags(), new Flags(Flags.Flag.SEEN)),
+                new UpdatedFlags(2L, 11L, new Flags(), new Flags(Flags.Flag.SEEN))));
+        MailboxListener.FlagsUpdated secondUpdate = eventFactory.flagsUpdated(mailboxSession, Lists.newArrayList(2L), mailbox,
+            Lists.newArrayList(new UpdatedFlags(2L, 12L, new Flags(Flags.Flag.SEEN), new Flags(Flags.Flag.ANSWERED))));
+        when(mockedEventSerializer.serializeEvent(any(MailboxListener.Event.class))).thenReturn(BYTES_1);
+
+        batchingEventPublisher = new BatchingEventPublisher(mockedEventSerializer, mockedPublisher, 3, 3600000);
+        batchingEventPublisher.publish(firstUpdate, ImmutableSet.of(TOPIC));
+        batchingEventPublisher.publish(secondUpdate, ImmutableSet.of(TOPIC));
+        batchingEventPublisher.flush();
+
+        ArgumentCaptor<MailboxListener.Event> eventCaptor = ArgumentCaptor.forClass(MailboxListener.Event.class);
+        verify(mockedEventSerializer).serializeEvent(eventCaptor.capture());
+        List<UpdatedFlags> updatedFlags = ((MailboxListener.FlagsUpdated) eventCaptor.getValue()).getUpdatedFlags();
+        assertThat(updatedFlags).containsExactly(
+            new UpdatedFlags(1L, 10L, new Flags(), new Flags(Flags.Flag.SEEN)),
+            new UpdatedFlags(2L, 12L, new Flags(), new Flags(Flags.Flag.ANSWERED)));
+        verify(mockedPublisher).publish(TOPIC, BYTES_1);
+    }
+
+    private byte[] publishedMessage() throws Exception {
+        ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(mockedPublisher).publish(any(Topic.class), messageCaptor.capture());
+        return messageCaptor.getValue();
+    }
+
+}
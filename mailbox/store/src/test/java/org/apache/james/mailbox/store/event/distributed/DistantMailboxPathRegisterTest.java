@@ -32,6 +32,7 @@ import static org.mockito.Mockito.when;
 import com.google.common.collect.Sets;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.publisher.Topic;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
@@ -48,6 +49,7 @@ public class DistantMailboxPathRegisterTest {
     private static final MailboxPath MAILBOX_PATH = new MailboxPath("namespace", "user", "name");
     private static final MailboxPath NEW_MAILBOX_PATH = new MailboxPath("namespace_new", "user_new", "name_new");
     private static final String TOPIC = "topic";
+    private static final String REGISTRATION_TOPIC = "registrations";
 
     private DistantMailboxPathRegisterMapper mockedMapper;
     private DistantMailboxPathRegister register;
@@ -58,6 +60,10 @@ public class DistantMailboxPathRegisterTest {
         register = new DistantMailboxPathRegister(mockedMapper, 1);
     }
 
+    private DistantMailboxPathRegister cachingRegister(PublisherReceiver publisherReceiver) throws Exception {
+        return new DistantMailboxPathRegister(mockedMapper, 1, publisherReceiver, publisherReceiver, REGISTRATION_TOPIC);
+    }
+
     @Test(expected = MailboxException.class)
     public void doRenameShouldThrowIfTryingToRenameNonExistingPath() throws Exception {
         register.doRename(MAILBOX_PATH, NEW_MAILBOX_PATH);
@@ -76,6 +82,93 @@ public class DistantMailboxPathRegisterTest {
         assertThat(register.getTopics(MAILBOX_PATH)).isEqualTo(result);
     }
 
+    @Test
+    public void getTopicsShouldNotBeCachedWithoutRegistrationTopic() {
+        register.getTopics(MAILBOX_PATH);
+        register.getTopics(MAILBOX_PATH);
+        verify(mockedMapper, times(2)).getTopics(MAILBOX_PATH);
+    }
+
+    @Test
+    public void getTopicsShouldBeCached() throws Exception {
+        DistantMailboxPathRegister cachingRegister = cachingRegister(new PublisherReceiver());
+        when(mockedMapper.getTopics(MAILBOX_PATH)).thenReturn(Sets.newHashSet(cachingRegister.getLocalTopic()));
+        cachingRegister.getTopics(MAILBOX_PATH);
+        cachingRegister.getTopics(MAILBOX_PATH);
+        verify(mockedMapper, times(1)).getTopics(MAILBOX_PATH);
+        assertThat(cachingRegister.getTopicsCacheHitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void getTopicsShouldNotBeAffectedByChangesOfThePreviousResults() throws Exception {
+        DistantMailboxPathRegister cachingRegister = cachingRegister(new PublisherReceiver());
+        when(mockedMapper.getTopics(MAILBOX_PATH)).thenReturn(Sets.newHashSet(cachingRegister.getLocalTopic()));
+        cachingRegister.getTopics(MAILBOX_PATH).clear();
+        assertThat(cachingRegister.getTopics(MAILBOX_PATH)).containsOnly(cachingRegister.getLocalTopic());
+    }
+
+    @Test
+    public void registerShouldInvalidateCachedTopics() throws Exception {
+        DistantMailboxPathRegister cachingRegister = cachingRegister(new PublisherReceiver());
+        cachingRegister.getTopics(MAILBOX_PATH);
+        cachingRegister.register(MAILBOX_PATH);
+        cachingRegister.getTopics(MAILBOX_PATH);
+        verify(mockedMapper, times(2)).getTopics(MAILBOX_PATH);
+    }
+
+    @Test
+    public void unregisterShouldInvalidateCachedTopics() throws Exception {
+        DistantMailboxPathRegister cachingRegister = cachingRegister(new PublisherReceiver());
+        cachingRegister.register(MAILBOX_PATH);
+        cachingRegister.getTopics(MAILBOX_PATH);
+        cachingRegister.unregister(MAILBOX_PATH);
+        cachingRegister.getTopics(MAILBOX_PATH);
+        verify(mockedMapper, times(2)).getTopics(MAILBOX_PATH);
+    }
+
+    @Test
+    public void registerShouldInvalidateTheTopicsCachedByOtherNodes() throws Exception {
+        PublisherReceiver publisherReceiver = new PublisherReceiver();
+        DistantMailboxPathRegister cachingRegister = cachingRegister(publisherReceiver);
+        DistantMailboxPathRegister otherNodeRegister = cachingRegister(publisherReceiver);
+        when(mockedMapper.getTopics(MAILBOX_PATH)).thenReturn(new HashSet<Topic>());
+        cachingRegister.getTopics(MAILBOX_PATH);
+
+        otherNodeRegister.register(MAILBOX_PATH);
+        when(mockedMapper.getTopics(MAILBOX_PATH)).thenReturn(Sets.newHashSet(otherNodeRegister.getLocalTopic()));
+
+        assertThat(cachingRegister.getTopics(MAILBOX_PATH)).containsOnly(otherNodeRegister.getLocalTopic());
+    }
+
+    @Test
+    public void unregisterShouldInvalidateTheTopicsCachedByOtherNodes() throws Exception {
+        PublisherReceiver publisherReceiver = new PublisherReceiver();
+        DistantMailboxPathRegister cachingRegister = cachingRegister(publisherReceiver);
+        DistantMailboxPathRegister otherNodeRegister = cachingRegister(publisherReceiver);
+        otherNodeRegister.register(MAILBOX_PATH);
+        when(mockedMapper.getTopics(MAILBOX_PATH)).thenReturn(Sets.newHashSet(otherNodeRegister.getLocalTopic()));
+        cachingRegister.getTopics(MAILBOX_PATH);
+
+        otherNodeRegister.unregister(MAILBOX_PATH);
+        when(mockedMapper.getTopics(MAILBOX_PATH)).thenReturn(new HashSet<Topic>());
+
+        assertThat(cachingRegister.getTopics(MAILBOX_PATH)).isEmpty();
+    }
+
+    @Test
+    public void registrationNotificationsShouldSupportPathsWithoutUser() throws Exception {
+        MailboxPath publicPath = new MailboxPath("#public", null, "name");
+        PublisherReceiver publisherReceiver = new PublisherReceiver();
+        DistantMailboxPathRegister cachingRegister = cachingRegister(publisherReceiver);
+        DistantMailboxPathRegister otherNodeRegister = cachingRegister(publisherReceiver);
+        cachingRegister.getTopics(publicPath);
+
+        otherNodeRegister.register(publicPath);
+        cachingRegister.getTopics(publicPath);
+
+        verify(mockedMapper, times(2)).getTopics(publicPath);
+    }
+
     @Test
     public void registerShouldWork() throws MailboxException {
         register.register(MAILBOX_PATH);
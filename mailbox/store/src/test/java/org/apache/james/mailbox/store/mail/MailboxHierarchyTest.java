@@ -0,0 +1,77 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.mailbox.store.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.TestId;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.junit.Test;
+
+public class MailboxHierarchyTest {
+
+    private static final char DELIMITER = '.';
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void withChildrenShouldIgnoreNamesSortedBetweenAMailboxAndItsChildren() {
+        Mailbox<TestId> parent = mailbox("parent");
+        Mailbox<TestId> sibling = mailbox("parent sibling");
+
+        List<String> names = Arrays.asList("parent", "parent sibling", "parent.child", "parent-other");
+
+        assertThat(MailboxHierarchy.withChildren(Arrays.asList(parent, sibling), names, DELIMITER))
+            .extracting("mailbox", "hasChildren")
+            .containsExactly(tuple(parent, true), tuple(sibling, false));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void withChildrenShouldNotConsiderMailboxesSharingANamePrefixAsChildren() {
+        Mailbox<TestId> mailbox = mailbox("work");
+
+        List<String> names = Arrays.asList("work", "workshop", "works.todo");
+
+        assertThat(MailboxHierarchy.withChildren(Arrays.asList(mailbox), names, DELIMITER))
+            .extracting("mailbox", "hasChildren")
+            .containsExactly(tuple(mailbox, false));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void withChildrenShouldReturnNoChildrenWhenMailboxIsTheLastName() {
+        Mailbox<TestId> mailbox = mailbox("z");
+
+        assertThat(MailboxHierarchy.withChildren(Arrays.asList(mailbox), Arrays.asList("a", "a.b", "z"), DELIMITER))
+            .extracting("mailbox", "hasChildren")
+            .containsExactly(tuple(mailbox, false));
+    }
+
+    private Mailbox<TestId> mailbox(String name) {
+        return new SimpleMailbox<TestId>(new MailboxPath("#private", "user", name), 42);
+    }
+}
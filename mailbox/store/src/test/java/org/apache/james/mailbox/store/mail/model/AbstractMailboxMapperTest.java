@@ -32,6 +32,7 @@ import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.Assertions.tuple;
 
 /**
  * Generic purpose tests for your implementation MailboxMapper.
@@ -186,6 +187,37 @@ public abstract class AbstractMailboxMapperTest<Id extends MailboxId> {
         assertThat(mailboxMapper.findMailboxWithPathLike(mailboxPathQuery)).containsOnly(bobInboxMailbox);
     }
 
+    @Test
+    public void findMailboxWithPathLikeWithChildrenShouldReturnChildrenFlags() throws MailboxException {
+        saveAll();
+        MailboxPath mailboxPathQuery = new MailboxPath(benwaInboxPath.getNamespace(), benwaInboxPath.getUser(), String.valueOf(WILDCARD));
+        assertThat(mailboxMapper.findMailboxWithPathLikeWithChildren(mailboxPathQuery, DELIMITER))
+            .extracting("mailbox", "hasChildren")
+            .containsOnly(tuple(benwaInboxMailbox, true),
+                tuple(benwaWorkMailbox, true),
+                tuple(benwaWorkTodoMailbox, false),
+                tuple(benwaPersoMailbox, false),
+                tuple(benwaWorkDoneMailbox, false));
+    }
+
+    @Test
+    public void findMailboxWithPathLikeWithChildrenShouldComputeChildrenOutsideOfTheMatchingMailboxes() throws MailboxException {
+        saveAll();
+        MailboxPath mailboxPathQuery = new MailboxPath(benwaWorkPath.getNamespace(), benwaWorkPath.getUser(), benwaWorkPath.getName());
+        assertThat(mailboxMapper.findMailboxWithPathLikeWithChildren(mailboxPathQuery, DELIMITER))
+            .extracting("mailbox", "hasChildren")
+            .containsOnly(tuple(benwaWorkMailbox, true));
+    }
+
+    @Test
+    public void findMailboxWithPathLikeWithChildrenShouldNotBeAcrossUsersAndNamespace() throws MailboxException {
+        saveAll();
+        MailboxPath mailboxPathQuery = new MailboxPath(bobInboxPath.getNamespace(), bobInboxPath.getUser(), "IN" + WILDCARD);
+        assertThat(mailboxMapper.findMailboxWithPathLikeWithChildren(mailboxPathQuery, '.'))
+            .extracting("mailbox", "hasChildren")
+            .containsOnly(tuple(bobInboxMailbox, false));
+    }
+
     @Test(expected=MailboxNotFoundException.class)
     public void deleteShouldEraseTheGivenMailbox() throws MailboxException {
         try {
@@ -22,8 +22,10 @@ package org.apache.james.mailbox.store.mail.model;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import javax.mail.Flags;
@@ -392,6 +394,34 @@ public abstract class AbstractMessageMapperTest<Id extends MailboxId> {
         assertThat(messageMapper.getHighestModSeq(benwaInboxMailbox)).isGreaterThan(modSeq);
     }
 
+    @Test
+    public void addAllShouldAllocateContiguousUids() throws MailboxException {
+        messageMapper.add(benwaInboxMailbox, message1);
+        List<MailboxMessage<Id>> messages = new ArrayList<MailboxMessage<Id>>();
+        messages.add(message2);
+        messages.add(message3);
+        messages.add(message4);
+
+        List<MessageMetaData> metaData = messageMapper.addAll(benwaInboxMailbox, messages);
+
+        assertThat(metaData).extracting("uid").containsExactly(message1.getUid() + 1, message1.getUid() + 2, message1.getUid() + 3);
+        assertThat(messageMapper.getLastUid(benwaInboxMailbox)).isEqualTo(message1.getUid() + 3);
+        assertThat(messageMapper.countMessagesInMailbox(benwaInboxMailbox)).isEqualTo(4);
+    }
+
+    @Test
+    public void addAllShouldIncrementModSeq() throws MailboxException {
+        messageMapper.add(benwaInboxMailbox, message1);
+        long modSeq = messageMapper.getHighestModSeq(benwaInboxMailbox);
+        List<MailboxMessage<Id>> messages = new ArrayList<MailboxMessage<Id>>();
+        messages.add(message2);
+        messages.add(message3);
+
+        messageMapper.addAll(benwaInboxMailbox, messages);
+
+        assertThat(messageMapper.getHighestModSeq(benwaInboxMailbox)).isGreaterThan(modSeq);
+    }
+
     @Test
     public void getLastUidShouldReturn0OnEmptyMailbox() throws MailboxException {
         assertThat(messageMapper.getLastUid(benwaInboxMailbox)).isEqualTo(0);
@@ -555,6 +585,84 @@ public abstract class AbstractMessageMapperTest<Id extends MailboxId> {
         saveMessages();
         assertThat(messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flags.Flag.SEEN), FlagsUpdateMode.REPLACE), MessageRange.all())).hasSize(5);
     }
+
+    @Test
+    public void mailboxUnSeenCountShouldBeUpdatedAfterMessagesOfARangeAreMarkedSeen() throws MailboxException {
+        saveMessages();
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flags.Flag.SEEN), FlagsUpdateMode.ADD), MessageRange.range(message1.getUid(), message3.getUid()));
+        assertThat(messageMapper.countUnseenMessagesInMailbox(benwaInboxMailbox)).isEqualTo(2);
+    }
+
+    @Test
+    public void mailboxCountsShouldBeUpdatedAfterExpunge() throws MailboxException {
+        saveMessages();
+        markThenPerformExpunge(MessageRange.all());
+        assertThat(messageMapper.countMessagesInMailbox(benwaInboxMailbox)).isEqualTo(3);
+        assertThat(messageMapper.countUnseenMessagesInMailbox(benwaInboxMailbox)).isEqualTo(3);
+    }
+
+    @Test
+    public void findChangedSinceInMailboxShouldReturnMessagesWithAGreaterModSeq() throws MailboxException {
+        saveMessages();
+        assertThat(uids(messageMapper.findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), message3.getModSeq(), MessageMapper.FetchType.Metadata, LIMIT)))
+            .containsExactly(message4.getUid(), message5.getUid());
+    }
+
+    @Test
+    public void findChangedSinceInMailboxShouldReturnMessagesWithUpdatedFlags() throws MailboxException {
+        saveMessages();
+        long modSeq = messageMapper.getHighestModSeq(benwaInboxMailbox);
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flags.Flag.SEEN), FlagsUpdateMode.ADD), MessageRange.one(message2.getUid()));
+        assertThat(uids(messageMapper.findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), modSeq, MessageMapper.FetchType.Metadata, LIMIT)))
+            .containsExactly(message2.getUid());
+    }
+
+    @Test
+    public void findChangedSinceInMailboxShouldOnlyReturnMessagesOfTheRange() throws MailboxException {
+        saveMessages();
+        assertThat(uids(messageMapper.findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.range(message1.getUid(), message4.getUid()), message2.getModSeq(), MessageMapper.FetchType.Metadata, LIMIT)))
+            .containsExactly(message3.getUid(), message4.getUid());
+    }
+
+    @Test
+    public void findChangedSinceInMailboxShouldNotReturnDeletedMessages() throws MailboxException {
+        saveMessages();
+        messageMapper.delete(benwaInboxMailbox, message5);
+        assertThat(uids(messageMapper.findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), message3.getModSeq(), MessageMapper.FetchType.Metadata, LIMIT)))
+            .containsExactly(message4.getUid());
+    }
+
+    @Test
+    public void findExpungedSinceInMailboxShouldReturnUidsExpungedAfterTheModSeq() throws MailboxException {
+        saveMessages();
+        markThenPerformExpunge(message1);
+        long modSeq = messageMapper.getHighestModSeq(benwaInboxMailbox);
+        markThenPerformExpunge(message3);
+        markThenPerformExpunge(message4);
+        assertThat(messageMapper.findExpungedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), modSeq))
+            .containsExactly(message3.getUid(), message4.getUid());
+    }
+
+    @Test
+    public void findExpungedSinceInMailboxShouldNotReturnUidsExpungedBeforeTheModSeq() throws MailboxException {
+        saveMessages();
+        markThenPerformExpunge(message1);
+        markThenPerformExpunge(message2);
+        long modSeq = messageMapper.getHighestModSeq(benwaInboxMailbox);
+        assertThat(messageMapper.findExpungedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), modSeq))
+            .isEmpty();
+    }
+
+    @Test
+    public void findExpungedSinceInMailboxShouldOnlyReturnUidsOfTheRange() throws MailboxException {
+        saveMessages();
+        markThenPerformExpunge(message1);
+        long modSeq = messageMapper.getHighestModSeq(benwaInboxMailbox);
+        markThenPerformExpunge(message3);
+        markThenPerformExpunge(message4);
+        assertThat(messageMapper.findExpungedSinceInMailbox(benwaInboxMailbox, MessageRange.range(message1.getUid(), message3.getUid()), modSeq))
+            .containsExactly(message3.getUid());
+    }
         
     @Test
     public void messagePropertiesShouldBeStored() throws Exception {
@@ -655,6 +763,11 @@ public abstract class AbstractMessageMapperTest<Id extends MailboxId> {
         return messageMapper.expungeMarkedForDeletionInMailbox(benwaInboxMailbox, range);
     }
 
+    private void markThenPerformExpunge(MailboxMessage<Id> message) throws MailboxException {
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flags.Flag.DELETED), FlagsUpdateMode.REPLACE), MessageRange.one(message.getUid()));
+        messageMapper.expungeMarkedForDeletionInMailbox(benwaInboxMailbox, MessageRange.one(message.getUid()));
+    }
+
     private SimpleMailbox<Id> createMailbox(MailboxPath mailboxPath) {
         SimpleMailbox<Id> mailbox = new SimpleMailbox<Id>(mailboxPath, UID_VALIDITY);
         Id id = mapperProvider.generateId();
@@ -677,6 +790,14 @@ public abstract class AbstractMessageMapperTest<Id extends MailboxId> {
         message6.setModSeq(messageMapper.getHighestModSeq(benwaWorkMailbox));
     }
 
+    private List<Long> uids(Iterator<MailboxMessage<Id>> messages) {
+        List<Long> uids = new ArrayList<Long>();
+        while (messages.hasNext()) {
+            uids.add(messages.next().getUid());
+        }
+        return uids;
+    }
+
     private MailboxMessage<Id> retrieveMessageFromStorage(MailboxMessage<Id> message) throws MailboxException {
         return messageMapper.findInMailbox(benwaInboxMailbox, MessageRange.one(message.getUid()), MessageMapper.FetchType.Metadata, LIMIT).next();
     }
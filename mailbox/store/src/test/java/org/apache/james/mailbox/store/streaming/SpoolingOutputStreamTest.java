@@ -0,0 +1,87 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.mailbox.store.streaming;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import javax.mail.internet.SharedInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpoolingOutputStreamTest {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final byte[] CONTENT = "Subject: test\r\n\r\nbody".getBytes(US_ASCII);
+
+    private SpoolingOutputStream testee;
+
+    @Before
+    public void setUp() {
+        testee = new SpoolingOutputStream(CONTENT.length);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        testee.close();
+    }
+
+    @Test
+    public void contentBelowThresholdShouldStayInMemory() throws Exception {
+        testee.write(CONTENT);
+
+        assertThat(testee.isInMemory()).isTrue();
+        assertThat(testee.getSize()).isEqualTo(CONTENT.length);
+        assertThat(IOUtils.toByteArray((InputStream) testee.getContent())).isEqualTo(CONTENT);
+    }
+
+    @Test
+    public void contentAboveThresholdShouldBeSpilled() throws Exception {
+        testee.write(CONTENT);
+        testee.write('!');
+
+        assertThat(testee.isInMemory()).isFalse();
+        assertThat(testee.getSize()).isEqualTo(CONTENT.length + 1);
+        assertThat(IOUtils.toByteArray((InputStream) testee.getContent()))
+            .isEqualTo("Subject: test\r\n\r\nbody!".getBytes(US_ASCII));
+    }
+
+    @Test
+    public void contentShouldSupportNewStream() throws Exception {
+        testee.write(CONTENT, 0, 10);
+        testee.write(CONTENT, 10, CONTENT.length - 10);
+
+        SharedInputStream content = testee.getContent();
+
+        assertThat(IOUtils.toString(content.newStream(17, -1), "US-ASCII")).isEqualTo("body");
+    }
+
+    @Test
+    public void emptyContentShouldBeReadable() throws Exception {
+        assertThat(testee.getSize()).isEqualTo(0);
+        assertThat(IOUtils.toByteArray((InputStream) testee.getContent())).isEmpty();
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.james.mailbox.copier;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -36,6 +37,7 @@ import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.MessageResult;
 import org.apache.james.mailbox.model.MessageResult.FetchGroup;
+import org.apache.james.mailbox.model.MessageToAppend;
 import org.apache.james.mailbox.store.streaming.InputStreamContent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +48,8 @@ import org.slf4j.LoggerFactory;
  */
 public class MailboxCopierImpl implements MailboxCopier {
 
+    public static final int DEFAULT_APPEND_BATCH_SIZE = 100;
+
     private final static FetchGroup GROUP = new FetchGroup() {
 
         @Override
@@ -65,6 +69,8 @@ public class MailboxCopierImpl implements MailboxCopier {
      */
     private Logger log = LoggerFactory.getLogger(MailboxCopierImpl.class.getName());
 
+    private int appendBatchSize = DEFAULT_APPEND_BATCH_SIZE;
+
     /**
      * @see org.apache.james.mailbox.copier.MailboxCopier#copyMailboxes(org.apache.james.mailbox.MailboxManager, org.apache.james.mailbox.MailboxManager)
      */
@@ -120,17 +126,22 @@ public class MailboxCopierImpl implements MailboxCopier {
 
                 int j=0;
                 Iterator<MessageResult> messageResultIterator = srcMessageManager.getMessages(MessageRange.all(), GROUP, srcMailboxSession);
+                List<MessageToAppend> batch = new ArrayList<MessageToAppend>(appendBatchSize);
                 
                 while (messageResultIterator.hasNext()) {
 
                     MessageResult messageResult = messageResultIterator.next();
                     InputStreamContent content = (InputStreamContent) messageResult.getFullContent();
 
-                    dstMailboxManager.startProcessingRequest(dstMailboxSession);
-                    dstMessageManager.appendMessage(content.getInputStream(), messageResult.getInternalDate(), dstMailboxSession, messageResult.getFlags().contains(Flag.RECENT), messageResult.getFlags());
-                    dstMailboxManager.endProcessingRequest(dstMailboxSession);
-                    log.info("MailboxMessage #" + j + " appended in destination mailbox with path=" + mailboxPath.toString());
-                    j++;
+                    batch.add(new MessageToAppend(content.getInputStream(), messageResult.getInternalDate(), messageResult.getFlags().contains(Flag.RECENT), messageResult.getFlags()));
+                    if (batch.size() >= appendBatchSize || !messageResultIterator.hasNext()) {
+                        dstMailboxManager.startProcessingRequest(dstMailboxSession);
+                        dstMessageManager.appendMessages(batch, dstMailboxSession);
+                        dstMailboxManager.endProcessingRequest(dstMailboxSession);
+                        j += batch.size();
+                        log.info(j + " messages appended in destination mailbox with path=" + mailboxPath.toString());
+                        batch.clear();
+                    }
 
                 }
                 dstMailboxManager.endProcessingRequest(dstMailboxSession);
@@ -160,4 +171,13 @@ public class MailboxCopierImpl implements MailboxCopier {
         this.log = log;
     }
 
+    /**
+     * Set the number of messages appended at once in the destination mailbox.
+     * 
+     * @param appendBatchSize
+     */
+    public void setAppendBatchSize(int appendBatchSize) {
+        this.appendBatchSize = appendBatchSize;
+    }
+
 }
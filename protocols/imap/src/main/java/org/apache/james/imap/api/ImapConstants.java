@@ -106,6 +106,8 @@ public interface ImapConstants {
     String SUPPORTS_ACL = "ACL";
 
     String SUPPORTS_QUOTA = "QUOTA";
+
+    String SUPPORTS_MULTIAPPEND = "MULTIAPPEND";
     
     String INBOX_NAME = "INBOX";
 
@@ -171,6 +171,18 @@ public abstract class ImapRequestLineReader {
      */
     protected abstract void commandContinuationRequest() throws DecodingException;
 
+    /**
+     * Return <code>true</code> if the streams returned by
+     * {@link #read(int, boolean)} stay readable while the rest of the request
+     * is read. This is the case when the literals were received before the
+     * request is decoded.
+     * 
+     * @return <code>false</code> by default
+     */
+    public boolean hasBufferedLiterals() {
+        return false;
+    }
+
     /**
      * Consume the rest of the line
      * 
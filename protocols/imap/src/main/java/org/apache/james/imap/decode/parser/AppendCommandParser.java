@@ -18,26 +18,48 @@
  ****************************************************************/
 package org.apache.james.imap.decode.parser;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import javax.mail.Flags;
 
 import org.apache.james.imap.api.ImapCommand;
 import org.apache.james.imap.api.ImapConstants;
 import org.apache.james.imap.api.ImapMessage;
+import org.apache.james.imap.api.display.HumanReadableText;
 import org.apache.james.imap.api.process.ImapSession;
 import org.apache.james.imap.decode.ImapRequestLineReader;
 import org.apache.james.imap.decode.base.AbstractImapCommandParser;
 import org.apache.james.imap.message.request.AppendRequest;
 import org.apache.james.protocols.imap.DecodingException;
 
+import com.google.common.io.ByteStreams;
+import com.google.common.io.FileBackedOutputStream;
+
 /**
- * Parses APPEND command
+ * Parses APPEND command, including the MULTIAPPEND extension (RFC3502)
  */
 public class AppendCommandParser extends AbstractImapCommandParser {
 
+    /**
+     * Literals up to this size are buffered in memory, bigger ones are written
+     * to a temporary file
+     */
+    public static final int DEFAULT_IN_MEMORY_THRESHOLD = 100 * 1024;
+
+    private final int inMemoryThreshold;
+
     public AppendCommandParser() {
+        this(DEFAULT_IN_MEMORY_THRESHOLD);
+    }
+
+    public AppendCommandParser(int inMemoryThreshold) {
         super(ImapCommand.authenticatedStateCommand(ImapConstants.APPEND_COMMAND_NAME));
+        this.inMemoryThreshold = inMemoryThreshold;
     }
 
     /**
@@ -75,16 +97,90 @@ public class AppendCommandParser extends AbstractImapCommandParser {
      */
     protected ImapMessage decode(ImapCommand command, ImapRequestLineReader request, String tag, ImapSession session) throws DecodingException {
         String mailboxName = request.mailbox();
-        Flags flags = optionalAppendFlags(request);
-        if (flags == null) {
-            flags = new Flags();
+        List<AppendRequest.Message> messages = new ArrayList<AppendRequest.Message>();
+        try {
+            do {
+                Flags flags = optionalAppendFlags(request);
+                if (flags == null) {
+                    flags = new Flags();
+                }
+                Date datetime = optionalDateTime(request);
+                if (datetime == null) {
+                    datetime = new Date();
+                }
+                request.nextWordChar();
+
+                messages.add(new AppendRequest.Message(flags, datetime, bufferLiteral(request)));
+            } while (hasNextMessage(request));
+            request.eol();
+        } catch (DecodingException e) {
+            closeAll(messages);
+            throw e;
+        } catch (RuntimeException e) {
+            closeAll(messages);
+            throw e;
         }
-        Date datetime = optionalDateTime(request);
-        if (datetime == null) {
-            datetime = new Date();
+
+        return new AppendRequest(command, mailboxName, messages, tag);
+    }
+
+    /**
+     * Reads the literal of a message. We need to read behind the literal to
+     * know if the client sent more messages, so its content is buffered if
+     * the reader does not do it already.
+     */
+    private InputStream bufferLiteral(ImapRequestLineReader request) throws DecodingException {
+        InputStream in = request.consumeLiteral(false);
+        if (request.hasBufferedLiterals()) {
+            return in;
+        }
+        final FileBackedOutputStream out = new FileBackedOutputStream(inMemoryThreshold, true);
+        try {
+            ByteStreams.copy(in, out);
+            out.close();
+            return new FilterInputStream(out.asByteSource().openStream()) {
+                /**
+                 * Delete the temporary file (if any) on close
+                 */
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        out.reset();
+                    }
+                }
+            };
+        } catch (IOException e) {
+            try {
+                out.reset();
+            } catch (IOException ignore) {
+                // just clean up
+            }
+            throw new DecodingException(HumanReadableText.SOCKET_IO_FAILURE, "Unable to read the message", e);
+        }
+    }
+
+    /**
+     * Return true if another message follows the current one, as allowed by
+     * MULTIAPPEND (RFC3502)
+     */
+    private boolean hasNextMessage(ImapRequestLineReader request) throws DecodingException {
+        char next = request.nextChar();
+        while (next == ' ') {
+            request.consume();
+            next = request.nextChar();
         }
-        request.nextWordChar();
+        return next == '(' || next == '"' || next == '{';
+    }
 
-        return new AppendRequest(command, mailboxName, flags, datetime, request.consumeLiteral(true), tag);
+    private void closeAll(List<AppendRequest.Message> messages) {
+        for (AppendRequest.Message message : messages) {
+            try {
+                message.getContent().close();
+            } catch (IOException e) {
+                // just clean up
+            }
+        }
     }
 }
@@ -20,6 +20,7 @@ package org.apache.james.imap.message.request;
 
 import java.io.InputStream;
 import java.util.Date;
+import java.util.List;
 
 import javax.mail.Flags;
 
@@ -27,59 +28,81 @@ import org.apache.james.imap.api.ImapCommand;
 import org.apache.james.imap.api.message.request.ImapRequest;
 
 /**
- * {@link ImapRequest} which request the append of a message to a mailbox
+ * {@link ImapRequest} which request the append of one or more messages to a
+ * mailbox. More then one message is only sent by clients using MULTIAPPEND
+ * (RFC3502).
  */
 public class AppendRequest extends AbstractImapRequest {
     private final String mailboxName;
 
-    private final Flags flags;
+    private final List<Message> messages;
 
-    private final Date datetime;
-
-    private final InputStream message;
-
-    public AppendRequest(ImapCommand command, String mailboxName, Flags flags, Date datetime, InputStream message, String tag) {
+    public AppendRequest(ImapCommand command, String mailboxName, List<Message> messages, String tag) {
         super(tag, command);
         this.mailboxName = mailboxName;
-        this.flags = flags;
-        this.datetime = datetime;
-        this.message = message;
+        this.messages = messages;
     }
 
     /**
-     * Return the Date used for the append
+     * Return the name of the mailbox we want to append to
      * 
-     * @return date
+     * @return mailboxName
      */
-    public Date getDatetime() {
-        return datetime;
+    public String getMailboxName() {
+        return mailboxName;
     }
 
     /**
-     * Return Flags for the Message
+     * Return the messages to append, in the order they were sent by the client
      * 
-     * @return flags
+     * @return messages
      */
-    public Flags getFlags() {
-        return flags;
+    public List<Message> getMessages() {
+        return messages;
     }
 
     /**
-     * Return the name of the mailbox we want to append to
-     * 
-     * @return mailboxName
+     * A single message of an APPEND command
      */
-    public String getMailboxName() {
-        return mailboxName;
-    }
+    public static class Message {
+        private final Flags flags;
 
-    /**
-     * Return the message to append as {@link InputStream}
-     * 
-     * @return message
-     */
-    public InputStream getMessage() {
-        return message;
+        private final Date datetime;
+
+        private final InputStream content;
+
+        public Message(Flags flags, Date datetime, InputStream content) {
+            this.flags = flags;
+            this.datetime = datetime;
+            this.content = content;
+        }
+
+        /**
+         * Return Flags for the Message
+         * 
+         * @return flags
+         */
+        public Flags getFlags() {
+            return flags;
+        }
+
+        /**
+         * Return the Date used for the append
+         * 
+         * @return date
+         */
+        public Date getDatetime() {
+            return datetime;
+        }
+
+        /**
+         * Return the message to append as {@link InputStream}
+         * 
+         * @return content
+         */
+        public InputStream getContent() {
+            return content;
+        }
     }
 
 }
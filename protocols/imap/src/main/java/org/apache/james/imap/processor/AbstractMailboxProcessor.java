@@ -60,8 +60,6 @@ import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.MessageRange.Type;
 import org.apache.james.mailbox.model.MessageResult;
 import org.apache.james.mailbox.model.MessageResultIterator;
-import org.apache.james.mailbox.model.SearchQuery;
-import org.apache.james.mailbox.model.SearchQuery.NumericRange;
 
 abstract public class AbstractMailboxProcessor<M extends ImapRequest> extends AbstractChainedProcessor<M> {
 
@@ -574,30 +572,9 @@ abstract public class AbstractMailboxProcessor<M extends ImapRequest> extends Ab
         //      as above.  In the case where there have been no expunges, the server
         //      can ignore this data.
         if (metaData.getHighestModSeq() > changedSince) {
-            SearchQuery searchQuery = new SearchQuery();
-            NumericRange[] nRanges = new NumericRange[ranges.size()];
-            Set<Long> vanishedUids = new HashSet<Long>();
-            for (int i = 0; i < ranges.size(); i++) {
-                MessageRange r = ranges.get(i);
-                NumericRange nr;
-                if (r.getType() == Type.ONE) {
-                    nr = new NumericRange(r.getUidFrom());
-                } else {
-                    nr = new NumericRange(r.getUidFrom(), r.getUidTo());
-                }
-                long from = nr.getLowValue();
-                long to = nr.getHighValue();
-                while(from <= to) {
-                    vanishedUids.add(from++);
-                }
-                nRanges[i] = nr;
-                
-            }
-            searchQuery.andCriteria(SearchQuery.uid(nRanges));
-            searchQuery.andCriteria(SearchQuery.modSeqGreaterThan(changedSince));
-            Iterator<Long> uids = mailbox.search(searchQuery, session);
-            while(uids.hasNext()) {
-                vanishedUids.remove(uids.next());
+            Set<Long> vanishedUids = expungedUids(session, mailbox, ranges, changedSince);
+            if (vanishedUids == null) {
+                vanishedUids = missingUids(session, mailbox, ranges, changedSince);
             }
             IdRange[] vanishedIdRanges = idRanges(MessageRange.toRanges(vanishedUids));
             responder.respond(new VanishedResponse(vanishedIdRanges, true));
@@ -605,6 +582,46 @@ abstract public class AbstractMailboxProcessor<M extends ImapRequest> extends Ab
         
         
     }
+
+    /**
+     * Return the uids expunged since the given mod-sequence as recorded by the
+     * mailbox, or null if it does not remember them
+     */
+    private Set<Long> expungedUids(MailboxSession session, MessageManager mailbox, List<MessageRange> ranges, long changedSince) throws MailboxException {
+        Set<Long> expungedUids = new HashSet<Long>();
+        for (MessageRange range : ranges) {
+            List<Long> expunged = mailbox.getExpungedSince(range, changedSince, session);
+            if (expunged == null) {
+                return null;
+            }
+            expungedUids.addAll(expunged);
+        }
+        return expungedUids;
+    }
+
+    /**
+     * Return all uids of the ranges which do not belong to a message changed
+     * since the given mod-sequence. This includes the ones which were
+     * expunged before it, see RFC5162 4.1.
+     */
+    private Set<Long> missingUids(MailboxSession session, MessageManager mailbox, List<MessageRange> ranges, long changedSince) throws MailboxException {
+        Set<Long> missingUids = new HashSet<Long>();
+        for (MessageRange range : ranges) {
+            for (long uid = range.getUidFrom(); uid <= range.getUidTo(); uid++) {
+                missingUids.add(uid);
+            }
+        }
+        for (MessageRange range : ranges) {
+            MessageResultIterator changed = mailbox.getMessagesChangedSince(range, changedSince, FetchGroupImpl.MINIMAL, session);
+            while (changed.hasNext()) {
+                missingUids.remove(changed.next().getUid());
+            }
+            if (changed.getException() != null) {
+                throw changed.getException();
+            }
+        }
+        return missingUids;
+    }
     
     
     // TODO: Do we need to handle wildcards here ?
@@ -21,14 +21,13 @@ package org.apache.james.imap.processor;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Date;
-
-import javax.mail.Flags;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.ImapConstants;
 import org.apache.james.imap.api.ImapSessionUtils;
 import org.apache.james.imap.api.display.HumanReadableText;
-import org.apache.james.imap.api.message.IdRange;
 import org.apache.james.imap.api.message.response.StatusResponse;
 import org.apache.james.imap.api.message.response.StatusResponse.ResponseCode;
 import org.apache.james.imap.api.message.response.StatusResponseFactory;
@@ -43,9 +42,15 @@ import org.apache.james.mailbox.MessageManager.MetaData.FetchGroup;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.exception.MailboxNotFoundException;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.MessageToAppend;
 import org.slf4j.Logger;
 
-public class AppendProcessor extends AbstractMailboxProcessor<AppendRequest> {
+import com.google.common.collect.ImmutableList;
+
+public class AppendProcessor extends AbstractMailboxProcessor<AppendRequest> implements CapabilityImplementingProcessor {
+
+    private final static List<String> CAPS = ImmutableList.of(ImapConstants.SUPPORTS_MULTIAPPEND);
 
     public AppendProcessor(ImapProcessor next, MailboxManager mailboxManager, StatusResponseFactory statusResponseFactory) {
         super(AppendRequest.class, next, mailboxManager, statusResponseFactory);
@@ -60,20 +65,15 @@ public class AppendProcessor extends AbstractMailboxProcessor<AppendRequest> {
      */
     protected void doProcess(AppendRequest request, ImapSession session, String tag, ImapCommand command, Responder responder) {
         final String mailboxName = request.getMailboxName();
-        final InputStream messageIn = request.getMessage();
-        final Date datetime = request.getDatetime();
-        final Flags flags = request.getFlags();
+        final List<AppendRequest.Message> messages = request.getMessages();
         final MailboxPath mailboxPath = buildFullPath(session, mailboxName);
 
         try {
 
             final MailboxManager mailboxManager = getMailboxManager();
             final MessageManager mailbox = mailboxManager.getMailbox(mailboxPath, ImapSessionUtils.getMailboxSession(session));
-            appendToMailbox(messageIn, datetime, flags, session, tag, command, mailbox, responder, mailboxPath);
+            appendToMailbox(messages, session, tag, command, mailbox, responder, mailboxPath);
         } catch (MailboxNotFoundException e) {
-            // consume message on exception
-            consume(messageIn);
-
             session.getLog().debug("Append failed for mailbox " + mailboxPath, e);
             
             // Indicates that the mailbox does not exist
@@ -81,24 +81,24 @@ public class AppendProcessor extends AbstractMailboxProcessor<AppendRequest> {
             tryCreate(session, tag, command, responder, e);
 
         } catch (MailboxException e) {
-            // consume message on exception
-            consume(messageIn);
-            
             session.getLog().info("Append failed for mailbox " + mailboxPath, e);
             
             // Some other issue
             no(command, tag, responder, HumanReadableText.GENERIC_FAILURE_DURING_PROCESSING);
 
+        } finally {
+            for (AppendRequest.Message message : messages) {
+                close(message.getContent());
+            }
         }
 
     }
 
-    private void consume(InputStream in) {
+    private void close(InputStream in) {
         try {
-            while (in.read() != -1)
-                ; // NOPMD false positive
-        } catch (IOException e1) { // NOPMD false positive
-            // just consume
+            in.close();
+        } catch (IOException e) { // NOPMD false positive
+            // just close
         }
     }
 
@@ -126,15 +126,21 @@ public class AppendProcessor extends AbstractMailboxProcessor<AppendRequest> {
         no(command, tag, responder, HumanReadableText.FAILURE_NO_SUCH_MAILBOX, StatusResponse.ResponseCode.tryCreate());
     }
 
-    private void appendToMailbox(InputStream message, Date datetime, Flags flagsToBeSet, ImapSession session, String tag, ImapCommand command, MessageManager mailbox, Responder responder, MailboxPath mailboxPath) {
+    private void appendToMailbox(List<AppendRequest.Message> messages, ImapSession session, String tag, ImapCommand command, MessageManager mailbox, Responder responder, MailboxPath mailboxPath) {
         try {
             final MailboxSession mailboxSession = ImapSessionUtils.getMailboxSession(session);
             final SelectedMailbox selectedMailbox = session.getSelected();
             final MailboxManager mailboxManager = getMailboxManager();
             final boolean isSelectedMailbox = selectedMailbox != null && selectedMailbox.getPath().equals(mailboxPath);
-            final long uid = mailbox.appendMessage(message, datetime, mailboxSession, !isSelectedMailbox, flagsToBeSet);
+            final List<MessageToAppend> messagesToAppend = new ArrayList<MessageToAppend>(messages.size());
+            for (AppendRequest.Message message : messages) {
+                messagesToAppend.add(new MessageToAppend(message.getContent(), message.getDatetime(), !isSelectedMailbox, message.getFlags()));
+            }
+            final List<Long> uids = mailbox.appendMessages(messagesToAppend, mailboxSession);
             if (isSelectedMailbox) {
-                selectedMailbox.addRecent(uid);
+                for (Long uid : uids) {
+                    selectedMailbox.addRecent(uid);
+                }
             }
 
             // get folder UIDVALIDITY
@@ -142,9 +148,7 @@ public class AppendProcessor extends AbstractMailboxProcessor<AppendRequest> {
 
             unsolicitedResponses(session, responder, false);
 
-            // in case of MULTIAPPEND support we will push more then one UID
-            // here
-            okComplete(command, tag, ResponseCode.appendUid(uidValidity, new IdRange[] { new IdRange(uid) }), responder);
+            okComplete(command, tag, ResponseCode.appendUid(uidValidity, idRanges(MessageRange.toRanges(uids))), responder);
         } catch (MailboxNotFoundException e) {
             // Indicates that the mailbox does not exist
             // So TRY CREATE
@@ -162,4 +166,12 @@ public class AppendProcessor extends AbstractMailboxProcessor<AppendRequest> {
         }
     }
 
+    /**
+     * @see org.apache.james.imap.processor.CapabilityImplementingProcessor
+     * #getImplementedCapabilities(org.apache.james.imap.api.process.ImapSession)
+     */
+    public List<String> getImplementedCapabilities(ImapSession session) {
+        return CAPS;
+    }
+
 }
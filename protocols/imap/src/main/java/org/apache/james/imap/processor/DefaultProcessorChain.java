@@ -136,6 +136,9 @@ public class DefaultProcessorChain {
 
         capabilityProcessor.addProcessor(getQuotaRootProcessor);
 
+        // announce MULTIAPPEND. See RFC3502
+        capabilityProcessor.addProcessor(appendProcessor);
+
         return getQuotaRootProcessor;
 
     }
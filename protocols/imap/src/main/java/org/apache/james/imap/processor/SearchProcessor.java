@@ -366,7 +366,8 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
         case SearchKey.TYPE_MODSEQ: 
             session.setAttribute(SEARCH_MODSEQ, true);
             long modSeq = key.getModSeq();
-            return SearchQuery.or(SearchQuery.modSeqEquals(modSeq), SearchQuery.modSeqGreaterThan(modSeq));
+            // Expressed as a single criterion so that the mailbox can filter on it directly
+            return SearchQuery.modSeqGreaterThan(modSeq - 1);
         default:
             session.getLog().warn("Ignoring unknown search key.");
             return SearchQuery.all();
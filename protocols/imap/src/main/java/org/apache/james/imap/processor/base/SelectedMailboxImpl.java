@@ -19,15 +19,9 @@
 
 package org.apache.james.imap.processor.base;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.TreeSet;
 
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
@@ -51,7 +45,7 @@ import org.apache.james.mailbox.model.UpdatedFlags;
  */
 public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
 
-    private final Set<Long> recentUids = new TreeSet<Long>();
+    private final UidSet recentUids = new UidSet();
 
     private boolean recentUidRemoved = false;
 
@@ -72,9 +66,9 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
     }
     
     private final long sessionId;
-    private final Set<Long> flagUpdateUids = new TreeSet<Long>();
+    private final UidSet flagUpdateUids = new UidSet();
     private final Flags.Flag uninterestingFlag = Flags.Flag.RECENT;
-    private final Set<Long> expungedUids = new TreeSet<Long>();
+    private final UidSet expungedUids = new UidSet();
 
     private boolean isDeletedByOtherSession = false;
     private boolean sizeChanged = false;
@@ -83,13 +77,7 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
 
     private boolean applicableFlagsChanged;
     
-    private final SortedMap<Integer, Long> msnToUid =new TreeMap<Integer, Long>();
-
-    private final SortedMap<Long, Integer> uidToMsn = new TreeMap<Long, Integer>();
-
-    private long highestUid = 0;
-
-    private int highestMsn = 0;
+    private final UidMsnConverter uidMsnConverter = new UidMsnConverter();
     
     public SelectedMailboxImpl(MailboxManager mailboxManager, ImapSession session, MailboxPath path) throws MailboxException {
         this.session = session;
@@ -122,7 +110,7 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
             while(messages.hasNext()) {
                 MessageResult mr = messages.next();
                 applicableFlags.add(mr.getFlags());
-                add(mr.getUid());
+                uidMsnConverter.addUid(mr.getUid());
             }
             
           
@@ -132,49 +120,6 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
        
     }
 
-    private void add(int msn, long uid) {
-        if (uid > highestUid) {
-            highestUid = uid;
-        }
-        msnToUid.put(msn, uid);
-        uidToMsn.put(uid, msn);
-    }
-
-    /**
-     * Expunge the message with the given uid
-     * 
-     * @param uid
-     */
-    private void expunge(long uid) {
-        final int msn = msn(uid);
-        remove(msn, uid);
-        final List<Integer> renumberMsns = new ArrayList<Integer>(msnToUid.tailMap(msn + 1).keySet());
-        for (Integer msnInteger : renumberMsns) {
-            int aMsn = msnInteger.intValue();
-            long aUid = uid(aMsn);
-            remove(aMsn, aUid);
-            add(aMsn - 1, aUid);
-        }
-        highestMsn--;
-    }
-
-    private void remove(int msn, long uid) {
-        uidToMsn.remove(uid);
-        msnToUid.remove(msn);
-    }
-
-    /**
-     * Add the give uid
-     * 
-     * @param uid
-     */
-    private void add(long uid) {
-        if (!uidToMsn.containsKey(uid)) {
-            highestMsn++;
-            add(highestMsn, uid);
-        }
-    }
-
     /**
      * @see org.apache.james.mailbox.MailboxListener#event(org.apache.james.mailbox.MailboxListener.Event)
      */
@@ -183,23 +128,15 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
     /**
      * @see SelectedMailbox#getFirstUid()
      */
-    public synchronized long getFirstUid() {
-        if (uidToMsn.isEmpty()) {
-            return -1;
-        } else {
-            return uidToMsn.firstKey();
-        }
+    public long getFirstUid() {
+        return uidMsnConverter.getFirstUid();
     }
 
     /**
      * @see SelectedMailbox#getLastUid()
      */
-    public synchronized long getLastUid() {
-        if (uidToMsn.isEmpty()) {
-            return -1;
-        } else {
-            return uidToMsn.lastKey();
-        }
+    public long getLastUid() {
+        return uidMsnConverter.getLastUid();
     }
 
 
@@ -215,8 +152,7 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
             }
         }
         
-        uidToMsn.clear();
-        msnToUid.clear();
+        uidMsnConverter.clear();
         flagUpdateUids.clear();
 
         expungedUids.clear();
@@ -250,7 +186,7 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
     
     public synchronized Collection<Long> getRecent() {
         checkExpungedRecents();
-        return new ArrayList<Long>(recentUids);
+        return recentUids.copy();
     }
 
     /**
@@ -271,8 +207,8 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
     }
 
     private void checkExpungedRecents() {
-        for (long uid : expungedUids()) {
-            removeRecent(uid);
+        for (int i = 0; i < expungedUids.size(); i++) {
+            removeRecent(expungedUids.get(i));
         }
     }
 
@@ -318,9 +254,7 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
      */
     
     public synchronized  int remove(Long uid) {
-        final int result = msn(uid);
-        expunge(uid);
-        return result;
+        return uidMsnConverter.remove(uid);
     }
 
 
@@ -401,10 +335,10 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
      */
     
     public synchronized Collection<Long> flagUpdateUids() {
-        // copy the TreeSet to fix possible
+        // copy the uids to fix possible
         // java.util.ConcurrentModificationException
         // See IMAP-278
-        return Collections.unmodifiableSet(new TreeSet<Long>(flagUpdateUids));
+        return flagUpdateUids.copy();
         
     }
 
@@ -415,10 +349,10 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
      */
     
     public synchronized Collection<Long> expungedUids() {
-        // copy the TreeSet to fix possible
+        // copy the uids to fix possible
         // java.util.ConcurrentModificationException
         // See IMAP-278
-        return Collections.unmodifiableSet(new TreeSet<Long>(expungedUids));
+        return expungedUids.copy();
         
     }
 
@@ -453,7 +387,7 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
                     sizeChanged = true;
                     final List<Long> uids = ((Added) event).getUids();
                     for (Long uid : uids) {
-                        add(uid);
+                        uidMsnConverter.addUid(uid);
                     }
                 } else if (messageEvent instanceof FlagsUpdated) {
                     FlagsUpdated updated = (FlagsUpdated) messageEvent;
@@ -524,31 +458,18 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
     }
 
     
-    public synchronized int msn(long uid) {
-        Integer msn = uidToMsn.get(uid);
-        if (msn != null) {
-            return msn.intValue();
-        } else {
-            return SelectedMailbox.NO_SUCH_MESSAGE;
-        }
+    public int msn(long uid) {
+        return uidMsnConverter.getMsn(uid);
     }
 
     
-    public synchronized long uid(int msn) {
-        if (msn == -1) {
-            return SelectedMailbox.NO_SUCH_MESSAGE;
-        }
-        Long uid = msnToUid.get(msn);
-        if (uid != null) {
-            return uid.longValue();
-        } else {
-            return SelectedMailbox.NO_SUCH_MESSAGE;
-        }
+    public long uid(int msn) {
+        return uidMsnConverter.getUid(msn);
     }
 
     
-    public synchronized long existsCount() {
-        return uidToMsn.size();
+    public long existsCount() {
+        return uidMsnConverter.getNumMessage();
     }
     
 
@@ -0,0 +1,144 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.imap.processor.base;
+
+import java.util.Arrays;
+
+import org.apache.james.imap.api.process.SelectedMailbox;
+
+/**
+ * Maps message sequence numbers to uids and back for a selected mailbox.
+ *
+ * Uids are kept sorted in a primitive array: the msn of a message is its index plus one, so
+ * both lookups are a binary search or an array access. Writers are serialized, readers of
+ * {@link #getMsn(long)} and {@link #getUid(int)} never block. The array and its size are
+ * published together, and an array visible to readers is never modified below that size:
+ * insertions and removals copy it.
+ */
+class UidMsnConverter {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Uids of the mailbox: the first size entries of the array
+     */
+    private static class Uids {
+        private final long[] values;
+        private final int size;
+
+        private Uids(long[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+    }
+
+    private volatile Uids uids = new Uids(new long[INITIAL_CAPACITY], 0);
+
+    public int getMsn(long uid) {
+        Uids current = uids;
+        int position = Arrays.binarySearch(current.values, 0, current.size, uid);
+        if (position < 0) {
+            return SelectedMailbox.NO_SUCH_MESSAGE;
+        }
+        return position + 1;
+    }
+
+    public long getUid(int msn) {
+        Uids current = uids;
+        if (msn < 1 || msn > current.size) {
+            return SelectedMailbox.NO_SUCH_MESSAGE;
+        }
+        return current.values[msn - 1];
+    }
+
+    public long getFirstUid() {
+        return getUid(1);
+    }
+
+    public long getLastUid() {
+        Uids current = uids;
+        if (current.size == 0) {
+            return SelectedMailbox.NO_SUCH_MESSAGE;
+        }
+        return current.values[current.size - 1];
+    }
+
+    public int getNumMessage() {
+        return uids.size;
+    }
+
+    /**
+     * Add the given uid if not already known. Uids greater than the last one are appended
+     * after the entries visible to readers, without moving them.
+     */
+    public synchronized void addUid(long uid) {
+        Uids current = uids;
+        if (current.size > 0 && uid <= current.values[current.size - 1]) {
+            insertUid(current, uid);
+            return;
+        }
+        long[] target = ensureCapacity(current, current.size + 1);
+        target[current.size] = uid;
+        uids = new Uids(target, current.size + 1);
+    }
+
+    /**
+     * Remove the given uid, moving the following entries down by one in a copy of the array.
+     *
+     * @return the msn the uid had before removal, or {@link SelectedMailbox#NO_SUCH_MESSAGE}
+     */
+    public synchronized int remove(long uid) {
+        Uids current = uids;
+        int position = Arrays.binarySearch(current.values, 0, current.size, uid);
+        if (position < 0) {
+            return SelectedMailbox.NO_SUCH_MESSAGE;
+        }
+        long[] target = new long[current.values.length];
+        System.arraycopy(current.values, 0, target, 0, position);
+        System.arraycopy(current.values, position + 1, target, position, current.size - position - 1);
+        uids = new Uids(target, current.size - 1);
+        return position + 1;
+    }
+
+    public synchronized void clear() {
+        uids = new Uids(new long[INITIAL_CAPACITY], 0);
+    }
+
+    private void insertUid(Uids current, long uid) {
+        int position = Arrays.binarySearch(current.values, 0, current.size, uid);
+        if (position >= 0) {
+            return;
+        }
+        int insertionPoint = -(position + 1);
+        long[] target = new long[Math.max(current.values.length, current.size + 1)];
+        System.arraycopy(current.values, 0, target, 0, insertionPoint);
+        target[insertionPoint] = uid;
+        System.arraycopy(current.values, insertionPoint, target, insertionPoint + 1, current.size - insertionPoint);
+        uids = new Uids(target, current.size + 1);
+    }
+
+    private long[] ensureCapacity(Uids current, int capacity) {
+        if (capacity <= current.values.length) {
+            return current.values;
+        }
+        return Arrays.copyOf(current.values, Math.max(capacity, current.values.length + (current.values.length >> 1)));
+    }
+}
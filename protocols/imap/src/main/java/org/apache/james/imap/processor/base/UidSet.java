@@ -0,0 +1,122 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.imap.processor.base;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sorted set of uids backed by a primitive array. Uids usually arrive in ascending order,
+ * in which case adding one is a simple append.
+ *
+ * Not thread safe, callers are expected to synchronize access.
+ */
+class UidSet {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private long[] uids = new long[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    public boolean add(long uid) {
+        if (size > 0 && uid <= uids[size - 1]) {
+            int position = Arrays.binarySearch(uids, 0, size, uid);
+            if (position >= 0) {
+                return false;
+            }
+            int insertionPoint = -(position + 1);
+            ensureCapacity(size + 1);
+            System.arraycopy(uids, insertionPoint, uids, insertionPoint + 1, size - insertionPoint);
+            uids[insertionPoint] = uid;
+        } else {
+            ensureCapacity(size + 1);
+            uids[size] = uid;
+        }
+        size++;
+        return true;
+    }
+
+    public void addAll(List<Long> uidsToAdd) {
+        for (Long uid : uidsToAdd) {
+            add(uid);
+        }
+    }
+
+    public boolean remove(long uid) {
+        int position = Arrays.binarySearch(uids, 0, size, uid);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(uids, position + 1, uids, position, size - position - 1);
+        size--;
+        return true;
+    }
+
+    public boolean contains(long uid) {
+        return Arrays.binarySearch(uids, 0, size, uid) >= 0;
+    }
+
+    public long get(int index) {
+        return uids[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+        if (uids.length > INITIAL_CAPACITY) {
+            uids = new long[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * @return an ascending, unmodifiable copy of the uids, safe to iterate without holding
+     * any lock
+     */
+    public List<Long> copy() {
+        final long[] snapshot = Arrays.copyOf(uids, size);
+        return new AbstractList<Long>() {
+            @Override
+            public Long get(int index) {
+                return snapshot[index];
+            }
+
+            @Override
+            public int size() {
+                return snapshot.length;
+            }
+        };
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > uids.length) {
+            uids = Arrays.copyOf(uids, Math.max(capacity, uids.length * 2));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.decode.parser;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import javax.mail.Flags;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.decode.ImapRequestStreamLineReader;
+import org.apache.james.imap.message.request.AppendRequest;
+import org.junit.Test;
+
+public class AppendCommandParserTest {
+
+    private static final ImapCommand COMMAND = ImapCommand.authenticatedStateCommand("APPEND");
+
+    private AppendRequest decode(String commandString) throws Exception {
+        InputStream inputStream = new ByteArrayInputStream(commandString.getBytes("US-ASCII"));
+        ImapRequestStreamLineReader lineReader = new ImapRequestStreamLineReader(inputStream, new ByteArrayOutputStream());
+        return (AppendRequest) new AppendCommandParser().decode(COMMAND, lineReader, "A003", null);
+    }
+
+    @Test
+    public void decodeShouldReadASingleMessage() throws Exception {
+        AppendRequest request = decode("INBOX (\\Seen) {5}\r\nhello\r\n");
+
+        assertThat(request.getMailboxName()).isEqualTo("INBOX");
+        List<AppendRequest.Message> messages = request.getMessages();
+        assertThat(messages).hasSize(1);
+        assertThat(messages.get(0).getFlags().contains(Flags.Flag.SEEN)).isTrue();
+        assertThat(IOUtils.toString(messages.get(0).getContent(), "US-ASCII")).isEqualTo("hello");
+    }
+
+    @Test
+    public void decodeShouldReadAllMessagesOfAMultiAppend() throws Exception {
+        AppendRequest request = decode("INBOX (\\Seen) {5}\r\nhello (\\Flagged) \"07-Feb-1994 22:43:04 -0800\" {3}\r\nfoo {3}\r\nbar\r\n");
+
+        List<AppendRequest.Message> messages = request.getMessages();
+        assertThat(messages).hasSize(3);
+        assertThat(IOUtils.toString(messages.get(0).getContent(), "US-ASCII")).isEqualTo("hello");
+        assertThat(messages.get(1).getFlags().contains(Flags.Flag.FLAGGED)).isTrue();
+        assertThat(IOUtils.toString(messages.get(1).getContent(), "US-ASCII")).isEqualTo("foo");
+        assertThat(messages.get(2).getFlags().getSystemFlags()).isEmpty();
+        assertThat(IOUtils.toString(messages.get(2).getContent(), "US-ASCII")).isEqualTo("bar");
+    }
+
+    @Test
+    public void decodeShouldSpoolBigLiteralsToFile() throws Exception {
+        String content = "0123456789";
+        InputStream inputStream = new ByteArrayInputStream(("INBOX {10}\r\n" + content + "\r\n").getBytes("US-ASCII"));
+        ImapRequestStreamLineReader lineReader = new ImapRequestStreamLineReader(inputStream, new ByteArrayOutputStream());
+
+        AppendRequest request = (AppendRequest) new AppendCommandParser(4).decode(COMMAND, lineReader, "A003", null);
+
+        InputStream messageContent = request.getMessages().get(0).getContent();
+        assertThat(IOUtils.toString(messageContent, "US-ASCII")).isEqualTo(content);
+        messageContent.close();
+    }
+}
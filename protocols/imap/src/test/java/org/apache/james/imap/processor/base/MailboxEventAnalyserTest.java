@@ -60,6 +60,7 @@ import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.MessageResult;
 import org.apache.james.mailbox.model.MessageResult.FetchGroup;
 import org.apache.james.mailbox.model.MessageResultIterator;
+import org.apache.james.mailbox.model.MessageToAppend;
 import org.apache.james.mailbox.model.MimeDescriptor;
 import org.apache.james.mailbox.model.SearchQuery;
 import org.apache.james.mailbox.model.UpdatedFlags;
@@ -189,6 +190,22 @@ public class MailboxEventAnalyserTest {
                 }
 
                 
+                public List<Long> appendMessages(List<MessageToAppend> messages, MailboxSession mailboxSession) throws MailboxException {
+                    throw new UnsupportedOperationException("Not implemented");
+
+                }
+
+                public MessageResultIterator getMessagesChangedSince(MessageRange set, long modSeq, FetchGroup fetchGroup, MailboxSession mailboxSession) throws MailboxException {
+                    throw new UnsupportedOperationException("Not implemented");
+
+                }
+
+                public List<Long> getExpungedSince(MessageRange set, long modSeq, MailboxSession mailboxSession) throws MailboxException {
+                    throw new UnsupportedOperationException("Not implemented");
+
+                }
+
+                
                 public MessageResultIterator getMessages(MessageRange set, FetchGroup fetchGroup, MailboxSession mailboxSession) throws MailboxException {
                     return new MessageResultIterator() {
                         boolean done = false;
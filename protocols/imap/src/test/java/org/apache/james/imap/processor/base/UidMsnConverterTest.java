@@ -0,0 +1,173 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.imap.processor.base;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.james.imap.api.process.SelectedMailbox;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UidMsnConverterTest {
+
+    private UidMsnConverter testee;
+
+    @Before
+    public void setUp() {
+        testee = new UidMsnConverter();
+    }
+
+    @Test
+    public void getUidShouldReturnNoSuchMessageWhenEmpty() {
+        assertThat(testee.getUid(1)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.getFirstUid()).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.getLastUid()).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+    }
+
+    @Test
+    public void getMsnShouldReturnNoSuchMessageForUnknownUid() {
+        testee.addUid(3);
+
+        assertThat(testee.getMsn(4)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+    }
+
+    @Test
+    public void addUidShouldAssignIncreasingMsns() {
+        testee.addUid(3);
+        testee.addUid(7);
+        testee.addUid(42);
+
+        assertThat(testee.getMsn(3)).isEqualTo(1);
+        assertThat(testee.getMsn(7)).isEqualTo(2);
+        assertThat(testee.getMsn(42)).isEqualTo(3);
+        assertThat(testee.getUid(3)).isEqualTo(42);
+        assertThat(testee.getFirstUid()).isEqualTo(3);
+        assertThat(testee.getLastUid()).isEqualTo(42);
+    }
+
+    @Test
+    public void addUidShouldIgnoreDuplicates() {
+        testee.addUid(3);
+        testee.addUid(7);
+        testee.addUid(3);
+
+        assertThat(testee.getNumMessage()).isEqualTo(2);
+    }
+
+    @Test
+    public void addUidShouldKeepUidsSortedWhenAddedOutOfOrder() {
+        testee.addUid(7);
+        testee.addUid(3);
+        testee.addUid(5);
+
+        assertThat(testee.getUid(1)).isEqualTo(3);
+        assertThat(testee.getUid(2)).isEqualTo(5);
+        assertThat(testee.getUid(3)).isEqualTo(7);
+    }
+
+    @Test
+    public void addUidShouldGrowBeyondInitialCapacity() {
+        for (long uid = 1; uid <= 1000; uid++) {
+            testee.addUid(uid);
+        }
+
+        assertThat(testee.getNumMessage()).isEqualTo(1000);
+        assertThat(testee.getMsn(1000)).isEqualTo(1000);
+        assertThat(testee.getUid(500)).isEqualTo(500);
+    }
+
+    @Test
+    public void removeShouldReturnMsnAndRenumberFollowingMessages() {
+        testee.addUid(3);
+        testee.addUid(7);
+        testee.addUid(42);
+
+        assertThat(testee.remove(7)).isEqualTo(2);
+
+        assertThat(testee.getMsn(7)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.getMsn(42)).isEqualTo(2);
+        assertThat(testee.getUid(3)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.getNumMessage()).isEqualTo(2);
+    }
+
+    @Test
+    public void removeShouldReturnNoSuchMessageForUnknownUid() {
+        testee.addUid(3);
+
+        assertThat(testee.remove(4)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.getNumMessage()).isEqualTo(1);
+    }
+
+    @Test
+    public void getUidShouldReturnNoSuchMessageForInvalidMsn() {
+        testee.addUid(3);
+
+        assertThat(testee.getUid(0)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.getUid(-1)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.getUid(2)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+    }
+
+    @Test
+    public void clearShouldRemoveAllUids() {
+        testee.addUid(3);
+        testee.addUid(7);
+
+        testee.clear();
+
+        assertThat(testee.getNumMessage()).isEqualTo(0);
+        assertThat(testee.getMsn(3)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+    }
+
+    @Test
+    public void readersShouldSeeSortedUidsWhileUidsAreRemoved() throws Exception {
+        final int count = 10000;
+        for (long uid = 1; uid <= count; uid++) {
+            testee.addUid(uid);
+        }
+        final AtomicBoolean sorted = new AtomicBoolean(true);
+        Thread remover = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (long uid = 1; uid <= count; uid += 2) {
+                    testee.remove(uid);
+                }
+            }
+        });
+
+        remover.start();
+        while (remover.isAlive()) {
+            long previous = 0;
+            for (int msn = 1; msn <= testee.getNumMessage(); msn++) {
+                long uid = testee.getUid(msn);
+                if (uid != SelectedMailbox.NO_SUCH_MESSAGE && uid <= previous) {
+                    sorted.set(false);
+                }
+                previous = uid;
+            }
+        }
+        remover.join();
+
+        assertThat(sorted.get()).isTrue();
+        assertThat(testee.getNumMessage()).isEqualTo(count / 2);
+    }
+}
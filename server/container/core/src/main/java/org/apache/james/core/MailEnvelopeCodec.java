@@ -0,0 +1,296 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.mail.internet.AddressException;
+
+import org.apache.mailet.Mail;
+import org.apache.mailet.MailAddress;
+
+/**
+ * Binary format for the envelope of a {@link Mail}: its name, state, error
+ * message, sender, recipients, remote host and address, last update and
+ * attributes. The {@link javax.mail.internet.MimeMessage} is not part of it.
+ * <p>
+ * The format starts with a magic number and a version. Strings, Integers,
+ * Longs and Booleans attributes are written as such, other attributes still
+ * use Java serialization.
+ * </p>
+ * <p>
+ * {@link #read(InputStream)} also reads mails which were written with Java
+ * serialization, so that files stored by previous versions stay readable.
+ * </p>
+ */
+public class MailEnvelopeCodec {
+
+    private static final int MAGIC = 0x4A4D4556;
+    private static final int VERSION = 1;
+
+    /**
+     * First bytes of a Java serialization stream
+     */
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte SERIALIZED = 5;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private MailEnvelopeCodec() {
+    }
+
+    /**
+     * Write the envelope of the given {@link Mail}
+     *
+     * @param mail
+     * @param out
+     * @throws IOException
+     */
+    public static void write(Mail mail, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        writeString(data, mail.getName());
+        writeString(data, mail.getState());
+        writeString(data, mail.getErrorMessage());
+        writeAddress(data, mail.getSender());
+
+        Collection<MailAddress> recipients = mail.getRecipients();
+        if (recipients == null) {
+            data.writeInt(-1);
+        } else {
+            data.writeInt(recipients.size());
+            for (MailAddress recipient : recipients) {
+                writeAddress(data, recipient);
+            }
+        }
+
+        writeString(data, mail.getRemoteHost());
+        writeString(data, mail.getRemoteAddr());
+        Date lastUpdated = mail.getLastUpdated();
+        data.writeBoolean(lastUpdated != null);
+        if (lastUpdated != null) {
+            data.writeLong(lastUpdated.getTime());
+        }
+
+        List<String> attributeNames = new ArrayList<String>();
+        Iterator<String> names = mail.getAttributeNames();
+        while (names.hasNext()) {
+            attributeNames.add(names.next());
+        }
+        data.writeInt(attributeNames.size());
+        for (String name : attributeNames) {
+            writeString(data, name);
+            writeAttribute(data, mail.getAttribute(name));
+        }
+        data.flush();
+    }
+
+    /**
+     * Read a {@link Mail} envelope, written either by
+     * {@link #write(Mail, OutputStream)} or with Java serialization. The
+     * returned {@link Mail} has no message.
+     *
+     * @param in
+     * @return mail
+     * @throws IOException
+     */
+    public static Mail read(InputStream in) throws IOException {
+        PushbackInputStream pushbackIn = new PushbackInputStream(in, 2);
+        byte[] head = new byte[2];
+        int read = 0;
+        while (read < head.length) {
+            int count = pushbackIn.read(head, read, head.length - read);
+            if (count < 0) {
+                throw new IOException("Unexpected end of mail envelope");
+            }
+            read += count;
+        }
+        pushbackIn.unread(head);
+
+        if (((head[0] & 0xFF) << 8 | (head[1] & 0xFF)) == JAVA_SERIALIZATION_MAGIC) {
+            return readSerialized(pushbackIn);
+        }
+        return readEnvelope(new DataInputStream(pushbackIn));
+    }
+
+    private static Mail readSerialized(InputStream in) throws IOException {
+        try {
+            return (Mail) new ObjectInputStream(in).readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to read serialized mail: " + e.getMessage());
+        }
+    }
+
+    private static Mail readEnvelope(DataInputStream data) throws IOException {
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a mail envelope");
+        }
+        int version = data.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Unsupported mail envelope version " + version);
+        }
+
+        MailImpl mail = new MailImpl();
+        mail.setName(readString(data));
+        mail.setState(readString(data));
+        mail.setErrorMessage(readString(data));
+        mail.setSender(readAddress(data));
+
+        int recipientCount = data.readInt();
+        if (recipientCount >= 0) {
+            List<MailAddress> recipients = new ArrayList<MailAddress>(recipientCount);
+            for (int i = 0; i < recipientCount; i++) {
+                recipients.add(readAddress(data));
+            }
+            mail.setRecipients(recipients);
+        }
+
+        mail.setRemoteHost(readString(data));
+        mail.setRemoteAddr(readString(data));
+        if (data.readBoolean()) {
+            mail.setLastUpdated(new Date(data.readLong()));
+        }
+
+        int attributeCount = data.readInt();
+        for (int i = 0; i < attributeCount; i++) {
+            String name = readString(data);
+            Serializable value = readAttribute(data);
+            if (value != null) {
+                mail.setAttribute(name, value);
+            }
+        }
+        return mail;
+    }
+
+    private static void writeAttribute(DataOutputStream data, Serializable value) throws IOException {
+        if (value == null) {
+            data.writeByte(NULL);
+        } else if (value instanceof String) {
+            data.writeByte(STRING);
+            writeString(data, (String) value);
+        } else if (value instanceof Integer) {
+            data.writeByte(INTEGER);
+            data.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            data.writeByte(LONG);
+            data.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            data.writeByte(BOOLEAN);
+            data.writeBoolean((Boolean) value);
+        } else {
+            data.writeByte(SERIALIZED);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+            objectOut.writeObject(value);
+            objectOut.close();
+            data.writeInt(bytes.size());
+            bytes.writeTo(data);
+        }
+    }
+
+    private static Serializable readAttribute(DataInputStream data) throws IOException {
+        byte type = data.readByte();
+        switch (type) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(data);
+        case INTEGER:
+            return data.readInt();
+        case LONG:
+            return data.readLong();
+        case BOOLEAN:
+            return data.readBoolean();
+        case SERIALIZED:
+            byte[] bytes = new byte[data.readInt()];
+            data.readFully(bytes);
+            try {
+                return (Serializable) new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unable to read serialized attribute: " + e.getMessage());
+            }
+        default:
+            throw new IOException("Unknown attribute type " + type);
+        }
+    }
+
+    private static void writeAddress(DataOutputStream data, MailAddress address) throws IOException {
+        if (address == null) {
+            writeString(data, null);
+        } else {
+            writeString(data, address.toString());
+        }
+    }
+
+    private static MailAddress readAddress(DataInputStream data) throws IOException {
+        String address = readString(data);
+        if (address == null) {
+            return null;
+        }
+        try {
+            return new MailAddress(address);
+        } catch (AddressException e) {
+            throw new IOException("Unable to parse address " + address + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        if (value == null) {
+            data.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF_8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
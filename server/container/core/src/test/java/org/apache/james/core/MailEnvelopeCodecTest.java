@@ -0,0 +1,174 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.mailet.Mail;
+import org.apache.mailet.MailAddress;
+import org.junit.Test;
+
+public class MailEnvelopeCodecTest {
+
+    private static final int ROUND_TRIPS = 500;
+    private static final int TIMED_RUNS = 5;
+
+    private MailImpl createMail() throws Exception {
+        MailImpl mail = new MailImpl("name", new MailAddress("sender@domain"),
+                Arrays.asList(new MailAddress("rcpt1@domain"), new MailAddress("rcpt2@domain")));
+        mail.setState(Mail.TRANSPORT);
+        mail.setErrorMessage("error");
+        mail.setRemoteHost("host");
+        mail.setRemoteAddr("127.0.0.1");
+        mail.setLastUpdated(new Date(123456789L));
+        mail.setAttribute("string", "value");
+        mail.setAttribute("integer", 42);
+        mail.setAttribute("long", 43L);
+        mail.setAttribute("boolean", true);
+        mail.setAttribute("list", new ArrayList<String>(Arrays.asList("a", "b")));
+        return mail;
+    }
+
+    private void checkMail(Mail expected, Mail actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getState(), actual.getState());
+        assertEquals(expected.getErrorMessage(), actual.getErrorMessage());
+        assertEquals(expected.getSender(), actual.getSender());
+        assertEquals(new ArrayList<MailAddress>(expected.getRecipients()), new ArrayList<MailAddress>(actual.getRecipients()));
+        assertEquals(expected.getRemoteHost(), actual.getRemoteHost());
+        assertEquals(expected.getRemoteAddr(), actual.getRemoteAddr());
+        assertEquals(expected.getLastUpdated(), actual.getLastUpdated());
+        for (String name : Arrays.asList("string", "integer", "long", "boolean", "list")) {
+            assertEquals(expected.getAttribute(name), actual.getAttribute(name));
+        }
+    }
+
+    @Test
+    public void readShouldReturnTheWrittenEnvelope() throws Exception {
+        MailImpl mail = createMail();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        MailEnvelopeCodec.write(mail, out);
+
+        checkMail(mail, MailEnvelopeCodec.read(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test
+    public void readShouldSupportNullValues() throws Exception {
+        MailImpl mail = new MailImpl();
+        mail.setLastUpdated(null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        MailEnvelopeCodec.write(mail, out);
+        Mail read = MailEnvelopeCodec.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertNull(read.getName());
+        assertNull(read.getSender());
+        assertNull(read.getErrorMessage());
+        assertNull(read.getRecipients());
+    }
+
+    @Test
+    public void readShouldSupportJavaSerializedMails() throws Exception {
+        MailImpl mail = createMail();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectOutputStream objectOut = new ObjectOutputStream(out);
+        objectOut.writeObject(mail);
+        objectOut.close();
+
+        checkMail(mail, MailEnvelopeCodec.read(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test
+    public void writeShouldBeMoreCompactThanJavaSerialization() throws Exception {
+        MailImpl mail = createMail();
+        ByteArrayOutputStream envelope = new ByteArrayOutputStream();
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream objectOut = new ObjectOutputStream(serialized);
+        objectOut.writeObject(mail);
+        objectOut.close();
+
+        MailEnvelopeCodec.write(mail, envelope);
+
+        assertTrue(envelope.size() < serialized.size());
+    }
+
+    @Test
+    public void writeAndReadShouldBeFasterThanJavaSerialization() throws Exception {
+        MailImpl mail = createMail();
+        // Warm up both paths before timing them
+        timeCodecRoundTrips(mail, ROUND_TRIPS);
+        timeJavaSerializationRoundTrips(mail, ROUND_TRIPS);
+
+        long codecTime = Long.MAX_VALUE;
+        long javaSerializationTime = Long.MAX_VALUE;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            codecTime = Math.min(codecTime, timeCodecRoundTrips(mail, ROUND_TRIPS));
+            javaSerializationTime = Math.min(javaSerializationTime, timeJavaSerializationRoundTrips(mail, ROUND_TRIPS));
+        }
+
+        assertTrue("codec: " + codecTime + "ns, java serialization: " + javaSerializationTime + "ns",
+                codecTime < javaSerializationTime);
+    }
+
+    private long timeCodecRoundTrips(Mail mail, int count) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            MailEnvelopeCodec.write(mail, out);
+            MailEnvelopeCodec.read(new ByteArrayInputStream(out.toByteArray()));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long timeJavaSerializationRoundTrips(Mail mail, int count) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ObjectOutputStream objectOut = new ObjectOutputStream(out);
+            objectOut.writeObject(mail);
+            objectOut.close();
+            new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())).readObject();
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    public void readShouldFailOnUnknownData() throws Exception {
+        try {
+            MailEnvelopeCodec.read(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5 }));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
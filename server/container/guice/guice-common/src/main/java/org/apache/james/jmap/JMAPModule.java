@@ -27,11 +27,13 @@ import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.commons.io.FileUtils;
 import org.apache.james.filesystem.api.FileSystem;
+import org.apache.james.jmap.event.MessageProjectionListener;
 import org.apache.james.jmap.methods.RequestHandler;
 import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.store.mail.model.MailboxId;
 import org.apache.james.utils.ConfigurationPerformer;
 import org.apache.james.utils.ConfigurationProvider;
+import org.apache.james.utils.GuiceGenericType;
 
 import com.github.fge.lambdas.Throwing;
 import com.google.common.base.Preconditions;
@@ -58,6 +60,7 @@ public class JMAPModule<Id extends MailboxId> extends AbstractModule {
         Multibinder<ConfigurationPerformer> preconditions = Multibinder.newSetBinder(binder(), ConfigurationPerformer.class);
         preconditions.addBinding().to(MailetConfigurationPrecondition.class);
         preconditions.addBinding().to(MoveCapabilityPrecondition.class);
+        preconditions.addBinding().to(new GuiceGenericType<Id>(type).newGenericType(MessageProjectionListenerRegistration.class));
     }
 
     @Provides
@@ -124,4 +127,22 @@ public class JMAPModule<Id extends MailboxId> extends AbstractModule {
                     "MOVE support in MailboxManager is required by JMAP Module");
         }
     }
+
+    @Singleton
+    public static class MessageProjectionListenerRegistration<Id extends MailboxId> implements ConfigurationPerformer {
+
+        private final MailboxManager mailboxManager;
+        private final MessageProjectionListener<Id> messageProjectionListener;
+
+        @Inject
+        public MessageProjectionListenerRegistration(MailboxManager mailboxManager, MessageProjectionListener<Id> messageProjectionListener) {
+            this.mailboxManager = mailboxManager;
+            this.messageProjectionListener = messageProjectionListener;
+        }
+
+        @Override
+        public void initModule() throws Exception {
+            mailboxManager.addGlobalListener(messageProjectionListener, null);
+        }
+    }
 }
@@ -20,8 +20,10 @@
 package org.apache.james.modules.data;
 
 import org.apache.james.jmap.api.access.AccessTokenRepository;
+import org.apache.james.jmap.api.projection.MessageProjectionRepository;
 import org.apache.james.jmap.api.vacation.VacationRepository;
 import org.apache.james.jmap.memory.access.MemoryAccessTokenRepository;
+import org.apache.james.jmap.memory.projection.MemoryMessageProjectionRepository;
 import org.apache.james.jmap.memory.vacation.MemoryVacationRepository;
 
 import com.google.inject.AbstractModule;
@@ -36,5 +38,8 @@ public class MemoryDataJmapModule extends AbstractModule {
 
         bind(MemoryVacationRepository.class).in(Scopes.SINGLETON);
         bind(VacationRepository.class).to(MemoryVacationRepository.class);
+
+        bind(MemoryMessageProjectionRepository.class).in(Scopes.SINGLETON);
+        bind(MessageProjectionRepository.class).to(MemoryMessageProjectionRepository.class);
     }
 }
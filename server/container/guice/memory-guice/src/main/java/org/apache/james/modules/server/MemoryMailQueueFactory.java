@@ -19,31 +19,57 @@
 
 package org.apache.james.modules.server;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import javax.mail.MessagingException;
+
+import org.apache.james.core.MailImpl;
+import org.apache.james.queue.api.MailPrioritySupport;
 import org.apache.james.queue.api.MailQueue;
 import org.apache.james.queue.api.MailQueueFactory;
 import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
+import org.apache.james.queue.api.ManageableMailQueue;
 import org.apache.mailet.Mail;
+import org.apache.mailet.MailAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Objects;
-import com.google.common.base.Throwables;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 @Singleton
 public class MemoryMailQueueFactory implements MailQueueFactory {
 
+    public static final int DEFAULT_CAPACITY = 100000;
+
     private final ConcurrentHashMap<String, MailQueue> mailQueues;
     private final MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory;
+    private final int capacity;
 
     @Inject
     public MemoryMailQueueFactory(MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory) {
+        this(mailQueueItemDecoratorFactory, DEFAULT_CAPACITY);
+    }
+
+    public MemoryMailQueueFactory(MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, int capacity) {
         this.mailQueues = new ConcurrentHashMap<>();
         this.mailQueueItemDecoratorFactory = mailQueueItemDecoratorFactory;
+        this.capacity = capacity;
     }
 
     @Override
@@ -53,45 +79,328 @@ public class MemoryMailQueueFactory implements MailQueueFactory {
     }
 
     private MailQueue tryInsertNewMailQueue(String name) {
-        MailQueue newMailQueue = new MemoryMailQueue(name, mailQueueItemDecoratorFactory);
+        MailQueue newMailQueue = new MemoryMailQueue(name, mailQueueItemDecoratorFactory, capacity);
         return Optional.ofNullable(mailQueues.putIfAbsent(name, newMailQueue))
             .orElse(newMailQueue);
     }
 
-    public static class MemoryMailQueue implements MailQueue {
+    /**
+     * In memory {@link ManageableMailQueue}.
+     *
+     * Mails are dequeued once their delay is over, by decreasing priority (see
+     * {@link MailPrioritySupport}) then in the order they were enqueued.
+     *
+     * The queue holds at most capacity mails: enqueuing into a full queue waits
+     * for a mail to be dequeued, and fails after {@link #ENQUEUE_TIMEOUT_IN_MILLIS}
+     * so that a mail processor enqueuing into its own queue can not block forever.
+     *
+     * A mail which could not be handled is enqueued again after a redelivery
+     * delay. Once maxRetries attempts failed, it is moved to the {@link Mail#ERROR}
+     * processor, and dropped if it keeps failing there.
+     */
+    public static class MemoryMailQueue implements ManageableMailQueue, MailPrioritySupport {
+
+        public static final long ENQUEUE_TIMEOUT_IN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+        public static final long DEFAULT_REDELIVERY_DELAY_IN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+        public static final int DEFAULT_MAX_RETRIES = 5;
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(MemoryMailQueue.class);
+
+        private static final Comparator<MemoryMailQueueItem> DELIVERY_ORDER = Comparator
+            .comparingLong(MemoryMailQueueItem::getNextDelivery)
+            .thenComparingLong(MemoryMailQueueItem::getSequence);
+        private static final Comparator<MemoryMailQueueItem> PRIORITY_ORDER = Comparator
+            .comparingInt(MemoryMailQueueItem::getPriority).reversed()
+            .thenComparingLong(MemoryMailQueueItem::getSequence);
 
-        private final LinkedBlockingDeque<MemoryMailQueueItem> mailItems;
+        private final PriorityQueue<MemoryMailQueueItem> readyItems;
+        private final PriorityQueue<MemoryMailQueueItem> delayedItems;
+        private final ReentrantLock lock;
+        private final Condition notEmpty;
+        private final Condition notFull;
+        private final AtomicLong sequence;
         private final MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory;
         private final String name;
+        private final int capacity;
+        private final long redeliveryDelayInMillis;
+        private final int maxRetries;
 
-        public MemoryMailQueue(String name,MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory) {
-            this.mailItems = new LinkedBlockingDeque<>();
+        public MemoryMailQueue(String name, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory) {
+            this(name, mailQueueItemDecoratorFactory, DEFAULT_CAPACITY);
+        }
+
+        public MemoryMailQueue(String name, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, int capacity) {
+            this(name, mailQueueItemDecoratorFactory, capacity, DEFAULT_REDELIVERY_DELAY_IN_MILLIS, DEFAULT_MAX_RETRIES);
+        }
+
+        public MemoryMailQueue(String name, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, int capacity,
+                               long redeliveryDelayInMillis, int maxRetries) {
+            this.readyItems = new PriorityQueue<>(PRIORITY_ORDER);
+            this.delayedItems = new PriorityQueue<>(DELIVERY_ORDER);
+            this.lock = new ReentrantLock();
+            this.notEmpty = lock.newCondition();
+            this.notFull = lock.newCondition();
+            this.sequence = new AtomicLong();
             this.name = name;
             this.mailQueueItemDecoratorFactory = mailQueueItemDecoratorFactory;
+            this.capacity = capacity;
+            this.redeliveryDelayInMillis = redeliveryDelayInMillis;
+            this.maxRetries = maxRetries;
         }
 
         @Override
         public void enQueue(Mail mail, long delay, TimeUnit unit) throws MailQueueException {
-            enQueue(mail);
+            long nextDelivery = -1;
+            if (delay > 0) {
+                nextDelivery = System.currentTimeMillis() + unit.toMillis(delay);
+            }
+            MemoryMailQueueItem item = new MemoryMailQueueItem(mail, getPriority(mail), nextDelivery, sequence.incrementAndGet());
+            lock.lock();
+            try {
+                long remainingNanos = TimeUnit.MILLISECONDS.toNanos(ENQUEUE_TIMEOUT_IN_MILLIS);
+                while (size() >= capacity) {
+                    if (remainingNanos <= 0) {
+                        throw new MailQueueException("Mail queue " + name + " is full");
+                    }
+                    remainingNanos = notFull.awaitNanos(remainingNanos);
+                }
+                add(item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MailQueueException("Interrupted while waiting to enqueue in " + name, e);
+            } finally {
+                lock.unlock();
+            }
         }
 
         @Override
         public void enQueue(Mail mail) throws MailQueueException {
-            mailItems.addFirst(new MemoryMailQueueItem(mail));
+            enQueue(mail, 0, TimeUnit.MILLISECONDS);
         }
 
         @Override
         public MailQueueItem deQueue() throws MailQueueException {
-            while (true) {
-                try {
-                    MemoryMailQueueItem item = mailItems.take();
-                    return mailQueueItemDecoratorFactory.decorate(item);
-                } catch (InterruptedException e) {
-                    Throwables.propagate(e);
+            lock.lock();
+            try {
+                while (true) {
+                    moveDueItems();
+                    MemoryMailQueueItem item = readyItems.poll();
+                    if (item != null) {
+                        notFull.signal();
+                        return mailQueueItemDecoratorFactory.decorate(new MemoryMailQueueItemHandle(item));
+                    }
+                    MemoryMailQueueItem nextDelayed = delayedItems.peek();
+                    if (nextDelayed == null) {
+                        notEmpty.await();
+                    } else {
+                        notEmpty.await(nextDelayed.getNextDelivery() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                    }
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MailQueueException("Interrupted while waiting to dequeue from " + name, e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public long getSize() throws MailQueueException {
+            lock.lock();
+            try {
+                return size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public long flush() throws MailQueueException {
+            lock.lock();
+            try {
+                long count = delayedItems.size();
+                readyItems.addAll(delayedItems);
+                delayedItems.clear();
+                notEmpty.signalAll();
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public long clear() throws MailQueueException {
+            return removeIf(item -> true);
+        }
+
+        @Override
+        public long remove(Type type, String value) throws MailQueueException {
+            switch (type) {
+                case Name:
+                    return removeIf(item -> value.equals(item.getMail().getName()));
+                case Sender:
+                    return removeIf(item -> value.equals(asString(item.getMail().getSender())));
+                case Recipient:
+                    return removeIf(item -> hasRecipient(item.getMail(), value));
+                default:
+                    return -1;
             }
         }
 
+        @Override
+        public MailQueueIterator browse() throws MailQueueException {
+            return browse(0, -1);
+        }
+
+        /**
+         * Browse a snapshot of the queue, in dequeue order for mails which are
+         * ready then in delivery order for delayed ones
+         */
+        @Override
+        public MailQueueIterator browse(long offset, long limit) throws MailQueueException {
+            List<MailQueueItemView> views;
+            lock.lock();
+            try {
+                moveDueItems();
+                views = sorted(readyItems, PRIORITY_ORDER).collect(Collectors.toCollection(ArrayList::new));
+                views.addAll(sorted(delayedItems, DELIVERY_ORDER).collect(Collectors.toList()));
+            } finally {
+                lock.unlock();
+            }
+            Iterator<MailQueueItemView> iterator = views.stream()
+                .skip(offset)
+                .limit(limit < 0 ? Long.MAX_VALUE : limit)
+                .iterator();
+            return new MailQueueIterator() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public MailQueueItemView next() {
+                    return iterator.next();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("Read-only");
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        private Stream<MailQueueItemView> sorted(Collection<MemoryMailQueueItem> items, Comparator<MemoryMailQueueItem> order) {
+            return items.stream()
+                .sorted(order)
+                .map(MemoryMailQueueItem::asView);
+        }
+
+        /**
+         * The spooler disposes the dequeued mail once handled, so a copy is enqueued again
+         */
+        private void requeue(MemoryMailQueueItem item) throws MailQueueException {
+            Mail mail = copy(item.getMail());
+            int retries = item.getRetries() + 1;
+            if (retries > maxRetries) {
+                if (Mail.ERROR.equals(mail.getState())) {
+                    LOGGER.error("Dropping mail {} from {}: it could not be handled by the {} processor after {} attempts",
+                        mail.getName(), name, Mail.ERROR, retries);
+                    return;
+                }
+                LOGGER.warn("Moving mail {} from {} to the {} processor: it could not be handled after {} attempts",
+                    mail.getName(), name, Mail.ERROR, retries);
+                mail.setState(Mail.ERROR);
+                mail.setErrorMessage("Could not be handled after " + retries + " attempts");
+                retries = 0;
+            }
+            MemoryMailQueueItem requeued = new MemoryMailQueueItem(mail, item.getPriority(),
+                System.currentTimeMillis() + redeliveryDelayInMillis, sequence.incrementAndGet(), retries);
+            lock.lock();
+            try {
+                add(requeued);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Mail copy(Mail mail) throws MailQueueException {
+            try {
+                MailImpl copy = new MailImpl(mail, mail.getName());
+                copy.setState(mail.getState());
+                copy.setErrorMessage(mail.getErrorMessage());
+                return copy;
+            } catch (MessagingException e) {
+                throw new MailQueueException("Unable to enqueue again mail " + mail.getName() + " in " + name, e);
+            }
+        }
+
+        private void add(MemoryMailQueueItem item) {
+            if (item.getNextDelivery() > System.currentTimeMillis()) {
+                delayedItems.add(item);
+            } else {
+                readyItems.add(item);
+            }
+            notEmpty.signalAll();
+        }
+
+        private void moveDueItems() {
+            long now = System.currentTimeMillis();
+            while (!delayedItems.isEmpty() && delayedItems.peek().getNextDelivery() <= now) {
+                readyItems.add(delayedItems.poll());
+            }
+        }
+
+        private long removeIf(Predicate<MemoryMailQueueItem> predicate) {
+            lock.lock();
+            try {
+                long count = removeIf(readyItems, predicate) + removeIf(delayedItems, predicate);
+                notFull.signalAll();
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private long removeIf(Collection<MemoryMailQueueItem> items, Predicate<MemoryMailQueueItem> predicate) {
+            long count = 0;
+            Iterator<MemoryMailQueueItem> iterator = items.iterator();
+            while (iterator.hasNext()) {
+                if (predicate.test(iterator.next())) {
+                    iterator.remove();
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private int size() {
+            return readyItems.size() + delayedItems.size();
+        }
+
+        private int getPriority(Mail mail) {
+            Object priority = mail.getAttribute(MAIL_PRIORITY);
+            if (priority instanceof Integer) {
+                return (Integer) priority;
+            }
+            return NORMAL_PRIORITY;
+        }
+
+        private boolean hasRecipient(Mail mail, String value) {
+            return mail.getRecipients() != null
+                && mail.getRecipients().stream().anyMatch(recipient -> value.equals(asString(recipient)));
+        }
+
+        private String asString(MailAddress address) {
+            if (address == null) {
+                return null;
+            }
+            return address.toString();
+        }
+
         @Override
         public boolean equals(Object o) {
             if (o == null || getClass() != o.getClass()) {
@@ -107,14 +416,54 @@ public class MemoryMailQueueFactory implements MailQueueFactory {
         public int hashCode() {
             return Objects.hashCode(name);
         }
+
+        /**
+         * Dequeued item: a copy of the mail is enqueued again when it could not be handled
+         */
+        private class MemoryMailQueueItemHandle implements MailQueue.MailQueueItem {
+
+            private final MemoryMailQueueItem item;
+
+            private MemoryMailQueueItemHandle(MemoryMailQueueItem item) {
+                this.item = item;
+            }
+
+            @Override
+            public Mail getMail() {
+                return item.getMail();
+            }
+
+            @Override
+            public void done(boolean success) throws MailQueue.MailQueueException {
+                if (!success) {
+                    requeue(item);
+                }
+            }
+        }
     }
 
     public static class MemoryMailQueueItem implements MailQueue.MailQueueItem {
 
         private final Mail mail;
+        private final int priority;
+        private final long nextDelivery;
+        private final long sequence;
+        private final int retries;
 
         public MemoryMailQueueItem(Mail mail) {
+            this(mail, MailPrioritySupport.NORMAL_PRIORITY, -1, 0);
+        }
+
+        public MemoryMailQueueItem(Mail mail, int priority, long nextDelivery, long sequence) {
+            this(mail, priority, nextDelivery, sequence, 0);
+        }
+
+        public MemoryMailQueueItem(Mail mail, int priority, long nextDelivery, long sequence, int retries) {
             this.mail = mail;
+            this.priority = priority;
+            this.nextDelivery = nextDelivery;
+            this.sequence = sequence;
+            this.retries = retries;
         }
 
         @Override
@@ -122,9 +471,39 @@ public class MemoryMailQueueFactory implements MailQueueFactory {
             return mail;
         }
 
+        public int getPriority() {
+            return priority;
+        }
+
+        public long getNextDelivery() {
+            return nextDelivery;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public int getRetries() {
+            return retries;
+        }
+
         @Override
         public void done(boolean success) throws MailQueue.MailQueueException {
 
         }
+
+        private ManageableMailQueue.MailQueueItemView asView() {
+            return new ManageableMailQueue.MailQueueItemView() {
+                @Override
+                public Mail getMail() {
+                    return mail;
+                }
+
+                @Override
+                public long getNextDelivery() {
+                    return nextDelivery;
+                }
+            };
+        }
     }
 }
@@ -22,6 +22,7 @@ package org.apache.james.server;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -29,22 +30,36 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.james.core.MailImpl;
+import org.apache.james.lifecycle.api.LifecycleUtil;
 import org.apache.james.modules.server.MemoryMailQueueFactory;
+import org.apache.james.modules.server.MemoryMailQueueFactory.MemoryMailQueue;
+import org.apache.james.queue.api.MailPrioritySupport;
 import org.apache.james.queue.api.MailQueue;
 import org.apache.james.queue.api.MailQueue.MailQueueItem;
 import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
+import org.apache.james.queue.api.ManageableMailQueue;
 import org.apache.mailet.Mail;
+import org.apache.mailet.MailAddress;
 import org.apache.mailet.base.test.FakeMail;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 
 public class MemoryMailQueueFactoryTest {
 
     public static final String KEY = "key";
     public static final String BIS = "bis";
+    public static final int CAPACITY = 10;
+    public static final long NO_DELAY = 0;
+    public static final int MAX_RETRIES = 2;
 
     private MemoryMailQueueFactory memoryMailQueueFactory;
     private ExecutorService executorService;
@@ -70,6 +85,15 @@ public class MemoryMailQueueFactoryTest {
         executorService.shutdownNow();
     }
 
+    private Mail mail(String name) throws MessagingException {
+        MimeMessage message = new MimeMessage(Session.getDefaultInstance(new Properties()));
+        message.setSubject("subject");
+        message.setText("content");
+        MailImpl mail = new MailImpl(name, new MailAddress("sender@domain"), ImmutableList.of(new MailAddress("rcpt@domain")), message);
+        mail.setState(Mail.DEFAULT);
+        return mail;
+    }
+
     @Test
     public void getQueueShouldNotReturnNull() {
         assertThat(memoryMailQueueFactory.getQueue(KEY)).isNotNull();
@@ -98,8 +122,157 @@ public class MemoryMailQueueFactoryTest {
         Mail mail2 = new FakeMail();
         memoryMailQueueFactory.getQueue(KEY).enQueue(mail1);
         memoryMailQueueFactory.getQueue(KEY).enQueue(mail2);
+        assertThat(memoryMailQueueFactory.getQueue(KEY).deQueue().getMail()).isEqualTo(mail1);
+        assertThat(memoryMailQueueFactory.getQueue(KEY).deQueue().getMail()).isEqualTo(mail2);
+    }
+
+    @Test
+    public void dequeueShouldReturnMailsWithHigherPriorityFirst() throws Exception {
+        Mail mail1 = new FakeMail();
+        Mail mail2 = new FakeMail();
+        mail2.setAttribute(MailPrioritySupport.MAIL_PRIORITY, MailPrioritySupport.HIGH_PRIORITY);
+        memoryMailQueueFactory.getQueue(KEY).enQueue(mail1);
+        memoryMailQueueFactory.getQueue(KEY).enQueue(mail2);
+        assertThat(memoryMailQueueFactory.getQueue(KEY).deQueue().getMail()).isEqualTo(mail2);
+        assertThat(memoryMailQueueFactory.getQueue(KEY).deQueue().getMail()).isEqualTo(mail1);
+    }
+
+    @Test(timeout = 20000)
+    public void dequeueShouldWaitForTheDelayOfDelayedMails() throws Exception {
+        Mail mail1 = new FakeMail();
+        Mail mail2 = new FakeMail();
+        long enqueueTime = System.currentTimeMillis();
+        memoryMailQueueFactory.getQueue(KEY).enQueue(mail1, 1, TimeUnit.SECONDS);
+        memoryMailQueueFactory.getQueue(KEY).enQueue(mail2);
         assertThat(memoryMailQueueFactory.getQueue(KEY).deQueue().getMail()).isEqualTo(mail2);
         assertThat(memoryMailQueueFactory.getQueue(KEY).deQueue().getMail()).isEqualTo(mail1);
+        assertThat(System.currentTimeMillis() - enqueueTime).isGreaterThanOrEqualTo(1000);
+    }
+
+    @Test
+    public void dequeueShouldReturnAgainAMailWhichCouldNotBeHandled() throws Exception {
+        MemoryMailQueue queue = new MemoryMailQueue(KEY, MailQueueItemDecoratorFactory.RAW_FACTORY, CAPACITY, NO_DELAY, MAX_RETRIES);
+        Mail mail1 = mail("mail1");
+        Mail mail2 = mail("mail2");
+        queue.enQueue(mail1);
+        queue.enQueue(mail2);
+        queue.deQueue().done(false);
+        assertThat(queue.deQueue().getMail().getName()).isEqualTo(mail2.getName());
+        assertThat(queue.deQueue().getMail().getName()).isEqualTo(mail1.getName());
+    }
+
+    @Test
+    public void doneFalseShouldEnqueueACopySurvivingTheDisposalOfTheDequeuedMail() throws Exception {
+        MemoryMailQueue queue = new MemoryMailQueue(KEY, MailQueueItemDecoratorFactory.RAW_FACTORY, CAPACITY, NO_DELAY, MAX_RETRIES);
+        queue.enQueue(mail("mail"));
+        MailQueueItem item = queue.deQueue();
+        item.done(false);
+        LifecycleUtil.dispose(item.getMail());
+
+        Mail requeued = queue.deQueue().getMail();
+        assertThat(requeued).isNotSameAs(item.getMail());
+        assertThat(requeued.getName()).isEqualTo("mail");
+        assertThat(requeued.getMessage().getSubject()).isEqualTo("subject");
+    }
+
+    @Test
+    public void doneFalseShouldDelayTheRedelivery() throws Exception {
+        MemoryMailQueue queue = new MemoryMailQueue(KEY, MailQueueItemDecoratorFactory.RAW_FACTORY, CAPACITY, TimeUnit.HOURS.toMillis(1), MAX_RETRIES);
+        queue.enQueue(mail("mail"));
+        long failureTime = System.currentTimeMillis();
+        queue.deQueue().done(false);
+
+        ManageableMailQueue.MailQueueItemView view = queue.browse().next();
+        assertThat(view.getMail().getName()).isEqualTo("mail");
+        assertThat(view.getNextDelivery()).isGreaterThanOrEqualTo(failureTime + TimeUnit.HOURS.toMillis(1));
+    }
+
+    @Test
+    public void doneFalseShouldMoveTheMailToErrorAfterMaxRetries() throws Exception {
+        MemoryMailQueue queue = new MemoryMailQueue(KEY, MailQueueItemDecoratorFactory.RAW_FACTORY, CAPACITY, NO_DELAY, MAX_RETRIES);
+        queue.enQueue(mail("mail"));
+        for (int i = 0; i < MAX_RETRIES; i++) {
+            MailQueueItem item = queue.deQueue();
+            assertThat(item.getMail().getState()).isEqualTo(Mail.DEFAULT);
+            item.done(false);
+        }
+        queue.deQueue().done(false);
+
+        Mail mail = queue.deQueue().getMail();
+        assertThat(mail.getState()).isEqualTo(Mail.ERROR);
+        assertThat(mail.getErrorMessage()).isNotNull();
+    }
+
+    @Test
+    public void doneFalseShouldDropTheMailWhenItKeepsFailingInTheErrorProcessor() throws Exception {
+        MemoryMailQueue queue = new MemoryMailQueue(KEY, MailQueueItemDecoratorFactory.RAW_FACTORY, CAPACITY, NO_DELAY, MAX_RETRIES);
+        Mail mail = mail("mail");
+        mail.setState(Mail.ERROR);
+        queue.enQueue(mail);
+        for (int i = 0; i <= MAX_RETRIES; i++) {
+            queue.deQueue().done(false);
+        }
+
+        assertThat(queue.getSize()).isEqualTo(0);
+    }
+
+    @Test(timeout = 20000)
+    public void flushShouldMakeDelayedMailsReady() throws Exception {
+        MemoryMailQueue queue = new MemoryMailQueue(KEY, MailQueueItemDecoratorFactory.RAW_FACTORY);
+        Mail mail = new FakeMail();
+        queue.enQueue(mail, 1, TimeUnit.HOURS);
+        assertThat(queue.flush()).isEqualTo(1);
+        assertThat(queue.deQueue().getMail()).isEqualTo(mail);
+    }
+
+    @Test
+    public void browseShouldReturnTheRequestedPage() throws Exception {
+        MemoryMailQueue queue = new MemoryMailQueue(KEY, MailQueueItemDecoratorFactory.RAW_FACTORY);
+        Mail mail1 = new FakeMail();
+        Mail mail2 = new FakeMail();
+        Mail mail3 = new FakeMail();
+        queue.enQueue(mail1, 1, TimeUnit.HOURS);
+        queue.enQueue(mail2);
+        queue.enQueue(mail3);
+
+        ManageableMailQueue.MailQueueIterator iterator = queue.browse(1, 2);
+        assertThat(iterator.next().getMail()).isEqualTo(mail3);
+        assertThat(iterator.next().getMail()).isEqualTo(mail1);
+        assertThat(iterator.hasNext()).isFalse();
+    }
+
+    @Test
+    public void removeShouldRemoveMailsWithTheGivenRecipient() throws Exception {
+        MemoryMailQueue queue = new MemoryMailQueue(KEY, MailQueueItemDecoratorFactory.RAW_FACTORY);
+        FakeMail mail1 = new FakeMail();
+        mail1.setRecipients(ImmutableList.of(new MailAddress("remove@me"), new MailAddress("other@me")));
+        FakeMail mail2 = new FakeMail();
+        mail2.setRecipients(ImmutableList.of(new MailAddress("other@me")));
+        queue.enQueue(mail1);
+        queue.enQueue(mail2);
+
+        assertThat(queue.remove(ManageableMailQueue.Type.Recipient, "remove@me")).isEqualTo(1);
+        assertThat(queue.getSize()).isEqualTo(1);
+        assertThat(queue.deQueue().getMail()).isEqualTo(mail2);
+    }
+
+    @Test(timeout = 20000)
+    public void enqueueShouldWaitWhenTheQueueIsFull() throws Exception {
+        MemoryMailQueue queue = new MemoryMailQueue(KEY, MailQueueItemDecoratorFactory.RAW_FACTORY, 1);
+        Mail mail1 = new FakeMail();
+        Mail mail2 = new FakeMail();
+        queue.enQueue(mail1);
+        Future<?> tryEnqueue = executorService.submit(() -> {
+            try {
+                queue.enQueue(mail2);
+            } catch (Exception e) {
+                throw Throwables.propagate(e);
+            }
+        });
+        assertThatThrownBy(() -> tryEnqueue.get(100, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        assertThat(queue.deQueue().getMail()).isEqualTo(mail1);
+        tryEnqueue.get();
+        assertThat(queue.deQueue().getMail()).isEqualTo(mail2);
     }
 
     @Test(timeout = 20000)
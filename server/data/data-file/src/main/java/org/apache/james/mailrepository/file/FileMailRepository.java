@@ -95,7 +95,7 @@ public class FileMailRepository extends AbstractMailRepository {
             DefaultConfigurationBuilder reposConfiguration = new DefaultConfigurationBuilder();
 
             reposConfiguration.addProperty("[@destinationURL]", destination);
-            objectRepository = new FilePersistentObjectRepository();
+            objectRepository = new MailEnvelopeObjectRepository();
             objectRepository.setLog(getLogger());
             objectRepository.setFileSystem(fileSystem);
             objectRepository.configure(reposConfiguration);
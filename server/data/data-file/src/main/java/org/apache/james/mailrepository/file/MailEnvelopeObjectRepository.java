@@ -0,0 +1,81 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailrepository.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.james.core.MailEnvelopeCodec;
+import org.apache.james.repository.file.FilePersistentObjectRepository;
+import org.apache.mailet.Mail;
+
+/**
+ * {@link FilePersistentObjectRepository} storing {@link Mail} envelopes with
+ * the {@link MailEnvelopeCodec} instead of Java serialization. Files written
+ * with Java serialization are still readable.
+ */
+public class MailEnvelopeObjectRepository extends FilePersistentObjectRepository {
+
+    @Override
+    public synchronized Object get(String key) {
+        try {
+            final InputStream inputStream = getInputStream(key);
+
+            if (inputStream == null)
+                throw new NullPointerException("Null input stream returned for key: " + key);
+            try {
+                return MailEnvelopeCodec.read(new BufferedInputStream(inputStream));
+            } finally {
+                inputStream.close();
+            }
+        } catch (Throwable e) {
+            throw new RuntimeException("Exception caught while retrieving an object, cause: " + e.toString());
+        }
+    }
+
+    @Override
+    public synchronized Object get(String key, ClassLoader classLoader) {
+        return get(key);
+    }
+
+    @Override
+    public synchronized void put(String key, Object value) {
+        if (!(value instanceof Mail)) {
+            super.put(key, value);
+            return;
+        }
+        try {
+            final OutputStream outputStream = getOutputStream(key);
+
+            try {
+                final OutputStream stream = new BufferedOutputStream(outputStream);
+                MailEnvelopeCodec.write((Mail) value, stream);
+                stream.flush();
+            } finally {
+                outputStream.close();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Exception caught while storing an object: " + e);
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.jmap.cassandra.projection;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import javax.inject.Inject;
+
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
+import org.apache.james.jmap.api.projection.MessageProjection;
+import org.apache.james.jmap.api.projection.MessageProjectionId;
+import org.apache.james.jmap.cassandra.projection.tables.CassandraMessageProjectionTable;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+
+public class CassandraMessageProjectionDAO {
+
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final PreparedStatement insertStatement;
+    private final PreparedStatement readStatement;
+    private final PreparedStatement deleteStatement;
+    private final PreparedStatement deleteAllStatement;
+
+    @Inject
+    public CassandraMessageProjectionDAO(Session session) {
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+
+        this.insertStatement = session.prepare(insertInto(CassandraMessageProjectionTable.TABLE_NAME)
+            .value(CassandraMessageProjectionTable.MAILBOX_ID, bindMarker(CassandraMessageProjectionTable.MAILBOX_ID))
+            .value(CassandraMessageProjectionTable.UID, bindMarker(CassandraMessageProjectionTable.UID))
+            .value(CassandraMessageProjectionTable.PREVIEW, bindMarker(CassandraMessageProjectionTable.PREVIEW))
+            .value(CassandraMessageProjectionTable.HAS_ATTACHMENT, bindMarker(CassandraMessageProjectionTable.HAS_ATTACHMENT)));
+
+        this.readStatement = session.prepare(select()
+            .from(CassandraMessageProjectionTable.TABLE_NAME)
+            .where(eq(CassandraMessageProjectionTable.MAILBOX_ID, bindMarker(CassandraMessageProjectionTable.MAILBOX_ID)))
+            .and(eq(CassandraMessageProjectionTable.UID, bindMarker(CassandraMessageProjectionTable.UID))));
+
+        this.deleteStatement = session.prepare(QueryBuilder.delete()
+            .from(CassandraMessageProjectionTable.TABLE_NAME)
+            .where(eq(CassandraMessageProjectionTable.MAILBOX_ID, bindMarker(CassandraMessageProjectionTable.MAILBOX_ID)))
+            .and(eq(CassandraMessageProjectionTable.UID, bindMarker(CassandraMessageProjectionTable.UID))));
+
+        this.deleteAllStatement = session.prepare(QueryBuilder.delete()
+            .from(CassandraMessageProjectionTable.TABLE_NAME)
+            .where(eq(CassandraMessageProjectionTable.MAILBOX_ID, bindMarker(CassandraMessageProjectionTable.MAILBOX_ID))));
+    }
+
+    public CompletableFuture<Void> store(MessageProjectionId id, MessageProjection projection) {
+        return cassandraAsyncExecutor.executeVoid(
+            insertStatement.bind()
+                .setString(CassandraMessageProjectionTable.MAILBOX_ID, id.getMailboxId())
+                .setLong(CassandraMessageProjectionTable.UID, id.getUid())
+                .setString(CassandraMessageProjectionTable.PREVIEW, projection.getPreview())
+                .setBool(CassandraMessageProjectionTable.HAS_ATTACHMENT, projection.hasAttachment()));
+    }
+
+    public CompletableFuture<Optional<MessageProjection>> retrieve(MessageProjectionId id) {
+        return cassandraAsyncExecutor.executeSingleRow(readStatement.bind()
+                .setString(CassandraMessageProjectionTable.MAILBOX_ID, id.getMailboxId())
+                .setLong(CassandraMessageProjectionTable.UID, id.getUid()))
+            .thenApply(optional -> optional.map(row -> MessageProjection.builder()
+                .preview(row.getString(CassandraMessageProjectionTable.PREVIEW))
+                .hasAttachment(row.getBool(CassandraMessageProjectionTable.HAS_ATTACHMENT))
+                .build()));
+    }
+
+    public CompletableFuture<Void> delete(MessageProjectionId id) {
+        return cassandraAsyncExecutor.executeVoid(deleteStatement.bind()
+            .setString(CassandraMessageProjectionTable.MAILBOX_ID, id.getMailboxId())
+            .setLong(CassandraMessageProjectionTable.UID, id.getUid()));
+    }
+
+    public CompletableFuture<Void> deleteAll(String mailboxId) {
+        return cassandraAsyncExecutor.executeVoid(deleteAllStatement.bind()
+            .setString(CassandraMessageProjectionTable.MAILBOX_ID, mailboxId));
+    }
+}
@@ -0,0 +1,82 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.jmap.cassandra.projection;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+import org.apache.james.jmap.api.projection.MessageProjection;
+import org.apache.james.jmap.api.projection.MessageProjectionId;
+import org.apache.james.jmap.api.projection.MessageProjectionRepository;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+public class CassandraMessageProjectionRepository implements MessageProjectionRepository {
+
+    private final CassandraMessageProjectionDAO cassandraMessageProjectionDAO;
+
+    @Inject
+    public CassandraMessageProjectionRepository(CassandraMessageProjectionDAO cassandraMessageProjectionDAO) {
+        this.cassandraMessageProjectionDAO = cassandraMessageProjectionDAO;
+    }
+
+    @Override
+    public CompletableFuture<Void> store(MessageProjectionId id, MessageProjection projection) {
+        Preconditions.checkNotNull(id);
+        Preconditions.checkNotNull(projection);
+        return cassandraMessageProjectionDAO.store(id, projection);
+    }
+
+    @Override
+    public CompletableFuture<Map<MessageProjectionId, MessageProjection>> retrieve(Collection<MessageProjectionId> ids) {
+        Preconditions.checkNotNull(ids);
+        List<CompletableFuture<Optional<Map.Entry<MessageProjectionId, MessageProjection>>>> reads = ids.stream()
+            .distinct()
+            .map(id -> cassandraMessageProjectionDAO.retrieve(id)
+                .thenApply(optional -> optional.map(projection -> Maps.immutableEntry(id, projection))))
+            .collect(Collectors.toList());
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture[reads.size()]))
+            .thenApply(any -> reads.stream()
+                .map(CompletableFuture::join)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(MessageProjectionId id) {
+        Preconditions.checkNotNull(id);
+        return cassandraMessageProjectionDAO.delete(id);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAll(String mailboxId) {
+        Preconditions.checkNotNull(mailboxId);
+        return cassandraMessageProjectionDAO.deleteAll(mailboxId);
+    }
+}
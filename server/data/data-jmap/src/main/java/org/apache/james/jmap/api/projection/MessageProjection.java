@@ -0,0 +1,97 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.jmap.api.projection;
+
+import java.util.Objects;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+/**
+ * Properties of a message which can only be computed from its body, stored once the message is added
+ * so that listing messages does not require to read and parse it again.
+ */
+public class MessageProjection {
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private String preview;
+        private boolean hasAttachment;
+
+        public Builder preview(String preview) {
+            this.preview = preview;
+            return this;
+        }
+
+        public Builder hasAttachment(boolean hasAttachment) {
+            this.hasAttachment = hasAttachment;
+            return this;
+        }
+
+        public MessageProjection build() {
+            Preconditions.checkNotNull(preview);
+            return new MessageProjection(preview, hasAttachment);
+        }
+    }
+
+    private final String preview;
+    private final boolean hasAttachment;
+
+    private MessageProjection(String preview, boolean hasAttachment) {
+        this.preview = preview;
+        this.hasAttachment = hasAttachment;
+    }
+
+    public String getPreview() {
+        return preview;
+    }
+
+    public boolean hasAttachment() {
+        return hasAttachment;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        MessageProjection that = (MessageProjection) o;
+        return Objects.equals(this.preview, that.preview)
+            && this.hasAttachment == that.hasAttachment;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(preview, hasAttachment);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("preview", preview)
+            .add("hasAttachment", hasAttachment)
+            .toString();
+    }
+}
@@ -0,0 +1,75 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.jmap.api.projection;
+
+import java.util.Objects;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+public class MessageProjectionId {
+
+    public static MessageProjectionId of(String mailboxId, long uid) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(mailboxId), "mailboxId should not be null or empty");
+        return new MessageProjectionId(mailboxId, uid);
+    }
+
+    private final String mailboxId;
+    private final long uid;
+
+    private MessageProjectionId(String mailboxId, long uid) {
+        this.mailboxId = mailboxId;
+        this.uid = uid;
+    }
+
+    public String getMailboxId() {
+        return mailboxId;
+    }
+
+    public long getUid() {
+        return uid;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        MessageProjectionId that = (MessageProjectionId) o;
+        return Objects.equals(this.mailboxId, that.mailboxId)
+            && this.uid == that.uid;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mailboxId, uid);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("mailboxId", mailboxId)
+            .add("uid", uid)
+            .toString();
+    }
+}
@@ -16,35 +16,25 @@
  * specific language governing permissions and limitations      *
  * under the License.                                           *
  ****************************************************************/
-package org.apache.james.imapserver.netty;
 
-import org.apache.james.imap.decode.ImapRequestLineReader;
-import org.apache.james.protocols.imap.DecodingException;
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
-import org.jboss.netty.channel.Channel;
 
-public abstract class AbstractNettyImapRequestLineReader extends ImapRequestLineReader {
-    private final Channel channel;
-    private final ChannelBuffer cRequest = ChannelBuffers.wrappedBuffer("+\r\n".getBytes());
-    private final boolean retry;
+package org.apache.james.jmap.api.projection;
 
-    public AbstractNettyImapRequestLineReader(Channel channel, boolean retry) {
-        this.channel = channel;
-        this.retry = retry;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-    }
+public interface MessageProjectionRepository {
+
+    CompletableFuture<Void> store(MessageProjectionId id, MessageProjection projection);
 
     /**
-     * @see
-     * org.apache.james.imap.decode.ImapRequestLineReader#commandContinuationRequest()
+     * Retrieve the projections of the given messages. Messages without projection are absent from the result.
      */
-    protected void commandContinuationRequest() throws DecodingException {
-        // only write the request out if this is not a retry to process the
-        // request..
+    CompletableFuture<Map<MessageProjectionId, MessageProjection>> retrieve(Collection<MessageProjectionId> ids);
+
+    CompletableFuture<Void> delete(MessageProjectionId id);
 
-        if (!retry)
-            channel.write(cRequest);
-    }
+    CompletableFuture<Void> deleteAll(String mailboxId);
 
 }
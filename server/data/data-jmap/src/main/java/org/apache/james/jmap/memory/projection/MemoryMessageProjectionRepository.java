@@ -0,0 +1,80 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.jmap.memory.projection;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Singleton;
+
+import org.apache.james.jmap.api.projection.MessageProjection;
+import org.apache.james.jmap.api.projection.MessageProjectionId;
+import org.apache.james.jmap.api.projection.MessageProjectionRepository;
+
+import com.google.common.base.Preconditions;
+
+@Singleton
+public class MemoryMessageProjectionRepository implements MessageProjectionRepository {
+
+    private final Map<MessageProjectionId, MessageProjection> projections;
+
+    public MemoryMessageProjectionRepository() {
+        this.projections = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public CompletableFuture<Void> store(MessageProjectionId id, MessageProjection projection) {
+        Preconditions.checkNotNull(id);
+        Preconditions.checkNotNull(projection);
+        projections.put(id, projection);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Map<MessageProjectionId, MessageProjection>> retrieve(Collection<MessageProjectionId> ids) {
+        Preconditions.checkNotNull(ids);
+        Map<MessageProjectionId, MessageProjection> result = new HashMap<>();
+        for (MessageProjectionId id : ids) {
+            MessageProjection projection = projections.get(id);
+            if (projection != null) {
+                result.put(id, projection);
+            }
+        }
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(MessageProjectionId id) {
+        Preconditions.checkNotNull(id);
+        projections.remove(id);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAll(String mailboxId) {
+        Preconditions.checkNotNull(mailboxId);
+        projections.keySet().removeIf(id -> id.getMailboxId().equals(mailboxId));
+        return CompletableFuture.completedFuture(null);
+    }
+}
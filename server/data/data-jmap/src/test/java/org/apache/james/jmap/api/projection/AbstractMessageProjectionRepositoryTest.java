@@ -0,0 +1,114 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.jmap.api.projection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public abstract class AbstractMessageProjectionRepositoryTest {
+
+    public static final String MAILBOX_ID = "mailbox";
+    public static final String OTHER_MAILBOX_ID = "other";
+    public static final MessageProjectionId ID_1 = MessageProjectionId.of(MAILBOX_ID, 1);
+    public static final MessageProjectionId ID_2 = MessageProjectionId.of(MAILBOX_ID, 2);
+    public static final MessageProjectionId OTHER_ID = MessageProjectionId.of(OTHER_MAILBOX_ID, 1);
+    public static final MessageProjection PROJECTION_1 = MessageProjection.builder().preview("preview 1").hasAttachment(false).build();
+    public static final MessageProjection PROJECTION_2 = MessageProjection.builder().preview("preview 2").hasAttachment(true).build();
+
+    private MessageProjectionRepository messageProjectionRepository;
+
+    protected abstract MessageProjectionRepository createMessageProjectionRepository();
+
+    @Before
+    public void setUp() {
+        messageProjectionRepository = createMessageProjectionRepository();
+    }
+
+    @Test
+    public void retrieveShouldReturnEmptyByDefault() {
+        assertThat(messageProjectionRepository.retrieve(ImmutableList.of(ID_1)).join()).isEmpty();
+    }
+
+    @Test
+    public void retrieveShouldReturnStoredProjections() {
+        messageProjectionRepository.store(ID_1, PROJECTION_1).join();
+        messageProjectionRepository.store(ID_2, PROJECTION_2).join();
+
+        assertThat(messageProjectionRepository.retrieve(ImmutableList.of(ID_1, ID_2)).join())
+            .isEqualTo(ImmutableMap.of(ID_1, PROJECTION_1, ID_2, PROJECTION_2));
+    }
+
+    @Test
+    public void retrieveShouldOmitMessagesWithoutProjection() {
+        messageProjectionRepository.store(ID_1, PROJECTION_1).join();
+
+        assertThat(messageProjectionRepository.retrieve(ImmutableList.of(ID_1, ID_2)).join())
+            .isEqualTo(ImmutableMap.of(ID_1, PROJECTION_1));
+    }
+
+    @Test
+    public void storeShouldReplacePreviousValue() {
+        messageProjectionRepository.store(ID_1, PROJECTION_1).join();
+        messageProjectionRepository.store(ID_1, PROJECTION_2).join();
+
+        assertThat(messageProjectionRepository.retrieve(ImmutableList.of(ID_1)).join())
+            .isEqualTo(ImmutableMap.of(ID_1, PROJECTION_2));
+    }
+
+    @Test
+    public void deleteShouldRemoveOnlyTheGivenProjection() {
+        messageProjectionRepository.store(ID_1, PROJECTION_1).join();
+        messageProjectionRepository.store(ID_2, PROJECTION_2).join();
+
+        messageProjectionRepository.delete(ID_1).join();
+
+        assertThat(messageProjectionRepository.retrieve(ImmutableList.of(ID_1, ID_2)).join())
+            .isEqualTo(ImmutableMap.of(ID_2, PROJECTION_2));
+    }
+
+    @Test
+    public void deleteAllShouldRemoveProjectionsOfTheGivenMailbox() {
+        messageProjectionRepository.store(ID_1, PROJECTION_1).join();
+        messageProjectionRepository.store(ID_2, PROJECTION_2).join();
+        messageProjectionRepository.store(OTHER_ID, PROJECTION_1).join();
+
+        messageProjectionRepository.deleteAll(MAILBOX_ID).join();
+
+        assertThat(messageProjectionRepository.retrieve(ImmutableList.of(ID_1, ID_2, OTHER_ID)).join())
+            .isEqualTo(ImmutableMap.of(OTHER_ID, PROJECTION_1));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void storeShouldThrowOnNullId() {
+        messageProjectionRepository.store(null, PROJECTION_1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void storeShouldThrowOnNullProjection() {
+        messageProjectionRepository.store(ID_1, null);
+    }
+
+}
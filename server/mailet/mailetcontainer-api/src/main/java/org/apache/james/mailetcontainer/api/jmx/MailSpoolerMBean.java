@@ -36,4 +36,43 @@ public interface MailSpoolerMBean {
      */
     int getCurrentSpoolCount();
 
+    /**
+     * Return the number of mails taken out of the spool and not processed
+     * yet
+     * 
+     * @return in flight count
+     */
+    int getInFlightCount();
+
+    /**
+     * Return the current maximum number of mails in flight. It is lower than
+     * the thread count when the spooler adapts to slow processing.
+     * 
+     * @return concurrency limit
+     */
+    int getConcurrencyLimit();
+
+    /**
+     * Return the average time, in milliseconds, mails waited between being
+     * dequeued and their processing
+     * 
+     * @return average wait time
+     */
+    long getAverageWaitTime();
+
+    /**
+     * Return the average time, in milliseconds, spent processing a mail
+     * 
+     * @return average service time
+     */
+    long getAverageServiceTime();
+
+    /**
+     * Return the number of mails put back on the spool because their
+     * processor was running its maximum number of mails
+     * 
+     * @return requeued count
+     */
+    long getRequeuedCount();
+
 }
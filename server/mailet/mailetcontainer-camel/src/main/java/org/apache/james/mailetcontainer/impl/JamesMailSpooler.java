@@ -38,14 +38,26 @@ import org.slf4j.Logger;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages the mail spool. This class is responsible for retrieving messages
  * from the spool, directing messages to the appropriate processor, and removing
  * them from the spool when processing is complete.
+ * <p/>
+ * A message is only dequeued once a worker is free to process it, so that the
+ * messages waiting for processing stay in the queue, where they are persisted
+ * and ordered, instead of piling up in memory. A mail whose processor already
+ * runs its maximum number of mails is put back on the spool rather than
+ * holding a spool thread, so that the mails of the other processors progress.
  */
 public class JamesMailSpooler implements Runnable, Disposable, Configurable, LogEnabled, MailSpoolerMBean {
 
@@ -63,6 +75,19 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
 
     private final AtomicInteger processingActive = new AtomicInteger(0);
 
+    /**
+     * Number of dequeued mails not yet processed
+     */
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    private final AtomicLong handledCount = new AtomicLong(0);
+
+    private final AtomicLong totalWaitTime = new AtomicLong(0);
+
+    private final AtomicLong totalServiceTime = new AtomicLong(0);
+
+    private final AtomicLong requeuedCount = new AtomicLong(0);
+
     /**
      * Spool threads are active
      */
@@ -86,6 +111,27 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
 
     private int numDequeueThreads;
 
+    private int minThreads;
+
+    private boolean adaptiveThreads;
+
+    /**
+     * Bounds the mails in flight, whatever their processor
+     */
+    private SpoolerConcurrencyLimit concurrencyLimit;
+
+    /**
+     * Maximum number of mails processed concurrently, by processor
+     */
+    private final Map<String, Integer> processorThreads = new HashMap<String, Integer>();
+
+    private final Map<String, Semaphore> processorLimits = new HashMap<String, Semaphore>();
+
+    /**
+     * Delay, in milliseconds, before a mail put back because its processor was busy is dequeued again
+     */
+    private long processorRequeueDelay;
+
     @Inject
     public void setMailQueueFactory(MailQueueFactory queueFactory) {
         this.queueFactory = queueFactory;
@@ -103,6 +149,20 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
         numDequeueThreads = config.getInt("dequeueThreads", 2);
 
         numThreads = config.getInt("threads", 100);
+
+        adaptiveThreads = config.getBoolean("adaptiveThreads", false);
+        minThreads = config.getInt("minThreads", Math.min(numThreads, 10));
+
+        List<HierarchicalConfiguration> processorThreadsConfs = config.configurationsAt("processorThreads");
+        for (HierarchicalConfiguration processorThreadsConf : processorThreadsConfs) {
+            String state = processorThreadsConf.getString("[@state]");
+            int threads = processorThreadsConf.getInt("[@threads]");
+            if (state == null || threads < 1) {
+                throw new ConfigurationException("processorThreads needs a state and a positive threads count");
+            }
+            processorThreads.put(state, threads);
+        }
+        processorRequeueDelay = config.getLong("processorRequeueDelay", 1000);
     }
 
     /**
@@ -119,6 +179,11 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
             logger.info(infoBuffer);
         }
 
+        concurrencyLimit = new SpoolerConcurrencyLimit(minThreads, numThreads, adaptiveThreads);
+        for (Map.Entry<String, Integer> entry : processorThreads.entrySet()) {
+            processorLimits.put(entry.getKey(), new Semaphore(entry.getValue()));
+        }
+
         active.set(true);
         workerService = JMXEnabledThreadPoolExecutor.newFixedThreadPool("org.apache.james:type=component,component=mailetcontainer,name=mailspooler,sub-type=threadpool", "spooler", numThreads);
         dequeueService = JMXEnabledThreadPoolExecutor.newFixedThreadPool("org.apache.james:type=component,component=mailetcontainer,name=mailspooler,sub-type=threadpool", "dequeuer", numDequeueThreads);
@@ -143,55 +208,41 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
 
         while (active.get()) {
 
-            final MailQueueItem queueItem;
+            boolean handedOver = false;
             try {
-                queueItem = queue.deQueue();
-                workerService.execute(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        try {
-                            numActive.incrementAndGet();
-
-                            // increase count
-                            processingActive.incrementAndGet();
-
-                            Mail mail = queueItem.getMail();
-                            if (logger.isDebugEnabled()) {
-                                String debugBuffer = "==== Begin processing mail " + mail.getName() + "====";
-                                logger.debug(debugBuffer);
-                            }
-
+                // Only take a mail out of the queue once it can be processed
+                concurrencyLimit.acquire();
+                try {
+                    final MailQueueItem queueItem = queue.deQueue();
+                    final long dequeueTime = System.currentTimeMillis();
+                    inFlight.incrementAndGet();
+                    workerService.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
                             try {
-                                mailProcessor.service(mail);
-                                queueItem.done(true);
-                            } catch (Exception e) {
-                                if (active.get() && logger.isErrorEnabled()) {
-                                    logger.error("Exception processing mail while spooling " + e.getMessage(), e);
-                                }
-                                queueItem.done(false);
-
+                                process(queueItem, dequeueTime);
                             } finally {
-                                LifecycleUtil.dispose(mail);
-                                mail = null;
-                            }
-                        } catch (Throwable e) {
-                            if (active.get() && logger.isErrorEnabled()) {
-                                logger.error("Exception processing mail while spooling " + e.getMessage(), e);
-
+                                inFlight.decrementAndGet();
+                                concurrencyLimit.release();
                             }
-                        } finally {
-                            processingActive.decrementAndGet();
-                            numActive.decrementAndGet();
                         }
-
+                    });
+                    handedOver = true;
+                } finally {
+                    if (!handedOver) {
+                        concurrencyLimit.release();
                     }
-                });
+                }
             } catch (MailQueueException e1) {
                 if (active.get() && logger.isErrorEnabled()) {
                     logger.error("Exception dequeue mail", e1);
 
                 }
+            } catch (InterruptedException e) {
+                if (active.get() && logger.isErrorEnabled()) {
+                    logger.error("Interrupted while waiting for a spool thread", e);
+                }
             }
         }
         if (logger.isInfoEnabled()) {
@@ -199,6 +250,82 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
         }
     }
 
+    private void process(MailQueueItem queueItem, long dequeueTime) {
+        try {
+            numActive.incrementAndGet();
+
+            // increase count
+            processingActive.incrementAndGet();
+
+            Mail mail = queueItem.getMail();
+
+            Semaphore processorLimit = processorLimits.get(mail.getState());
+            if (processorLimit != null && !processorLimit.tryAcquire()) {
+                // Waiting here would hold a spool slot and throttle the other processors
+                requeue(queueItem, mail);
+                return;
+            }
+
+            if (logger.isDebugEnabled()) {
+                String debugBuffer = "==== Begin processing mail " + mail.getName() + "====";
+                logger.debug(debugBuffer);
+            }
+
+            long start = System.currentTimeMillis();
+            try {
+                totalWaitTime.addAndGet(start - dequeueTime);
+
+                mailProcessor.service(mail);
+                queueItem.done(true);
+            } catch (Exception e) {
+                if (active.get() && logger.isErrorEnabled()) {
+                    logger.error("Exception processing mail while spooling " + e.getMessage(), e);
+                }
+                queueItem.done(false);
+
+            } finally {
+                long serviceTime = System.currentTimeMillis() - start;
+                totalServiceTime.addAndGet(serviceTime);
+                handledCount.incrementAndGet();
+                concurrencyLimit.recordServiceTime(serviceTime);
+                if (processorLimit != null) {
+                    processorLimit.release();
+                }
+                LifecycleUtil.dispose(mail);
+                mail = null;
+            }
+        } catch (Throwable e) {
+            if (active.get() && logger.isErrorEnabled()) {
+                logger.error("Exception processing mail while spooling " + e.getMessage(), e);
+
+            }
+        } finally {
+            processingActive.decrementAndGet();
+            numActive.decrementAndGet();
+        }
+    }
+
+    /**
+     * Puts back on the spool a mail whose processor has no free slot. The mail
+     * is not disposed, as the queue may hold on to it.
+     */
+    private void requeue(MailQueueItem queueItem, Mail mail) throws MailQueueException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Processor " + mail.getState() + " is busy, requeuing mail " + mail.getName());
+        }
+        try {
+            queue.enQueue(mail, processorRequeueDelay, TimeUnit.MILLISECONDS);
+        } catch (MailQueueException e) {
+            if (logger.isErrorEnabled()) {
+                logger.error("Unable to requeue mail " + mail.getName(), e);
+            }
+            queueItem.done(false);
+            return;
+        }
+        requeuedCount.incrementAndGet();
+        queueItem.done(true);
+    }
+
     /**
      * The dispose operation is called at the end of a components lifecycle.
      * Instances of this class use this method to release and destroy any
@@ -242,4 +369,37 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
     public int getCurrentSpoolCount() {
         return processingActive.get();
     }
+
+    @Override
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return concurrencyLimit.getLimit();
+    }
+
+    @Override
+    public long getAverageWaitTime() {
+        return average(totalWaitTime);
+    }
+
+    @Override
+    public long getAverageServiceTime() {
+        return average(totalServiceTime);
+    }
+
+    @Override
+    public long getRequeuedCount() {
+        return requeuedCount.get();
+    }
+
+    private long average(AtomicLong total) {
+        long count = handledCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return total.get() / count;
+    }
 }
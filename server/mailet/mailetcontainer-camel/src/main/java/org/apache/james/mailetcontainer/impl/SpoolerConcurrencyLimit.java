@@ -0,0 +1,132 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.mailetcontainer.impl;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the number of mails the spooler has in flight.
+ * <p/>
+ * When adaptive, the limit follows the time spent servicing mails. It grows
+ * by one slot after each period of stable service time, and shrinks by a
+ * quarter, down to the minimum, when the average service time of a period
+ * exceeds twice the best average seen lately.
+ */
+public class SpoolerConcurrencyLimit {
+
+    /**
+     * Number of service times making up a period
+     */
+    static final int SAMPLES_PER_PERIOD = 100;
+
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * Growth of the best average after each period, so that it follows a
+     * lasting change of the service time
+     */
+    private static final double BASELINE_DECAY = 1.1;
+
+    private static class ResizableSemaphore extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        public ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        public void reduce(int reduction) {
+            reducePermits(reduction);
+        }
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final boolean adaptive;
+    private final ResizableSemaphore permits;
+
+    private int limit;
+    private long periodServiceTime;
+    private int periodSamples;
+    private double baseline = -1;
+
+    public SpoolerConcurrencyLimit(int minLimit, int maxLimit, boolean adaptive) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits should verify 0 < min <= max, got min=" + minLimit + " max=" + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.adaptive = adaptive;
+        this.limit = maxLimit;
+        this.permits = new ResizableSemaphore(maxLimit);
+    }
+
+    /**
+     * Wait for a free slot
+     */
+    public void acquire() throws InterruptedException {
+        permits.acquire();
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Record the time spent servicing a mail, in milliseconds
+     */
+    public synchronized void recordServiceTime(long serviceTime) {
+        if (!adaptive) {
+            return;
+        }
+        periodServiceTime += serviceTime;
+        periodSamples++;
+        if (periodSamples < SAMPLES_PER_PERIOD) {
+            return;
+        }
+        double average = (double) periodServiceTime / periodSamples;
+        periodServiceTime = 0;
+        periodSamples = 0;
+
+        if (baseline < 0 || average < baseline) {
+            baseline = average;
+        }
+        if (average > LATENCY_TOLERANCE * Math.max(baseline, 1)) {
+            resize(Math.max(minLimit, limit - Math.max(1, limit / 4)));
+        } else {
+            resize(Math.min(maxLimit, limit + 1));
+        }
+        baseline = baseline * BASELINE_DECAY;
+    }
+
+    private void resize(int newLimit) {
+        if (newLimit > limit) {
+            permits.release(newLimit - limit);
+        } else if (newLimit < limit) {
+            permits.reduce(limit - newLimit);
+        }
+        limit = newLimit;
+    }
+}
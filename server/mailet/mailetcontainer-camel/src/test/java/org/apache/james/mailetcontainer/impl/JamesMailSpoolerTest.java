@@ -0,0 +1,183 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailetcontainer.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.MessagingException;
+
+import org.apache.commons.configuration.DefaultConfigurationBuilder;
+import org.apache.james.core.MailImpl;
+import org.apache.james.mailetcontainer.api.MailProcessor;
+import org.apache.james.queue.api.MailQueue;
+import org.apache.james.queue.api.MailQueueFactory;
+import org.apache.mailet.Mail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+public class JamesMailSpoolerTest {
+
+    private static final String SLOW = "slow";
+    private static final String FAST = "fast";
+
+    private InMemoryMailQueue queue;
+    private CountDownLatch slowMailsReleased;
+    private AtomicInteger slowMailsProcessed;
+    private CountDownLatch fastMailsProcessed;
+    private JamesMailSpooler spooler;
+
+    @Before
+    public void setUp() throws Exception {
+        queue = new InMemoryMailQueue();
+        slowMailsReleased = new CountDownLatch(1);
+        slowMailsProcessed = new AtomicInteger();
+        fastMailsProcessed = new CountDownLatch(2);
+
+        spooler = new JamesMailSpooler();
+        spooler.setLog(LoggerFactory.getLogger(JamesMailSpoolerTest.class));
+        spooler.setMailQueueFactory(new MailQueueFactory() {
+
+            @Override
+            public MailQueue getQueue(String name) {
+                return queue;
+            }
+        });
+        spooler.setMailProcessor(new MailProcessor() {
+
+            @Override
+            public void service(Mail mail) throws MessagingException {
+                if (SLOW.equals(mail.getState())) {
+                    try {
+                        slowMailsReleased.await();
+                    } catch (InterruptedException e) {
+                        throw new MessagingException("Interrupted", e);
+                    }
+                    slowMailsProcessed.incrementAndGet();
+                } else {
+                    fastMailsProcessed.countDown();
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        slowMailsReleased.countDown();
+        spooler.dispose();
+    }
+
+    @Test
+    public void mailsOfAStateShouldProgressWhileTheProcessorOfAnotherStateIsSaturated() throws Exception {
+        spooler.configure(config("<threads>2</threads><processorThreads state=\"" + SLOW + "\" threads=\"1\"/>"
+                + "<processorRequeueDelay>10</processorRequeueDelay>"));
+        queue.enQueue(mail(SLOW));
+        queue.enQueue(mail(SLOW));
+        queue.enQueue(mail(SLOW));
+        queue.enQueue(mail(FAST));
+        queue.enQueue(mail(FAST));
+
+        spooler.init();
+
+        assertTrue(fastMailsProcessed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void mailsOfASaturatedStateShouldBeProcessedOnceTheirProcessorIsFree() throws Exception {
+        spooler.configure(config("<threads>2</threads><processorThreads state=\"" + SLOW + "\" threads=\"1\"/>"
+                + "<processorRequeueDelay>10</processorRequeueDelay>"));
+        queue.enQueue(mail(SLOW));
+        queue.enQueue(mail(SLOW));
+        queue.enQueue(mail(SLOW));
+
+        spooler.init();
+        slowMailsReleased.countDown();
+
+        long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (slowMailsProcessed.get() < 3 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, slowMailsProcessed.get());
+    }
+
+    private DefaultConfigurationBuilder config(String spooler) throws Exception {
+        DefaultConfigurationBuilder builder = new DefaultConfigurationBuilder();
+        builder.load(new ByteArrayInputStream(("<spooler>" + spooler + "</spooler>").getBytes()));
+        return builder;
+    }
+
+    private Mail mail(String state) {
+        MailImpl mail = new MailImpl();
+        mail.setName(MailImpl.getId());
+        mail.setState(state);
+        return mail;
+    }
+
+    /**
+     * Keeps the enqueued mails themselves, so that their state survives a requeue
+     */
+    private static class InMemoryMailQueue implements MailQueue {
+
+        private final LinkedBlockingQueue<Mail> mails = new LinkedBlockingQueue<Mail>();
+
+        @Override
+        public void enQueue(final Mail mail, long delay, TimeUnit unit) throws MailQueueException {
+            try {
+                unit.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new MailQueueException("Interrupted", e);
+            }
+            enQueue(mail);
+        }
+
+        @Override
+        public void enQueue(Mail mail) throws MailQueueException {
+            mails.add(mail);
+        }
+
+        @Override
+        public MailQueueItem deQueue() throws MailQueueException {
+            try {
+                final Mail mail = mails.take();
+                return new MailQueueItem() {
+
+                    @Override
+                    public Mail getMail() {
+                        return mail;
+                    }
+
+                    @Override
+                    public void done(boolean success) throws MailQueueException {
+                    }
+                };
+            } catch (InterruptedException e) {
+                throw new MailQueueException("Interrupted", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.mailetcontainer.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SpoolerConcurrencyLimitTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldThrowWhenMinIsGreaterThanMax() {
+        new SpoolerConcurrencyLimit(10, 5, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldThrowWhenMinIsNotPositive() {
+        new SpoolerConcurrencyLimit(0, 5, true);
+    }
+
+    @Test
+    public void limitShouldStartAtMax() {
+        assertEquals(20, new SpoolerConcurrencyLimit(5, 20, true).getLimit());
+    }
+
+    @Test
+    public void limitShouldNotChangeWhenNotAdaptive() {
+        SpoolerConcurrencyLimit limit = new SpoolerConcurrencyLimit(5, 20, false);
+        recordPeriod(limit, 10);
+        recordPeriod(limit, 1000);
+
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    public void limitShouldShrinkWhenServiceTimeIncreases() {
+        SpoolerConcurrencyLimit limit = new SpoolerConcurrencyLimit(5, 20, true);
+        recordPeriod(limit, 10);
+        recordPeriod(limit, 1000);
+
+        assertEquals(15, limit.getLimit());
+    }
+
+    @Test
+    public void limitShouldNotShrinkBelowMin() {
+        SpoolerConcurrencyLimit limit = new SpoolerConcurrencyLimit(5, 20, true);
+        recordPeriod(limit, 10);
+        for (int i = 0; i < 10; i++) {
+            recordPeriod(limit, 1000);
+        }
+
+        assertEquals(5, limit.getLimit());
+    }
+
+    @Test
+    public void limitShouldGrowBackWhenServiceTimeIsStable() {
+        SpoolerConcurrencyLimit limit = new SpoolerConcurrencyLimit(5, 20, true);
+        recordPeriod(limit, 10);
+        recordPeriod(limit, 1000);
+        recordPeriod(limit, 10);
+        recordPeriod(limit, 10);
+
+        assertEquals(17, limit.getLimit());
+    }
+
+    @Test
+    public void shrinkingShouldLimitAvailableSlots() throws Exception {
+        SpoolerConcurrencyLimit limit = new SpoolerConcurrencyLimit(1, 4, true);
+        recordPeriod(limit, 10);
+        recordPeriod(limit, 1000);
+
+        assertEquals(3, limit.getLimit());
+        for (int i = 0; i < 3; i++) {
+            limit.acquire();
+        }
+        assertEquals(false, tryAcquire(limit));
+    }
+
+    private boolean tryAcquire(final SpoolerConcurrencyLimit limit) throws InterruptedException {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    limit.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        thread.start();
+        thread.join(100);
+        boolean acquired = !thread.isAlive();
+        thread.interrupt();
+        return acquired;
+    }
+
+    private void recordPeriod(SpoolerConcurrencyLimit limit, long serviceTime) {
+        for (int i = 0; i < SpoolerConcurrencyLimit.SAMPLES_PER_PERIOD; i++) {
+            limit.recordServiceTime(serviceTime);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.jmap.event;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+import org.apache.james.jmap.api.projection.MessageProjectionId;
+import org.apache.james.jmap.api.projection.MessageProjectionRepository;
+import org.apache.james.jmap.model.Message;
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.store.event.EventFactory;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.MessageMapperFactory;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxId;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+
+/**
+ * Global {@link MailboxListener} computing the {@link org.apache.james.jmap.api.projection.MessageProjection}
+ * of added messages, and dropping the ones of expunged messages and deleted mailboxes.
+ */
+public class MessageProjectionListener<Id extends MailboxId> implements MailboxListener {
+
+    private static final int UNLIMITED = -1;
+
+    private final MessageMapperFactory<Id> messageMapperFactory;
+    private final MessageProjectionRepository messageProjectionRepository;
+
+    @Inject
+    public MessageProjectionListener(MessageMapperFactory<Id> messageMapperFactory, MessageProjectionRepository messageProjectionRepository) {
+        this.messageMapperFactory = messageMapperFactory;
+        this.messageProjectionRepository = messageProjectionRepository;
+    }
+
+    @Override
+    public ListenerType getType() {
+        return ListenerType.ONCE;
+    }
+
+    @Override
+    public ExecutionMode getExecutionMode() {
+        return ExecutionMode.ASYNCHRONOUS;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void event(Event event) {
+        MailboxSession session = event.getSession();
+        if (!(event instanceof EventFactory.MailboxAware)) {
+            return;
+        }
+        Mailbox<Id> mailbox = ((EventFactory.MailboxAware<Id>) event).getMailbox();
+        try {
+            if (event instanceof Added) {
+                storeProjections(session, mailbox, ((Added) event).getUids());
+            } else if (event instanceof Expunged) {
+                deleteProjections(mailbox, ((Expunged) event).getUids());
+            } else if (event instanceof MailboxDeletion) {
+                messageProjectionRepository.deleteAll(mailbox.getMailboxId().serialize()).join();
+            }
+        } catch (Exception e) {
+            session.getLog().error("Unable to update message projections for mailbox " + mailbox.getName(), e);
+        }
+    }
+
+    private void storeProjections(MailboxSession session, Mailbox<Id> mailbox, List<Long> uids) throws MailboxException {
+        MessageMapper<Id> messageMapper = messageMapperFactory.getMessageMapper(session);
+        for (MessageRange range : MessageRange.toRanges(uids)) {
+            Iterator<MailboxMessage<Id>> messages = messageMapper.findInMailbox(mailbox, range, FetchType.Full, UNLIMITED);
+            while (messages.hasNext()) {
+                storeProjection(messages.next());
+            }
+        }
+    }
+
+    private void storeProjection(MailboxMessage<Id> message) {
+        messageProjectionRepository.store(
+                MessageProjectionId.of(message.getMailboxId().serialize(), message.getUid()),
+                Message.projectionOf(message))
+            .join();
+    }
+
+    private void deleteProjections(Mailbox<Id> mailbox, List<Long> uids) {
+        String mailboxId = mailbox.getMailboxId().serialize();
+        uids.stream()
+            .map(uid -> messageProjectionRepository.delete(MessageProjectionId.of(mailboxId, uid)))
+            .collect(Collectors.toList())
+            .forEach(CompletableFuture::join);
+    }
+}
@@ -19,7 +19,6 @@
 
 package org.apache.james.jmap.methods;
 
-import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Predicate;
@@ -33,11 +32,8 @@ import org.apache.james.jmap.model.GetMailboxesResponse;
 import org.apache.james.jmap.model.MailboxProperty;
 import org.apache.james.jmap.model.mailbox.Mailbox;
 import org.apache.james.jmap.utils.MailboxUtils;
-import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.exception.MailboxException;
-import org.apache.james.mailbox.model.MailboxMetaData;
-import org.apache.james.mailbox.model.MailboxQuery;
 import org.apache.james.mailbox.store.mail.model.MailboxId;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -52,12 +48,10 @@ public class GetMailboxesMethod<Id extends MailboxId> implements Method {
     private static final Method.Request.Name METHOD_NAME = Method.Request.name("getMailboxes");
     private static final Method.Response.Name RESPONSE_NAME = Method.Response.name("mailboxes");
 
-    private final MailboxManager mailboxManager; 
     private final MailboxUtils<Id> mailboxUtils;
 
     @Inject
-    @VisibleForTesting public GetMailboxesMethod(MailboxManager mailboxManager, MailboxUtils<Id> mailboxUtils) {
-        this.mailboxManager = mailboxManager;
+    @VisibleForTesting public GetMailboxesMethod(MailboxUtils<Id> mailboxUtils) {
         this.mailboxUtils = mailboxUtils;
     }
 
@@ -89,12 +83,8 @@ public class GetMailboxesMethod<Id extends MailboxId> implements Method {
     private GetMailboxesResponse getMailboxesResponse(GetMailboxesRequest mailboxesRequest, MailboxSession mailboxSession) {
         GetMailboxesResponse.Builder builder = GetMailboxesResponse.builder();
         try {
-            retrieveUserMailboxes(mailboxSession)
+            mailboxUtils.userMailboxes(mailboxSession)
                 .stream()
-                .map(MailboxMetaData::getPath)
-                .map(mailboxPath -> mailboxUtils.mailboxFromMailboxPath(mailboxPath, mailboxSession))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
                 .filter(filterMailboxesById(mailboxesRequest.getIds()))
                 .sorted((m1, m2) -> m1.getSortOrder().compareTo(m2.getSortOrder()))
                 .forEach(mailbox -> builder.add(mailbox));
@@ -108,10 +98,4 @@ public class GetMailboxesMethod<Id extends MailboxId> implements Method {
         return (mailbox -> ids.map(list -> list.contains(mailbox.getId())).orElse(true));
     }
 
-    private List<MailboxMetaData> retrieveUserMailboxes(MailboxSession session) throws MailboxException {
-        return mailboxManager.search(
-                MailboxQuery.builder(session).privateUserMailboxes().build(),
-                session);
-    }
-
 }
@@ -19,7 +19,9 @@
 
 package org.apache.james.jmap.methods;
 
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -61,7 +63,10 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 
 public class GetMessageListMethod<Id extends MailboxId> implements Method {
 
@@ -116,11 +121,13 @@ public class GetMessageListMethod<Id extends MailboxId> implements Method {
         GetMessageListResponse.Builder builder = GetMessageListResponse.builder();
         try {
             List<MailboxPath> mailboxPaths = getUserPrivateMailboxes(mailboxSession);
+            long limit = limit(messageListRequest.getLimit());
+            long maximumCount = messageListRequest.getPosition() + limit;
             listRequestedMailboxes(messageListRequest, mailboxPaths, mailboxSession)
                 .stream()
-                .flatMap(mailboxPath -> listMessages(mailboxPath, mailboxSession, messageListRequest))
+                .flatMap(mailboxPath -> listMessages(mailboxPath, mailboxSession, messageListRequest, maximumCount))
                 .skip(messageListRequest.getPosition())
-                .limit(limit(messageListRequest.getLimit()))
+                .limit(limit)
                 .forEach(builder::messageId);
 
             return builder.build();
@@ -156,10 +163,24 @@ public class GetMessageListMethod<Id extends MailboxId> implements Method {
                 && !messageListRequest.isFetchThreads().orElse(false);
     }
 
-    private Stream<MessageId> listMessages(MailboxPath mailboxPath, MailboxSession mailboxSession, GetMessageListRequest messageListRequest) {
-        return getMessages(mailboxPath, mailboxSession).stream()
-                .sorted(comparatorFor(messageListRequest))
-                .map(message -> new MessageId(mailboxSession.getUser(), mailboxPath, message.getUid()));
+    private Stream<MessageId> listMessages(MailboxPath mailboxPath, MailboxSession mailboxSession, GetMessageListRequest messageListRequest, long maximumCount) {
+        return firstUids(mailboxPath, mailboxSession, messageListRequest, maximumCount)
+                .map(uid -> new MessageId(mailboxSession.getUser(), mailboxPath, uid));
+    }
+
+    /**
+     * Only the maximumCount first messages of a mailbox can be part of the response: without sort the search results
+     * are used as is, otherwise the metadata of the found messages is read and only the first ones are kept.
+     */
+    private Stream<Long> firstUids(MailboxPath mailboxPath, MailboxSession mailboxSession, GetMessageListRequest messageListRequest, long maximumCount) {
+        List<Long> uids = searchUids(mailboxPath, mailboxSession);
+        if (messageListRequest.getSort().isEmpty()) {
+            return uids.stream().limit(maximumCount);
+        }
+        return Ordering.from(comparatorFor(messageListRequest))
+                .leastOf(getMessages(mailboxPath, mailboxSession, uids), Ints.saturatedCast(maximumCount))
+                .stream()
+                .map(MailboxMessage::getUid);
     }
     
     private long limit(Optional<Integer> limit) {
@@ -167,7 +188,8 @@ public class GetMessageListMethod<Id extends MailboxId> implements Method {
     }
 
     private Comparator<MailboxMessage<Id>> comparatorFor(GetMessageListRequest messageListRequest) {
-        return SortToComparatorConvertor.comparatorFor(messageListRequest.getSort());
+        return SortToComparatorConvertor.<MailboxMessage<Id>, Id> comparatorFor(messageListRequest.getSort())
+                .thenComparing(MailboxMessage::getUid);
     }
 
     private ImmutableSet<MailboxPath> listRequestedMailboxes(GetMessageListRequest messageListRequest, List<MailboxPath> mailboxPaths, MailboxSession session) {
@@ -199,35 +221,32 @@ public class GetMessageListMethod<Id extends MailboxId> implements Method {
         }
     }
 
-    private List<MailboxMessage<Id>> getMessages(MailboxPath mailboxPath, MailboxSession mailboxSession) {
+    private List<Long> searchUids(MailboxPath mailboxPath, MailboxSession mailboxSession) {
         SearchQuery searchQuery = new SearchQuery();
         searchQuery.andCriteria(SearchQuery.all());
         try {
-            MessageMapper<Id> messageMapper = mailboxSessionMapperFactory.getMessageMapper(mailboxSession);
             Optional<MessageManager> messageManager = getMessageManager(mailboxPath, mailboxSession);
-            return ImmutableList.copyOf(messageManager.get().search(searchQuery, mailboxSession))
-                    .stream()
-                    .map(Throwing.function(messageId -> getMessage(mailboxPath, mailboxSession, messageMapper, messageId)))
-                    .collect(Collectors.toImmutableList());
+            return ImmutableList.copyOf(messageManager.get().search(searchQuery, mailboxSession));
         } catch (MailboxException e) {
             LOGGER.warn("Error when searching messages for query :" + searchQuery, e);
             return ImmutableList.of();
         }
     }
 
-    private MailboxMessage<Id> getMessage(MailboxPath mailboxPath, MailboxSession mailboxSession, MessageMapper<Id> messageMapper, long messageId) throws MailboxException {
+    private Iterator<MailboxMessage<Id>> getMessages(MailboxPath mailboxPath, MailboxSession mailboxSession, List<Long> uids) {
+        Optional<Mailbox<Id>> mailbox = getMailbox(mailboxPath, mailboxSession);
+        if (!mailbox.isPresent() || uids.isEmpty()) {
+            return Collections.emptyIterator();
+        }
         try {
-            return ImmutableList.copyOf(messageMapper.findInMailbox(
-                        getMailbox(mailboxPath, mailboxSession).get(), 
-                        MessageRange.one(messageId),
-                        FetchType.Metadata,
-                        NO_LIMIT))
+            MessageMapper<Id> messageMapper = mailboxSessionMapperFactory.getMessageMapper(mailboxSession);
+            return Iterators.concat(MessageRange.toRanges(uids)
                     .stream()
-                    .findFirst()
-                    .get();
+                    .map(Throwing.function(range -> messageMapper.findInMailbox(mailbox.get(), range, FetchType.Metadata, NO_LIMIT)))
+                    .iterator());
         } catch (MailboxException e) {
-            LOGGER.warn("Error retrieveing message :" + messageId, e);
-            throw e;
+            LOGGER.warn("Error retrieveing messages of mailbox :" + mailboxPath, e);
+            return Collections.emptyIterator();
         }
     }
 
@@ -19,8 +19,10 @@
 
 package org.apache.james.jmap.methods;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Stream;
@@ -29,6 +31,9 @@ import java.util.stream.StreamSupport;
 import javax.inject.Inject;
 
 import org.apache.commons.lang.NotImplementedException;
+import org.apache.james.jmap.api.projection.MessageProjection;
+import org.apache.james.jmap.api.projection.MessageProjectionId;
+import org.apache.james.jmap.api.projection.MessageProjectionRepository;
 import org.apache.james.jmap.json.FieldNamePropertyFilter;
 import org.apache.james.jmap.model.ClientId;
 import org.apache.james.jmap.model.GetMessagesRequest;
@@ -38,6 +43,7 @@ import org.apache.james.jmap.model.MessageId;
 import org.apache.james.jmap.model.MessageProperties;
 import org.apache.james.jmap.model.MessageProperties.HeaderProperty;
 import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.store.mail.MailboxMapperFactory;
@@ -55,21 +61,27 @@ import com.github.fge.lambdas.Throwing;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
 
 public class GetMessagesMethod<Id extends MailboxId> implements Method {
 
     public static final String HEADERS_FILTER = "headersFilter";
     private static final Method.Request.Name METHOD_NAME = Method.Request.name("getMessages");
     private static final Method.Response.Name RESPONSE_NAME = Method.Response.name("messages");
+    private static final int UNLIMITED = -1;
     private final MessageMapperFactory<Id> messageMapperFactory;
     private final MailboxMapperFactory<Id> mailboxMapperFactory;
+    private final MessageProjectionRepository messageProjectionRepository;
 
     @Inject
     @VisibleForTesting GetMessagesMethod(
             MessageMapperFactory<Id> messageMapperFactory, 
-            MailboxMapperFactory<Id> mailboxMapperFactory) {
+            MailboxMapperFactory<Id> mailboxMapperFactory,
+            MessageProjectionRepository messageProjectionRepository) {
         this.messageMapperFactory = messageMapperFactory;
         this.mailboxMapperFactory = mailboxMapperFactory;
+        this.messageProjectionRepository = messageProjectionRepository;
     }
     
     @Override
@@ -90,7 +102,7 @@ public class GetMessagesMethod<Id extends MailboxId> implements Method {
         GetMessagesRequest getMessagesRequest = (GetMessagesRequest) request;
         MessageProperties outputProperties = getMessagesRequest.getProperties().toOutputProperties();
         return Stream.of(JmapResponse.builder().clientId(clientId)
-                            .response(getMessagesResponse(mailboxSession, getMessagesRequest))
+                            .response(getMessagesResponse(mailboxSession, getMessagesRequest, outputProperties))
                             .responseName(RESPONSE_NAME)
                             .properties(outputProperties.getOptionalMessageProperties())
                             .filterProvider(buildOptionalHeadersFilteringFilterProvider(outputProperties))
@@ -108,15 +120,38 @@ public class GetMessagesMethod<Id extends MailboxId> implements Method {
         return new FieldNamePropertyFilter((fieldName) -> headerProperties.contains(HeaderProperty.fromFieldName(fieldName)));
     }
 
-    private GetMessagesResponse getMessagesResponse(MailboxSession mailboxSession, GetMessagesRequest getMessagesRequest) {
+    private MessageMapper.FetchType fetchTypeFor(MessageProperties properties) {
+        if (properties.needsMessageBodyBeyondProjection()) {
+            return MessageMapper.FetchType.Full;
+        }
+        return MessageMapper.FetchType.Headers;
+    }
+
+    private GetMessagesResponse getMessagesResponse(MailboxSession mailboxSession, GetMessagesRequest getMessagesRequest, MessageProperties properties) {
         getMessagesRequest.getAccountId().ifPresent(GetMessagesMethod::notImplemented);
         
-        Function<MessageId, Stream<Pair<MailboxMessage<Id>, MailboxPath>>> loadMessages = loadMessage(mailboxSession);
-        Function<Pair<MailboxMessage<Id>, MailboxPath>, Message> convertToJmapMessage = toJmapMessage(mailboxSession);
+        MessageMapper.FetchType fetchType = fetchTypeFor(properties);
+        Function<Map.Entry<MailboxPath, Collection<MessageId>>, Stream<Pair<MailboxMessage<Id>, MailboxPath>>> loadMessages = loadMessages(mailboxSession, fetchType);
         
-        List<Message> result = getMessagesRequest.getIds().stream()
-            .flatMap(loadMessages)
-            .map(convertToJmapMessage)
+        ImmutableSet<MessageId> messageIds = ImmutableSet.copyOf(getMessagesRequest.getIds());
+        List<Pair<MailboxMessage<Id>, MailboxPath>> messages = Multimaps.index(messageIds, MessageId::getMailboxPath)
+                .asMap()
+                .entrySet()
+                .stream()
+                .flatMap(loadMessages)
+                .collect(Collectors.toImmutableList());
+
+        Stream<Message> jmapMessages;
+        if (fetchType == MessageMapper.FetchType.Headers && properties.needsMessageProjection()) {
+            jmapMessages = toJmapMessagesUsingProjections(mailboxSession, messages);
+        } else {
+            jmapMessages = messages.stream().map(toJmapMessage(mailboxSession));
+        }
+        Map<MessageId, Message> messagesById = Maps.uniqueIndex(jmapMessages.iterator(), Message::getId);
+
+        List<Message> result = messageIds.stream()
+            .filter(messagesById::containsKey)
+            .map(messagesById::get)
             .collect(Collectors.toImmutableList());
 
         return GetMessagesResponse.builder().messages(result).expectedMessageIds(getMessagesRequest.getIds()).build();
@@ -135,22 +170,70 @@ public class GetMessagesMethod<Id extends MailboxId> implements Method {
         };
     }
 
-    private Function<MessageId, Stream<
+    /**
+     * Convert messages read without their body, taking the body related properties from their stored projection.
+     * Projections not computed yet are computed from the full message and stored. Messages expunged in the
+     * meantime are skipped.
+     */
+    private Stream<Message> toJmapMessagesUsingProjections(MailboxSession mailboxSession, List<Pair<MailboxMessage<Id>, MailboxPath>> messages) {
+        Map<MessageProjectionId, MessageProjection> projections = messageProjectionRepository.retrieve(
+                messages.stream()
+                    .map(value -> projectionId(value.getValue0()))
+                    .collect(Collectors.toImmutableList()))
+            .join();
+
+        return messages.stream()
+            .flatMap(Throwing.function(value -> {
+                MailboxMessage<Id> message = value.getValue0();
+                MailboxPath mailboxPath = value.getValue1();
+                Optional<MessageProjection> projection = Optional.ofNullable(projections.get(projectionId(message)));
+                if (!projection.isPresent()) {
+                    projection = computeProjection(mailboxSession, mailboxPath, message);
+                }
+                return projection
+                    .map(messageProjection -> Stream.of(Message.fromMailboxMessage(message, messageProjection, uid -> new MessageId(mailboxSession.getUser(), mailboxPath, uid))))
+                    .orElse(Stream.empty());
+            }));
+    }
+
+    private MessageProjectionId projectionId(MailboxMessage<Id> message) {
+        return MessageProjectionId.of(message.getMailboxId().serialize(), message.getUid());
+    }
+
+    private Optional<MessageProjection> computeProjection(MailboxSession mailboxSession, MailboxPath mailboxPath, MailboxMessage<Id> message) throws MailboxException {
+        Mailbox<Id> mailbox = mailboxMapperFactory.getMailboxMapper(mailboxSession).findMailboxByPath(mailboxPath);
+        Iterator<MailboxMessage<Id>> fullMessage = messageMapperFactory.getMessageMapper(mailboxSession)
+            .findInMailbox(mailbox, MessageRange.one(message.getUid()), MessageMapper.FetchType.Full, 1);
+        if (!fullMessage.hasNext()) {
+            return Optional.empty();
+        }
+        MessageProjection projection = Message.projectionOf(fullMessage.next());
+        messageProjectionRepository.store(projectionId(message), projection).join();
+        return Optional.of(projection);
+    }
+
+    /**
+     * Load the requested messages of a mailbox, reading contiguous uids with a single query
+     */
+    private Function<Map.Entry<MailboxPath, Collection<MessageId>>, Stream<
                                     Pair<MailboxMessage<Id>,
                                          MailboxPath>>> 
-                loadMessage(MailboxSession mailboxSession) {
+                loadMessages(MailboxSession mailboxSession, MessageMapper.FetchType fetchType) {
 
         return Throwing
-                .function((MessageId messageId) -> {
-                     MailboxPath mailboxPath = messageId.getMailboxPath();
+                .function((Map.Entry<MailboxPath, Collection<MessageId>> messageIds) -> {
+                     MailboxPath mailboxPath = messageIds.getKey();
                      MessageMapper<Id> messageMapper = messageMapperFactory.getMessageMapper(mailboxSession);
                      Mailbox<Id> mailbox = mailboxMapperFactory.getMailboxMapper(mailboxSession).findMailboxByPath(mailboxPath);
-                     return Pair.with(
-                             messageMapper.findInMailbox(mailbox, MessageRange.one(messageId.getUid()), MessageMapper.FetchType.Full, 1),
-                             mailboxPath
-                             );
-         })
-                .andThen(this::iteratorToStream);
+                     List<Long> uids = messageIds.getValue().stream()
+                             .map(MessageId::getUid)
+                             .collect(Collectors.toImmutableList());
+                     return MessageRange.toRanges(uids).stream()
+                             .map(Throwing.function(range -> Pair.with(
+                                     messageMapper.findInMailbox(mailbox, range, fetchType, UNLIMITED),
+                                     mailboxPath)))
+                             .flatMap(this::iteratorToStream);
+         });
     }
     
     private Stream<Pair<MailboxMessage<Id>, MailboxPath>> iteratorToStream(Pair<Iterator<MailboxMessage<Id>>, MailboxPath> value) {
@@ -29,7 +29,7 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonFilter;
-import org.apache.commons.lang.NotImplementedException;
+import org.apache.james.jmap.api.projection.MessageProjection;
 import org.apache.james.jmap.methods.GetMessagesMethod;
 import org.apache.james.jmap.methods.JmapResponseWriterImpl;
 import org.apache.james.jmap.model.message.EMailer;
@@ -64,9 +64,37 @@ public class Message {
     public static Message fromMailboxMessage(MailboxMessage<? extends MailboxId> mailboxMessage,
             Function<Long, MessageId> uidToMessageId) {
         IndexableMessage im = IndexableMessage.from(mailboxMessage, new DefaultTextExtractor(), UTC_ZONE_ID);
-        if (im.getHasAttachment()) {
-            throw new NotImplementedException();
-        }
+        return builderFromHeaders(mailboxMessage, im, uidToMessageId)
+                .hasAttachment(im.getHasAttachment())
+                .preview(getPreview(im))
+                .textBody(getTextBody(im))
+                .htmlBody(getHtmlBody(im))
+                .build();
+    }
+
+    /**
+     * Build a message whose body related properties are read from its {@link MessageProjection}, so that only
+     * the headers of the given {@link MailboxMessage} are needed.
+     */
+    public static Message fromMailboxMessage(MailboxMessage<? extends MailboxId> mailboxMessage, MessageProjection projection,
+            Function<Long, MessageId> uidToMessageId) {
+        IndexableMessage im = IndexableMessage.from(mailboxMessage, new DefaultTextExtractor(), UTC_ZONE_ID);
+        return builderFromHeaders(mailboxMessage, im, uidToMessageId)
+                .hasAttachment(projection.hasAttachment())
+                .preview(projection.getPreview())
+                .build();
+    }
+
+    public static MessageProjection projectionOf(MailboxMessage<? extends MailboxId> mailboxMessage) {
+        IndexableMessage im = IndexableMessage.from(mailboxMessage, new DefaultTextExtractor(), UTC_ZONE_ID);
+        return MessageProjection.builder()
+                .preview(getPreview(im))
+                .hasAttachment(im.getHasAttachment())
+                .build();
+    }
+
+    private static Builder builderFromHeaders(MailboxMessage<? extends MailboxId> mailboxMessage, IndexableMessage im,
+            Function<Long, MessageId> uidToMessageId) {
         MessageId messageId = uidToMessageId.apply(im.getId());
         return builder()
                 .id(messageId)
@@ -86,11 +114,7 @@ public class Message {
                 .bcc(fromElasticSearchEmailers(im.getBcc()))
                 .replyTo(fromElasticSearchEmailers(im.getReplyTo()))
                 .size(im.getSize())
-                .date(getInternalDate(mailboxMessage, im))
-                .preview(getPreview(im))
-                .textBody(getTextBody(im))
-                .htmlBody(getHtmlBody(im))
-                .build();
+                .date(getInternalDate(mailboxMessage, im));
     }
 
     private static String getSubject(IndexableMessage im) {
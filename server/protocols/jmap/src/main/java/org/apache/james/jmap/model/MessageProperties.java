@@ -33,6 +33,11 @@ import com.google.common.collect.ImmutableSet;
 public class MessageProperties {
 
     public static final ImmutableSet<MessageProperty> MANDATORY_PROPERTIES = ImmutableSet.of(MessageProperty.id);
+    private static final ImmutableSet<MessageProperty> BODY_PROPERTIES = ImmutableSet.of(MessageProperty.hasAttachment,
+        MessageProperty.preview, MessageProperty.textBody, MessageProperty.htmlBody, MessageProperty.attachments,
+        MessageProperty.attachedMessages, MessageProperty.body);
+    private static final ImmutableSet<MessageProperty> PROJECTED_PROPERTIES = ImmutableSet.of(MessageProperty.hasAttachment,
+        MessageProperty.preview);
 
     private final Optional<ImmutableSet<MessageProperty>> messageProperties;
     private final Optional<ImmutableSet<HeaderProperty>> headersProperties;
@@ -64,6 +69,30 @@ public class MessageProperties {
         return messageProperties;
     }
 
+    /**
+     * Tell whether some of the properties can only be computed from the message body
+     */
+    public boolean needsMessageBody() {
+        return buildOutputMessageProperties().stream()
+            .anyMatch(BODY_PROPERTIES::contains);
+    }
+
+    /**
+     * Tell whether some of the properties are computed from the message body but can be read from its stored projection
+     */
+    public boolean needsMessageProjection() {
+        return buildOutputMessageProperties().stream()
+            .anyMatch(PROJECTED_PROPERTIES::contains);
+    }
+
+    /**
+     * Tell whether some of the properties can only be computed from the message body, even when its projection is available
+     */
+    public boolean needsMessageBodyBeyondProjection() {
+        return buildOutputMessageProperties().stream()
+            .anyMatch(property -> BODY_PROPERTIES.contains(property) && !PROJECTED_PROPERTIES.contains(property));
+    }
+
     public MessageProperties toOutputProperties() {
         return this.ensureContains(MANDATORY_PROPERTIES)
                 .selectBody()
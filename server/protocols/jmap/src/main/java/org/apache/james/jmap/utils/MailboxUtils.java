@@ -20,6 +20,7 @@ O * Licensed to the Apache Software Foundation (ASF) under one   *
 package org.apache.james.jmap.utils;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import javax.inject.Inject;
@@ -34,6 +35,7 @@ import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.store.mail.MailboxMapperFactory;
 import org.apache.james.mailbox.store.mail.model.MailboxId;
+import org.apache.james.util.streams.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +48,7 @@ import com.google.common.base.Strings;
 public class MailboxUtils<Id extends MailboxId> {
 
     private static final boolean DONT_RESET_RECENT = false;
+    private static final String WILDCARD = "%";
     private static final Logger LOGGER = LoggerFactory.getLogger(MailboxUtils.class);
 
     private final MailboxManager mailboxManager;
@@ -60,24 +63,70 @@ public class MailboxUtils<Id extends MailboxId> {
 
     public Optional<Mailbox> mailboxFromMailboxPath(MailboxPath mailboxPath, MailboxSession mailboxSession) {
         try {
-            Optional<Role> role = Role.from(mailboxPath.getName());
-            MessageManager.MetaData mailboxMetaData = getMailboxMetaData(mailboxPath, mailboxSession);
-            String mailboxId = getMailboxId(mailboxPath, mailboxSession);
-            return Optional.ofNullable(Mailbox.builder()
-                    .id(mailboxId)
-                    .name(getName(mailboxPath, mailboxSession))
-                    .parentId(getParentIdFromMailboxPath(mailboxPath, mailboxSession))
-                    .role(role)
-                    .unreadMessages(mailboxMetaData.getUnseenCount())
-                    .totalMessages(mailboxMetaData.getMessageCount())
-                    .sortOrder(SortOrder.getSortOrder(role))
-                    .build());
+            return Optional.ofNullable(toMailbox(mailboxPath,
+                    getMailboxId(mailboxPath, mailboxSession),
+                    getParentIdFromMailboxPath(mailboxPath, mailboxSession),
+                    mailboxSession));
         } catch (MailboxException e) {
             LOGGER.warn("Cannot find mailbox for :" + mailboxPath.getName(), e);
             return Optional.empty();
         }
     }
 
+    /**
+     * Return the mailboxes of the user. Their ids and the ids of their parents are resolved from a single listing
+     * of the user mailboxes.
+     */
+    public List<Mailbox> userMailboxes(MailboxSession mailboxSession) throws MailboxException {
+        MailboxPath userMailboxesPath = new MailboxPath(mailboxSession.getPersonalSpace(), mailboxSession.getUser().getUserName(), WILDCARD);
+        List<org.apache.james.mailbox.store.mail.model.Mailbox<Id>> mailboxes = mailboxMapperFactory.getMailboxMapper(mailboxSession)
+                .findMailboxWithPathLike(userMailboxesPath);
+        Map<String, String> mailboxIdsByName = mailboxes.stream()
+                .collect(Collectors.toImmutableMap(
+                        org.apache.james.mailbox.store.mail.model.Mailbox::getName,
+                        mailbox -> mailbox.getMailboxId().serialize()));
+        return mailboxes.stream()
+                .map(mailbox -> userMailbox(mailbox, mailboxIdsByName, mailboxSession))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toImmutableList());
+    }
+
+    private Optional<Mailbox> userMailbox(org.apache.james.mailbox.store.mail.model.Mailbox<Id> mailbox, Map<String, String> mailboxIdsByName, MailboxSession mailboxSession) {
+        MailboxPath mailboxPath = new MailboxPath(mailbox.getNamespace(), mailbox.getUser(), mailbox.getName());
+        try {
+            return Optional.ofNullable(toMailbox(mailboxPath,
+                    mailbox.getMailboxId().serialize(),
+                    getParentName(mailbox.getName(), mailboxSession).map(mailboxIdsByName::get).orElse(null),
+                    mailboxSession));
+        } catch (MailboxException e) {
+            LOGGER.warn("Cannot find mailbox for :" + mailboxPath.getName(), e);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<String> getParentName(String name, MailboxSession mailboxSession) {
+        int lastDelimiter = name.lastIndexOf(mailboxSession.getPathDelimiter());
+        if (lastDelimiter < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(name.substring(0, lastDelimiter));
+    }
+
+    private Mailbox toMailbox(MailboxPath mailboxPath, String mailboxId, String parentId, MailboxSession mailboxSession) throws MailboxException {
+        Optional<Role> role = Role.from(mailboxPath.getName());
+        MessageManager.MetaData mailboxMetaData = getMailboxMetaData(mailboxPath, mailboxSession);
+        return Mailbox.builder()
+                .id(mailboxId)
+                .name(getName(mailboxPath, mailboxSession))
+                .parentId(parentId)
+                .role(role)
+                .unreadMessages(mailboxMetaData.getUnseenCount())
+                .totalMessages(mailboxMetaData.getMessageCount())
+                .sortOrder(SortOrder.getSortOrder(role))
+                .build();
+    }
+
     private String getMailboxId(MailboxPath mailboxPath, MailboxSession mailboxSession) throws MailboxException {
         return mailboxMapperFactory.getMailboxMapper(mailboxSession)
                 .findMailboxByPath(mailboxPath)
@@ -0,0 +1,116 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.jmap.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.util.Date;
+
+import javax.mail.Flags;
+
+import org.apache.james.jmap.api.projection.MessageProjection;
+import org.apache.james.jmap.api.projection.MessageProjectionId;
+import org.apache.james.jmap.api.projection.MessageProjectionRepository;
+import org.apache.james.jmap.memory.projection.MemoryMessageProjectionRepository;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.MessageManager;
+import org.apache.james.mailbox.acl.SimpleGroupMembershipResolver;
+import org.apache.james.mailbox.acl.UnionMailboxACLResolver;
+import org.apache.james.mailbox.inmemory.InMemoryId;
+import org.apache.james.mailbox.inmemory.InMemoryMailboxSessionMapperFactory;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.store.MockAuthenticator;
+import org.apache.james.mailbox.store.StoreMailboxManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+
+public class MessageProjectionListenerTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageProjectionListenerTest.class);
+    private static final String USER = "user";
+    private static final String PASSWORD = "password";
+
+    private StoreMailboxManager<InMemoryId> mailboxManager;
+    private InMemoryMailboxSessionMapperFactory mailboxSessionMapperFactory;
+    private MessageProjectionRepository messageProjectionRepository;
+    private MailboxSession session;
+    private MailboxPath inboxPath;
+
+    @Before
+    public void setup() throws Exception {
+        mailboxSessionMapperFactory = new InMemoryMailboxSessionMapperFactory();
+        messageProjectionRepository = new MemoryMessageProjectionRepository();
+        MockAuthenticator authenticator = new MockAuthenticator();
+        authenticator.addUser(USER, PASSWORD);
+        mailboxManager = new StoreMailboxManager<>(mailboxSessionMapperFactory, authenticator, new UnionMailboxACLResolver(), new SimpleGroupMembershipResolver());
+        mailboxManager.init();
+
+        session = mailboxManager.login(USER, PASSWORD, LOGGER);
+        mailboxManager.addGlobalListener(new MessageProjectionListener<>(mailboxSessionMapperFactory, messageProjectionRepository), session);
+        inboxPath = MailboxPath.inbox(session);
+        mailboxManager.createMailbox(inboxPath, session);
+    }
+
+    @Test
+    public void appendedMessageShouldHaveItsProjectionStored() throws Exception {
+        long uid = appendMessage("Subject: subject\r\n\r\nmy message");
+
+        assertThat(messageProjectionRepository.retrieve(ImmutableList.of(projectionId(uid))).join())
+            .containsValue(MessageProjection.builder().preview("my message").hasAttachment(false).build());
+    }
+
+    @Test
+    public void expungedMessageShouldHaveItsProjectionDeleted() throws Exception {
+        long uid = appendMessage("Subject: subject\r\n\r\nmy message");
+        MessageManager inbox = mailboxManager.getMailbox(inboxPath, session);
+        inbox.setFlags(new Flags(Flags.Flag.DELETED), MessageManager.FlagsUpdateMode.ADD, MessageRange.one(uid), session);
+        inbox.expunge(MessageRange.one(uid), session);
+
+        assertThat(messageProjectionRepository.retrieve(ImmutableList.of(projectionId(uid))).join()).isEmpty();
+    }
+
+    @Test
+    public void deletedMailboxShouldHaveItsProjectionsDeleted() throws Exception {
+        long uid = appendMessage("Subject: subject\r\n\r\nmy message");
+        MessageProjectionId projectionId = projectionId(uid);
+
+        mailboxManager.deleteMailbox(inboxPath, session);
+
+        assertThat(messageProjectionRepository.retrieve(ImmutableList.of(projectionId)).join()).isEmpty();
+    }
+
+    private long appendMessage(String content) throws Exception {
+        MessageManager inbox = mailboxManager.getMailbox(inboxPath, session);
+        return inbox.appendMessage(new ByteArrayInputStream(content.getBytes(Charsets.UTF_8)), new Date(), session, false, null);
+    }
+
+    private MessageProjectionId projectionId(long uid) throws Exception {
+        String mailboxId = mailboxSessionMapperFactory.getMailboxMapper(session).findMailboxByPath(inboxPath).getMailboxId().serialize();
+        return MessageProjectionId.of(mailboxId, uid);
+    }
+}
@@ -50,7 +50,6 @@ import org.apache.james.mailbox.inmemory.InMemoryId;
 import org.apache.james.mailbox.inmemory.InMemoryMailboxSessionMapperFactory;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.store.MockAuthenticator;
-import org.apache.james.mailbox.store.SimpleMailboxSession;
 import org.apache.james.mailbox.store.StoreMailboxManager;
 import org.assertj.core.groups.Tuple;
 import org.junit.Before;
@@ -58,8 +57,6 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.ImmutableList;
-
 public class GetMailboxesMethodTest {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GetMailboxesMethodTest.class);
@@ -82,7 +79,7 @@ public class GetMailboxesMethodTest {
         mailboxManager.init();
         mailboxUtils = new MailboxUtils<>(mailboxManager, mailboxMapperFactory);
 
-        getMailboxesMethod = new GetMailboxesMethod<>(mailboxManager, mailboxUtils);
+        getMailboxesMethod = new GetMailboxesMethod<>(mailboxUtils);
     }
 
     @Test
@@ -105,16 +102,15 @@ public class GetMailboxesMethodTest {
     
     @Test
     public void getMailboxesShouldNotFailWhenMailboxManagerErrors() throws Exception {
+        MailboxSession session = mailboxManager.createSystemSession(USERNAME, LOGGER);
+        mailboxManager.createMailbox(new MailboxPath("#private", USERNAME, "name"), session);
         MailboxManager mockedMailboxManager = mock(MailboxManager.class);
-        when(mockedMailboxManager.list(any()))
-            .thenReturn(ImmutableList.of(new MailboxPath("namespace", "user", "name")));
         when(mockedMailboxManager.getMailbox(any(), any()))
             .thenThrow(new MailboxException());
-        GetMailboxesMethod<InMemoryId> testee = new GetMailboxesMethod<>(mockedMailboxManager, mailboxUtils);
+        GetMailboxesMethod<InMemoryId> testee = new GetMailboxesMethod<>(new MailboxUtils<>(mockedMailboxManager, mailboxMapperFactory));
         
         GetMailboxesRequest getMailboxesRequest = GetMailboxesRequest.builder()
                 .build();
-        MailboxSession session = new SimpleMailboxSession(0, USERNAME, "", null, null, '.', null);
         
         List<JmapResponse> getMailboxesResponse = testee.process(getMailboxesRequest, clientId, session).collect(Collectors.toList());
         
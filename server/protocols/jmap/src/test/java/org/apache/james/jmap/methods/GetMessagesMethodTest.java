@@ -20,7 +20,12 @@ package org.apache.james.jmap.methods;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 
 import java.io.ByteArrayInputStream;
 import java.util.Date;
@@ -33,6 +38,10 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang.NotImplementedException;
+import org.apache.james.jmap.api.projection.MessageProjection;
+import org.apache.james.jmap.api.projection.MessageProjectionId;
+import org.apache.james.jmap.api.projection.MessageProjectionRepository;
+import org.apache.james.jmap.memory.projection.MemoryMessageProjectionRepository;
 import org.apache.james.jmap.model.ClientId;
 import org.apache.james.jmap.model.GetMessagesRequest;
 import org.apache.james.jmap.model.GetMessagesResponse;
@@ -49,6 +58,7 @@ import org.apache.james.mailbox.inmemory.InMemoryMailboxSessionMapperFactory;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.store.MockAuthenticator;
 import org.apache.james.mailbox.store.StoreMailboxManager;
+import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.assertj.core.api.Condition;
 import org.assertj.core.data.MapEntry;
 import org.assertj.core.groups.Tuple;
@@ -62,6 +72,7 @@ import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.jayway.jsonpath.JsonPath;
 
@@ -98,6 +109,7 @@ public class GetMessagesMethodTest {
 
     private StoreMailboxManager<InMemoryId> mailboxManager;
     private InMemoryMailboxSessionMapperFactory mailboxSessionMapperFactory;
+    private MessageProjectionRepository messageProjectionRepository;
 
     private MailboxSession session;
     private MailboxPath inboxPath;
@@ -107,6 +119,7 @@ public class GetMessagesMethodTest {
     public void setup() throws MailboxException {
         clientId = ClientId.of("#0");
         mailboxSessionMapperFactory = new InMemoryMailboxSessionMapperFactory();
+        messageProjectionRepository = new MemoryMessageProjectionRepository();
         MockAuthenticator authenticator = new MockAuthenticator();
         authenticator.addUser(ROBERT.username, ROBERT.password);
         UnionMailboxACLResolver aclResolver = new UnionMailboxACLResolver();
@@ -120,30 +133,34 @@ public class GetMessagesMethodTest {
         mailboxManager.createMailbox(inboxPath, session);
     }
     
+    private String inboxId() throws MailboxException {
+        return mailboxSessionMapperFactory.getMailboxMapper(session).findMailboxByPath(inboxPath).getMailboxId().serialize();
+    }
+
     @Test
     public void processShouldThrowWhenNullRequest() {
-        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory);
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
         GetMessagesRequest request = null;
         assertThatThrownBy(() -> testee.process(request, mock(ClientId.class), mock(MailboxSession.class))).isInstanceOf(NullPointerException.class);
     }
 
     @Test
     public void processShouldThrowWhenNullSession() {
-        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory);
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
         MailboxSession mailboxSession = null;
         assertThatThrownBy(() -> testee.process(mock(GetMessagesRequest.class), mock(ClientId.class), mailboxSession)).isInstanceOf(NullPointerException.class);
     }
 
     @Test
     public void processShouldThrowWhenNullClientId() {
-        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory);
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
         ClientId clientId = null;
         assertThatThrownBy(() -> testee.process(mock(GetMessagesRequest.class), clientId, mock(MailboxSession.class))).isInstanceOf(NullPointerException.class);
     }
 
     @Test
     public void processShouldThrowWhenRequestHasAccountId() {
-        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory);
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
         assertThatThrownBy(() -> testee.process(
                 GetMessagesRequest.builder().accountId("abc").build(), mock(ClientId.class), mock(MailboxSession.class))).isInstanceOf(NotImplementedException.class);
     }
@@ -165,7 +182,7 @@ public class GetMessagesMethodTest {
                           new MessageId(ROBERT, inboxPath, message3Uid)))
                 .build();
 
-        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory);
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
         List<JmapResponse> result = testee.process(request, clientId, session).collect(Collectors.toList());
         
         assertThat(result).hasSize(1)
@@ -180,6 +197,143 @@ public class GetMessagesMethodTest {
                     Tuple.tuple(message3Uid, "(No subject)", Optional.of("my message")));
     }
     
+    @Test
+    public void processShouldReturnMessagesInRequestedOrderWhenSeveralMailboxes() throws MailboxException {
+        MailboxPath otherPath = new MailboxPath(inboxPath.getNamespace(), inboxPath.getUser(), "other");
+        mailboxManager.createMailbox(otherPath, session);
+        MessageManager inbox = mailboxManager.getMailbox(inboxPath, session);
+        MessageManager other = mailboxManager.getMailbox(otherPath, session);
+        Date now = new Date();
+        long message1Uid = inbox.appendMessage(new ByteArrayInputStream("Subject: message 1 subject\r\n\r\nmy message".getBytes(Charsets.UTF_8)), now, session, false, null);
+        long message2Uid = other.appendMessage(new ByteArrayInputStream("Subject: message 2 subject\r\n\r\nmy message".getBytes(Charsets.UTF_8)), now, session, false, null);
+        long message3Uid = inbox.appendMessage(new ByteArrayInputStream("Subject: message 3 subject\r\n\r\nmy message".getBytes(Charsets.UTF_8)), now, session, false, null);
+
+        GetMessagesRequest request = GetMessagesRequest.builder()
+                .ids(ImmutableList.of(new MessageId(ROBERT, inboxPath, message3Uid),
+                          new MessageId(ROBERT, otherPath, message2Uid),
+                          new MessageId(ROBERT, inboxPath, message1Uid)))
+                .properties(ImmutableList.of("subject"))
+                .build();
+
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
+        List<JmapResponse> result = testee.process(request, clientId, session).collect(Collectors.toList());
+
+        assertThat(result).hasSize(1)
+            .extracting(JmapResponse::getResponse)
+            .hasOnlyElementsOfType(GetMessagesResponse.class)
+            .extracting(GetMessagesResponse.class::cast)
+            .flatExtracting(GetMessagesResponse::list)
+            .extracting(Message::getSubject)
+            .containsExactly("message 3 subject", "message 2 subject", "message 1 subject");
+    }
+
+    @Test
+    public void processShouldReadPreviewFromStoredProjection() throws MailboxException {
+        MessageManager inbox = mailboxManager.getMailbox(inboxPath, session);
+        ByteArrayInputStream messageContent = new ByteArrayInputStream("Subject: message subject\r\n\r\nmy message".getBytes(Charsets.UTF_8));
+        long messageUid = inbox.appendMessage(messageContent, new Date(), session, false, null);
+        MessageProjection projection = MessageProjection.builder().preview("stored preview").hasAttachment(false).build();
+        messageProjectionRepository.store(MessageProjectionId.of(inboxId(), messageUid), projection).join();
+
+        GetMessagesRequest request = GetMessagesRequest.builder()
+                .ids(ImmutableList.of(new MessageId(ROBERT, inboxPath, messageUid)))
+                .properties(ImmutableList.of(MessageProperty.subject.asFieldName(), MessageProperty.preview.asFieldName()))
+                .build();
+
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
+        List<JmapResponse> result = testee.process(request, clientId, session).collect(Collectors.toList());
+
+        assertThat(result).hasSize(1)
+            .extracting(JmapResponse::getResponse)
+            .extracting(GetMessagesResponse.class::cast)
+            .flatExtracting(GetMessagesResponse::list)
+            .extracting(Message::getSubject, Message::getPreview)
+            .containsOnly(Tuple.tuple("message subject", "stored preview"));
+    }
+
+    @Test
+    public void processShouldComputeAndStoreMissingProjection() throws MailboxException {
+        MessageManager inbox = mailboxManager.getMailbox(inboxPath, session);
+        ByteArrayInputStream messageContent = new ByteArrayInputStream("Subject: message subject\r\n\r\nmy message".getBytes(Charsets.UTF_8));
+        long messageUid = inbox.appendMessage(messageContent, new Date(), session, false, null);
+
+        GetMessagesRequest request = GetMessagesRequest.builder()
+                .ids(ImmutableList.of(new MessageId(ROBERT, inboxPath, messageUid)))
+                .properties(ImmutableList.of(MessageProperty.preview.asFieldName()))
+                .build();
+
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
+        List<JmapResponse> result = testee.process(request, clientId, session).collect(Collectors.toList());
+
+        assertThat(result).hasSize(1)
+            .extracting(JmapResponse::getResponse)
+            .extracting(GetMessagesResponse.class::cast)
+            .flatExtracting(GetMessagesResponse::list)
+            .extracting(Message::getPreview)
+            .containsOnly("my message");
+        MessageProjectionId projectionId = MessageProjectionId.of(inboxId(), messageUid);
+        assertThat(messageProjectionRepository.retrieve(ImmutableSet.of(projectionId)).join())
+            .containsValue(MessageProjection.builder().preview("my message").hasAttachment(false).build());
+    }
+    
+    @Test
+    public void processShouldSkipMessagesExpungedWhileComputingTheirProjection() throws MailboxException {
+        MessageManager inbox = mailboxManager.getMailbox(inboxPath, session);
+        ByteArrayInputStream messageContent = new ByteArrayInputStream("Subject: message subject\r\n\r\nmy message".getBytes(Charsets.UTF_8));
+        long messageUid = inbox.appendMessage(messageContent, new Date(), session, false, null);
+        MessageMapper<InMemoryId> messageMapper = spy(mailboxSessionMapperFactory.getMessageMapper(session));
+        doReturn(ImmutableList.of().iterator())
+            .when(messageMapper).findInMailbox(any(), any(), eq(MessageMapper.FetchType.Full), anyInt());
+
+        GetMessagesRequest request = GetMessagesRequest.builder()
+                .ids(ImmutableList.of(new MessageId(ROBERT, inboxPath, messageUid)))
+                .properties(ImmutableList.of(MessageProperty.preview.asFieldName()))
+                .build();
+
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSession -> messageMapper, mailboxSessionMapperFactory, messageProjectionRepository);
+        List<JmapResponse> result = testee.process(request, clientId, session).collect(Collectors.toList());
+
+        assertThat(result).hasSize(1)
+            .extracting(JmapResponse::getResponse)
+            .extracting(GetMessagesResponse.class::cast)
+            .flatExtracting(GetMessagesResponse::list)
+            .isEmpty();
+    }
+
+    @Test
+    public void processShouldReturnHasAttachmentWhenReadingTheFullMessage() throws MailboxException {
+        MessageManager inbox = mailboxManager.getMailbox(inboxPath, session);
+        ByteArrayInputStream messageContent = new ByteArrayInputStream(("Subject: message subject\r\n"
+                + "Content-Type: multipart/mixed; boundary=\"boundary\"\r\n"
+                + "\r\n"
+                + "--boundary\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "\r\n"
+                + "my message\r\n"
+                + "--boundary\r\n"
+                + "Content-Type: application/octet-stream\r\n"
+                + "Content-Disposition: attachment; filename=\"file.bin\"\r\n"
+                + "\r\n"
+                + "content\r\n"
+                + "--boundary--\r\n").getBytes(Charsets.UTF_8));
+        long messageUid = inbox.appendMessage(messageContent, new Date(), session, false, null);
+
+        GetMessagesRequest request = GetMessagesRequest.builder()
+                .ids(ImmutableList.of(new MessageId(ROBERT, inboxPath, messageUid)))
+                .properties(ImmutableList.of(MessageProperty.hasAttachment.asFieldName(), MessageProperty.textBody.asFieldName()))
+                .build();
+
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
+        List<JmapResponse> result = testee.process(request, clientId, session).collect(Collectors.toList());
+
+        assertThat(result).hasSize(1)
+            .extracting(JmapResponse::getResponse)
+            .extracting(GetMessagesResponse.class::cast)
+            .flatExtracting(GetMessagesResponse::list)
+            .extracting(Message::isHasAttachment)
+            .containsOnly(true);
+    }
+
     @Test
     public void processShouldFetchHtmlMessage() throws MailboxException {
         MessageManager inbox = mailboxManager.getMailbox(inboxPath, session);
@@ -194,7 +348,7 @@ public class GetMessagesMethodTest {
                 .ids(ImmutableList.of(new MessageId(ROBERT, inboxPath, messageUid)))
                 .build();
 
-        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory);
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
         List<JmapResponse> result = testee.process(request, clientId, session).collect(Collectors.toList());
         
         assertThat(result).hasSize(1)
@@ -218,7 +372,7 @@ public class GetMessagesMethodTest {
                 .properties(ImmutableList.of())
                 .build();
 
-        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory);
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
         List<JmapResponse> result = testee.process(request, clientId, session).collect(Collectors.toList());
 
         assertThat(result).hasSize(1)
@@ -239,7 +393,7 @@ public class GetMessagesMethodTest {
                 .ids(ImmutableList.of(new MessageId(ROBERT, inboxPath, message1Uid)))
                 .build();
 
-        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory);
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
         Stream<JmapResponse> result = testee.process(request, clientId, session);
 
         assertThat(result).hasSize(1)
@@ -263,7 +417,7 @@ public class GetMessagesMethodTest {
 
         Set<MessageProperty> expected = Sets.newHashSet(MessageProperty.id, MessageProperty.subject);
 
-        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory);
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
         List<JmapResponse> result = testee.process(request, clientId, session).collect(Collectors.toList());
 
         assertThat(result).hasSize(1)
@@ -287,7 +441,7 @@ public class GetMessagesMethodTest {
 
         Set<MessageProperty> expected = Sets.newHashSet(MessageProperty.id, MessageProperty.textBody);
 
-        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory);
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
         List<JmapResponse> result = testee.process(request, clientId, session).collect(Collectors.toList());
 
         assertThat(result).hasSize(1)
@@ -314,7 +468,7 @@ public class GetMessagesMethodTest {
 
         Set<MessageProperty> expected = Sets.newHashSet(MessageProperty.id, MessageProperty.headers);
 
-        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory);
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
         List<JmapResponse> result = testee.process(request, clientId, session).collect(Collectors.toList());
 
         assertThat(result)
@@ -340,7 +494,7 @@ public class GetMessagesMethodTest {
                 .properties(ImmutableList.of("headers.from", "headers.heADER2"))
                 .build();
 
-        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory);
+        GetMessagesMethod<InMemoryId> testee = new GetMessagesMethod<>(mailboxSessionMapperFactory, mailboxSessionMapperFactory, messageProjectionRepository);
         List<JmapResponse> result = testee.process(request, clientId, session).collect(Collectors.toList());
 
         assertThat(result)
@@ -30,7 +30,6 @@ import javax.mail.Flags.Flag;
 import javax.mail.util.SharedByteArrayInputStream;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.NotImplementedException;
 import org.apache.james.mailbox.store.TestId;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
@@ -395,8 +394,8 @@ public class MailboxMessageTest {
         assertThat(testee.getPreview()).isEqualTo(expectedPreview);
     }
     
-    @Test(expected=NotImplementedException.class)
-    public void attachmentsShouldNotBeHandledForNow() throws Exception {
+    @Test
+    public void hasAttachmentShouldBeSetWhenTheMessageHasAttachments() throws Exception {
         MailboxMessage<TestId> testMail = new SimpleMailboxMessage<>(
                 INTERNAL_DATE,
                 0,
@@ -407,6 +406,7 @@ public class MailboxMessageTest {
                 MAILBOX_ID);
         testMail.setModSeq(MOD_SEQ);
         
-        Message.fromMailboxMessage(testMail, x -> MessageId.of("user|box|" + x));
+        Message testee = Message.fromMailboxMessage(testMail, x -> MessageId.of("user|box|" + x));
+        assertThat(testee.isHasAttachment()).isTrue();
     }
 }
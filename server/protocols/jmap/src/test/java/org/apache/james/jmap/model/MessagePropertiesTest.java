@@ -79,4 +79,46 @@ public class MessagePropertiesTest {
             value -> assertThat(value).contains(HeaderProperty.fromFieldName("x-spam-score"))
         );
     }
+
+    @Test
+    public void needsMessageBodyShouldReturnTrueWhenAbsent() {
+        MessageProperties actual = new MessageProperties(Optional.empty()).toOutputProperties();
+        assertThat(actual.needsMessageBody()).isTrue();
+    }
+
+    @Test
+    public void needsMessageBodyShouldReturnTrueWhenBodyRequested() {
+        MessageProperties actual = new MessageProperties(Optional.of(ImmutableSet.of("subject", "body"))).toOutputProperties();
+        assertThat(actual.needsMessageBody()).isTrue();
+    }
+
+    @Test
+    public void needsMessageBodyShouldReturnFalseWhenOnlyHeaderPropertiesRequested() {
+        MessageProperties actual = new MessageProperties(Optional.of(ImmutableSet.of("subject", "from", "date", "headers.X-Spam-Score"))).toOutputProperties();
+        assertThat(actual.needsMessageBody()).isFalse();
+    }
+
+    @Test
+    public void needsMessageProjectionShouldReturnTrueWhenPreviewRequested() {
+        MessageProperties actual = new MessageProperties(Optional.of(ImmutableSet.of("subject", "preview"))).toOutputProperties();
+        assertThat(actual.needsMessageProjection()).isTrue();
+    }
+
+    @Test
+    public void needsMessageProjectionShouldReturnFalseWhenOnlyHeaderPropertiesRequested() {
+        MessageProperties actual = new MessageProperties(Optional.of(ImmutableSet.of("subject", "from"))).toOutputProperties();
+        assertThat(actual.needsMessageProjection()).isFalse();
+    }
+
+    @Test
+    public void needsMessageBodyBeyondProjectionShouldReturnFalseWhenOnlyProjectedPropertiesRequested() {
+        MessageProperties actual = new MessageProperties(Optional.of(ImmutableSet.of("subject", "preview", "hasAttachment"))).toOutputProperties();
+        assertThat(actual.needsMessageBodyBeyondProjection()).isFalse();
+    }
+
+    @Test
+    public void needsMessageBodyBeyondProjectionShouldReturnTrueWhenTextBodyRequested() {
+        MessageProperties actual = new MessageProperties(Optional.of(ImmutableSet.of("preview", "textBody"))).toOutputProperties();
+        assertThat(actual.needsMessageBodyBeyondProjection()).isTrue();
+    }
 }
@@ -19,42 +19,40 @@
 
 package org.apache.james.imapserver.netty;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.james.imap.api.ImapMessage;
 import org.apache.james.imap.api.ImapSessionState;
 import org.apache.james.imap.api.process.ImapSession;
 import org.apache.james.imap.decode.ImapDecoder;
-import org.apache.james.imap.decode.ImapRequestLineReader;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
 
 /**
  * {@link FrameDecoder} which will decode via and {@link ImapDecoder} instance
+ * 
+ * The request is collected line by line. The literals announced at the end of
+ * a line are copied out of the network buffers as they arrive, so the data
+ * received so far never needs to be parsed again. The request is handed to
+ * the {@link ImapDecoder} once it was completely received.
  */
 public class ImapRequestFrameDecoder extends FrameDecoder implements NettyConstants {
 
+    private final static byte[] CONTINUATION_REQUEST = "+\r\n".getBytes();
+    private final static String PENDING_REQUEST = "PENDING_REQUEST";
+
     private final ImapDecoder decoder;
     private final int inMemorySizeLimit;
     private final int literalSizeLimit;
-    private final static String NEEDED_DATA = "NEEDED_DATA";
-    private final static String STORED_DATA = "STORED_DATA";
-    private final static String WRITTEN_DATA = "WRITTEN_DATA";
-    private final static String OUTPUT_STREAM = "OUTPUT_STREAM";
 
     public ImapRequestFrameDecoder(ImapDecoder decoder, int inMemorySizeLimit, int literalSizeLimit) {
         this.decoder = decoder;
@@ -68,6 +66,15 @@ public class ImapRequestFrameDecoder extends FrameDecoder implements NettyConsta
         super.channelOpen(ctx, e);
     }
 
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        PendingRequest request = removePendingRequest(ctx);
+        if (request != null) {
+            request.dispose();
+        }
+        super.channelClosed(ctx, e);
+    }
+
     /**
      * @see
      * org.jboss.netty.handler.codec.frame.FrameDecoder#decode(org.jboss.netty.channel.ChannelHandlerContext,
@@ -75,161 +82,262 @@ public class ImapRequestFrameDecoder extends FrameDecoder implements NettyConsta
      */
     @SuppressWarnings("unchecked")
     protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
-        buffer.markReaderIndex();
-        boolean retry = false;
+        ImapSession session = (ImapSession) attributes.get(channel);
+
+        // check if the session was removed before to prevent a harmless NPE. See JAMES-1312
+        // Also check if the session was logged out if so there is not need to try to decode it. See JAMES-1341
+        if (session == null || session.getState() == ImapSessionState.LOGOUT) {
+            // The session was null so may be the case because the channel was already closed but there were still bytes in the buffer.
+            // We now try to disconnect the client if still connected
+            if (channel.isConnected()) {
+                channel.write(ChannelBuffers.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+            }
+            return null;
+        }
 
-        ImapRequestLineReader reader;
-        // check if we failed before and if we already know how much data we
-        // need to sucess next run
         Map<String, Object> attachment = (Map<String, Object>) ctx.getAttachment();
-        int size = -1;
-        if (attachment.containsKey(NEEDED_DATA)) {
-            retry = true;
-            size = (Integer) attachment.get(NEEDED_DATA);
-            // now see if the buffer hold enough data to process.
-            if (size != NettyImapRequestLineReader.NotEnoughDataException.UNKNOWN_SIZE && size > buffer.readableBytes()) {
-
-                // check if we have a inMemorySize limit and if so if the
-                // expected size will fit into it
-                if (inMemorySizeLimit > 0 && inMemorySizeLimit < size) {
-
-                    // ok seems like it will not fit in the memory limit so we
-                    // need to store it in a temporary file
-                    final File f;
-                    int written;
-
-                    OutputStream out;
-                    // check if we have created a temporary file already or if
-                    // we need to create a new one
-                    if (attachment.containsKey(STORED_DATA)) {
-                        f = (File) attachment.get(STORED_DATA);
-                        written = (Integer) attachment.get(WRITTEN_DATA);
-                        out = (OutputStream) attachment.get(OUTPUT_STREAM);
-                    } else {
-                        f = File.createTempFile("imap-literal", ".tmp");
-                        attachment.put(STORED_DATA, f);
-                        written = 0;
-                        attachment.put(WRITTEN_DATA, written);
-                        out = new FileOutputStream(f, true);
-                        attachment.put(OUTPUT_STREAM, out);
+        PendingRequest request = (PendingRequest) attachment.get(PENDING_REQUEST);
+        if (request == null) {
+            request = new PendingRequest();
+            attachment.put(PENDING_REQUEST, request);
+        }
 
+        try {
+            while (true) {
+                ImapRequestLiteral literal = request.getCurrentLiteral();
+                if (literal != null && !literal.isComplete()) {
+                    literal.write(buffer);
+                    if (!literal.isComplete()) {
+                        return null;
                     }
+                }
 
+                int eol = buffer.indexOf(buffer.readerIndex(), buffer.writerIndex(), (byte) '\n');
+                if (eol == -1) {
+                    // wait for the rest of the line
+                    return null;
+                }
+                ChannelBuffer line = buffer.readBytes(eol + 1 - buffer.readerIndex());
+                request.addLine(line);
 
-                    try {
-                        int amount = Math.min(buffer.readableBytes(), size - written);
-                        buffer.readBytes(out, amount);
-                        written += amount;
-                    } catch (Exception e) {
-                        IOUtils.closeQuietly(out);
-                        throw e;
-                    }
-                    // Check if all needed data was streamed to the file.
-                    if (written == size) {
-                        IOUtils.closeQuietly(out);
-
-                        reader = new NettyStreamImapRequestLineReader(channel, new FileInputStream(f) {
-                            /**
-                             * Delete the File on close too
-                             */
-                            @Override
-                            public void close() throws IOException {
-                                super.close();
-                                FileUtils.forceDelete(f);
-                            }
-
-                        }, retry);
-                    } else {
-                        attachment.put(WRITTEN_DATA, written);
+                LiteralAnnouncement announcement = LiteralAnnouncement.parse(line);
+                if (announcement == null) {
+                    // the request was completely received
+                    removePendingRequest(ctx);
+                    enableFraming(channel);
+                    if (request.isDiscarded()) {
                         return null;
                     }
-
-                } else {
-                    buffer.resetReaderIndex();
-                    return null;
+                    return decode(request, session);
                 }
 
-            } else {
+                if (request.isDiscarded()) {
+                    if (announcement.synchronizing) {
+                        // the client will not send the data without a
+                        // continuation request
+                        removePendingRequest(ctx);
+                        enableFraming(channel);
+                        return null;
+                    }
+                    request.addLiteral(ImapRequestLiteral.refused(sizeToSkip(announcement)));
+                    continue;
+                }
 
-                reader = new NettyImapRequestLineReader(channel, buffer, retry, literalSizeLimit);
+                // The literal is raw data, so disable the framing till the
+                // request was received. See JAMES-1436
+                disableFraming(channel);
+                if (announcement.size > literalSizeLimit && literalSizeLimit > 0 || announcement.size > Integer.MAX_VALUE) {
+                    return refuseLiteral(ctx, channel, session, request, announcement);
+                }
+                request.addLiteral(ImapRequestLiteral.create((int) announcement.size, inMemorySizeLimit));
+                if (announcement.synchronizing) {
+                    channel.write(ChannelBuffers.wrappedBuffer(CONTINUATION_REQUEST));
+                }
             }
+        } catch (IOException e) {
+            discard(ctx, channel, request);
+            throw e;
+        } catch (RuntimeException e) {
+            discard(ctx, channel, request);
+            throw e;
+        }
+    }
+
+    /**
+     * Answer a request announcing a literal bigger then the literalSizeLimit.
+     * No continuation request is sent for a synchronizing literal, so the
+     * client will not send its data. The data of a non-synchronizing literal
+     * (LITERAL+) and the rest of the request need to be skipped.
+     */
+    private Object refuseLiteral(ChannelHandlerContext ctx, Channel channel, ImapSession session, PendingRequest request, LiteralAnnouncement announcement) {
+        request.addLiteral(ImapRequestLiteral.refused(sizeToSkip(announcement)));
+        ImapMessage message = decode(request, session);
+        removePendingRequest(ctx);
+        if (announcement.synchronizing) {
+            enableFraming(channel);
         } else {
-            reader = new NettyImapRequestLineReader(channel, buffer, retry, literalSizeLimit);
+            PendingRequest discarded = PendingRequest.discarded();
+            discarded.addLiteral(ImapRequestLiteral.refused(sizeToSkip(announcement)));
+            setPendingRequest(ctx, discarded);
         }
+        return message;
+    }
 
-        ImapSession session = (ImapSession) attributes.get(channel);
+    private void discard(ChannelHandlerContext ctx, Channel channel, PendingRequest request) {
+        removePendingRequest(ctx);
+        enableFraming(channel);
+        request.dispose();
+    }
 
-        // check if the session was removed before to prevent a harmless NPE. See JAMES-1312
-        // Also check if the session was logged out if so there is not need to try to decode it. See JAMES-1341
-        if (session != null && session.getState() != ImapSessionState.LOGOUT) {
-            try {
+    private int sizeToSkip(LiteralAnnouncement announcement) {
+        return (int) Math.min(announcement.size, Integer.MAX_VALUE);
+    }
 
-                ImapMessage message = decoder.decode(reader, session);
+    private ImapMessage decode(PendingRequest request, ImapSession session) {
+        try {
+            return decoder.decode(new NettyImapRequestLineReader(request.lines, request.literals), session);
+        } finally {
+            request.disposeUnread();
+        }
+    }
 
-                // if size is != -1 the case was a literal. if thats the case we
-                // should not consume the line
-                // See JAMES-1199
-                if (size == -1) {
-                    reader.consumeLine();
-                }
-                
-                // Code portion commented further to JAMES-1436.
-                // TODO Remove if no negative feedback on JAMES-1436.
-//                ChannelHandler handler = (ChannelHandler) attachment.remove(FRAMER);
-//                if (handler != null) {
-//                    channel.getPipeline().addFirst(FRAMER, handler);
-//                }
-                
-                ((SwitchableDelimiterBasedFrameDecoder) channel.getPipeline().get(FRAMER)).enableFraming();
-                
-                attachment.clear();
-                return message;
-            } catch (NettyImapRequestLineReader.NotEnoughDataException e) {
-                // this exception was thrown because we don't have enough data
-                // yet
-                int neededData = e.getNeededSize();
-                // store the needed data size for later usage
-                attachment.put(NEEDED_DATA, neededData);
-                
-                final ChannelPipeline pipeline = channel.getPipeline();
-                final ChannelHandlerContext framerContext = pipeline.getContext(FRAMER);
-                
-                // Code portion commented further to JAMES-1436.
-                // TODO Remove if no negative feedback on JAMES-1436.
-//                ChannelHandler handler = channel.getPipeline().remove(FRAMER);
-//                attachment.put(FRAMER, handler);
-
-                // SwitchableDelimiterBasedFrameDecoder added further to JAMES-1436.
-                final SwitchableDelimiterBasedFrameDecoder framer = (SwitchableDelimiterBasedFrameDecoder) pipeline.get(FRAMER);
-                framer.disableFraming(framerContext);
-                
-                buffer.resetReaderIndex();
+    @SuppressWarnings("unchecked")
+    private PendingRequest removePendingRequest(ChannelHandlerContext ctx) {
+        Map<String, Object> attachment = (Map<String, Object>) ctx.getAttachment();
+        if (attachment == null) {
+            return null;
+        }
+        return (PendingRequest) attachment.remove(PENDING_REQUEST);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setPendingRequest(ChannelHandlerContext ctx, PendingRequest request) {
+        ((Map<String, Object>) ctx.getAttachment()).put(PENDING_REQUEST, request);
+    }
+
+    private void enableFraming(Channel channel) {
+        ((SwitchableDelimiterBasedFrameDecoder) channel.getPipeline().get(FRAMER)).enableFraming();
+    }
+
+    private void disableFraming(Channel channel) {
+        // SwitchableDelimiterBasedFrameDecoder added further to JAMES-1436.
+        // The framer passes the bytes following the current line on once
+        // this line was decoded
+        ((SwitchableDelimiterBasedFrameDecoder) channel.getPipeline().get(FRAMER)).disableFraming();
+    }
+
+    /**
+     * Lines and literals of a request which was not completely received yet
+     */
+    private static class PendingRequest {
+        private final List<ChannelBuffer> lines = new ArrayList<ChannelBuffer>();
+        private final List<ImapRequestLiteral> literals = new ArrayList<ImapRequestLiteral>();
+        private final boolean discarded;
+
+        private PendingRequest() {
+            this(false);
+        }
+
+        private PendingRequest(boolean discarded) {
+            this.discarded = discarded;
+        }
+
+        /**
+         * Return a request which is only received to be skipped
+         */
+        private static PendingRequest discarded() {
+            return new PendingRequest(true);
+        }
+
+        private boolean isDiscarded() {
+            return discarded;
+        }
+
+        private void addLine(ChannelBuffer line) {
+            if (!discarded) {
+                lines.add(line);
+            }
+        }
+
+        private void addLiteral(ImapRequestLiteral literal) {
+            if (discarded) {
+                literals.clear();
+            }
+            literals.add(literal);
+        }
+
+        private ImapRequestLiteral getCurrentLiteral() {
+            if (literals.isEmpty()) {
                 return null;
             }
-        } else {
-            // The session was null so may be the case because the channel was already closed but there were still bytes in the buffer.
-            // We now try to disconnect the client if still connected
-            if (channel.isConnected()) {
-                channel.write(ChannelBuffers.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+            return literals.get(literals.size() - 1);
+        }
+
+        /**
+         * Release the literals which were not handed out by the decoding. The
+         * ones which were are released when they get closed.
+         */
+        private void disposeUnread() {
+            for (ImapRequestLiteral literal : literals) {
+                if (!literal.isRead()) {
+                    literal.dispose();
+                }
+            }
+        }
+
+        private void dispose() {
+            for (ImapRequestLiteral literal : literals) {
+                literal.dispose();
             }
-            return null;
         }
     }
 
-    @Override
-    protected synchronized ChannelBuffer newCumulationBuffer(ChannelHandlerContext ctx, int minimumCapacity) {
-        @SuppressWarnings("unchecked")
-        Map<String, Object> attachment = (Map<String, Object>) ctx.getAttachment();
-        int size = (Integer) attachment.get(NEEDED_DATA);
-        
-        if (inMemorySizeLimit > 0) {
-            return ChannelBuffers.dynamicBuffer(Math.min(size, inMemorySizeLimit), ctx.getChannel().getConfig().getBufferFactory());
-        } else {
+    /**
+     * A literal announced at the end of a line: "{" number ["+"] "}" CRLF
+     */
+    private static class LiteralAnnouncement {
+        private final long size;
+        private final boolean synchronizing;
+
+        private LiteralAnnouncement(long size, boolean synchronizing) {
+            this.size = size;
+            this.synchronizing = synchronizing;
+        }
 
-            if (size > 0) {
-                return ChannelBuffers.dynamicBuffer(size, ctx.getChannel().getConfig().getBufferFactory());
+        private static LiteralAnnouncement parse(ChannelBuffer line) {
+            int position = line.writerIndex() - 1;
+            // skip the line end. Both CRLF and LF are accepted, see
+            // ImapRequestLineReader#consumeCRLF()
+            position--;
+            if (position >= 0 && line.getByte(position) == '\r') {
+                position--;
+            }
+            if (position < 0 || line.getByte(position) != '}') {
+                return null;
+            }
+            position--;
+            boolean synchronizing = true;
+            if (position >= 0 && line.getByte(position) == '+') {
+                synchronizing = false;
+                position--;
+            }
+            long size = 0;
+            long factor = 1;
+            int digits = 0;
+            while (position >= 0 && line.getByte(position) >= '0' && line.getByte(position) <= '9') {
+                if (digits < 18) {
+                    size += (line.getByte(position) - '0') * factor;
+                    factor *= 10;
+                } else {
+                    size = Long.MAX_VALUE;
+                }
+                digits++;
+                position--;
+            }
+            if (digits == 0 || position < 0 || line.getByte(position) != '{') {
+                return null;
             }
-            return super.newCumulationBuffer(ctx, minimumCapacity);
+            return new LiteralAnnouncement(size, synchronizing);
         }
     }
 
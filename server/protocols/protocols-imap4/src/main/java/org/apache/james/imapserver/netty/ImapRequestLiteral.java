@@ -0,0 +1,223 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imapserver.netty;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.james.imap.api.display.HumanReadableText;
+import org.apache.james.protocols.imap.DecodingException;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Literal of a request which is received by {@link ImapRequestFrameDecoder}
+ * before the request gets decoded. The data is copied out of the network
+ * buffers as it arrives, small literals are kept in memory and bigger ones in a
+ * temporary file.
+ */
+public abstract class ImapRequestLiteral {
+
+    /**
+     * Create a literal for the given size
+     * 
+     * @param size
+     *            size of the literal
+     * @param inMemorySizeLimit
+     *            literals bigger then this are stored in a temporary file. 0
+     *            to keep all literals in memory.
+     */
+    public static ImapRequestLiteral create(int size, int inMemorySizeLimit) throws IOException {
+        if (inMemorySizeLimit > 0 && size > inMemorySizeLimit) {
+            return new FileLiteral(size);
+        }
+        return new InMemoryLiteral(size, inMemorySizeLimit > 0);
+    }
+
+    /**
+     * Create a literal which was refused because it is bigger then allowed.
+     * Its data is skipped and it can not be read.
+     */
+    public static ImapRequestLiteral refused(int size) {
+        return new RefusedLiteral(size);
+    }
+
+    private final int size;
+    private int written;
+    private boolean read;
+
+    protected ImapRequestLiteral(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Return the size of the literal
+     * 
+     * @return size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Return true if all the data of the literal was received
+     */
+    public boolean isComplete() {
+        return written == size;
+    }
+
+    /**
+     * Consume the data of the literal which is readable in the given buffer
+     */
+    public void write(ChannelBuffer buffer) throws IOException {
+        int amount = Math.min(buffer.readableBytes(), size - written);
+        write(buffer, amount);
+        written += amount;
+        if (isComplete()) {
+            complete();
+        }
+    }
+
+    /**
+     * Return the data of the literal. Can only be called once, the stream
+     * releases the resources of the literal when it gets closed.
+     */
+    public InputStream openStream() throws DecodingException {
+        read = true;
+        return createStream();
+    }
+
+    /**
+     * Return true if the data of the literal was handed out
+     */
+    public boolean isRead() {
+        return read;
+    }
+
+    /**
+     * Release the resources of a literal which was not read
+     */
+    public abstract void dispose();
+
+    protected abstract void write(ChannelBuffer buffer, int amount) throws IOException;
+
+    protected abstract InputStream createStream() throws DecodingException;
+
+    protected void complete() throws IOException {
+    }
+
+    private static class InMemoryLiteral extends ImapRequestLiteral {
+        private final ChannelBuffer data;
+
+        private InMemoryLiteral(int size, boolean bounded) {
+            super(size);
+            // the size is only trusted if it was checked against the
+            // inMemorySizeLimit
+            this.data = bounded ? ChannelBuffers.buffer(size) : ChannelBuffers.dynamicBuffer();
+        }
+
+        @Override
+        protected void write(ChannelBuffer buffer, int amount) {
+            data.writeBytes(buffer, amount);
+        }
+
+        @Override
+        protected InputStream createStream() {
+            return new ChannelBufferInputStream(data);
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+
+    private static class FileLiteral extends ImapRequestLiteral {
+        private final File file;
+        private final OutputStream out;
+
+        private FileLiteral(int size) throws IOException {
+            super(size);
+            this.file = File.createTempFile("imap-literal", ".tmp");
+            this.out = new FileOutputStream(file);
+        }
+
+        @Override
+        protected void write(ChannelBuffer buffer, int amount) throws IOException {
+            buffer.readBytes(out, amount);
+        }
+
+        @Override
+        protected void complete() throws IOException {
+            out.close();
+        }
+
+        @Override
+        protected InputStream createStream() throws DecodingException {
+            try {
+                return new FileInputStream(file) {
+                    /**
+                     * Delete the File on close too
+                     */
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        FileUtils.forceDelete(file);
+                    }
+                };
+            } catch (IOException e) {
+                throw new DecodingException(HumanReadableText.SOCKET_IO_FAILURE, "Unable to read the literal", e);
+            }
+        }
+
+        @Override
+        public void dispose() {
+            IOUtils.closeQuietly(out);
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    private static class RefusedLiteral extends ImapRequestLiteral {
+
+        private RefusedLiteral(int size) {
+            super(size);
+        }
+
+        @Override
+        protected void write(ChannelBuffer buffer, int amount) {
+            buffer.skipBytes(amount);
+        }
+
+        @Override
+        protected InputStream createStream() throws DecodingException {
+            throw new DecodingException(HumanReadableText.FAILED, "Specified literal is greater then the allowed size");
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+}
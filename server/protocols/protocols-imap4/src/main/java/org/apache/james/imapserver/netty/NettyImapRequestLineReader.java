@@ -20,86 +20,72 @@
 package org.apache.james.imapserver.netty;
 
 import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
 
-import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.james.imap.api.display.HumanReadableText;
 import org.apache.james.imap.decode.ImapRequestLineReader;
 import org.apache.james.protocols.imap.DecodingException;
 import org.apache.james.protocols.imap.utils.EolInputStream;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBufferInputStream;
-import org.jboss.netty.channel.Channel;
+import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
- * {@link ImapRequestLineReader} implementation which will write to a
- * {@link Channel} and read from a {@link ChannelBuffer}. Please see the docs on
- * {@link #nextChar()} and {@link #read(int, boolean)} to understand the special behavior
- * of this implementation
+ * {@link ImapRequestLineReader} implementation which reads a request which was
+ * completely received by {@link ImapRequestFrameDecoder}: its lines and the
+ * literals in between them.
+ * 
+ * Command continuation requests were already written out when the literals
+ * were announced, and the literals stay readable while the rest of the
+ * request is read.
  */
-public class NettyImapRequestLineReader extends AbstractNettyImapRequestLineReader {
+public class NettyImapRequestLineReader extends ImapRequestLineReader {
 
-    private final ChannelBuffer buffer;
-    private int read = 0;
-    private final int maxLiteralSize;
+    private final Iterator<ChannelBuffer> lines;
+    private final Iterator<ImapRequestLiteral> literals;
+    private ChannelBuffer line;
 
-    public NettyImapRequestLineReader(Channel channel, ChannelBuffer buffer, boolean retry, int maxLiteralSize) {
-        super(channel, retry);
-        this.buffer = buffer;
-        this.maxLiteralSize  = maxLiteralSize;
+    public NettyImapRequestLineReader(List<ChannelBuffer> lines, List<ImapRequestLiteral> literals) {
+        this.lines = lines.iterator();
+        this.literals = literals.iterator();
+        this.line = this.lines.next();
     }
-    
 
     /**
      * Return the next char to read. This will return the same char on every
      * call till {@link #consume()} was called.
-     * 
-     * This implementation will throw a {@link NotEnoughDataException} if the
-     * wrapped {@link ChannelBuffer} contains not enough data to read the next
-     * char
      */
     public char nextChar() throws DecodingException {
         if (!nextSeen) {
-            int next;
-
-            if (buffer.readable()) {
-                next = buffer.readByte();
-                read++;
-            } else {
-                throw new NotEnoughDataException();
+            if (!line.readable()) {
+                throw new DecodingException(HumanReadableText.ILLEGAL_ARGUMENTS, "Unexpected end of line.");
             }
             nextSeen = true;
-            nextChar = (char) next;
+            nextChar = (char) line.readByte();
         }
         return nextChar;
     }
 
     /**
-     * Return a {@link ChannelBufferInputStream} if the wrapped
-     * {@link ChannelBuffer} contains enough data. If not it will throw a
-     * {@link NotEnoughDataException}
+     * Return the next literal of the request. The reader moves to the line
+     * which follows it.
      */
     public InputStream read(int size, boolean extraCRLF) throws DecodingException {
-        int crlf = 0;
-        if (extraCRLF) {
-            crlf = 2;
-        }
-        
-        if (maxLiteralSize > 0 && maxLiteralSize > size) {
-            throw new DecodingException(HumanReadableText.FAILED, "Specified literal is greater then the allowed size");
+        if (!literals.hasNext() || line.readable()) {
+            throw new DecodingException(HumanReadableText.ILLEGAL_ARGUMENTS, "Unexpected literal.");
         }
-        // Check if we have enough data
-        if (size + crlf > buffer.readableBytes()) {
-            // ok let us throw a exception which till the decoder how many more
-            // bytes we need
-            throw new NotEnoughDataException(size + read + crlf);
+        ImapRequestLiteral literal = literals.next();
+        if (literal.getSize() != size) {
+            throw new DecodingException(HumanReadableText.ILLEGAL_ARGUMENTS, "Unexpected literal size.");
         }
 
+        InputStream in = literal.openStream();
+
         // Unset the next char.
         nextSeen = false;
         nextChar = 0;
+        line = lines.hasNext() ? lines.next() : ChannelBuffers.EMPTY_BUFFER;
 
-        // limit the size via commons-io as ChannelBufferInputStream size limiting is buggy
-        InputStream in = new BoundedInputStream(new ChannelBufferInputStream(buffer), size); 
         if (extraCRLF) {
             return new EolInputStream(this, in);
         } else {
@@ -108,33 +94,15 @@ public class NettyImapRequestLineReader extends AbstractNettyImapRequestLineRead
     }
 
     /**
-     * {@link RuntimeException} which will get thrown by
-     * {@link NettyImapRequestLineReader#nextChar()} and
-     * {@link NettyImapRequestLineReader#read(int, boolean)} if not enough data is
-     * readable in the underlying {@link ChannelBuffer}
+     * The continuation request was already written out by {@link ImapRequestFrameDecoder}
+     * when the literal was announced
      */
-    @SuppressWarnings("serial")
-    public final class NotEnoughDataException extends RuntimeException {
-
-        public final static int UNKNOWN_SIZE = -1;
-        private final int size;
-
-        public NotEnoughDataException(int size) {
-            this.size = size;
-        }
-
-        public NotEnoughDataException() {
-            this(UNKNOWN_SIZE);
-        }
+    protected void commandContinuationRequest() throws DecodingException {
+    }
 
-        /**
-         * Return the size of the data which is needed
-         * 
-         * @return size
-         */
-        public int getNeededSize() {
-            return size;
-        }
+    @Override
+    public boolean hasBufferedLiterals() {
+        return true;
     }
 
 }
@@ -20,6 +20,7 @@
 package org.apache.james.imapserver.netty;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.MessageEvent;
@@ -37,11 +38,24 @@ public class SwitchableDelimiterBasedFrameDecoder extends DelimiterBasedFrameDec
 	public synchronized void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
 		if(this.framingEnabled) {
 			super.messageReceived(ctx, e);
+			if(!this.framingEnabled) {
+				// the framing was disabled while a frame was decoded
+				fireSpareBytes(ctx);
+			}
 		} else {
 			ctx.sendUpstream(e);
 		}
 	}
 
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+		if(!this.framingEnabled) {
+			// the rest of the buffer is raw data
+			return null;
+		}
+		return super.decode(ctx, channel, buffer);
+	}
+
 	public synchronized void enableFraming() {
 		this.framingEnabled = true;
 
@@ -49,8 +63,22 @@ public class SwitchableDelimiterBasedFrameDecoder extends DelimiterBasedFrameDec
 
 	public synchronized void disableFraming(ChannelHandlerContext ctx) {
 		this.framingEnabled = false;
+		fireSpareBytes(ctx);
+	}
+
+	/**
+	 * Disable the framing from a handler decoding a frame passed on by this
+	 * decoder. The bytes received after that frame are passed on as they are
+	 * once the frame was handled.
+	 */
+	public synchronized void disableFraming() {
+		this.framingEnabled = false;
+	}
+
+	private void fireSpareBytes(ChannelHandlerContext ctx) {
 		if(this.cumulation != null && this.cumulation.readable()) {
 			final ChannelBuffer spareBytes = this.cumulation.readBytes(this.cumulation.readableBytes());
+			this.cumulation = null;
 			Channels.fireMessageReceived(ctx, spareBytes);
 		}
 	}
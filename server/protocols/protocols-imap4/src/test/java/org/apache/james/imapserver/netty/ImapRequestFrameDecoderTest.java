@@ -0,0 +1,359 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imapserver.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.imap.api.ImapMessage;
+import org.apache.james.imap.api.ImapSessionState;
+import org.apache.james.imap.api.process.ImapSession;
+import org.apache.james.imap.decode.ImapDecoder;
+import org.apache.james.imap.decode.ImapRequestLineReader;
+import org.apache.james.protocols.imap.DecodingException;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.frame.Delimiters;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImapRequestFrameDecoderTest {
+
+    private static final int MAX_LINE_LENGTH = 1024;
+    private static final int IN_MEMORY_SIZE_LIMIT = 4;
+    private static final int LITERAL_SIZE_LIMIT = 20;
+    private static final String CONTINUATION_REQUEST = "+\r\n";
+    private static final String REFUSED = "refused";
+    private static final File TEMPORARY_DIRECTORY = new File(System.getProperty("java.io.tmpdir"));
+
+    private DecoderEmbedder<Object> embedder;
+    private Set<File> existingTemporaryFiles;
+
+    @Before
+    public void setUp() {
+        embedder = createEmbedder(new RecordingDecoder());
+        existingTemporaryFiles = temporaryFiles();
+    }
+
+    @After
+    public void tearDown() {
+        embedder.finish();
+    }
+
+    @Test
+    public void decodeShouldDecodeARequestWithoutLiteral() {
+        offer("a NOOP\r\n");
+
+        assertEquals("a NOOP\r\n", pollRequest());
+    }
+
+    @Test
+    public void decodeShouldSendAContinuationRequestForASynchronizingLiteral() {
+        offer("a APPEND INBOX {10}\r\n");
+
+        assertEquals(CONTINUATION_REQUEST, pollWritten());
+        assertNull(embedder.poll());
+    }
+
+    @Test
+    public void decodeShouldCollectALiteralSplitAcrossBuffers() {
+        offer("a APPEND INB");
+        offer("OX {10}\r\n");
+        assertEquals(CONTINUATION_REQUEST, pollWritten());
+        offer("012");
+        offer("3456");
+        offer("789\r");
+        assertNull(embedder.poll());
+        offer("\n");
+
+        assertEquals("a APPEND INBOX {10}\r\n0123456789\r\n", pollRequest());
+    }
+
+    @Test
+    public void decodeShouldCollectSeveralLiteralsOfARequest() {
+        offer("a LOGIN {3}\r\n");
+        assertEquals(CONTINUATION_REQUEST, pollWritten());
+        offer("bob {6}\r\n");
+        assertEquals(CONTINUATION_REQUEST, pollWritten());
+        offer("secret\r\n");
+
+        assertEquals("a LOGIN {3}\r\nbob {6}\r\nsecret\r\n", pollRequest());
+    }
+
+    @Test
+    public void decodeShouldStoreBigLiteralsInATemporaryFile() {
+        offer("a APPEND INBOX {10}\r\n");
+        pollWritten();
+        offer("01234");
+
+        assertEquals(1, newTemporaryFiles().size());
+        offer("56789\r\n");
+
+        assertEquals("a APPEND INBOX {10}\r\n0123456789\r\n", pollRequest());
+        assertTrue(newTemporaryFiles().isEmpty());
+    }
+
+    @Test
+    public void decodeShouldNotSendAContinuationRequestForANonSynchronizingLiteral() {
+        offer("a APPEND INBOX {10+}\r\n0123456789\r\n");
+
+        assertEquals("a APPEND INBOX {10+}\r\n0123456789\r\n", pollRequest());
+        assertNull(embedder.poll());
+    }
+
+    @Test
+    public void decodeShouldCollectANonSynchronizingLiteralSplitAcrossBuffers() {
+        offer("a APPEND INBOX {10+}\r\n01234");
+        offer("56789");
+        offer("\r\n");
+
+        assertEquals("a APPEND INBOX {10+}\r\n0123456789\r\n", pollRequest());
+        assertNull(embedder.poll());
+    }
+
+    @Test
+    public void decodeShouldDecodeTheRequestsFollowingANonSynchronizingLiteralInTheSameBuffer() {
+        offer("a APPEND INBOX {10+}\r\n0123456789\r\nb NOOP\r\nc NO");
+        offer("OP\r\n");
+
+        assertEquals("a APPEND INBOX {10+}\r\n0123456789\r\n", pollRequest());
+        assertEquals("b NOOP\r\n", pollRequest());
+        assertEquals("c NOOP\r\n", pollRequest());
+        assertNull(embedder.poll());
+    }
+
+    @Test
+    public void decodeShouldRefuseASynchronizingLiteralBiggerThanTheLimit() {
+        offer("a APPEND INBOX {21}\r\n");
+
+        assertEquals(REFUSED, pollRequest());
+        assertNull(embedder.poll());
+    }
+
+    @Test
+    public void decodeShouldDecodeTheNextRequestAfterARefusedSynchronizingLiteral() {
+        offer("a APPEND INBOX {21}\r\n");
+        pollRequest();
+        offer("b NOOP\r\n");
+
+        assertEquals("b NOOP\r\n", pollRequest());
+    }
+
+    @Test
+    public void decodeShouldRefuseANonSynchronizingLiteralBiggerThanTheLimit() {
+        offer("a APPEND INBOX {21+}\r\n");
+
+        assertEquals(REFUSED, pollRequest());
+        assertNull(embedder.poll());
+    }
+
+    @Test
+    public void decodeShouldSkipTheRestOfARequestWithARefusedNonSynchronizingLiteral() {
+        offer("a APPEND INBOX {21+}\r\n");
+        pollRequest();
+        offer("0123456789");
+        offer("01234567890 {3+}\r\n");
+        offer("abc\r\nb NOOP\r\n");
+
+        assertEquals("b NOOP\r\n", pollRequest());
+        assertNull(embedder.poll());
+    }
+
+    @Test
+    public void decodeShouldNotSendAContinuationRequestInARefusedRequest() {
+        offer("a APPEND INBOX {21+}\r\n");
+        pollRequest();
+        offer("012345678901234567890 {3}\r\n");
+
+        assertNull(embedder.poll());
+        offer("b NOOP\r\n");
+        assertEquals("b NOOP\r\n", pollRequest());
+    }
+
+    @Test
+    public void channelClosedShouldDeleteTheTemporaryFileOfAPendingLiteral() {
+        offer("a APPEND INBOX {10}\r\n");
+        offer("01234");
+        assertEquals(1, newTemporaryFiles().size());
+
+        embedder.finish();
+
+        assertTrue(newTemporaryFiles().isEmpty());
+    }
+
+    @Test
+    public void decodeShouldDeleteTheTemporaryFileWhenTheDecodingFails() {
+        embedder.finish();
+        embedder = createEmbedder(new ImapDecoder() {
+            @Override
+            public ImapMessage decode(ImapRequestLineReader request, ImapSession session) {
+                throw new RuntimeException("decoding failed");
+            }
+        });
+        offer("a APPEND INBOX {10}\r\n");
+        offer("01234");
+        assertEquals(1, newTemporaryFiles().size());
+
+        try {
+            offer("56789\r\n");
+            fail("The decoding error should be propagated");
+        } catch (CodecEmbedderException e) {
+            assertTrue(newTemporaryFiles().isEmpty());
+        }
+    }
+
+    @Test
+    public void decodeShouldDecodeTheNextRequestAfterADecodingError() {
+        embedder.finish();
+        embedder = createEmbedder(new ImapDecoder() {
+            private final RecordingDecoder delegate = new RecordingDecoder();
+            private boolean failed;
+
+            @Override
+            public ImapMessage decode(ImapRequestLineReader request, ImapSession session) {
+                if (!failed) {
+                    failed = true;
+                    throw new RuntimeException("decoding failed");
+                }
+                return delegate.decode(request, session);
+            }
+        });
+        try {
+            offer("a APPEND INBOX {10+}\r\n0123456789\r\n");
+            fail("The decoding error should be propagated");
+        } catch (CodecEmbedderException e) {
+            offer("b NOOP\r\n");
+            assertEquals("b NOOP\r\n", pollRequest());
+        }
+    }
+
+    private DecoderEmbedder<Object> createEmbedder(ImapDecoder decoder) {
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(
+            new ImapRequestFrameDecoder(decoder, IN_MEMORY_SIZE_LIMIT, LITERAL_SIZE_LIMIT));
+        embedder.getPipeline().addFirst(NettyConstants.FRAMER,
+            new SwitchableDelimiterBasedFrameDecoder(MAX_LINE_LENGTH, false, Delimiters.lineDelimiter()));
+        ImapSession session = mock(ImapSession.class);
+        when(session.getState()).thenReturn(ImapSessionState.AUTHENTICATED);
+        NettyConstants.attributes.set(embedder.getPipeline().getChannel(), session);
+        return embedder;
+    }
+
+    private void offer(String data) {
+        embedder.offer(ChannelBuffers.copiedBuffer(data, CharsetUtil.US_ASCII));
+    }
+
+    private String pollRequest() {
+        Object product = embedder.poll();
+        assertTrue("A decoded request was expected but got " + product, product instanceof DecodedRequest);
+        return ((DecodedRequest) product).content;
+    }
+
+    private String pollWritten() {
+        Object product = embedder.poll();
+        assertTrue("Written data was expected but got " + product, product instanceof ChannelBuffer);
+        return ((ChannelBuffer) product).toString(CharsetUtil.US_ASCII);
+    }
+
+    private Set<File> newTemporaryFiles() {
+        Set<File> files = temporaryFiles();
+        files.removeAll(existingTemporaryFiles);
+        return files;
+    }
+
+    private Set<File> temporaryFiles() {
+        File[] files = TEMPORARY_DIRECTORY.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("imap-literal") && name.endsWith(".tmp");
+            }
+        });
+        if (files == null) {
+            return new HashSet<File>();
+        }
+        return new HashSet<File>(Arrays.asList(files));
+    }
+
+    private static class DecodedRequest implements ImapMessage {
+        private final String content;
+
+        private DecodedRequest(String content) {
+            this.content = content;
+        }
+
+        @Override
+        public String toString() {
+            return content;
+        }
+    }
+
+    /**
+     * Reads the whole request back: its lines and the content of its literals
+     */
+    private static class RecordingDecoder implements ImapDecoder {
+        private static final Pattern LITERAL = Pattern.compile("\\{(\\d+)\\+?\\}\r\n$");
+
+        @Override
+        public ImapMessage decode(ImapRequestLineReader request, ImapSession session) {
+            StringBuilder content = new StringBuilder();
+            try {
+                while (true) {
+                    char next = request.consume();
+                    content.append(next);
+                    if (next == '\n') {
+                        Matcher matcher = LITERAL.matcher(content);
+                        if (!matcher.find()) {
+                            return new DecodedRequest(content.toString());
+                        }
+                        InputStream literal = request.read(Integer.parseInt(matcher.group(1)), false);
+                        try {
+                            content.append(IOUtils.toString(literal, "US-ASCII"));
+                        } finally {
+                            literal.close();
+                        }
+                    }
+                }
+            } catch (DecodingException e) {
+                return new DecodedRequest(REFUSED);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -46,6 +46,7 @@ import org.apache.james.core.MimeMessageSource;
 import org.apache.james.queue.api.MailQueue;
 import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
 import org.apache.james.queue.jms.JMSMailQueue;
+import org.apache.james.queue.jms.JMSSessionPool;
 import org.apache.mailet.Mail;
 import org.slf4j.Logger;
 import org.springframework.jms.connection.SessionProxy;
@@ -239,9 +240,9 @@ public class ActiveMQMailQueue extends JMSMailQueue implements ActiveMQSupport {
     }
 
     @Override
-    protected MailQueueItem createMailQueueItem(Connection connection, Session session, MessageConsumer consumer, Message message) throws JMSException, MessagingException {
+    protected MailQueueItem createMailQueueItem(JMSSessionPool.ConsumerSession consumerSession, Message message) throws JMSException, MessagingException {
         Mail mail = createMail(message);
-        ActiveMQMailQueueItem activeMQMailQueueItem = new ActiveMQMailQueueItem(mail, connection, session, consumer, message, logger);
+        ActiveMQMailQueueItem activeMQMailQueueItem = new ActiveMQMailQueueItem(mail, consumerSession, message, logger);
         return mailQueueItemDecoratorFactory.decorate(activeMQMailQueueItem);
     }
 
@@ -295,8 +296,7 @@ public class ActiveMQMailQueue extends JMSMailQueue implements ActiveMQSupport {
         long size;
 
         try {
-            connection = connectionFactory.createConnection();
-            connection.start();
+            connection = sessionPool.getConnection();
 
             session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
             replyTo = session.createTemporaryQueue();
@@ -363,13 +363,6 @@ public class ActiveMQMailQueue extends JMSMailQueue implements ActiveMQSupport {
             } catch (JMSException e1) {
                 // ignore here
             }
-
-            try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e1) {
-                // ignore here
-            }
         }
 
         // if we came to this point we should just fallback to super method
@@ -0,0 +1,236 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.activemq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.james.queue.jms.JMSSessionPool;
+import org.apache.james.queue.jms.JMSSessionPool.ConsumerSession;
+import org.apache.james.queue.jms.JMSSessionPool.ProducerSession;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class JMSSessionPoolTest {
+
+    private static final String BROKER_NAME = "session-pool";
+    private static final String QUEUE_NAME = "pooled";
+    private static final String SELECTOR = "JMSPriority >= 0";
+
+    private static BrokerService broker;
+
+    private JMSSessionPool pool;
+
+    @BeforeClass
+    public static void setUpBroker() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName(BROKER_NAME);
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+    }
+
+    @AfterClass
+    public static void tearDownBroker() throws Exception {
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory("vm://" + BROKER_NAME + "?create=false");
+        connectionFactory.getPrefetchPolicy().setAll(0);
+        pool = new JMSSessionPool(connectionFactory, QUEUE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        pool.dispose();
+    }
+
+    @Test
+    public void getConnectionShouldShareTheConnection() throws Exception {
+        assertSame(pool.getConnection(), pool.getConnection());
+    }
+
+    @Test
+    public void borrowProducerSessionShouldReuseAReleasedSession() throws Exception {
+        ProducerSession producerSession = pool.borrowProducerSession();
+        Session session = producerSession.getSession();
+        producerSession.release();
+
+        assertSame(session, pool.borrowProducerSession().getSession());
+    }
+
+    @Test
+    public void borrowProducerSessionShouldNotReuseABorrowedSession() throws Exception {
+        ProducerSession producerSession = pool.borrowProducerSession();
+
+        assertNotSame(producerSession.getSession(), pool.borrowProducerSession().getSession());
+    }
+
+    @Test
+    public void borrowConsumerSessionShouldReuseAReleasedSession() throws Exception {
+        ConsumerSession consumerSession = pool.borrowConsumerSession();
+        Session session = consumerSession.getSession();
+        consumerSession.release();
+
+        assertSame(session, pool.borrowConsumerSession().getSession());
+    }
+
+    @Test
+    public void releaseShouldKeepTheConsumerOpen() throws Exception {
+        ConsumerSession consumerSession = pool.borrowConsumerSession();
+        assertNull(consumerSession.receive(SELECTOR, 1));
+        consumerSession.release();
+
+        assertEquals(1, consumerCount());
+    }
+
+    @Test
+    public void receiveShouldReuseTheConsumerOfAReleasedSession() throws Exception {
+        ConsumerSession consumerSession = pool.borrowConsumerSession();
+        consumerSession.receive(SELECTOR, 1);
+        consumerSession.release();
+
+        pool.borrowConsumerSession().receive(SELECTOR, 1);
+
+        assertEquals(1, consumerCount());
+    }
+
+    @Test
+    public void receiveShouldReceiveAMessageWithAReusedConsumer() throws Exception {
+        ConsumerSession consumerSession = pool.borrowConsumerSession();
+        consumerSession.receive(SELECTOR, 1);
+        consumerSession.release();
+        send("message");
+
+        consumerSession = pool.borrowConsumerSession();
+        Message message = consumerSession.receive(SELECTOR, 1000);
+        consumerSession.getSession().commit();
+
+        assertNotNull(message);
+        assertEquals("message", ((TextMessage) message).getText());
+    }
+
+    @Test
+    public void invalidateShouldCloseTheConsumer() throws Exception {
+        ConsumerSession consumerSession = pool.borrowConsumerSession();
+        consumerSession.receive(SELECTOR, 1);
+
+        consumerSession.invalidate();
+
+        assertEquals(0, consumerCount());
+    }
+
+    @Test
+    public void invalidateShouldCloseTheConnection() throws Exception {
+        Connection connection = pool.getConnection();
+
+        pool.borrowProducerSession().invalidate();
+
+        assertNotSame(connection, pool.getConnection());
+    }
+
+    @Test
+    public void borrowProducerSessionShouldNotReuseASessionOfAnInvalidatedConnection() throws Exception {
+        ProducerSession released = pool.borrowProducerSession();
+        ProducerSession failed = pool.borrowProducerSession();
+        released.release();
+
+        failed.invalidate();
+
+        assertNotSame(released.getSession(), pool.borrowProducerSession().getSession());
+    }
+
+    @Test
+    public void borrowConsumerSessionShouldNotReuseASessionOfAnInvalidatedConnection() throws Exception {
+        ConsumerSession released = pool.borrowConsumerSession();
+        released.receive(SELECTOR, 1);
+        ConsumerSession failed = pool.borrowConsumerSession();
+        released.release();
+
+        failed.invalidate();
+
+        assertNotSame(released.getSession(), pool.borrowConsumerSession().getSession());
+        assertEquals(0, consumerCount());
+    }
+
+    @Test
+    public void borrowShouldReconnectAfterTheConnectionWasBroken() throws Exception {
+        ProducerSession producerSession = pool.borrowProducerSession();
+        producerSession.release();
+        pool.getConnection().close();
+
+        producerSession = pool.borrowProducerSession();
+        try {
+            producerSession.getSession().createProducer(producerSession.getSession().createQueue(QUEUE_NAME));
+            fail("The session of the broken connection should fail");
+        } catch (JMSException e) {
+            producerSession.invalidate();
+        }
+        send("message");
+
+        ConsumerSession consumerSession = pool.borrowConsumerSession();
+        Message message = consumerSession.receive(SELECTOR, 1000);
+        consumerSession.getSession().commit();
+        assertNotNull(message);
+    }
+
+    @Test(expected = javax.jms.IllegalStateException.class)
+    public void borrowShouldFailOnceThePoolIsDisposed() throws Exception {
+        pool.dispose();
+
+        pool.borrowProducerSession();
+    }
+
+    private void send(String text) throws JMSException {
+        ProducerSession producerSession = pool.borrowProducerSession();
+        Session session = producerSession.getSession();
+        MessageProducer producer = session.createProducer(session.createQueue(QUEUE_NAME));
+        try {
+            producer.send(session.createTextMessage(text));
+        } finally {
+            producer.close();
+        }
+        producerSession.release();
+    }
+
+    private int consumerCount() throws Exception {
+        return broker.getDestination(new ActiveMQQueue(QUEUE_NAME)).getConsumers().size();
+    }
+}
@@ -79,4 +79,17 @@ public interface MailQueueManagementMBean {
      */
     List<CompositeData> browse() throws Exception;
 
+    /**
+     * Allow to browse a page of the content of the queue
+     * 
+     * @param offset
+     *            count of mails to skip
+     * @param limit
+     *            maximum count of mails to return, or a negative value for
+     *            no limit
+     * @return data
+     * @throws Exception
+     */
+    List<CompositeData> browse(long offset, long limit) throws Exception;
+
 }
@@ -73,6 +73,19 @@ public interface ManageableMailQueue extends MailQueue {
      */
     MailQueueIterator browse() throws MailQueueException;
 
+    /**
+     * Browse a page of the queues content. The skipped mails are not loaded,
+     * and the iterator ends once limit mails were returned.
+     * 
+     * @param offset
+     *            count of mails to skip
+     * @param limit
+     *            maximum count of mails to return, or a negative value for
+     *            no limit
+     * @return content
+     */
+    MailQueueIterator browse(long offset, long limit) throws MailQueueException;
+
     /**
      * {@link Iterator} subclass which allows to browse the content of a queue.
      * The content is not meant to be modifiable, everything is just READ-ONLY!
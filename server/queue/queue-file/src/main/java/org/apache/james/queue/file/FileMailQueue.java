@@ -18,6 +18,8 @@
  ****************************************************************/
 package org.apache.james.queue.file;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -25,9 +27,9 @@ import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.concurrent.BlockingQueue;
@@ -43,6 +45,7 @@ import javax.mail.util.SharedFileInputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.james.core.MailEnvelopeCodec;
 import org.apache.james.core.MimeMessageCopyOnWriteProxy;
 import org.apache.james.core.MimeMessageSource;
 import org.apache.james.lifecycle.api.Disposable;
@@ -50,6 +53,7 @@ import org.apache.james.lifecycle.api.LifecycleUtil;
 import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
 import org.apache.james.queue.api.ManageableMailQueue;
 import org.apache.mailet.Mail;
+import org.apache.mailet.MailAddress;
 import org.slf4j.Logger;
 
 /**
@@ -100,20 +104,18 @@ public class FileMailQueue implements ManageableMailQueue {
 
             for (String name : files) {
 
-                ObjectInputStream oin = null;
+                InputStream oin = null;
 
                 try {
 
                     final String msgFileName = name.substring(0, name.length() - OBJECT_EXTENSION.length()) + MSG_EXTENSION;
 
-                    FileItem item = new FileItem(qDir.getAbsolutePath() + File.separator + name, qDir.getAbsolutePath() + File.separator + msgFileName);
+                    String objectFile = qDir.getAbsolutePath() + File.separator + name;
 
-                    oin = new ObjectInputStream(new FileInputStream(item.getObjectFile()));
-                    Mail mail = (Mail) oin.readObject();
-                    Long next = (Long) mail.getAttribute(NEXT_DELIVERY);
-                    if (next == null) {
-                        next = 0L;
-                    }
+                    oin = new BufferedInputStream(new FileInputStream(objectFile));
+                    Mail mail = MailEnvelopeCodec.read(oin);
+                    FileItem item = new FileItem(objectFile, qDir.getAbsolutePath() + File.separator + msgFileName, mail);
+                    long next = item.getNextDelivery();
 
                     final String key = mail.getName();
                     keyMappings.put(key, item);
@@ -143,8 +145,6 @@ public class FileMailQueue implements ManageableMailQueue {
                         }, next - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
                     }
 
-                } catch (ClassNotFoundException e1) {
-                    log.error("Unable to load Mail", e1);
                 } catch (IOException e) {
                     log.error("Unable to load Mail", e);
                 } finally {
@@ -166,20 +166,20 @@ public class FileMailQueue implements ManageableMailQueue {
         final String key = mail.getName() + "-" + COUNTER.incrementAndGet();
         FileOutputStream out = null;
         FileOutputStream foout = null;
-        ObjectOutputStream oout = null;
+        BufferedOutputStream oout = null;
         try {
             int i = (int) (Math.random() * SPLITCOUNT + 1);
 
 
             String name = queueDirName + "/" + i + "/" + key;
 
-            final FileItem item = new FileItem(name + OBJECT_EXTENSION, name + MSG_EXTENSION);
             if (delay > 0) {
                 mail.setAttribute(NEXT_DELIVERY, System.currentTimeMillis() + unit.toMillis(delay));
             }
+            final FileItem item = new FileItem(name + OBJECT_EXTENSION, name + MSG_EXTENSION, mail);
             foout = new FileOutputStream(item.getObjectFile());
-            oout = new ObjectOutputStream(foout);
-            oout.writeObject(mail);
+            oout = new BufferedOutputStream(foout);
+            MailEnvelopeCodec.write(mail, oout);
             oout.flush();
             if (sync) foout.getFD().sync();
             out = new FileOutputStream(item.getMessageFile());
@@ -265,12 +265,12 @@ public class FileMailQueue implements ManageableMailQueue {
             }
             final String key = k;
             final FileItem fitem = item;
-            ObjectInputStream oin = null;
+            InputStream oin = null;
             try {
                 final File objectFile = new File(fitem.getObjectFile());
                 final File msgFile = new File(fitem.getMessageFile());
-                oin = new ObjectInputStream(new FileInputStream(objectFile));
-                final Mail mail = (Mail) oin.readObject();
+                oin = new BufferedInputStream(new FileInputStream(objectFile));
+                final Mail mail = MailEnvelopeCodec.read(oin);
                 mail.setMessage(new MimeMessageCopyOnWriteProxy(new FileMimeMessageSource(msgFile)));
                 MailQueueItem fileMailQueueItem = new MailQueueItem() {
 
@@ -303,8 +303,6 @@ public class FileMailQueue implements ManageableMailQueue {
                 throw new MailQueueException("Unable to dequeue", e);
             } catch (IOException e) {
                 throw new MailQueueException("Unable to dequeue", e);
-            } catch (ClassNotFoundException e) {
-                throw new MailQueueException("Unable to dequeue", e);
             } catch (MessagingException e) {
                 throw new MailQueueException("Unable to dequeue", e);
 
@@ -363,15 +361,48 @@ public class FileMailQueue implements ManageableMailQueue {
     }
 
     /**
-     * Helper class which is used to reference the path to the object and msg file
+     * Helper class which is used to reference the path to the object and msg file.
+     * It also keeps the envelope data needed to remove or browse mails without
+     * reading them from the disk.
      */
     private final class FileItem {
         private final String objectfile;
         private final String messagefile;
+        private final String name;
+        private final String sender;
+        private final List<String> recipients;
+        private final long nextDelivery;
 
-        public FileItem(String objectfile, String messagefile) {
+        public FileItem(String objectfile, String messagefile, Mail mail) {
             this.objectfile = objectfile;
             this.messagefile = messagefile;
+            this.name = mail.getName();
+            this.sender = mail.getSender() == null ? null : mail.getSender().toString();
+            this.recipients = new ArrayList<String>();
+            if (mail.getRecipients() != null) {
+                for (MailAddress recipient : mail.getRecipients()) {
+                    recipients.add(recipient.toString());
+                }
+            }
+            Long next = (Long) mail.getAttribute(NEXT_DELIVERY);
+            this.nextDelivery = next == null ? -1 : next;
+        }
+
+        public long getNextDelivery() {
+            return nextDelivery;
+        }
+
+        public boolean matches(Type type, String value) {
+            switch (type) {
+                case Name:
+                    return value.equals(name);
+                case Sender:
+                    return value.equals(sender);
+                case Recipient:
+                    return recipients.contains(value);
+                default:
+                    return false;
+            }
         }
 
         public String getObjectFile() {
@@ -434,34 +465,41 @@ public class FileMailQueue implements ManageableMailQueue {
     }
 
     /**
-     * TODO: implement me
+     * Match the mails against the envelope data kept in memory, so only the
+     * removed mails are touched on the disk
      *
      * @see ManageableMailQueue#remove(org.apache.james.queue.api.ManageableMailQueue.Type, String)
      */
     @Override
     public long remove(Type type, String value) throws MailQueueException {
-        switch (type) {
-            case Name:
-                FileItem item = keyMappings.remove(value);
-                if (item != null) {
-                    item.delete();
-                    return 1;
-                } else {
-                    return 0;
-                }
-
-            default:
-                break;
+        long count = 0;
+        for (Entry<String, FileItem> entry : keyMappings.entrySet()) {
+            FileItem item = entry.getValue();
+            if (item.matches(type, value) && keyMappings.remove(entry.getKey(), item)) {
+                item.delete();
+                count++;
+            }
         }
-        throw new MailQueueException("Not supported yet");
-
+        return count;
     }
 
     @Override
     public MailQueueIterator browse() throws MailQueueException {
+        return browse(0, -1);
+    }
+
+    /**
+     * The skipped mails are not read from the disk
+     */
+    @Override
+    public MailQueueIterator browse(long offset, final long limit) throws MailQueueException {
         final Iterator<FileItem> items = keyMappings.values().iterator();
+        for (long skipped = 0; skipped < offset && items.hasNext(); skipped++) {
+            items.next();
+        }
         return new MailQueueIterator() {
             private MailQueueItemView item = null;
+            private long returned = 0;
 
             @Override
             public void remove() {
@@ -473,6 +511,7 @@ public class FileMailQueue implements ManageableMailQueue {
                 if (hasNext()) {
                     MailQueueItemView vitem = item;
                     item = null;
+                    returned++;
                     return vitem;
                 } else {
 
@@ -482,17 +521,21 @@ public class FileMailQueue implements ManageableMailQueue {
 
             @Override
             public boolean hasNext() {
+                if (limit >= 0 && returned >= limit) {
+                    return false;
+                }
                 if (item == null) {
                     while (items.hasNext()) {
-                        ObjectInputStream in = null;
+                        InputStream in = null;
                         try {
-                            in = new ObjectInputStream(new FileInputStream(items.next().getObjectFile()));
-                            final Mail mail = (Mail) in.readObject();
+                            final FileItem fitem = items.next();
+                            in = new BufferedInputStream(new FileInputStream(fitem.getObjectFile()));
+                            final Mail mail = MailEnvelopeCodec.read(in);
                             item = new MailQueueItemView() {
 
                                 @Override
                                 public long getNextDelivery() {
-                                    return (Long) mail.getAttribute(NEXT_DELIVERY);
+                                    return fitem.getNextDelivery();
                                 }
 
                                 @Override
@@ -506,8 +549,6 @@ public class FileMailQueue implements ManageableMailQueue {
                         } catch (IOException e) {
                             log.info("Unable to load mail", e);
 
-                        } catch (ClassNotFoundException e) {
-                            log.info("Unable to load mail", e);
                         } finally {
                             if (in != null) {
                                 try {
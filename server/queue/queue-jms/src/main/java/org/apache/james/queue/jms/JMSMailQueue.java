@@ -49,6 +49,7 @@ import javax.mail.internet.MimeMessage;
 
 import org.apache.james.core.MailImpl;
 import org.apache.james.core.MimeMessageCopyOnWriteProxy;
+import org.apache.james.lifecycle.api.Disposable;
 import org.apache.james.queue.api.MailPrioritySupport;
 import org.apache.james.queue.api.MailQueue;
 import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
@@ -68,12 +69,13 @@ import org.slf4j.Logger;
  * {@link Mail} objects.
  * </p>
  */
-public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPrioritySupport {
+public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPrioritySupport, Disposable {
 
     protected final String queueName;
     protected final ConnectionFactory connectionFactory;
     protected final MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory;
     protected final Logger logger;
+    protected final JMSSessionPool sessionPool;
     public final static String FORCE_DELIVERY = "FORCE_DELIVERY";
 
     public JMSMailQueue(ConnectionFactory connectionFactory, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, String queueName, Logger logger) {
@@ -81,6 +83,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
         this.mailQueueItemDecoratorFactory = mailQueueItemDecoratorFactory;
         this.queueName = queueName;
         this.logger = logger;
+        this.sessionPool = new JMSSessionPool(connectionFactory, queueName);
     }
 
     /**
@@ -94,93 +97,45 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
      * Many JMS implementations support better solutions for this, so this
      * should get overridden by these implementations
      * </p>
+     * <p>
+     * The session and its consumer are taken from the {@link JMSSessionPool}
+     * of the queue, and given back once the returned item is done.
+     * </p>
      */
     @Override
     public MailQueueItem deQueue() throws MailQueueException {
-        Connection connection = null;
-        Session session = null;
-        Message message;
-        MessageConsumer consumer = null;
-
-        while (true) {
-            try {
-                connection = connectionFactory.createConnection();
-                connection.start();
-
-                session = connection.createSession(true, Session.SESSION_TRANSACTED);
-                Queue queue = session.createQueue(queueName);
-                consumer = session.createConsumer(queue, getMessageSelector());
-
-                message = consumer.receive(10000);
+        JMSSessionPool.ConsumerSession consumerSession = null;
+        try {
+            consumerSession = sessionPool.borrowConsumerSession();
+            while (true) {
+                Message message = consumerSession.receive(getMessageSelector(), 10000);
 
                 if (message != null) {
-                    return createMailQueueItem(connection, session, consumer, message);
-                } else {
-                    session.commit();
-
-                    if (consumer != null) {
-
-                        try {
-                            consumer.close();
-                        } catch (JMSException e1) {
-                            // ignore on rollback
-                        }
-                    }
-                    try {
-                        if (session != null)
-                            session.close();
-                    } catch (JMSException e1) {
-                        // ignore here
-                    }
-
-                    try {
-                        if (connection != null)
-                            connection.close();
-                    } catch (JMSException e1) {
-                        // ignore here
-                    }
+                    return createMailQueueItem(consumerSession, message);
                 }
-
-            } catch (Exception e) {
-                if (session != null) {
-                    try {
-                        session.rollback();
-                    } catch (JMSException e1) {
-                        // ignore on rollback
-                    }
-                }
-
-                if (consumer != null) {
-
-                    try {
-                        consumer.close();
-                    } catch (JMSException e1) {
-                        // ignore on rollback
-                    }
-                }
-                try {
-                    if (session != null)
-                        session.close();
-                } catch (JMSException e1) {
-                    // ignore here
-                }
-
+            }
+        } catch (JMSException e) {
+            if (consumerSession != null) {
+                consumerSession.invalidate();
+            }
+            throw new MailQueueException("Unable to dequeue next message", e);
+        } catch (Exception e) {
+            if (consumerSession != null) {
                 try {
-                    if (connection != null)
-                        connection.close();
+                    consumerSession.getSession().rollback();
+                    consumerSession.release();
                 } catch (JMSException e1) {
-                    // ignore here
+                    consumerSession.invalidate();
                 }
-                throw new MailQueueException("Unable to dequeue next message", e);
             }
+            throw new MailQueueException("Unable to dequeue next message", e);
         }
 
     }
 
     @Override
     public void enQueue(Mail mail, long delay, TimeUnit unit) throws MailQueueException {
-        Connection connection = null;
-        Session session = null;
+        JMSSessionPool.ProducerSession producerSession = null;
 
         long mydelay = 0;
 
@@ -190,9 +145,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
 
         try {
 
-            connection = connectionFactory.createConnection();
-            connection.start();
-            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            producerSession = sessionPool.borrowProducerSession();
 
             int msgPrio = NORMAL_PRIORITY;
             Object prio = mail.getAttribute(MAIL_PRIORITY);
@@ -202,32 +155,21 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
 
             Map<String, Object> props = getJMSProperties(mail, mydelay);
 
-            produceMail(session, props, msgPrio, mail);
+            produceMail(producerSession.getSession(), props, msgPrio, mail);
 
-        } catch (Exception e) {
-            if (session != null) {
-                try {
-                    session.rollback();
-                } catch (JMSException e1) {
-                    // ignore on rollback
-                }
+            producerSession.release();
+        } catch (JMSException e) {
+            if (producerSession != null) {
+                producerSession.invalidate();
             }
             throw new MailQueueException("Unable to enqueue mail " + mail, e);
 
-        } finally {
-            try {
-                if (session != null)
-                    session.close();
-            } catch (JMSException e) {
-                // ignore here
+        } catch (Exception e) {
+            if (producerSession != null) {
+                producerSession.release();
             }
+            throw new MailQueueException("Unable to enqueue mail " + mail, e);
 
-            try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e) {
-                // ignore here
-            }
         }
     }
 
@@ -463,20 +405,23 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
         return "MailQueue:" + queueName;
     }
 
+    @Override
+    public void dispose() {
+        sessionPool.dispose();
+    }
+
     /**
      * Create a {@link org.apache.james.queue.api.MailQueue.MailQueueItem} for the given parameters
      *
-     * @param connection
-     * @param session
-     * @param consumer
+     * @param consumerSession
      * @param message
      * @return item
      * @throws JMSException
      * @throws MessagingException
      */
-    protected MailQueueItem createMailQueueItem(Connection connection, Session session, MessageConsumer consumer, Message message) throws JMSException, MessagingException {
+    protected MailQueueItem createMailQueueItem(JMSSessionPool.ConsumerSession consumerSession, Message message) throws JMSException, MessagingException {
         final Mail mail = createMail(message);
-        JMSMailQueueItem jmsMailQueueItem = new JMSMailQueueItem(mail, connection, session, consumer);
+        JMSMailQueueItem jmsMailQueueItem = new JMSMailQueueItem(mail, consumerSession);
         return mailQueueItemDecoratorFactory.decorate(jmsMailQueueItem);
     }
 
@@ -492,8 +437,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
         QueueBrowser browser = null;
         int size = 0;
         try {
-            connection = connectionFactory.createConnection();
-            connection.start();
+            connection = sessionPool.getConnection();
             session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
             Queue queue = session.createQueue(queueName);
 
@@ -523,13 +467,6 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
             } catch (JMSException e1) {
                 // ignore here
             }
-
-            try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e1) {
-                // ignore here
-            }
         }
     }
 
@@ -543,8 +480,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
         boolean first = true;
         long count = 0;
         try {
-            connection = connectionFactory.createConnection();
-            connection.start();
+            connection = sessionPool.getConnection();
 
             session = connection.createSession(true, Session.SESSION_TRANSACTED);
             Queue queue = session.createQueue(queueName);
@@ -601,13 +537,6 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
             } catch (JMSException e1) {
                 // ignore here
             }
-
-            try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e1) {
-                // ignore here
-            }
         }
     }
 
@@ -639,8 +568,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
         List<Message> messages = new ArrayList<Message>();
 
         try {
-            connection = connectionFactory.createConnection();
-            connection.start();
+            connection = sessionPool.getConnection();
 
             session = connection.createSession(true, Session.SESSION_TRANSACTED);
             Queue queue = session.createQueue(queueName);
@@ -683,13 +611,6 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
             } catch (JMSException e1) {
                 // ignore here
             }
-
-            try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e1) {
-                // ignore here
-            }
         }
     }
 
@@ -720,38 +641,68 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
     public long remove(Type type, String value) throws MailQueueException {
         switch (type) {
             case Name:
-                return count(removeWithSelector(JAMES_MAIL_NAME + " = '" + value + "'"));
+                return count(removeWithSelector(JAMES_MAIL_NAME + " = '" + escapeLiteral(value) + "'"));
             case Sender:
-                return count(removeWithSelector(JAMES_MAIL_SENDER + " = '" + value + "'"));
+                return count(removeWithSelector(JAMES_MAIL_SENDER + " = '" + escapeLiteral(value) + "'"));
             case Recipient:
-                return count(removeWithSelector(JAMES_MAIL_RECIPIENTS + " = '" + value + "' or " + JAMES_MAIL_RECIPIENTS + " = '%," + value + "' or " + JAMES_MAIL_RECIPIENTS + " = '%," + value + "%'"));
+                String pattern = escapeLiteral(escapeLikePattern(value));
+                return count(removeWithSelector(JAMES_MAIL_RECIPIENTS + " = '" + escapeLiteral(value) + "'"
+                    + " or " + JAMES_MAIL_RECIPIENTS + " like '" + pattern + JAMES_MAIL_SEPARATOR + "%' escape '\\'"
+                    + " or " + JAMES_MAIL_RECIPIENTS + " like '%" + JAMES_MAIL_SEPARATOR + pattern + "' escape '\\'"
+                    + " or " + JAMES_MAIL_RECIPIENTS + " like '%" + JAMES_MAIL_SEPARATOR + pattern + JAMES_MAIL_SEPARATOR + "%' escape '\\'"));
             default:
                 break;
         }
         return -1;
     }
 
+    /**
+     * Escape the given value so that it can be used as a string literal in a
+     * message selector
+     */
+    private String escapeLiteral(String value) {
+        return value.replace("'", "''");
+    }
+
+    /**
+     * Escape the wildcards of a like pattern, using '\' as escape character
+     */
+    private String escapeLikePattern(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
     @Override
-    @SuppressWarnings("unchecked")
     public MailQueueIterator browse() throws MailQueueException {
+        return browse(0, -1);
+    }
+
+    /**
+     * The skipped messages are only enumerated, no {@link Mail} gets created
+     * for them.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public MailQueueIterator browse(long offset, final long limit) throws MailQueueException {
         Connection connection = null;
         Session session = null;
         QueueBrowser browser = null;
         try {
-            connection = connectionFactory.createConnection();
-            connection.start();
+            connection = sessionPool.getConnection();
             session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
             Queue queue = session.createQueue(queueName);
 
             browser = session.createBrowser(queue);
 
             final Enumeration<Message> messages = browser.getEnumeration();
+            for (long skipped = 0; skipped < offset && messages.hasMoreElements(); skipped++) {
+                messages.nextElement();
+            }
 
-            final Connection myConnection = connection;
             final Session mySession = session;
             final QueueBrowser myBrowser = browser;
 
             return new MailQueueIterator() {
+                private long returned = 0;
 
                 @Override
                 public void remove() {
@@ -765,6 +716,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
                             Message m = messages.nextElement();
                             final Mail mail = createMail(m);
                             final long nextDelivery = m.getLongProperty(JAMES_NEXT_DELIVERY);
+                            returned++;
                             return new MailQueueItemView() {
 
                                 @Override
@@ -789,7 +741,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
 
                 @Override
                 public boolean hasNext() {
-                    return messages.hasMoreElements();
+                    return (limit < 0 || returned < limit) && messages.hasMoreElements();
                 }
 
                 @Override
@@ -808,13 +760,6 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
                     } catch (JMSException e1) {
                         // ignore here
                     }
-
-                    try {
-                        if (myConnection != null)
-                            myConnection.close();
-                    } catch (JMSException e1) {
-                        // ignore here
-                    }
                 }
             };
 
@@ -833,13 +778,6 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
             } catch (JMSException e1) {
                 // ignore here
             }
-
-            try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e1) {
-                // ignore here
-            }
             logger.error("Unable to browse queue " + queueName, e);
             throw new MailQueueException("Unable to browse queue " + queueName, e);
         }
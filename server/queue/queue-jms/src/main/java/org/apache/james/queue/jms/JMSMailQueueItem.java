@@ -19,10 +19,7 @@
 
 package org.apache.james.queue.jms;
 
-import javax.jms.Connection;
 import javax.jms.JMSException;
-import javax.jms.MessageConsumer;
-import javax.jms.Session;
 
 import org.apache.james.queue.api.MailQueue.MailQueueException;
 import org.apache.james.queue.api.MailQueue.MailQueueItem;
@@ -34,54 +31,36 @@ import org.apache.mailet.Mail;
 public class JMSMailQueueItem implements MailQueueItem {
 
     protected final Mail mail;
-    protected final Connection connection;
-    protected final Session session;
-    protected final MessageConsumer consumer;
+    protected final JMSSessionPool.ConsumerSession consumerSession;
 
-    public JMSMailQueueItem(Mail mail, Connection connection, Session session, MessageConsumer consumer) {
+    public JMSMailQueueItem(Mail mail, JMSSessionPool.ConsumerSession consumerSession) {
         this.mail = mail;
-        this.connection = connection;
-        this.session = session;
-        this.consumer = consumer;
+        this.consumerSession = consumerSession;
     }
 
+    /**
+     * Commit or rollback the dequeue transaction, then give the session back
+     * to its pool
+     */
     @Override
     public void done(boolean success) throws MailQueueException {
-        try {
-            if (success) {
-                session.commit();
-            } else {
-                try {
-                    session.rollback();
-                } catch (JMSException e1) {
-                    // ignore on rollback
-                }
-            }
-        } catch (JMSException ex) {
-            throw new MailQueueException("Unable to commit dequeue operation for mail " + mail.getName(), ex);
-        } finally {
-            if (consumer != null) {
-
-                try {
-                    consumer.close();
-                } catch (JMSException e1) {
-                    // ignore on rollback
-                }
-            }
+        if (success) {
             try {
-                if (session != null)
-                    session.close();
-            } catch (JMSException e) {
-                // ignore here
+                consumerSession.getSession().commit();
+            } catch (JMSException ex) {
+                consumerSession.invalidate();
+                throw new MailQueueException("Unable to commit dequeue operation for mail " + mail.getName(), ex);
             }
-
+        } else {
             try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e) {
-                // ignore here
+                consumerSession.getSession().rollback();
+            } catch (JMSException e1) {
+                // ignore on rollback
+                consumerSession.invalidate();
+                return;
             }
         }
+        consumerSession.release();
     }
 
     @Override
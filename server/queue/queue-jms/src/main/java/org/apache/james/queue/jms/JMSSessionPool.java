@@ -0,0 +1,326 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.queue.jms;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+/**
+ * Long lived JMS resources of a {@link JMSMailQueue}: a connection shared by
+ * all its operations, and pools of the sessions used to enqueue and dequeue
+ * mails.
+ * <p>
+ * A failure invalidates the connection: the next operation opens a new one,
+ * and the pooled sessions of the failed connection are closed instead of
+ * being reused.
+ * </p>
+ * <p>
+ * A consumer session keeps its consumer open while it is idle, so that the
+ * next dequeue does not need to create one. Consumers are only closed along
+ * with their session, when it is invalidated or can not be pooled. Messages
+ * prefetched by an idle consumer are not delivered to the other consumers
+ * of the queue, so the connection factory should use a prefetch of 0.
+ * </p>
+ */
+public class JMSSessionPool {
+
+    /**
+     * Maximum count of idle sessions kept for each kind of operation
+     */
+    private static final int MAX_IDLE_SESSIONS = 64;
+
+    /**
+     * Message selectors embed the time they were created at, see
+     * {@link JMSMailQueue#getMessageSelector()}. Consumers are recreated
+     * once their selector is that old, so that delayed mails become visible.
+     */
+    private static final long SELECTOR_MAX_AGE_IN_MILLIS = 1000;
+
+    /**
+     * A transacted session and its consumer, used by one dequeue at a time
+     */
+    public class ConsumerSession {
+
+        private final Connection connection;
+        private final Session session;
+        private final javax.jms.Queue queue;
+        private MessageConsumer consumer;
+        private long consumerCreation;
+
+        private ConsumerSession(Connection connection) throws JMSException {
+            this.connection = connection;
+            this.session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            try {
+                this.queue = session.createQueue(queueName);
+            } catch (JMSException e) {
+                closeQuietly(session);
+                throw e;
+            }
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        /**
+         * Receive the next message matching the given selector
+         */
+        public Message receive(String selector, long timeout) throws JMSException {
+            long now = System.currentTimeMillis();
+            if (consumer == null || now - consumerCreation > SELECTOR_MAX_AGE_IN_MILLIS) {
+                closeConsumer();
+                consumer = session.createConsumer(queue, selector);
+                consumerCreation = now;
+            }
+            return consumer.receive(timeout);
+        }
+
+        /**
+         * Give the session and its consumer back once its transaction is over
+         */
+        public void release() {
+            if (!isCurrent(connection) || !offer(idleConsumerSessions, idleConsumerSessionCount, this)) {
+                close();
+            }
+        }
+
+        /**
+         * Close the session after a failure
+         */
+        public void invalidate() {
+            close();
+            invalidateConnection(connection);
+        }
+
+        private void close() {
+            closeConsumer();
+            closeQuietly(session);
+        }
+
+        private void closeConsumer() {
+            if (consumer != null) {
+                try {
+                    consumer.close();
+                } catch (JMSException e) {
+                    // ignore here
+                }
+                consumer = null;
+            }
+        }
+    }
+
+    /**
+     * A non transacted session, used to enqueue mails
+     */
+    public class ProducerSession {
+
+        private final Connection connection;
+        private final Session session;
+
+        private ProducerSession(Connection connection) throws JMSException {
+            this.connection = connection;
+            this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        /**
+         * Give the session back for later use
+         */
+        public void release() {
+            if (!isCurrent(connection) || !offer(idleProducerSessions, idleProducerSessionCount, this)) {
+                closeQuietly(session);
+            }
+        }
+
+        /**
+         * Close the session after a failure
+         */
+        public void invalidate() {
+            closeQuietly(session);
+            invalidateConnection(connection);
+        }
+    }
+
+    private final ConnectionFactory connectionFactory;
+    private final String queueName;
+    private final Queue<ConsumerSession> idleConsumerSessions = new ConcurrentLinkedQueue<ConsumerSession>();
+    private final AtomicInteger idleConsumerSessionCount = new AtomicInteger(0);
+    private final Queue<ProducerSession> idleProducerSessions = new ConcurrentLinkedQueue<ProducerSession>();
+    private final AtomicInteger idleProducerSessionCount = new AtomicInteger(0);
+    private Connection connection;
+    private boolean disposed;
+
+    public JMSSessionPool(ConnectionFactory connectionFactory, String queueName) {
+        this.connectionFactory = connectionFactory;
+        this.queueName = queueName;
+    }
+
+    /**
+     * Return the shared, started connection. It must not be closed by the
+     * caller, but invalidated on failure.
+     */
+    public synchronized Connection getConnection() throws JMSException {
+        if (disposed) {
+            throw new javax.jms.IllegalStateException("Sessions of queue " + queueName + " are disposed");
+        }
+        if (connection == null) {
+            Connection newConnection = connectionFactory.createConnection();
+            try {
+                newConnection.start();
+            } catch (JMSException e) {
+                closeQuietly(newConnection);
+                throw e;
+            }
+            connection = newConnection;
+        }
+        return connection;
+    }
+
+    /**
+     * Close the given connection if it is still the shared one, so that the
+     * next operation reconnects
+     */
+    public void invalidateConnection(Connection failedConnection) {
+        synchronized (this) {
+            if (connection != failedConnection) {
+                return;
+            }
+            connection = null;
+        }
+        closeQuietly(failedConnection);
+    }
+
+    /**
+     * Borrow a session for dequeuing mails. It has to be released or
+     * invalidated once its transaction is over.
+     */
+    public ConsumerSession borrowConsumerSession() throws JMSException {
+        ConsumerSession consumerSession = poll(idleConsumerSessions, idleConsumerSessionCount);
+        while (consumerSession != null) {
+            if (isCurrent(consumerSession.connection)) {
+                return consumerSession;
+            }
+            consumerSession.close();
+            consumerSession = poll(idleConsumerSessions, idleConsumerSessionCount);
+        }
+        Connection currentConnection = getConnection();
+        try {
+            return new ConsumerSession(currentConnection);
+        } catch (JMSException e) {
+            invalidateConnection(currentConnection);
+            throw e;
+        }
+    }
+
+    /**
+     * Borrow a session for enqueuing mails. It has to be released or
+     * invalidated once used.
+     */
+    public ProducerSession borrowProducerSession() throws JMSException {
+        ProducerSession producerSession = poll(idleProducerSessions, idleProducerSessionCount);
+        while (producerSession != null) {
+            if (isCurrent(producerSession.connection)) {
+                return producerSession;
+            }
+            closeQuietly(producerSession.session);
+            producerSession = poll(idleProducerSessions, idleProducerSessionCount);
+        }
+        Connection currentConnection = getConnection();
+        try {
+            return new ProducerSession(currentConnection);
+        } catch (JMSException e) {
+            invalidateConnection(currentConnection);
+            throw e;
+        }
+    }
+
+    /**
+     * Close the idle sessions and the connection. Borrowed sessions are
+     * closed along with the connection.
+     */
+    public void dispose() {
+        Connection disposedConnection;
+        synchronized (this) {
+            disposed = true;
+            disposedConnection = connection;
+            connection = null;
+        }
+        ConsumerSession consumerSession;
+        while ((consumerSession = poll(idleConsumerSessions, idleConsumerSessionCount)) != null) {
+            consumerSession.close();
+        }
+        ProducerSession producerSession;
+        while ((producerSession = poll(idleProducerSessions, idleProducerSessionCount)) != null) {
+            closeQuietly(producerSession.session);
+        }
+        if (disposedConnection != null) {
+            closeQuietly(disposedConnection);
+        }
+    }
+
+    private synchronized boolean isCurrent(Connection candidate) {
+        return candidate == connection;
+    }
+
+    private <T> boolean offer(Queue<T> idle, AtomicInteger idleCount, T element) {
+        if (idleCount.incrementAndGet() > MAX_IDLE_SESSIONS) {
+            idleCount.decrementAndGet();
+            return false;
+        }
+        idle.add(element);
+        return true;
+    }
+
+    private <T> T poll(Queue<T> idle, AtomicInteger idleCount) {
+        T element = idle.poll();
+        if (element != null) {
+            idleCount.decrementAndGet();
+        }
+        return element;
+    }
+
+    private static void closeQuietly(Session session) {
+        try {
+            session.close();
+        } catch (JMSException e) {
+            // ignore here
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (JMSException e) {
+            // ignore here
+        }
+    }
+}
@@ -111,7 +111,15 @@ public class MailQueueManagement extends StandardMBean implements MailQueueManag
 
     @Override
     public List<CompositeData> browse() throws Exception {
-        MailQueueIterator it = queue.browse();
+        return toCompositeData(queue.browse());
+    }
+
+    @Override
+    public List<CompositeData> browse(long offset, long limit) throws Exception {
+        return toCompositeData(queue.browse(offset, limit));
+    }
+
+    private List<CompositeData> toCompositeData(MailQueueIterator it) throws Exception {
         List<CompositeData> data = new ArrayList<CompositeData>();
         String[] names = new String[]{"name", "sender", "state", "recipients", "size", "lastUpdated", "remoteAddress", "remoteHost", "errorMessage", "attributes", "nextDelivery"};
         String[] descs = new String[]{"Unique name", "Sender", "Current state", "Recipients", "Size in bytes", "Timestamp of last update", "IPAddress of the sender", "Hostname of the sender", "Errormessage if any", "Attributes stored", "Timestamp of when the next delivery attempt will be make"};
@@ -46,6 +46,7 @@ import org.apache.james.queue.api.ManageableMailQueue;
 import org.apache.james.queue.api.ManageableMailQueue.MailQueueIterator;
 import org.apache.mailet.Mail;
 import org.apache.mailet.MailAddress;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -64,7 +65,10 @@ public abstract class AbstractJMSMailQueueTest {
     public abstract void setQueue(JMSMailQueue queue);
 
     protected ActiveMQConnectionFactory createConnectionFactory() {
-        return new ActiveMQConnectionFactory("vm://localhost?create=false");
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory("vm://localhost?create=false");
+        // idle pooled consumers must not hold messages the tests dequeue
+        factory.getPrefetchPolicy().setAll(0);
+        return factory;
     }
     
     protected JMSMailQueue createQueue(ConnectionFactory factory, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, String queueName) {
@@ -78,6 +82,11 @@ public abstract class AbstractJMSMailQueueTest {
         setQueue(createQueue(connectionFactory, MailQueueItemDecoratorFactory.RAW_FACTORY, QUEUE_NAME));
     }
 
+    @After
+    public void disposeQueue() {
+        getQueue().dispose();
+    }
+
     @Test
     public void testFIFO() throws MessagingException, InterruptedException, IOException, MailAddressException {
         final JMSMailQueue queue = getQueue();
@@ -401,4 +410,68 @@ public abstract class AbstractJMSMailQueueTest {
         assertFalse(it.hasNext());
         it.close();
     }
+
+    @Test
+    public void testBrowsePage() throws MessagingException, InterruptedException, IOException, MailAddressException {
+        final JMSMailQueue queue = getQueue();
+        // should be empty
+        assertEquals(0, queue.getSize());
+
+        Mail mail = createMail();
+        Mail mail2 = createMail();
+        Mail mail3 = createMail();
+
+        queue.enQueue(mail);
+        queue.enQueue(mail2);
+        queue.enQueue(mail3);
+
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        MailQueueIterator it = queue.browse(1, 1);
+        checkMail(mail2, it.next().getMail());
+        assertFalse(it.hasNext());
+        it.close();
+
+        it = queue.browse(2, -1);
+        checkMail(mail3, it.next().getMail());
+        assertFalse(it.hasNext());
+        it.close();
+
+        for (Mail enqueued : Arrays.asList(mail, mail2, mail3)) {
+            MailQueueItem item = queue.deQueue();
+            checkMail(enqueued, item.getMail());
+            item.done(true);
+        }
+
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        // should be empty
+        assertEquals(0, queue.getSize());
+    }
+
+    @Test
+    public void testRemoveWithOneOfTheRecipients() throws MessagingException, InterruptedException, MailAddressException {
+        final JMSMailQueue queue = getQueue();
+        assertEquals(0, queue.getSize());
+
+        Mail mail = createMail();
+        mail.setRecipients(Arrays.asList(new MailAddress("first@me"), new MailAddress("remove@me"), new MailAddress("last@me")));
+
+        Mail mail2 = createMail();
+        mail2.setRecipients(Arrays.asList(new MailAddress("remove@me2"), new MailAddress("other@me")));
+
+        queue.enQueue(mail);
+        queue.enQueue(mail2);
+
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        assertEquals(2, queue.getSize());
+        assertEquals(1, queue.remove(ManageableMailQueue.Type.Recipient, "remove@me"));
+
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertEquals(1, queue.getSize());
+
+        assertEquals(1, queue.remove(ManageableMailQueue.Type.Recipient, "other@me"));
+        assertEquals(0, queue.getSize());
+    }
 }
@@ -95,6 +95,11 @@ public class AbstractMailQueueFactoryTest {
                     public MailQueueIterator browse() throws MailQueueException {
                         return null;
                     }
+
+                    @Override
+                    public MailQueueIterator browse(long offset, long limit) throws MailQueueException {
+                        return null;
+                    }
                 };
             }
         };